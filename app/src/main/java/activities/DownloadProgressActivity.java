@@ -4,7 +4,9 @@ import android.content.Context;
 import android.content.Intent; // Import Intent
 import android.os.Bundle;
 import android.view.LayoutInflater;
+import android.view.Menu;
 import android.view.View;
+import android.widget.PopupMenu;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -39,6 +41,13 @@ public class DownloadProgressActivity extends AppCompatActivity implements
         DownloadProgressAdapter.DownloadActionListener,
         CompletedDownloadAdapter.OnDownloadActionListener {
 
+    // Itens do menu de toque longo dos downloads ativos
+    private static final int MENU_MOVE_TO_FRONT = 1;
+    private static final int MENU_PRIORITY_HIGH = 2;
+    private static final int MENU_PRIORITY_NORMAL = 3;
+    private static final int MENU_PRIORITY_LOW = 4;
+    private static final int MENU_DETAILS = 5;
+
     private RecyclerView recyclerView;
     private DownloadProgressAdapter adapter;
     private List<DownloadInfo> downloads;
@@ -161,54 +170,29 @@ public class DownloadProgressActivity extends AppCompatActivity implements
 
     @Override
     public void onDownloadUpdated(DownloadInfo downloadInfo) {
+        onDownloadsUpdated(Collections.singletonList(downloadInfo));
+    }
+
+    @Override
+    public void onDownloadsUpdated(List<DownloadInfo> updatedDownloads) {
         runOnUiThread(() -> {
-            int index = -1;
-            for (int i = 0; i < downloads.size(); i++) {
-                // Usar filePath para identificar o item na lista da UI
-                if (Objects.equals(downloads.get(i).getFilePath(), downloadInfo.getFilePath())) {
-                    index = i;
-                    break;
+            List<DownloadInfo> missing = adapter.applyUpdates(updatedDownloads);
+            boolean completedChanged = false;
+            for (DownloadInfo downloadInfo : missing) {
+                if (downloadInfo.getStatus() == DownloadInfo.STATUS_COMPLETED) {
+                    completedChanged = true; // Ex: andamento da extração de um concluído
+                } else if (downloadInfo.getStatus() != DownloadInfo.STATUS_FAILED &&
+                    downloadInfo.getStatus() != DownloadInfo.STATUS_CANCELLED) {
+                    // Se não encontrou na lista ativa, mas não é um estado final, adicionar
+                    downloads.add(0, downloadInfo);
+                    adapter.notifyItemInserted(0);
+                    if (tabLayout.getSelectedTabPosition() == 0) {
+                        recyclerView.scrollToPosition(0);
+                    }
                 }
             }
-
-            if (index != -1) {
-                DownloadInfo existingInfo = downloads.get(index);
-                boolean statusChanged = existingInfo.getStatus() != downloadInfo.getStatus();
-
-                // Atualizar dados no objeto da lista
-                existingInfo.setStatus(downloadInfo.getStatus());
-                existingInfo.setProgress(downloadInfo.getProgress());
-                existingInfo.setDownloadedSize(downloadInfo.getDownloadedSize());
-                existingInfo.setFileSize(downloadInfo.getFileSize());
-                existingInfo.setEndTime(downloadInfo.getEndTime());
-                existingInfo.setLastPauseTime(downloadInfo.getLastPauseTime());
-                existingInfo.setLastResumeTime(downloadInfo.getLastResumeTime());
-                existingInfo.setErrorMessage(downloadInfo.getErrorMessage());
-                existingInfo.setSpeed(downloadInfo.getSpeed());
-                existingInfo.setEstimatedTimeRemaining(downloadInfo.getEstimatedTimeRemaining());
-                // Atualizar URL ativa caso tenha mudado (múltiplas fontes)
-                existingInfo.setUrl(downloadInfo.getUrl());
-
-                if (statusChanged) {
-                    adapter.notifyItemChanged(index);
-                } else {
-                    Bundle payload = new Bundle();
-                    payload.putInt("progress", existingInfo.getProgress());
-                    payload.putLong("downloadedSize", existingInfo.getDownloadedSize());
-                    payload.putLong("fileSize", existingInfo.getFileSize());
-                    payload.putLong("speed", existingInfo.getSpeed());
-                    payload.putString("eta", existingInfo.getEstimatedTimeRemaining());
-                    adapter.notifyItemChanged(index, payload);
-                }
-            } else if (downloadInfo.getStatus() != DownloadInfo.STATUS_COMPLETED &&
-                       downloadInfo.getStatus() != DownloadInfo.STATUS_FAILED &&
-                       downloadInfo.getStatus() != DownloadInfo.STATUS_CANCELLED) {
-                // Se não encontrou na lista ativa, mas não é um estado final, adicionar
-                 downloads.add(0, downloadInfo);
-                 adapter.notifyItemInserted(0);
-                 if (tabLayout.getSelectedTabPosition() == 0) {
-                     recyclerView.scrollToPosition(0);
-                 }
+            if (completedChanged) {
+                refreshCompletedDownloads();
             }
             updateTabVisibility(tabLayout.getSelectedTabPosition());
         });
@@ -331,9 +315,41 @@ public class DownloadProgressActivity extends AppCompatActivity implements
 
     @Override
     public void onItemLongClick(DownloadInfo downloadInfo, View view) {
-        if (downloadInfo.getStatus() != DownloadInfo.STATUS_CANCELLED) {
-             showDownloadDetailsDialog(downloadInfo);
+        if (downloadInfo.getStatus() == DownloadInfo.STATUS_CANCELLED) return;
+        // Menu do item: posição na fila, prioridade (ordem da fila e fatia de banda) e detalhes
+        PopupMenu menu = new PopupMenu(this, view);
+        if (downloadInfo.getStatus() == DownloadInfo.STATUS_QUEUED) {
+            menu.getMenu().add(Menu.NONE, MENU_MOVE_TO_FRONT, Menu.NONE, "Mover para o início da fila");
         }
+        menu.getMenu().add(Menu.NONE, MENU_PRIORITY_HIGH, Menu.NONE, "Prioridade alta")
+                .setCheckable(true).setChecked(downloadInfo.getPriority() == DownloadInfo.PRIORITY_HIGH);
+        menu.getMenu().add(Menu.NONE, MENU_PRIORITY_NORMAL, Menu.NONE, "Prioridade normal")
+                .setCheckable(true).setChecked(downloadInfo.getPriority() == DownloadInfo.PRIORITY_NORMAL);
+        menu.getMenu().add(Menu.NONE, MENU_PRIORITY_LOW, Menu.NONE, "Prioridade baixa")
+                .setCheckable(true).setChecked(downloadInfo.getPriority() == DownloadInfo.PRIORITY_LOW);
+        menu.getMenu().add(Menu.NONE, MENU_DETAILS, Menu.NONE, "Detalhes");
+        menu.setOnMenuItemClickListener(item -> {
+            switch (item.getItemId()) {
+                case MENU_MOVE_TO_FRONT:
+                    downloadManager.moveToFront(downloadInfo);
+                    return true;
+                case MENU_PRIORITY_HIGH:
+                    downloadManager.setDownloadPriority(downloadInfo, DownloadInfo.PRIORITY_HIGH);
+                    return true;
+                case MENU_PRIORITY_NORMAL:
+                    downloadManager.setDownloadPriority(downloadInfo, DownloadInfo.PRIORITY_NORMAL);
+                    return true;
+                case MENU_PRIORITY_LOW:
+                    downloadManager.setDownloadPriority(downloadInfo, DownloadInfo.PRIORITY_LOW);
+                    return true;
+                case MENU_DETAILS:
+                    showDownloadDetailsDialog(downloadInfo);
+                    return true;
+                default:
+                    return false;
+            }
+        });
+        menu.show();
     }
 
     // --- Implementação de CompletedDownloadAdapter.OnDownloadActionListener --- 
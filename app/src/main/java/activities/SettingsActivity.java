@@ -28,6 +28,8 @@ import androidx.documentfile.provider.DocumentFile;
 import com.LDGAMES.R;
 import com.LDGAMES.dialogs.ColorPaletteDialog;
 import com.LDGAMES.receivers.BootReceiver;
+import com.LDGAMES.utils.ArchiveExtractor;
+import com.LDGAMES.utils.BandwidthGovernor;
 import com.LDGAMES.utils.DirectoryInitializer;
 import com.LDGAMES.utils.DynamicThemeManager;
 import com.LDGAMES.utils.FileUtils;
@@ -38,8 +40,11 @@ import com.google.android.material.card.MaterialCardView;
 import com.google.android.material.slider.Slider;
 import com.google.android.material.textfield.TextInputEditText;
 import com.google.android.material.textfield.TextInputLayout;
+import com.google.android.material.timepicker.MaterialTimePicker;
+import com.google.android.material.timepicker.TimeFormat;
 
 import java.io.File;
+import java.util.Locale;
 
 public class SettingsActivity extends AppCompatActivity implements ColorPaletteDialog.OnPaletteSelectedListener {
 
@@ -58,6 +63,12 @@ public class SettingsActivity extends AppCompatActivity implements ColorPaletteD
 
     private Slider sliderMaxDownloads;
     private TextView tvMaxDownloadsValue;
+    private Slider sliderBandwidthLimit;
+    private TextView tvBandwidthLimitValue;
+    private SwitchCompat switchBandwidthSchedule;
+    private TextView tvBandwidthScheduleHours;
+    private TextView tvBandwidthStats;
+    private SwitchCompat switchAutoExtract;
     private TextView tvDownloadPath;
     private MaterialButton btnSelectDownloadFolder;
     private SwitchCompat switchDynamicColor;
@@ -102,6 +113,12 @@ public class SettingsActivity extends AppCompatActivity implements ColorPaletteD
 
         sliderMaxDownloads = findViewById(R.id.slider_max_downloads);
         tvMaxDownloadsValue = findViewById(R.id.tv_max_downloads_value);
+        sliderBandwidthLimit = findViewById(R.id.slider_bandwidth_limit);
+        tvBandwidthLimitValue = findViewById(R.id.tv_bandwidth_limit_value);
+        switchBandwidthSchedule = findViewById(R.id.switch_bandwidth_schedule);
+        tvBandwidthScheduleHours = findViewById(R.id.tv_bandwidth_schedule_hours);
+        tvBandwidthStats = findViewById(R.id.tv_bandwidth_stats);
+        switchAutoExtract = findViewById(R.id.switch_auto_extract);
         tvDownloadPath = findViewById(R.id.tv_download_path);
         btnSelectDownloadFolder = findViewById(R.id.btn_select_download_folder);
         switchDynamicColor = findViewById(R.id.switch_dynamic_color);
@@ -141,6 +158,12 @@ public class SettingsActivity extends AppCompatActivity implements ColorPaletteD
         DirectoryInitializer.initializeDirectories(this);
     }
 
+    @Override
+    protected void onResume() {
+        super.onResume();
+        updateBandwidthStats(); // Os contadores andam enquanto os downloads rodam
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
@@ -200,6 +223,14 @@ public class SettingsActivity extends AppCompatActivity implements ColorPaletteD
         sliderMaxDownloads.setValue(maxDownloads);
         tvMaxDownloadsValue.setText(String.valueOf(maxDownloads));
 
+        int bandwidthLimitMb = prefs.getInt(BandwidthGovernor.PREF_BANDWIDTH_LIMIT_KBPS, 0) / 1024;
+        bandwidthLimitMb = Math.max(0, Math.min((int) sliderBandwidthLimit.getValueTo(), bandwidthLimitMb));
+        sliderBandwidthLimit.setValue(bandwidthLimitMb);
+        updateBandwidthLimitLabel(bandwidthLimitMb);
+        switchBandwidthSchedule.setChecked(prefs.getBoolean(BandwidthGovernor.PREF_UNLIMITED_SCHEDULE_ENABLED, false));
+        updateBandwidthScheduleLabel();
+        switchAutoExtract.setChecked(prefs.getBoolean(ArchiveExtractor.PREF_AUTO_EXTRACT, false));
+
         boolean isDynamicColorEnabled = themeManager.isDynamicColorEnabled();
         switchDynamicColor.setChecked(isDynamicColorEnabled);
 
@@ -255,6 +286,33 @@ public class SettingsActivity extends AppCompatActivity implements ColorPaletteD
             showAutoSaveFeedback();
         });
 
+        sliderBandwidthLimit.addOnChangeListener((slider, value, fromUser) -> {
+            if (!fromUser) return;
+            int limitMb = (int) value;
+            updateBandwidthLimitLabel(limitMb);
+            SharedPreferences prefs = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            prefs.edit().putInt(BandwidthGovernor.PREF_BANDWIDTH_LIMIT_KBPS, limitMb * 1024).apply();
+            BandwidthGovernor.getInstance(SettingsActivity.this).reloadSettings();
+            updateBandwidthStats();
+            showAutoSaveFeedback();
+        });
+
+        switchBandwidthSchedule.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            SharedPreferences prefs = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            prefs.edit().putBoolean(BandwidthGovernor.PREF_UNLIMITED_SCHEDULE_ENABLED, isChecked).apply();
+            BandwidthGovernor.getInstance(SettingsActivity.this).reloadSettings();
+            updateBandwidthStats();
+            showAutoSaveFeedback();
+        });
+
+        tvBandwidthScheduleHours.setOnClickListener(v -> pickUnlimitedHour(true));
+
+        switchAutoExtract.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            SharedPreferences prefs = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            prefs.edit().putBoolean(ArchiveExtractor.PREF_AUTO_EXTRACT, isChecked).apply();
+            showAutoSaveFeedback();
+        });
+
         switchYouTubeSearch.setOnCheckedChangeListener((buttonView, isChecked) -> {
             SharedPreferences prefs = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
             prefs.edit().putBoolean(KEY_YOUTUBE_SEARCH_ENABLED, isChecked).apply();
@@ -366,11 +424,66 @@ public class SettingsActivity extends AppCompatActivity implements ColorPaletteD
         }
     }
 
+    private void updateBandwidthLimitLabel(int limitMb) {
+        tvBandwidthLimitValue.setText(limitMb == 0 ? "Ilimitado" : limitMb + " MB/s");
+    }
+
+    /**
+     * Escolhe a hora de início da janela sem limite e, em seguida, a de fim.
+     */
+    private void pickUnlimitedHour(boolean start) {
+        BandwidthGovernor governor = BandwidthGovernor.getInstance(this);
+        MaterialTimePicker picker = new MaterialTimePicker.Builder()
+                .setTimeFormat(TimeFormat.CLOCK_24H)
+                .setHour(start ? governor.getUnlimitedStartHour() : governor.getUnlimitedEndHour())
+                .setMinute(0)
+                .setTitleText(start ? "Sem limite a partir de" : "Sem limite até")
+                .build();
+        picker.addOnPositiveButtonClickListener(v -> {
+            SharedPreferences prefs = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            prefs.edit().putInt(start ? BandwidthGovernor.PREF_UNLIMITED_START_HOUR : BandwidthGovernor.PREF_UNLIMITED_END_HOUR,
+                    picker.getHour()).apply(); // Minutos ignorados: a janela é por hora
+            governor.reloadSettings();
+            updateBandwidthScheduleLabel();
+            updateBandwidthStats();
+            showAutoSaveFeedback();
+            if (start) {
+                pickUnlimitedHour(false);
+            }
+        });
+        picker.show(getSupportFragmentManager(), start ? "unlimited_start" : "unlimited_end");
+    }
+
+    private void updateBandwidthScheduleLabel() {
+        BandwidthGovernor governor = BandwidthGovernor.getInstance(this);
+        tvBandwidthScheduleHours.setText(String.format(Locale.getDefault(),
+                "Entre %02dh e %02dh os downloads usam toda a banda (toque para alterar)",
+                governor.getUnlimitedStartHour(), governor.getUnlimitedEndHour()));
+    }
+
+    /**
+     * Estado do limite agora e o quanto ele segurou os downloads desde que o app iniciou.
+     */
+    private void updateBandwidthStats() {
+        BandwidthGovernor governor = BandwidthGovernor.getInstance(this);
+        String state;
+        if (governor.getLimitBytesPerSecond() <= 0) {
+            state = "Sem limite configurado";
+        } else if (governor.isLimitActive()) {
+            state = "Limite ativo agora";
+        } else {
+            state = "Limite suspenso (horário sem limite)";
+        }
+        long waitSeconds = governor.getWaitTimeMillis() / 1000;
+        tvBandwidthStats.setText(String.format(Locale.getDefault(), "%s · %s baixados nesta sessão · %s aguardando o limite",
+                state, FileUtils.formatFileSize(governor.getBytesGranted()),
+                waitSeconds >= 60 ? (waitSeconds / 60) + " min" : waitSeconds + " s"));
+    }
+
     private void saveMaxDownloadsSettings() {
         SharedPreferences prefs = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
         prefs.edit().putInt(com.LDGAMES.utils.DownloadManager.PREF_CONCURRENT_DOWNLOADS, maxDownloads).apply(); // Use key from DownloadManager
-        // TODO: Consider notifying DownloadService if the limit changes while it's running
-        // This might require restarting the ExecutorService or adjusting it dynamically if possible.
+        // O DownloadWorkerPool do serviço escuta esta preferência e se redimensiona
     }
 
     private void saveDownloadPathSettings() {
@@ -4,15 +4,19 @@ import android.annotation.SuppressLint;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.EditText;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.LDGAMES.R;
 import com.LDGAMES.models.DownloadInfo;
+import com.LDGAMES.utils.ArchiveExtractor;
 import com.LDGAMES.utils.DownloadManager; // Importar DownloadManager para deletar
 import com.LDGAMES.utils.FileUtils; // Importar FileUtils para deletar
+import com.LDGAMES.utils.StreamingHasher;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 
@@ -73,6 +77,8 @@ public class CompletedDownloadAdapter extends RecyclerView.Adapter<CompletedDown
     class CompletedDownloadViewHolder extends RecyclerView.ViewHolder {
         private final TextView tvFileName;
         private final TextView tvFileSizeDate;
+        private final TextView tvHash;
+        private final TextView tvExtraction;
         private final MaterialButton btnOpenFile;
         private final MaterialButton btnDeleteFile;
 
@@ -80,6 +86,8 @@ public class CompletedDownloadAdapter extends RecyclerView.Adapter<CompletedDown
             super(itemView);
             tvFileName = itemView.findViewById(R.id.tv_file_name);
             tvFileSizeDate = itemView.findViewById(R.id.tv_file_size); // ID corrigido
+            tvHash = itemView.findViewById(R.id.tv_hash);
+            tvExtraction = itemView.findViewById(R.id.tv_extraction);
             btnOpenFile = itemView.findViewById(R.id.btn_open_file);
             btnDeleteFile = itemView.findViewById(R.id.btn_delete_file);
         }
@@ -98,6 +106,8 @@ public class CompletedDownloadAdapter extends RecyclerView.Adapter<CompletedDown
             }
 
             tvFileSizeDate.setText(sizeInfo);
+            bindHash(downloadInfo);
+            bindExtraction(downloadInfo);
 
             // Configurar botões
             btnOpenFile.setOnClickListener(v -> {
@@ -139,6 +149,83 @@ public class CompletedDownloadAdapter extends RecyclerView.Adapter<CompletedDown
                 }
             });
         }
+
+        /**
+         * Mostra o SHA-256 calculado durante o download e o resultado da verificação, se houver.
+         * O toque abre a verificação contra um hash informado pela fonte (compara com o digest salvo).
+         */
+        private void bindHash(DownloadInfo downloadInfo) {
+            if (downloadInfo.getSha256() == null) {
+                tvHash.setVisibility(View.GONE);
+                tvHash.setOnClickListener(null);
+                return;
+            }
+            Boolean verified = StreamingHasher.matches(downloadInfo.getExpectedHash(), downloadInfo.getSha256(), downloadInfo.getMd5());
+            String status = verified == null ? "Toque para verificar" : (verified ? "✓ Verificado" : "✗ Não confere");
+            tvHash.setText("SHA-256 " + downloadInfo.getSha256() + " • " + status);
+            tvHash.setVisibility(View.VISIBLE);
+            tvHash.setOnClickListener(v -> showVerifyDialog(downloadInfo));
+        }
+
+        /**
+         * Estado da extração do .zip. Falha (ou .zip ainda não extraído) aceita toque para extrair.
+         */
+        private void bindExtraction(DownloadInfo downloadInfo) {
+            String text;
+            boolean canExtract = false;
+            switch (downloadInfo.getExtractionStatus()) {
+                case DownloadInfo.EXTRACTION_RUNNING:
+                    text = "Extraindo…";
+                    break;
+                case DownloadInfo.EXTRACTION_DONE:
+                    text = "Extraído: " + downloadInfo.getExtractionMessage();
+                    break;
+                case DownloadInfo.EXTRACTION_FAILED:
+                    text = "Falha na extração: " + downloadInfo.getExtractionMessage() + " • Toque para tentar de novo";
+                    canExtract = true;
+                    break;
+                default:
+                    if (!ArchiveExtractor.isSupported(downloadInfo)) {
+                        tvExtraction.setVisibility(View.GONE);
+                        tvExtraction.setOnClickListener(null);
+                        return;
+                    }
+                    text = "Toque para extrair";
+                    canExtract = true;
+                    break;
+            }
+            tvExtraction.setText(text);
+            tvExtraction.setVisibility(View.VISIBLE);
+            tvExtraction.setOnClickListener(canExtract
+                    ? v -> DownloadManager.getInstance(itemView.getContext()).extractArchive(downloadInfo)
+                    : null);
+        }
+
+        private void showVerifyDialog(DownloadInfo downloadInfo) {
+            EditText input = new EditText(itemView.getContext());
+            input.setHint("SHA-256 ou MD5");
+            input.setSingleLine(true);
+            if (downloadInfo.getExpectedHash() != null) {
+                input.setText(downloadInfo.getExpectedHash());
+            }
+            new MaterialAlertDialogBuilder(itemView.getContext())
+                .setTitle("Verificar integridade")
+                .setMessage("SHA-256: " + downloadInfo.getSha256() + "\nMD5: " + downloadInfo.getMd5())
+                .setView(input)
+                .setNegativeButton("Cancelar", null)
+                .setPositiveButton("Verificar", (dialog, which) -> {
+                    Boolean result = DownloadManager.getInstance(itemView.getContext())
+                            .verifyHash(downloadInfo, input.getText().toString());
+                    String message = result == null ? "Hash inválido: informe 64 (SHA-256) ou 32 (MD5) caracteres hex"
+                            : (result ? "Hash confere" : "Hash NÃO confere com o arquivo baixado");
+                    Toast.makeText(itemView.getContext(), message, Toast.LENGTH_LONG).show();
+                    int position = getBindingAdapterPosition();
+                    if (position != RecyclerView.NO_POSITION) {
+                        notifyItemChanged(position);
+                    }
+                })
+                .show();
+        }
     }
 }
 
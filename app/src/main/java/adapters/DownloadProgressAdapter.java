@@ -14,8 +14,11 @@ import com.LDGAMES.models.DownloadInfo;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.progressindicator.LinearProgressIndicator;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 public class DownloadProgressAdapter extends RecyclerView.Adapter<DownloadProgressAdapter.DownloadProgressViewHolder> {
 
@@ -68,6 +71,56 @@ public class DownloadProgressAdapter extends RecyclerView.Adapter<DownloadProgre
         return downloads.size();
     }
 
+    /**
+     * Aplica um lote de atualizações: cada item existente é copiado e notificado com payload
+     * (ou rebind completo se o status mudou). O índice filePath -> posição é montado uma vez por lote.
+     * @return atualizações que não correspondem a nenhum item da lista
+     */
+    public List<DownloadInfo> applyUpdates(List<DownloadInfo> updates) {
+        Map<String, Integer> positions = new HashMap<>(downloads.size() * 2);
+        for (int i = 0; i < downloads.size(); i++) {
+            positions.put(downloads.get(i).getFilePath(), i);
+        }
+
+        List<DownloadInfo> missing = new ArrayList<>();
+        for (DownloadInfo downloadInfo : updates) {
+            Integer index = positions.get(downloadInfo.getFilePath());
+            if (index == null) {
+                missing.add(downloadInfo);
+                continue;
+            }
+            DownloadInfo existingInfo = downloads.get(index);
+            boolean statusChanged = existingInfo.getStatus() != downloadInfo.getStatus();
+
+            // Atualizar dados no objeto da lista
+            existingInfo.setStatus(downloadInfo.getStatus());
+            existingInfo.setProgress(downloadInfo.getProgress());
+            existingInfo.setDownloadedSize(downloadInfo.getDownloadedSize());
+            existingInfo.setFileSize(downloadInfo.getFileSize());
+            existingInfo.setEndTime(downloadInfo.getEndTime());
+            existingInfo.setLastPauseTime(downloadInfo.getLastPauseTime());
+            existingInfo.setLastResumeTime(downloadInfo.getLastResumeTime());
+            existingInfo.setErrorMessage(downloadInfo.getErrorMessage());
+            existingInfo.setSpeed(downloadInfo.getSpeed());
+            existingInfo.setEstimatedTimeRemaining(downloadInfo.getEstimatedTimeRemaining());
+            // Atualizar URL ativa caso tenha mudado (múltiplas fontes)
+            existingInfo.setUrl(downloadInfo.getUrl());
+
+            if (statusChanged) {
+                notifyItemChanged(index);
+            } else {
+                Bundle payload = new Bundle();
+                payload.putInt("progress", existingInfo.getProgress());
+                payload.putLong("downloadedSize", existingInfo.getDownloadedSize());
+                payload.putLong("fileSize", existingInfo.getFileSize());
+                payload.putLong("speed", existingInfo.getSpeed());
+                payload.putString("eta", existingInfo.getEstimatedTimeRemaining());
+                notifyItemChanged(index, payload);
+            }
+        }
+        return missing;
+    }
+
     class DownloadProgressViewHolder extends RecyclerView.ViewHolder {
         private final TextView tvDownloadName;
         private final TextView tvDownloadStatus;
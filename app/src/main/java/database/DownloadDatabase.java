@@ -8,6 +8,8 @@ import android.database.sqlite.SQLiteOpenHelper;
 import android.util.Log;
 
 import com.LDGAMES.models.DownloadInfo;
+import com.LDGAMES.models.DownloadSegment;
+import com.LDGAMES.utils.FileUtils;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -28,12 +30,14 @@ public class DownloadDatabase extends SQLiteOpenHelper {
     private static final String DATABASE_NAME = "downloads.db";
     private static final String BACKUP_DATABASE_NAME = "downloads_backup.db";
     // Incrementar versão se o schema mudar (ex: UNIQUE constraint em filePath)
-    private static final int DATABASE_VERSION = 3;
+    private static final int DATABASE_VERSION = 8;
 
     // Nome das tabelas
     private static final String TABLE_DOWNLOADS = "downloads";
     // private static final String TABLE_ORIGINAL_URLS = "original_urls"; // Tabela de URLs originais pode ser removida se não usada
     private static final String TABLE_SOURCE_URLS = "source_urls"; // Nova tabela para múltiplas URLs
+    private static final String TABLE_SEGMENTS = "download_segments"; // Checkpoint das faixas de downloads segmentados (v4)
+    private static final String TABLE_BLOCK_HASHES = "download_block_hashes"; // CRC32 por bloco do arquivo parcial (v7)
 
     // Colunas da tabela de downloads
     private static final String COLUMN_ID = "_id"; // Convenção SQLite
@@ -48,7 +52,7 @@ public class DownloadDatabase extends SQLiteOpenHelper {
     private static final String COLUMN_STATUS = "status";
     private static final String COLUMN_START_TIME = "start_time";
     private static final String COLUMN_END_TIME = "end_time";
-    // private static final String COLUMN_PARTS = "parts"; // Remover se não usado
+    private static final String COLUMN_PARTS = "parts"; // Número de conexões paralelas (v4)
     private static final String COLUMN_SPEED = "speed";
     private static final String COLUMN_ESTIMATED_TIME = "estimated_time";
     private static final String COLUMN_ERROR_MESSAGE = "error_message";
@@ -65,12 +69,32 @@ public class DownloadDatabase extends SQLiteOpenHelper {
     private static final String COLUMN_PERSIST_COUNT = "persist_count";
     private static final String COLUMN_AUTO_RESUME_ENABLED = "auto_resume_enabled";
     private static final String COLUMN_CRASH_RECOVERY_DATA = "crash_recovery_data";
+    // Ordem da fila (v5)
+    private static final String COLUMN_PRIORITY = "priority";
+    private static final String COLUMN_QUEUE_POSITION = "queue_position";
+    // Integridade (v6)
+    private static final String COLUMN_SHA256 = "sha256";
+    private static final String COLUMN_MD5 = "md5";
+    private static final String COLUMN_EXPECTED_HASH = "expected_hash";
+    // Extração de arquivos (v8)
+    private static final String COLUMN_EXTRACTION_STATUS = "extraction_status";
+    private static final String COLUMN_EXTRACTION_MESSAGE = "extraction_message";
 
     // Colunas da tabela de source_urls
     private static final String COLUMN_FK_DOWNLOAD_PATH = "download_path_ref"; // Chave estrangeira para file_path
     private static final String COLUMN_SOURCE_URL = "source_url";
     private static final String COLUMN_URL_ORDER = "url_order"; // Ordem das URLs na lista
 
+    // Colunas da tabela de segmentos (usa COLUMN_FK_DOWNLOAD_PATH como referência)
+    private static final String COLUMN_SEGMENT_INDEX = "segment_index";
+    private static final String COLUMN_SEGMENT_START = "start_byte";
+    private static final String COLUMN_SEGMENT_END = "end_byte"; // Inclusivo
+    private static final String COLUMN_SEGMENT_POSITION = "committed_byte"; // Próximo byte ainda não gravado
+
+    // Colunas da tabela de hashes por bloco (usa COLUMN_FK_DOWNLOAD_PATH como referência)
+    private static final String COLUMN_BLOCK_INDEX = "block_index";
+    private static final String COLUMN_BLOCK_CRC = "block_crc";
+
     // Instância singleton
     private static DownloadDatabase instance;
 
@@ -100,7 +124,7 @@ public class DownloadDatabase extends SQLiteOpenHelper {
                 COLUMN_STATUS + " INTEGER DEFAULT 0, " +
                 COLUMN_START_TIME + " INTEGER DEFAULT 0, " +
                 COLUMN_END_TIME + " INTEGER DEFAULT 0, " +
-                // COLUMN_PARTS + " INTEGER DEFAULT 0, " +
+                COLUMN_PARTS + " INTEGER DEFAULT 0, " +
                 COLUMN_SPEED + " INTEGER DEFAULT 0, " +
                 COLUMN_ESTIMATED_TIME + " TEXT, " +
                 COLUMN_ERROR_MESSAGE + " TEXT, " +
@@ -115,7 +139,14 @@ public class DownloadDatabase extends SQLiteOpenHelper {
                 COLUMN_LAST_PERSIST_TIME + " INTEGER DEFAULT 0, " +
                 COLUMN_PERSIST_COUNT + " INTEGER DEFAULT 0, " +
                 COLUMN_AUTO_RESUME_ENABLED + " INTEGER DEFAULT 1, " +
-                COLUMN_CRASH_RECOVERY_DATA + " TEXT" +
+                COLUMN_CRASH_RECOVERY_DATA + " TEXT, " +
+                COLUMN_PRIORITY + " INTEGER DEFAULT " + DownloadInfo.PRIORITY_NORMAL + ", " +
+                COLUMN_QUEUE_POSITION + " INTEGER DEFAULT 0, " +
+                COLUMN_SHA256 + " TEXT, " +
+                COLUMN_MD5 + " TEXT, " +
+                COLUMN_EXPECTED_HASH + " TEXT, " +
+                COLUMN_EXTRACTION_STATUS + " INTEGER DEFAULT " + DownloadInfo.EXTRACTION_NONE + ", " +
+                COLUMN_EXTRACTION_MESSAGE + " TEXT" +
                 ");";
 
         // Criar tabela de source_urls
@@ -133,6 +164,8 @@ public class DownloadDatabase extends SQLiteOpenHelper {
         db.execSQL(createDownloadsTable);
         db.execSQL(createSourceUrlsTable);
         db.execSQL(createSourceUrlsIndex);
+        createSegmentsTable(db);
+        createBlockHashesTable(db);
 
         Log.d(TAG, "Banco de dados criado com sucesso");
     }
@@ -219,9 +252,129 @@ public class DownloadDatabase extends SQLiteOpenHelper {
             }
         }
         
+        // Migração da v3 para v4 - Coluna parts e tabela de checkpoint de segmentos
+        if (oldVersion < 4) {
+            Log.d(TAG, "Executando migração para v4...");
+            try {
+                db.beginTransaction();
+
+                if (oldVersion >= 2) { // Na v1 a tabela foi recriada por onCreate com a coluna
+                    db.execSQL("ALTER TABLE " + TABLE_DOWNLOADS + " ADD COLUMN " + COLUMN_PARTS + " INTEGER DEFAULT 0;");
+                    createSegmentsTable(db);
+                }
+
+                db.setTransactionSuccessful();
+                Log.d(TAG, "Migração para v4 concluída com sucesso.");
+            } catch (Exception e) {
+                Log.e(TAG, "Erro durante migração para v4: " + e.getMessage(), e);
+            } finally {
+                db.endTransaction();
+            }
+        }
+
+        // Migração da v4 para v5 - Prioridade e posição persistidas da fila
+        if (oldVersion < 5) {
+            Log.d(TAG, "Executando migração para v5...");
+            try {
+                db.beginTransaction();
+
+                if (oldVersion >= 2) {
+                    db.execSQL("ALTER TABLE " + TABLE_DOWNLOADS + " ADD COLUMN " + COLUMN_PRIORITY + " INTEGER DEFAULT " + DownloadInfo.PRIORITY_NORMAL + ";");
+                    db.execSQL("ALTER TABLE " + TABLE_DOWNLOADS + " ADD COLUMN " + COLUMN_QUEUE_POSITION + " INTEGER DEFAULT 0;");
+                    // Preservar a ordem FIFO existente
+                    db.execSQL("UPDATE " + TABLE_DOWNLOADS + " SET " + COLUMN_QUEUE_POSITION + " = " + COLUMN_START_TIME + ";");
+                }
+
+                db.setTransactionSuccessful();
+                Log.d(TAG, "Migração para v5 concluída com sucesso.");
+            } catch (Exception e) {
+                Log.e(TAG, "Erro durante migração para v5: " + e.getMessage(), e);
+            } finally {
+                db.endTransaction();
+            }
+        }
+
+        // Migração da v5 para v6 - Digests de integridade calculados durante o download
+        if (oldVersion < 6) {
+            Log.d(TAG, "Executando migração para v6...");
+            try {
+                db.beginTransaction();
+
+                if (oldVersion >= 2) {
+                    db.execSQL("ALTER TABLE " + TABLE_DOWNLOADS + " ADD COLUMN " + COLUMN_SHA256 + " TEXT;");
+                    db.execSQL("ALTER TABLE " + TABLE_DOWNLOADS + " ADD COLUMN " + COLUMN_MD5 + " TEXT;");
+                    db.execSQL("ALTER TABLE " + TABLE_DOWNLOADS + " ADD COLUMN " + COLUMN_EXPECTED_HASH + " TEXT;");
+                }
+
+                db.setTransactionSuccessful();
+                Log.d(TAG, "Migração para v6 concluída com sucesso.");
+            } catch (Exception e) {
+                Log.e(TAG, "Erro durante migração para v6: " + e.getMessage(), e);
+            } finally {
+                db.endTransaction();
+            }
+        }
+
+        // Migração da v6 para v7 - Índice de hashes por bloco para validar retomadas
+        if (oldVersion < 7) {
+            Log.d(TAG, "Executando migração para v7...");
+            try {
+                db.beginTransaction();
+                createBlockHashesTable(db); // IF NOT EXISTS: na v1 onCreate já criou
+                db.setTransactionSuccessful();
+                Log.d(TAG, "Migração para v7 concluída com sucesso.");
+            } catch (Exception e) {
+                Log.e(TAG, "Erro durante migração para v7: " + e.getMessage(), e);
+            } finally {
+                db.endTransaction();
+            }
+        }
+
+        // Migração da v7 para v8 - Estado da extração de arquivos baixados
+        if (oldVersion < 8) {
+            Log.d(TAG, "Executando migração para v8...");
+            try {
+                db.beginTransaction();
+
+                if (oldVersion >= 2) {
+                    db.execSQL("ALTER TABLE " + TABLE_DOWNLOADS + " ADD COLUMN " + COLUMN_EXTRACTION_STATUS + " INTEGER DEFAULT " + DownloadInfo.EXTRACTION_NONE + ";");
+                    db.execSQL("ALTER TABLE " + TABLE_DOWNLOADS + " ADD COLUMN " + COLUMN_EXTRACTION_MESSAGE + " TEXT;");
+                }
+
+                db.setTransactionSuccessful();
+                Log.d(TAG, "Migração para v8 concluída com sucesso.");
+            } catch (Exception e) {
+                Log.e(TAG, "Erro durante migração para v8: " + e.getMessage(), e);
+            } finally {
+                db.endTransaction();
+            }
+        }
+
         // Adicionar mais blocos `if (oldVersion < X)` para futuras migrações
     }
 
+    private void createSegmentsTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_SEGMENTS + " (" +
+                COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                COLUMN_FK_DOWNLOAD_PATH + " TEXT NOT NULL, " +
+                COLUMN_SEGMENT_INDEX + " INTEGER NOT NULL, " +
+                COLUMN_SEGMENT_START + " INTEGER NOT NULL, " +
+                COLUMN_SEGMENT_END + " INTEGER NOT NULL, " +
+                COLUMN_SEGMENT_POSITION + " INTEGER NOT NULL, " +
+                "UNIQUE(" + COLUMN_FK_DOWNLOAD_PATH + ", " + COLUMN_SEGMENT_INDEX + ")" +
+                ");");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_segments_path ON " + TABLE_SEGMENTS + " (" + COLUMN_FK_DOWNLOAD_PATH + ");");
+    }
+
+    private void createBlockHashesTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_BLOCK_HASHES + " (" +
+                COLUMN_FK_DOWNLOAD_PATH + " TEXT NOT NULL, " +
+                COLUMN_BLOCK_INDEX + " INTEGER NOT NULL, " +
+                COLUMN_BLOCK_CRC + " INTEGER NOT NULL, " +
+                "PRIMARY KEY(" + COLUMN_FK_DOWNLOAD_PATH + ", " + COLUMN_BLOCK_INDEX + ")" +
+                ");");
+    }
+
     /**
      * Adiciona ou atualiza um download no banco de dados (usando filePath como chave)
      * @param downloadInfo Informações do download
@@ -249,7 +402,7 @@ public class DownloadDatabase extends SQLiteOpenHelper {
             values.put(COLUMN_STATUS, downloadInfo.getStatus());
             values.put(COLUMN_START_TIME, downloadInfo.getStartTime());
             values.put(COLUMN_END_TIME, downloadInfo.getEndTime());
-            // values.put(COLUMN_PARTS, downloadInfo.getParts());
+            values.put(COLUMN_PARTS, downloadInfo.getParts());
             values.put(COLUMN_SPEED, downloadInfo.getSpeed());
             values.put(COLUMN_ESTIMATED_TIME, downloadInfo.getEstimatedTimeRemaining());
             values.put(COLUMN_ERROR_MESSAGE, downloadInfo.getErrorMessage());
@@ -267,6 +420,13 @@ public class DownloadDatabase extends SQLiteOpenHelper {
             values.put(COLUMN_PERSIST_COUNT, downloadInfo.getPersistCount() + 1);
             values.put(COLUMN_AUTO_RESUME_ENABLED, downloadInfo.isAutoResumeEnabled() ? 1 : 0);
             values.put(COLUMN_CRASH_RECOVERY_DATA, downloadInfo.getCrashRecoveryData());
+            values.put(COLUMN_PRIORITY, downloadInfo.getPriority());
+            values.put(COLUMN_QUEUE_POSITION, downloadInfo.getQueuePosition());
+            values.put(COLUMN_SHA256, downloadInfo.getSha256());
+            values.put(COLUMN_MD5, downloadInfo.getMd5());
+            values.put(COLUMN_EXPECTED_HASH, downloadInfo.getExpectedHash());
+            values.put(COLUMN_EXTRACTION_STATUS, downloadInfo.getExtractionStatus());
+            values.put(COLUMN_EXTRACTION_MESSAGE, downloadInfo.getExtractionMessage());
 
             // Usar INSERT OR REPLACE (ou INSERT com ON CONFLICT REPLACE) devido ao UNIQUE no filePath
             rowId = db.insertWithOnConflict(TABLE_DOWNLOADS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
@@ -336,6 +496,8 @@ public class DownloadDatabase extends SQLiteOpenHelper {
             // Opcionalmente, atualizar status se estiver sendo adicionado à fila
             if (isQueued) {
                  values.put(COLUMN_STATUS, DownloadInfo.STATUS_QUEUED);
+                 values.put(COLUMN_PRIORITY, downloadInfo.getPriority());
+                 values.put(COLUMN_QUEUE_POSITION, downloadInfo.getQueuePosition());
             }
 
             int rowsAffected = db.update(
@@ -377,6 +539,9 @@ public class DownloadDatabase extends SQLiteOpenHelper {
                     TABLE_DOWNLOADS,
                     COLUMN_FILE_PATH + " = ?",
                     new String[]{filePath});
+            // foreign_keys não está habilitado, então os segmentos são removidos explicitamente
+            db.delete(TABLE_SEGMENTS, COLUMN_FK_DOWNLOAD_PATH + " = ?", new String[]{filePath});
+            db.delete(TABLE_BLOCK_HASHES, COLUMN_FK_DOWNLOAD_PATH + " = ?", new String[]{filePath});
 
             success = rowsAffected > 0;
             if (success) {
@@ -422,7 +587,7 @@ public class DownloadDatabase extends SQLiteOpenHelper {
      * @return Lista de downloads na fila
      */
     public List<DownloadInfo> getQueuedDownloads() {
-        return getDownloadsByStatus(new int[]{DownloadInfo.STATUS_QUEUED}, COLUMN_START_TIME + " ASC");
+        return getDownloadsByStatus(new int[]{DownloadInfo.STATUS_QUEUED}, COLUMN_PRIORITY + " DESC, " + COLUMN_QUEUE_POSITION + " ASC");
     }
 
     private List<DownloadInfo> getDownloadsByStatus(int[] statuses, String orderBy) {
@@ -515,7 +680,7 @@ public class DownloadDatabase extends SQLiteOpenHelper {
         downloadInfo.setStatus(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_STATUS)));
         downloadInfo.setStartTime(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_START_TIME)));
         downloadInfo.setEndTime(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_END_TIME)));
-        // downloadInfo.setParts(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_PARTS)));
+        downloadInfo.setParts(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_PARTS)));
         downloadInfo.setSpeed(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_SPEED)));
         downloadInfo.setEstimatedTimeRemaining(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_ESTIMATED_TIME)));
         downloadInfo.setErrorMessage(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_ERROR_MESSAGE)));
@@ -532,10 +697,171 @@ public class DownloadDatabase extends SQLiteOpenHelper {
         downloadInfo.setPersistCount(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_PERSIST_COUNT)));
         downloadInfo.setAutoResumeEnabled(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_AUTO_RESUME_ENABLED)) == 1);
         downloadInfo.setCrashRecoveryData(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_CRASH_RECOVERY_DATA)));
+        downloadInfo.setPriority(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_PRIORITY)));
+        downloadInfo.setQueuePosition(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_QUEUE_POSITION)));
+        downloadInfo.setSha256(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_SHA256)));
+        downloadInfo.setMd5(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_MD5)));
+        downloadInfo.setExpectedHash(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_EXPECTED_HASH)));
+        downloadInfo.setExtractionStatus(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_EXTRACTION_STATUS)));
+        downloadInfo.setExtractionMessage(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_EXTRACTION_MESSAGE)));
 
         return downloadInfo;
     }
 
+    /**
+     * Grava o checkpoint das faixas de um download segmentado, substituindo o anterior.
+     * Os valores de posição devem se referir apenas a bytes já sincronizados no arquivo.
+     * @param filePath Caminho do arquivo do download
+     * @param segments Faixas com a posição confirmada de cada uma
+     */
+    public void saveSegments(String filePath, List<DownloadSegment> segments) {
+        if (filePath == null || segments == null) return;
+        SQLiteDatabase db = getWritableDatabase();
+        try {
+            db.beginTransaction();
+            db.delete(TABLE_SEGMENTS, COLUMN_FK_DOWNLOAD_PATH + " = ?", new String[]{filePath});
+            for (DownloadSegment segment : segments) {
+                ContentValues values = new ContentValues();
+                values.put(COLUMN_FK_DOWNLOAD_PATH, filePath);
+                values.put(COLUMN_SEGMENT_INDEX, segment.getIndex());
+                values.put(COLUMN_SEGMENT_START, segment.getStart());
+                values.put(COLUMN_SEGMENT_END, segment.getEnd());
+                values.put(COLUMN_SEGMENT_POSITION, segment.getPosition());
+                db.insert(TABLE_SEGMENTS, null, values);
+            }
+            db.setTransactionSuccessful();
+        } catch (Exception e) {
+            Log.e(TAG, "Erro ao salvar segmentos para " + filePath + ": " + e.getMessage(), e);
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Obtém o último checkpoint de segmentos de um download
+     * @param filePath Caminho do arquivo do download
+     * @return Lista ordenada por índice (vazia se o download não é segmentado)
+     */
+    public List<DownloadSegment> getSegments(String filePath) {
+        List<DownloadSegment> segments = new ArrayList<>();
+        if (filePath == null) return segments;
+        SQLiteDatabase db = getReadableDatabase();
+        Cursor cursor = null;
+        try {
+            cursor = db.query(
+                    TABLE_SEGMENTS,
+                    null,
+                    COLUMN_FK_DOWNLOAD_PATH + " = ?",
+                    new String[]{filePath},
+                    null, null, COLUMN_SEGMENT_INDEX + " ASC");
+
+            if (cursor != null && cursor.moveToFirst()) {
+                do {
+                    segments.add(new DownloadSegment(
+                            cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_SEGMENT_INDEX)),
+                            cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_SEGMENT_START)),
+                            cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_SEGMENT_END)),
+                            cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_SEGMENT_POSITION))));
+                } while (cursor.moveToNext());
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Erro ao obter segmentos para " + filePath + ": " + e.getMessage(), e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Remove o checkpoint de segmentos (download concluído ou reiniciado do zero)
+     * @param filePath Caminho do arquivo do download
+     */
+    public void clearSegments(String filePath) {
+        if (filePath == null) return;
+        SQLiteDatabase db = getWritableDatabase();
+        try {
+            db.delete(TABLE_SEGMENTS, COLUMN_FK_DOWNLOAD_PATH + " = ?", new String[]{filePath});
+        } catch (Exception e) {
+            Log.e(TAG, "Erro ao limpar segmentos para " + filePath + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Grava os hashes de blocos concluídos (substitui blocos já existentes com o mesmo índice)
+     * @param filePath Caminho do arquivo do download
+     * @param blocks Pares {índice do bloco, CRC32}
+     */
+    public void saveBlockHashes(String filePath, List<long[]> blocks) {
+        if (filePath == null || blocks == null || blocks.isEmpty()) return;
+        SQLiteDatabase db = getWritableDatabase();
+        try {
+            db.beginTransaction();
+            for (long[] block : blocks) {
+                ContentValues values = new ContentValues();
+                values.put(COLUMN_FK_DOWNLOAD_PATH, filePath);
+                values.put(COLUMN_BLOCK_INDEX, block[0]);
+                values.put(COLUMN_BLOCK_CRC, block[1]);
+                db.insertWithOnConflict(TABLE_BLOCK_HASHES, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            db.setTransactionSuccessful();
+        } catch (Exception e) {
+            Log.e(TAG, "Erro ao salvar hashes de blocos para " + filePath + ": " + e.getMessage(), e);
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Obtém o índice de hashes de blocos de um download
+     * @param filePath Caminho do arquivo do download
+     * @return Mapa índice do bloco -> CRC32 (vazio se não há índice)
+     */
+    public Map<Long, Long> getBlockHashes(String filePath) {
+        Map<Long, Long> blocks = new HashMap<>();
+        if (filePath == null) return blocks;
+        SQLiteDatabase db = getReadableDatabase();
+        Cursor cursor = null;
+        try {
+            cursor = db.query(
+                    TABLE_BLOCK_HASHES,
+                    new String[]{COLUMN_BLOCK_INDEX, COLUMN_BLOCK_CRC},
+                    COLUMN_FK_DOWNLOAD_PATH + " = ?",
+                    new String[]{filePath},
+                    null, null, null);
+
+            if (cursor != null && cursor.moveToFirst()) {
+                do {
+                    blocks.put(cursor.getLong(0), cursor.getLong(1));
+                } while (cursor.moveToNext());
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Erro ao obter hashes de blocos para " + filePath + ": " + e.getMessage(), e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * Remove os hashes a partir de um bloco (trecho regravado ou download reiniciado com 0)
+     * @param filePath Caminho do arquivo do download
+     * @param fromBlock Primeiro índice removido
+     */
+    public void clearBlockHashes(String filePath, long fromBlock) {
+        if (filePath == null) return;
+        SQLiteDatabase db = getWritableDatabase();
+        try {
+            db.delete(TABLE_BLOCK_HASHES, COLUMN_FK_DOWNLOAD_PATH + " = ? AND " + COLUMN_BLOCK_INDEX + " >= ?",
+                    new String[]{filePath, String.valueOf(fromBlock)});
+        } catch (Exception e) {
+            Log.e(TAG, "Erro ao limpar hashes de blocos para " + filePath + ": " + e.getMessage(), e);
+        }
+    }
+
     /**
      * Cria um backup do banco de dados atual
      * @return true se o backup foi criado com sucesso
@@ -550,18 +876,7 @@ public class DownloadDatabase extends SQLiteOpenHelper {
             java.io.File backupFile = new java.io.File(backupPath);
             
             if (sourceFile.exists()) {
-                java.io.FileInputStream fis = new java.io.FileInputStream(sourceFile);
-                java.io.FileOutputStream fos = new java.io.FileOutputStream(backupFile);
-                
-                byte[] buffer = new byte[8192];
-                int length;
-                while ((length = fis.read(buffer)) > 0) {
-                    fos.write(buffer, 0, length);
-                }
-                
-                fos.flush();
-                fos.close();
-                fis.close();
+                FileUtils.copyFile(sourceFile, backupFile); // transferTo: cópia feita pelo kernel
                 
                 Log.d(TAG, "Backup criado com sucesso: " + backupPath);
                 return true;
@@ -588,18 +903,7 @@ public class DownloadDatabase extends SQLiteOpenHelper {
             if (backupFile.exists()) {
                 db.close(); // Fechar conexão atual
                 
-                java.io.FileInputStream fis = new java.io.FileInputStream(backupFile);
-                java.io.FileOutputStream fos = new java.io.FileOutputStream(dbFile);
-                
-                byte[] buffer = new byte[8192];
-                int length;
-                while ((length = fis.read(buffer)) > 0) {
-                    fos.write(buffer, 0, length);
-                }
-                
-                fos.flush();
-                fos.close();
-                fis.close();
+                FileUtils.copyFile(backupFile, dbFile);
                 
                 Log.d(TAG, "Banco restaurado do backup com sucesso");
                 return true;
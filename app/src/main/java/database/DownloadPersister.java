@@ -0,0 +1,130 @@
+package com.LDGAMES.database;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.LDGAMES.models.DownloadInfo;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Persistência write-behind de DownloadDatabase em uma thread dedicada.
+ * Gravações repetidas do mesmo filePath são fundidas (vale o estado mais recente) e cada
+ * descarga grava todas em uma única transação. Operações avulsas (remoções, flags de fila,
+ * backup) entram na mesma thread depois das gravações pendentes, preservando a ordem.
+ */
+public class DownloadPersister {
+    private static final String TAG = "DownloadPersister";
+    private static final long FLUSH_DELAY = 1000; // ms que uma gravação pode esperar para ser agrupada
+    private static DownloadPersister instance;
+
+    private final DownloadDatabase database;
+    private final ScheduledExecutorService executor;
+    private final Map<String, DownloadInfo> pending = new LinkedHashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    private DownloadPersister(Context context) {
+        this.database = DownloadDatabase.getInstance(context);
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "download-persister");
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+    }
+
+    public static synchronized DownloadPersister getInstance(Context context) {
+        if (instance == null) {
+            instance = new DownloadPersister(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Agenda a gravação do download; chamadas seguidas antes da descarga gravam uma vez só.
+     * Grava uma cópia tirada aqui, na thread de quem chama: o objeto vivo pode mudar antes da descarga.
+     */
+    public void save(DownloadInfo downloadInfo) {
+        if (downloadInfo == null || downloadInfo.getFilePath() == null) return;
+        DownloadInfo snapshot = new DownloadInfo(downloadInfo);
+        synchronized (pending) {
+            pending.put(downloadInfo.getFilePath(), snapshot);
+        }
+        if (flushScheduled.compareAndSet(false, true)) {
+            executor.schedule(this::flushPending, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Para estados que precisam ser duráveis (conclusão, falha, pausa): grava sem esperar o agrupamento.
+     */
+    public void saveNow(DownloadInfo downloadInfo) {
+        if (downloadInfo == null || downloadInfo.getFilePath() == null) return;
+        DownloadInfo snapshot = new DownloadInfo(downloadInfo);
+        synchronized (pending) {
+            pending.put(downloadInfo.getFilePath(), snapshot);
+        }
+        executor.execute(this::flushPending);
+    }
+
+    /**
+     * Executa uma operação no banco na thread do persister, depois das gravações já agendadas.
+     */
+    public void execute(Runnable operation) {
+        executor.execute(() -> {
+            flushPending();
+            try {
+                operation.run();
+            } catch (Exception e) {
+                Log.e(TAG, "Erro em operação do banco: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Remove o download do banco, descartando gravações pendentes que o recriariam.
+     */
+    public void delete(String filePath) {
+        if (filePath == null) return;
+        synchronized (pending) {
+            pending.remove(filePath);
+        }
+        execute(() -> database.deleteDownload(filePath));
+    }
+
+    /**
+     * Descarrega tudo e espera a conclusão (desligamento do serviço/app).
+     * @return true se terminou dentro do prazo
+     */
+    public boolean flushAndWait(long timeoutMillis) {
+        CountDownLatch latch = new CountDownLatch(1);
+        executor.execute(() -> {
+            flushPending();
+            latch.countDown();
+        });
+        try {
+            return latch.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void flushPending() {
+        flushScheduled.set(false);
+        List<DownloadInfo> batch;
+        synchronized (pending) {
+            if (pending.isEmpty()) return;
+            batch = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+        database.forceFullPersist(batch); // Uma transação para o lote inteiro
+    }
+}
@@ -92,6 +92,9 @@ public class GameDetailFragment extends Fragment {
     private IGDBApiClient apiClient;
     private HydraApiManager hydraApiManager;
     private AlertDialog progressDialog; // Add this line
+    private boolean localSearchRunning = false;
+    private HydraApiManager.SearchHandle localSearch; // Busca em andamento, cancelada se for substituída
+    private boolean localSearchFoundLinks = false;
     private View fragmentView; // Store the view for later use
 
     @Override
@@ -465,6 +468,13 @@ public class GameDetailFragment extends Fragment {
     private void updateApiDataAndSearch() {
         if (!isAdded() || getContext() == null) return;
 
+        // Com cache local a busca responde na hora; as fontes são revalidadas em segundo plano
+        if (hydraApiManager.hasCachedData()) {
+            searchDownloadLinksLocally();
+            refreshApiDataInBackground();
+            return;
+        }
+
         AlertDialog.Builder builder = new MaterialAlertDialogBuilder(requireContext());
         LayoutInflater inflater = requireActivity().getLayoutInflater();
         View dialogView = inflater.inflate(R.layout.dialog_api_update_progress, null);
@@ -480,7 +490,7 @@ public class GameDetailFragment extends Fragment {
         progressDialog.show();
 
         try {
-            hydraApiManager.forceUpdateAllData(new HydraApiManager.ApiDownloadProgressCallback<Void>() {
+            hydraApiManager.forceUpdateAllData(new HydraApiManager.ApiDownloadProgressCallback<Integer>() {
                 @Override
                 public void onProgressUpdate(int currentApi, int totalApis, long bytesDownloaded, long totalBytes, boolean indeterminate, String sourceName) {
                     if (!isAdded() || getActivity() == null || progressDialog == null || !progressDialog.isShowing()) return;
@@ -504,7 +514,7 @@ public class GameDetailFragment extends Fragment {
                 }
 
                 @Override
-                public void onSuccess(Void result) {
+                public void onSuccess(Integer changedSources) {
                     if (!isAdded() || getActivity() == null) return;
                     getActivity().runOnUiThread(() -> {
                         if (progressDialog != null && progressDialog.isShowing()) {
@@ -548,6 +558,37 @@ public class GameDetailFragment extends Fragment {
         }
     }
 
+    /**
+     * Revalida as fontes sem diálogo (requisições condicionais). Se alguma mudou e a busca feita
+     * com o cache não achou links, busca de novo com os dados novos.
+     */
+    private void refreshApiDataInBackground() {
+        hydraApiManager.forceUpdateAllData(new HydraApiManager.ApiDownloadProgressCallback<Integer>() {
+            @Override
+            public void onProgressUpdate(int currentApi, int totalApis, long bytesDownloaded, long totalBytes, boolean indeterminate, String sourceName) {
+                // Sem UI: a atualização em segundo plano é silenciosa
+            }
+
+            @Override
+            public void onSuccess(Integer changedSources) {
+                Log.d(TAG, "Background API refresh done, changed sources: " + changedSources);
+                if (!isAdded() || getActivity() == null) return;
+                if (changedSources != null && changedSources > 0 && !localSearchRunning && !localSearchFoundLinks) {
+                    searchDownloadLinksLocally();
+                }
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Log.w(TAG, "Background API refresh failed, keeping cached data", e);
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+    }
+
     // --- Methods related to Download ---
     private void searchDownloadLinksLocally() {
         Log.d(TAG, "searchDownloadLinksLocally called for game: " + gameTitle);
@@ -562,9 +603,15 @@ public class GameDetailFragment extends Fragment {
         // Show some indication that search is happening (optional)
         // Toast.makeText(requireContext(), "Buscando links localmente...", Toast.LENGTH_SHORT).show();
 
-        hydraApiManager.searchDownloadLinksLocally(gameTitle, new HydraApiManager.ApiLocalSearchCallback<List<DownloadLink>>() {
+        if (localSearch != null) {
+            localSearch.cancel(); // Busca anterior substituída: parar de gastar CPU com ela
+        }
+        localSearchRunning = true;
+        localSearch = hydraApiManager.searchDownloadLinksLocally(gameTitle, new HydraApiManager.ApiLocalSearchCallback<List<DownloadLink>>() {
             @Override
             public void onSuccess(List<DownloadLink> foundLinks) {
+                localSearchRunning = false;
+                localSearchFoundLinks = foundLinks != null && !foundLinks.isEmpty();
                 if (!isAdded() || getActivity() == null) return;
                 getActivity().runOnUiThread(() -> {
                     if (!isAdded() || getActivity() == null) return; // Check again
@@ -580,6 +627,8 @@ public class GameDetailFragment extends Fragment {
 
             @Override
             public void onError(Exception e) {
+                localSearchRunning = false;
+                localSearchFoundLinks = false;
                 if (!isAdded() || getActivity() == null) return;
                 getActivity().runOnUiThread(() -> {
                      if (!isAdded() || getActivity() == null) return; // Check again
@@ -748,6 +797,12 @@ public class GameDetailFragment extends Fragment {
             youtubePlayerViewCover = null;
             youTubePlayerInstance = null;
         }
+        // Usuário saiu da tela: a busca local em andamento não tem mais para onde ir
+        if (localSearch != null) {
+            localSearch.cancel();
+            localSearch = null;
+        }
+        localSearchRunning = false;
         // Clean up view reference
         fragmentView = null;
         // Consider shutting down ProtonDB client executor if appropriate
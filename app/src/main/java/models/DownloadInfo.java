@@ -22,6 +22,19 @@ public class DownloadInfo implements Parcelable {
     public static final int STATUS_PAUSING = 7;
     public static final int STATUS_RESUMING = 8;
 
+    // Prioridade na fila (também usada como peso no limite de banda)
+    public static final int PRIORITY_LOW = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_HIGH = 2;
+    // Posição de fila "ainda não enfileirado": o agendador atribui o fim da fila
+    public static final long QUEUE_POSITION_NONE = 0;
+
+    // Estado da extração do arquivo (.zip) baixado
+    public static final int EXTRACTION_NONE = 0;
+    public static final int EXTRACTION_RUNNING = 1;
+    public static final int EXTRACTION_DONE = 2;
+    public static final int EXTRACTION_FAILED = 3;
+
     private String fileName;
     private String url; // URL ativa sendo usada
     private String filePath;
@@ -56,6 +69,19 @@ public class DownloadInfo implements Parcelable {
     private boolean autoResumeEnabled = true;
     private String crashRecoveryData = null;
 
+    // Ordem na fila (persistida)
+    private int priority = PRIORITY_NORMAL;
+    private long queuePosition = QUEUE_POSITION_NONE; // Menor sai primeiro dentro da mesma prioridade (pode ser negativa)
+
+    // Integridade: digests calculados durante a gravação e hash informado pela fonte (opcional)
+    private String sha256;
+    private String md5;
+    private String expectedHash;
+
+    // Extração pós-download: estado e descrição para a UI (resultado ou erro)
+    private int extractionStatus = EXTRACTION_NONE;
+    private String extractionMessage;
+
     // Construtor padrão
     public DownloadInfo() {
         this.fileName = "";
@@ -83,6 +109,13 @@ public class DownloadInfo implements Parcelable {
         this.persistCount = 0;
         this.autoResumeEnabled = true;
         this.crashRecoveryData = null;
+        this.priority = PRIORITY_NORMAL;
+        this.queuePosition = QUEUE_POSITION_NONE;
+        this.sha256 = null;
+        this.md5 = null;
+        this.expectedHash = null;
+        this.extractionStatus = EXTRACTION_NONE;
+        this.extractionMessage = null;
     }
 
     // Construtor com parâmetros básicos (agora aceita lista de URLs)
@@ -113,6 +146,43 @@ public class DownloadInfo implements Parcelable {
         this.currentUrlIndex = 0;
     }
 
+    // Cópia independente (listas e mapa copiados): fotografia do estado para outra thread
+    public DownloadInfo(DownloadInfo other) {
+        this.fileName = other.fileName;
+        this.url = other.url;
+        this.filePath = other.filePath;
+        this.fileSize = other.fileSize;
+        this.downloadedSize = other.downloadedSize;
+        this.progress = other.progress;
+        this.status = other.status;
+        this.startTime = other.startTime;
+        this.endTime = other.endTime;
+        this.parts = other.parts;
+        this.speed = other.speed;
+        this.estimatedTimeRemaining = other.estimatedTimeRemaining;
+        this.errorMessage = other.errorMessage;
+        this.lastPauseTime = other.lastPauseTime;
+        this.lastResumeTime = other.lastResumeTime;
+        this.resumeAttempts = other.resumeAttempts;
+        this.mimeType = other.mimeType;
+        this.cookies = other.cookies;
+        this.customHeaders = other.customHeaders != null ? new HashMap<>(other.customHeaders) : null;
+        this.sourceUrls = other.sourceUrls != null ? new ArrayList<>(other.sourceUrls) : new ArrayList<>();
+        this.currentUrlIndex = other.currentUrlIndex;
+        this.lastUpdateTime = other.lastUpdateTime;
+        this.lastDownloadedSize = other.lastDownloadedSize;
+        this.lastPersistTime = other.lastPersistTime;
+        this.persistCount = other.persistCount;
+        this.autoResumeEnabled = other.autoResumeEnabled;
+        this.crashRecoveryData = other.crashRecoveryData;
+        this.priority = other.priority;
+        this.queuePosition = other.queuePosition;
+        this.sha256 = other.sha256;
+        this.md5 = other.md5;
+        this.expectedHash = other.expectedHash;
+        this.extractionStatus = other.extractionStatus;
+        this.extractionMessage = other.extractionMessage;
+    }
 
     protected DownloadInfo(Parcel in) {
         fileName = in.readString();
@@ -159,6 +229,13 @@ public class DownloadInfo implements Parcelable {
         persistCount = in.readInt();
         autoResumeEnabled = in.readByte() != 0;
         crashRecoveryData = in.readString();
+        priority = in.readInt();
+        queuePosition = in.readLong();
+        sha256 = in.readString();
+        md5 = in.readString();
+        expectedHash = in.readString();
+        extractionStatus = in.readInt();
+        extractionMessage = in.readString();
 
         // Não parcelar lastUpdateTime e lastDownloadedSize
     }
@@ -204,6 +281,13 @@ public class DownloadInfo implements Parcelable {
         dest.writeInt(persistCount);
         dest.writeByte((byte) (autoResumeEnabled ? 1 : 0));
         dest.writeString(crashRecoveryData);
+        dest.writeInt(priority);
+        dest.writeLong(queuePosition);
+        dest.writeString(sha256);
+        dest.writeString(md5);
+        dest.writeString(expectedHash);
+        dest.writeInt(extractionStatus);
+        dest.writeString(extractionMessage);
 
         // Não parcelar lastUpdateTime e lastDownloadedSize
     }
@@ -403,6 +487,24 @@ public class DownloadInfo implements Parcelable {
     public String getCrashRecoveryData() { return crashRecoveryData; }
     public void setCrashRecoveryData(String crashRecoveryData) { this.crashRecoveryData = crashRecoveryData; }
 
+    public int getPriority() { return priority; }
+    public void setPriority(int priority) { this.priority = Math.max(PRIORITY_LOW, Math.min(PRIORITY_HIGH, priority)); }
+
+    public long getQueuePosition() { return queuePosition; }
+    public void setQueuePosition(long queuePosition) { this.queuePosition = queuePosition; }
+
+    public String getSha256() { return sha256; }
+    public void setSha256(String sha256) { this.sha256 = sha256; }
+    public String getMd5() { return md5; }
+    public void setMd5(String md5) { this.md5 = md5; }
+    public String getExpectedHash() { return expectedHash; }
+    public void setExpectedHash(String expectedHash) { this.expectedHash = expectedHash; }
+
+    public int getExtractionStatus() { return extractionStatus; }
+    public void setExtractionStatus(int extractionStatus) { this.extractionStatus = extractionStatus; }
+    public String getExtractionMessage() { return extractionMessage; }
+    public void setExtractionMessage(String extractionMessage) { this.extractionMessage = extractionMessage; }
+
     // equals() e hashCode() devem ser implementados se DownloadInfo for usado em Sets ou como chave em Maps
     // Baseado na URL ativa ou talvez no filePath?
     @Override
@@ -0,0 +1,170 @@
+package com.LDGAMES.models;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Faixa de bytes [start, end] de um download segmentado e o ponto até onde os dados
+ * já foram gravados. Persistida em DownloadDatabase como checkpoint de retomada.
+ */
+public class DownloadSegment {
+    private final int index;
+    private final long start;
+    private volatile long end; // Inclusivo; pode diminuir quando parte da faixa é repassada (split)
+    private volatile long position; // Próximo byte a ser escrito (só a thread do segmento escreve)
+
+    public DownloadSegment(int index, long start, long end) {
+        this(index, start, end, start);
+    }
+
+    public DownloadSegment(int index, long start, long end, long position) {
+        this.index = index;
+        this.start = start;
+        this.end = end;
+        this.position = position;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    public void setPosition(long position) {
+        this.position = position;
+    }
+
+    public void advance(long bytes) {
+        this.position += bytes;
+    }
+
+    public boolean isComplete() {
+        return position > end;
+    }
+
+    public long getDownloadedBytes() {
+        return position - start;
+    }
+
+    public long getRemainingBytes() {
+        return Math.max(0, end - position + 1);
+    }
+
+    /**
+     * Divide ao meio o trecho ainda não gravado: esta faixa passa a terminar no meio e a
+     * segunda metade vira uma nova faixa. Quem grava na faixa deve sincronizar no próprio
+     * objeto ao calcular/gravar/avançar, para nunca escrever além do novo fim.
+     * @return a nova faixa, ou null se o restante for pequeno demais para dividir
+     */
+    public synchronized DownloadSegment split(int newIndex, long minPieceSize) {
+        long remaining = getRemainingBytes();
+        if (remaining < 2 * minPieceSize) return null;
+        long middle = position + remaining / 2;
+        DownloadSegment tail = new DownloadSegment(newIndex, middle, end);
+        end = middle - 1;
+        return tail;
+    }
+
+    /**
+     * Cópia com a posição atual, usada para gravar checkpoints consistentes.
+     */
+    public synchronized DownloadSegment snapshot() {
+        return new DownloadSegment(index, start, end, position);
+    }
+
+    /**
+     * Total de bytes gravados: o trecho anterior à primeira faixa mais o baixado em cada faixa.
+     */
+    public static long committedBytes(List<DownloadSegment> segments) {
+        if (segments == null || segments.isEmpty()) return 0;
+        List<DownloadSegment> sorted = sortedByStart(segments);
+        long total = sorted.get(0).getStart();
+        for (DownloadSegment segment : sorted) {
+            total += segment.getDownloadedBytes();
+        }
+        return total;
+    }
+
+    /**
+     * Fim do trecho contíguo gravado desde o byte 0 (até a primeira faixa incompleta).
+     */
+    public static long contiguousEnd(List<DownloadSegment> segments) {
+        if (segments == null || segments.isEmpty()) return 0;
+        List<DownloadSegment> sorted = sortedByStart(segments);
+        long end = sorted.get(0).getStart();
+        for (DownloadSegment segment : sorted) {
+            if (segment.getStart() > end) break; // Lacuna
+            end = segment.getPosition();
+            if (!segment.isComplete()) break;
+        }
+        return end;
+    }
+
+    /**
+     * Maior posição gravada; o arquivo precisa ter pelo menos esse tamanho para o checkpoint valer.
+     */
+    public static long highestPosition(List<DownloadSegment> segments) {
+        long highest = 0;
+        if (segments == null) return highest;
+        for (DownloadSegment segment : segments) {
+            highest = Math.max(highest, segment.getPosition());
+        }
+        return highest;
+    }
+
+    /**
+     * Marca o trecho [from, to] como pendente de novo (ex: bloco corrompido), preservando o que
+     * foi gravado antes e depois dele. Faixas que cobrem o trecho são partidas em até três.
+     * @return nova lista de faixas (a original não é alterada)
+     */
+    public static List<DownloadSegment> reopenRange(List<DownloadSegment> segments, long from, long to) {
+        List<DownloadSegment> sorted = sortedByStart(segments);
+        int nextIndex = 0;
+        for (DownloadSegment segment : sorted) {
+            nextIndex = Math.max(nextIndex, segment.getIndex() + 1);
+        }
+        // O trecho antes da primeira faixa é implícito (contíguo); torná-lo explícito se for afetado
+        if (!sorted.isEmpty() && from < sorted.get(0).getStart()) {
+            long firstStart = sorted.get(0).getStart();
+            sorted.add(0, new DownloadSegment(nextIndex++, 0, firstStart - 1, firstStart));
+        }
+
+        List<DownloadSegment> result = new ArrayList<>(sorted.size() + 2);
+        for (DownloadSegment segment : sorted) {
+            if (segment.getPosition() <= from || segment.getStart() > to) {
+                result.add(segment);
+                continue;
+            }
+            long reopenFrom = Math.max(segment.getStart(), from);
+            long reopenTo = Math.min(segment.getEnd(), to);
+            if (segment.getStart() < reopenFrom) {
+                result.add(new DownloadSegment(segment.getIndex(), segment.getStart(), reopenFrom - 1, reopenFrom));
+                result.add(new DownloadSegment(nextIndex++, reopenFrom, reopenTo));
+            } else {
+                result.add(new DownloadSegment(segment.getIndex(), reopenFrom, reopenTo));
+            }
+            if (segment.getEnd() > reopenTo) {
+                result.add(new DownloadSegment(nextIndex++, reopenTo + 1, segment.getEnd(),
+                        Math.max(reopenTo + 1, segment.getPosition())));
+            }
+        }
+        return result;
+    }
+
+    private static List<DownloadSegment> sortedByStart(List<DownloadSegment> segments) {
+        List<DownloadSegment> sorted = new ArrayList<>(segments);
+        Collections.sort(sorted, (a, b) -> Long.compare(a.getStart(), b.getStart()));
+        return sorted;
+    }
+}
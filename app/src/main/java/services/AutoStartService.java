@@ -130,6 +130,7 @@ public class AutoStartService extends Service {
             int resumedCount = 0;
             for (DownloadInfo download : activeDownloads) {
                 if (download.getStatus() == DownloadInfo.STATUS_PAUSED && download.isAutoResumeEnabled()) {
+                    // Com checkpoint, a tarefa baixa só as faixas inacabadas (e registra quantas ao carregá-lo)
                     Log.d(TAG, "Retomando download: " + download.getFileName());
                     downloadManager.resumeDownload(download);
                     resumedCount++;
@@ -7,6 +7,7 @@ import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Handler;
@@ -20,34 +21,72 @@ import androidx.documentfile.provider.DocumentFile;
 
 import com.LDGAMES.R;
 import com.LDGAMES.activities.DownloadProgressActivity;
+import com.LDGAMES.database.DownloadDatabase;
 import com.LDGAMES.models.DownloadInfo;
+import com.LDGAMES.models.DownloadSegment;
+import com.LDGAMES.utils.BandwidthGovernor;
+import com.LDGAMES.utils.ArchiveExtractor;
+import com.LDGAMES.utils.BufferPool;
+import com.LDGAMES.utils.DiskSpaceLedger;
+import com.LDGAMES.utils.DownloadHttpClient;
 import com.LDGAMES.utils.DownloadManager;
+import com.LDGAMES.utils.DownloadMetadataResolver;
+import com.LDGAMES.utils.DownloadMetrics;
+import com.LDGAMES.utils.DownloadProgressBus;
 import com.LDGAMES.utils.DownloadResumeHelper;
+import com.LDGAMES.utils.DownloadWorkerPool;
 import com.LDGAMES.utils.FileUtils;
+import com.LDGAMES.utils.HostHealthTracker;
+import com.LDGAMES.utils.MirrorSelector;
+import com.LDGAMES.utils.PositionalFileWriter;
+import com.LDGAMES.utils.RetryScheduler;
+import com.LDGAMES.utils.SegmentTransfer;
+import com.LDGAMES.utils.StreamingHasher;
 
-import java.io.BufferedInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.HttpURLConnection;
-import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
 
+import okhttp3.Call;
+import okhttp3.Request;
+import okhttp3.Response;
+
 /**
  * Serviço para gerenciar o processo de download em segundo plano (Modificado para SAF, múltiplas fontes, atualização de link)
  */
 public class DownloadService extends Service {
     private static final String TAG = "DownloadService";
     private static final String CHANNEL_ID = "download_channel";
-    private static final int BUFFER_SIZE = 8192;
-    private static final int MAX_URL_RETRIES = 3; // Máximo de voltas completas na lista de URLs
+    private static final int MAX_RETRY_ROUNDS = 5; // Rodadas (todas as URLs falharam) reagendadas antes de desistir
+    private static final long MIN_SEGMENT_SIZE = 4L * 1024 * 1024; // Segmentos menores não compensam uma conexão extra
+    private static final int MAX_SEGMENT_RETRIES = 3; // Tentativas de reconexão por segmento
+    private static final long SEGMENT_MONITOR_INTERVAL = 250; // ms entre verificações do coordenador
+    private static final long SEGMENT_CHECKPOINT_INTERVAL = 5000; // ms entre checkpoints das faixas no banco
+    private static final long MIN_STEAL_SIZE = 2L * 1024 * 1024; // Menor metade repassada a outra conexão
+
+    // Resultados do modo segmentado
+    private static final int SEGMENTED_COMPLETED = 0;
+    private static final int SEGMENTED_UNSUPPORTED = 1; // Servidor sem 206: usar conexão única
+    private static final int SEGMENTED_FAILED = 2; // Erro em algum segmento: continuar com conexão única
+    private static final int SEGMENTED_PAUSED = 3;
+    private static final int SEGMENTED_CANCELLED = 4;
+    private static final int SEGMENTED_ABORTED = 5; // Falha já reportada; não tentar conexão única
+    private static final int SEGMENTED_SWITCH_MIRROR = 6; // Parou para continuar do checkpoint em outro espelho
 
     // Constantes de ação
     public static final String ACTION_START = "com.LDGAMES.action.START_DOWNLOAD";
@@ -57,11 +96,18 @@ public class DownloadService extends Service {
     public static final String EXTRA_DOWNLOAD_INFO = "com.LDGAMES.extra.DOWNLOAD_INFO";
 
     private NotificationManager notificationManager;
-    private ExecutorService executorService;
+    private DownloadWorkerPool workerPool; // Acompanha PREF_CONCURRENT_DOWNLOADS
+    private SharedPreferences.OnSharedPreferenceChangeListener settingsListener; // Referência forte exigida pelo SharedPreferences
+    private final DownloadProgressBus.ProgressSink notificationSink = this::refreshProgressNotifications;
+    private ExecutorService segmentExecutor; // Conexões adicionais dos downloads segmentados e releitura para o hash
     private Handler mainHandler;
+    private BandwidthGovernor bandwidthGovernor; // Limite de banda compartilhado entre as tarefas
 
     // Usar filePath como chave para identificar a tarefa associada ao arquivo destino
     private final Map<String, DownloadTask> activeTasksByPath = new ConcurrentHashMap<>();
+    private final RetryScheduler retryScheduler = new RetryScheduler(); // Novas tentativas esperam aqui, não em um worker
+    private HostHealthTracker hostHealth;
+    private DiskSpaceLedger diskSpaceLedger;
     private final ReentrantLock operationLock = new ReentrantLock();
 
     @Override
@@ -69,8 +115,20 @@ public class DownloadService extends Service {
         super.onCreate();
         notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
         createNotificationChannel();
-        // Ajustar o número de threads conforme necessário ou baseado nas configurações
-        executorService = Executors.newFixedThreadPool(DownloadManager.getInstance(this).getConcurrentDownloadLimit());
+        // O pool segue a configuração de downloads simultâneos enquanto o serviço estiver vivo
+        workerPool = new DownloadWorkerPool(DownloadManager.getInstance(this).getConcurrentDownloadLimit());
+        DownloadManager.getInstance(this).attachWorkerPool(workerPool);
+        settingsListener = (prefs, key) -> {
+            if (DownloadManager.PREF_CONCURRENT_DOWNLOADS.equals(key)) {
+                workerPool.resize(DownloadManager.getInstance(this).getConcurrentDownloadLimit());
+            }
+        };
+        getSharedPreferences("app_settings", Context.MODE_PRIVATE).registerOnSharedPreferenceChangeListener(settingsListener);
+        segmentExecutor = Executors.newCachedThreadPool();
+        bandwidthGovernor = BandwidthGovernor.getInstance(this);
+        hostHealth = HostHealthTracker.getInstance(this);
+        diskSpaceLedger = DiskSpaceLedger.getInstance(this);
+        DownloadProgressBus.getInstance().addSink(notificationSink);
         mainHandler = new Handler(Looper.getMainLooper());
         DownloadManager.getInstance(this).setServiceRunning(true);
         Log.d(TAG, "Serviço de download criado.");
@@ -133,9 +191,15 @@ public class DownloadService extends Service {
                 task.pause(); // Solicita pausa, mas pode não completar a tempo
             }
         }
-        executorService.shutdown(); // Inicia desligamento graceful
+        getSharedPreferences("app_settings", Context.MODE_PRIVATE).unregisterOnSharedPreferenceChangeListener(settingsListener);
+        DownloadManager.getInstance(this).attachWorkerPool(null);
+        DownloadProgressBus.getInstance().removeSink(notificationSink);
+        workerPool.shutdown(); // Inicia desligamento graceful
+        retryScheduler.shutdown();
+        segmentExecutor.shutdown();
         activeTasksByPath.clear();
         DownloadManager.getInstance(this).setServiceRunning(false); // Notifica o manager
+        Log.i(TAG, "Conexões HTTP: " + DownloadHttpClient.getInstance().getStats());
         Log.d(TAG, "Serviço de download destruído completamente.");
     }
 
@@ -189,19 +253,26 @@ public class DownloadService extends Service {
             String filePath = downloadInfo.getFilePath();
             if (activeTasksByPath.containsKey(filePath)) {
                 DownloadTask existingTask = activeTasksByPath.get(filePath);
+                if (existingTask != null && !existingTask.isFinished() && existingTask.isPauseRequested()) {
+                    // Retomado enquanto a tarefa anterior ainda encerrava a pausa: continuar assim que ela sair
+                    Log.d(TAG, "Tarefa anterior ainda pausando; nova tarefa será iniciada em seguida: " + filePath);
+                    existingTask.restartWhenFinished(downloadInfo);
+                    return;
+                }
                 if (existingTask != null && !existingTask.isFinished()) {
                     Log.d(TAG, "Tarefa de download já existe para o path: " + filePath);
                     updateNotification(downloadInfo); // Atualizar notificação caso o estado tenha mudado
                     return;
                 }
             }
+            retryScheduler.cancel(filePath); // Início explícito substitui uma nova tentativa agendada
             Log.d(TAG, "Iniciando nova tarefa de download para: " + downloadInfo.getFileName());
             // O status já deve ser RUNNING ou RESUMING definido pelo DownloadManager
             // DownloadManager.getInstance(this).updateDownload(downloadInfo); // Manager já atualizou
             startForeground(getNotificationId(downloadInfo), createNotification(downloadInfo));
             DownloadTask downloadTask = new DownloadTask(downloadInfo);
             activeTasksByPath.put(filePath, downloadTask);
-            executorService.execute(downloadTask);
+            workerPool.execute(downloadTask);
         } finally {
             operationLock.unlock();
         }
@@ -211,8 +282,9 @@ public class DownloadService extends Service {
         operationLock.lock();
         try {
             String filePath = downloadInfo.getFilePath();
+            retryScheduler.reset(filePath); // Pausa do usuário descarta a nova tentativa e zera as rodadas
             DownloadTask task = activeTasksByPath.get(filePath);
-            if (task != null && !task.isFinished() && task.isActive()) {
+            if (task != null && !task.isFinished()) { // Também se ainda aguarda worker: pausa ao começar
                 Log.d(TAG, "Pausando tarefa de download: " + downloadInfo.getFileName());
                 task.pause(); // Solicita a pausa da tarefa
                 // A tarefa, ao pausar, notificará o DownloadManager
@@ -225,6 +297,7 @@ public class DownloadService extends Service {
                     mainHandler.post(() -> DownloadManager.getInstance(DownloadService.this).updateDownload(downloadInfo));
                     updateNotification(downloadInfo);
                 }
+                stopSelfIfIdle();
             }
         } finally {
             operationLock.unlock();
@@ -347,6 +420,7 @@ public class DownloadService extends Service {
         operationLock.lock();
         try {
             String filePath = downloadInfo.getFilePath();
+            retryScheduler.reset(filePath);
             DownloadTask task = activeTasksByPath.remove(filePath);
             if (task != null) {
                 Log.d(TAG, "Cancelando tarefa de download: " + downloadInfo.getFileName());
@@ -368,7 +442,7 @@ public class DownloadService extends Service {
     private void stopSelfIfIdle() {
         operationLock.lock();
         try {
-            if (activeTasksByPath.isEmpty()) {
+            if (activeTasksByPath.isEmpty() && !retryScheduler.hasPending()) {
                 Log.i(TAG, "Nenhuma tarefa ativa. Parando o serviço.");
                 stopForeground(true); // Remover notificação persistente se houver
                 stopSelf();
@@ -380,6 +454,25 @@ public class DownloadService extends Service {
         }
     }
 
+    /**
+     * Agenda uma nova tarefa para o download depois do backoff. Até lá nenhum worker fica ocupado;
+     * se o download foi pausado ou cancelado nesse meio tempo, a tentativa é descartada.
+     */
+    private void scheduleRetry(DownloadInfo downloadInfo, long delayMillis) {
+        retryScheduler.schedule(downloadInfo.getFilePath(), delayMillis, () -> mainHandler.post(() -> {
+            // O Manager tem o estado atual (pausa/cancelamento chegam ao serviço como cópias)
+            DownloadInfo current = DownloadManager.getInstance(DownloadService.this).getDownloadInfoByPath(downloadInfo.getFilePath());
+            int status = current != null ? current.getStatus() : downloadInfo.getStatus();
+            if (status != DownloadInfo.STATUS_RUNNING && status != DownloadInfo.STATUS_RESUMING) {
+                Log.d(TAG, "Nova tentativa descartada (status " + downloadInfo.getStatusText() + "): " + downloadInfo.getFileName());
+                stopSelfIfIdle();
+                return;
+            }
+            Log.i(TAG, "Executando nova tentativa agendada para: " + downloadInfo.getFileName());
+            startDownloadInternal(downloadInfo);
+        }));
+    }
+
     // Deleta o arquivo associado a um DownloadInfo
     private void deletePartialFileSafely(String fileUriPath) {
         if (fileUriPath == null || !fileUriPath.startsWith("content://")) return;
@@ -453,6 +546,19 @@ public class DownloadService extends Service {
                status == DownloadInfo.STATUS_CANCELLED;
     }
 
+    /**
+     * Atualiza em uma passada as notificações dos downloads do lote de progresso.
+     */
+    private void refreshProgressNotifications(List<DownloadInfo> batch) {
+        for (DownloadInfo downloadInfo : batch) {
+            int status = downloadInfo.getStatus();
+            if ((status == DownloadInfo.STATUS_RUNNING || status == DownloadInfo.STATUS_RESUMING)
+                    && activeTasksByPath.containsKey(downloadInfo.getFilePath())) {
+                updateNotification(downloadInfo);
+            }
+        }
+    }
+
     private void updateNotification(DownloadInfo downloadInfo) {
         if (downloadInfo != null && downloadInfo.getFilePath() != null) {
             notificationManager.notify(getNotificationId(downloadInfo), createNotification(downloadInfo));
@@ -546,10 +652,24 @@ public class DownloadService extends Service {
         private final AtomicBoolean cancelled = new AtomicBoolean(false);
         private final AtomicBoolean finished = new AtomicBoolean(false);
         private final AtomicBoolean active = new AtomicBoolean(false);
-        private HttpURLConnection connection = null;
+        private final AtomicReference<DownloadInfo> pendingRestart = new AtomicReference<>(); // Retomada pedida durante a pausa
+        private volatile Call call = null; // Cancelável de outra thread (cancel())
+        private Response response = null;
         private InputStream inputStream = null;
-        private OutputStream outputStream = null;
-        private int urlRetryCount = 0; // Contador de voltas na lista de URLs
+        private PositionalFileWriter fileWriter = null; // Aberto uma vez por tarefa; compartilhado por segmentos e retomadas
+        private final Set<Integer> failedUrlIndices = new HashSet<>(); // URLs que já falharam nesta rodada
+        private boolean gaveUp = false; // Rodada encerrada: nova tentativa agendada ou falha reportada
+        private ArchiveExtractor.StreamSession archiveStream; // Extração do .zip enquanto os bytes chegam em ordem
+        private String lastError; // Último erro recuperável, usado se a rodada terminar sem URL viável
+        private MirrorSelector mirrorSelector; // Ranking dos espelhos (sourceUrls) deste download
+        private final AtomicBoolean mirrorSwitchRequested = new AtomicBoolean(false);
+        private final StreamingHasher hasher = new StreamingHasher(); // SHA-256/MD5 calculados durante a gravação
+        private Future<?> hashCatchUp; // Releitura em segundo plano do que está gravado à frente do cursor do hash
+        private final AtomicBoolean hashCatchUpStopped = new AtomicBoolean(false);
+        private DownloadMetrics metrics; // Vazão, CPU e tempo até o primeiro byte desta execução
+        // Recursos do modo segmentado (uma conexão por segmento)
+        private final AtomicBoolean segmentsStopped = new AtomicBoolean(false);
+        private final List<Call> segmentCalls = Collections.synchronizedList(new ArrayList<>());
 
         DownloadTask(DownloadInfo downloadInfo) {
             this.downloadInfo = downloadInfo;
@@ -573,17 +693,15 @@ public class DownloadService extends Service {
             // Não interromper a thread aqui, deixar o loop principal detectar
         }
 
-        public boolean resume() {
-            if (paused.compareAndSet(true, false)) {
-                synchronized (this) {
-                    notifyAll(); // Acordar a thread se estiver em wait()
-                }
-                Log.d(TAG, "Task resume() chamado e notificado para: " + downloadInfo.getFileName());
-                return true;
-            } else {
-                Log.w(TAG, "Task resume() chamado mas não estava pausado para: " + downloadInfo.getFileName());
-                return false;
-            }
+        public boolean isPauseRequested() {
+            return paused.get();
+        }
+
+        /**
+         * Chamado sob operationLock: a tarefa está saindo por pausa e o download já foi retomado.
+         */
+        void restartWhenFinished(DownloadInfo resumed) {
+            pendingRestart.set(resumed);
         }
 
         public void cancel() {
@@ -599,6 +717,25 @@ public class DownloadService extends Service {
 
         @Override
         public void run() {
+            bandwidthGovernor.register(downloadInfo.getFilePath(), downloadInfo.getPriority() + 1);
+            metrics = new DownloadMetrics(downloadInfo.getDownloadedSize());
+            long cpuStart = metrics.threadStart();
+            try {
+                execute();
+            } finally {
+                bandwidthGovernor.unregister(downloadInfo.getFilePath());
+                stopHashCatchUp(true); // Não ler depois de fechar o arquivo
+                closeFileWriter();
+                metrics.threadEnd(cpuStart);
+                Log.i(TAG, "Métricas de " + downloadInfo.getFileName() + " [" + downloadInfo.getStatusText() + "]: "
+                        + metrics.summary(downloadInfo.getDownloadedSize()));
+                // Sempre por último: depois daqui uma retomada pode registrar uma nova tarefa para o
+                // mesmo arquivo, e a limpeza acima não pode mais alcançar os recursos dela
+                finishTask();
+            }
+        }
+
+        private void execute() {
             active.set(true);
             Log.i(TAG, "DownloadTask run() iniciado para: " + downloadInfo.getFileName() + " Path: " + downloadInfo.getFilePath());
 
@@ -609,46 +746,53 @@ public class DownloadService extends Service {
                 handleError("Não é possível escrever no arquivo de destino (SAF): " + fileUri, false); // Erro fatal
                 return;
             }
+            if (paused.get()) {
+                handlePause(); // Pausado enquanto aguardava um worker
+                return;
+            }
+
+            selectInitialMirror();
 
             boolean downloadSuccessful = false;
-            while (!cancelled.get() && !downloadSuccessful && urlRetryCount < MAX_URL_RETRIES) {
+            boolean singleStreamAllowed = true;
+            boolean hasCheckpoint = !DownloadDatabase.getInstance(DownloadService.this).getSegments(downloadInfo.getFilePath()).isEmpty();
+            if (resolveSegmentCount() > 1 || hasCheckpoint) {
+                int segmentedResult = runSegmented(fileUri);
+                while (segmentedResult == SEGMENTED_SWITCH_MIRROR && !cancelled.get()) {
+                    segmentedResult = runSegmented(fileUri);
+                }
+                if (segmentedResult == SEGMENTED_CANCELLED || cancelled.get()) {
+                    handleCancellation();
+                    return;
+                }
+                if (segmentedResult == SEGMENTED_PAUSED) {
+                    handlePause(); // Checkpoint das faixas já salvo por runSegmented
+                    return;
+                }
+                // UNSUPPORTED/FAILED: continuar abaixo com conexão única a partir do trecho contíguo
+                downloadSuccessful = (segmentedResult == SEGMENTED_COMPLETED);
+                singleStreamAllowed = (segmentedResult != SEGMENTED_ABORTED);
+            }
+
+            while (singleStreamAllowed && !cancelled.get() && !downloadSuccessful && !gaveUp) {
                 if (paused.get()) {
                     handlePause();
-                    if (cancelled.get()) break; // Verificar cancelamento após pausa
+                    return;
                 }
 
                 String currentUrl = downloadInfo.getUrl(); // Obter URL ativa atual
                 long currentOffset = downloadInfo.getDownloadedSize();
+                boolean switchedMirror = false;
+                BufferPool.AdaptiveBuffer chunk = null;
+                mirrorSelector.resetObservation();
                 Log.d(TAG, "Tentando URL: " + currentUrl + " Index: " + downloadInfo.getCurrentUrlIndex() + " Offset: " + currentOffset);
 
                 try {
-                    URL url = new URL(currentUrl);
-                    connection = (HttpURLConnection) url.openConnection();
-                    connection.setConnectTimeout(15000); // 15 segundos
-                    connection.setReadTimeout(30000); // 30 segundos
-                    connection.setInstanceFollowRedirects(true);
-
-                    // Adicionar Cookies e Headers
-                    String cookies = downloadInfo.getCookies();
-                    if (cookies != null && !cookies.isEmpty()) {
-                        connection.setRequestProperty("Cookie", cookies);
-                    }
-                    Map<String, String> headers = downloadInfo.getCustomHeaders();
-                    if (headers != null && !headers.isEmpty()) {
-                        for (Map.Entry<String, String> entry : headers.entrySet()) {
-                            connection.setRequestProperty(entry.getKey(), entry.getValue());
-                        }
-                    }
-
                     // Configurar Range header para retomar download
-                    if (currentOffset > 0) {
-                        connection.setRequestProperty("Range", "bytes=" + currentOffset + "-");
-                        Log.d(TAG, "Configurando Range header: bytes=" + currentOffset + "-");
-                    }
+                    call = newRangeCall(currentUrl, currentOffset, -1);
+                    response = call.execute();
 
-                    connection.connect();
-
-                    int responseCode = connection.getResponseCode();
+                    int responseCode = response.code();
                     Log.d(TAG, "Response Code para " + currentUrl + ": " + responseCode);
 
                     boolean isResumeSupported = (responseCode == HttpURLConnection.HTTP_PARTIAL);
@@ -656,12 +800,18 @@ public class DownloadService extends Service {
 
                     if (!isNewDownload && !isResumeSupported) {
                         // Erro HTTP não recuperável para esta URL
-                        handleHttpError(responseCode, connection.getResponseMessage(), true); // Tentar próxima URL
+                        handleHttpError(responseCode, response.message(), response.header("Retry-After"), true); // Tentar próxima URL
+                        DownloadHttpClient.release(response); // Devolver a conexão ao pool antes de trocar de URL
                         continue; // Próxima iteração do while (tentar próxima URL)
                     }
 
+                    // Hash anunciado pelo servidor (Digest/Content-MD5) quando a fonte não informou um
+                    if (isNewDownload && downloadInfo.getExpectedHash() == null) {
+                        downloadInfo.setExpectedHash(DownloadMetadataResolver.expectedHashFrom(response));
+                    }
+
                     // Obter tamanho total e ajustar se necessário
-                    long serverFileSize = connection.getContentLengthLong();
+                    long serverFileSize = response.body().contentLength();
                     long totalSize = -1;
                     if (serverFileSize > 0) {
                         if (isNewDownload) {
@@ -676,25 +826,39 @@ public class DownloadService extends Service {
                             totalSize = currentOffset + serverFileSize;
                         }
                         downloadInfo.setFileSize(totalSize);
+                        if (!reserveDiskSpace(totalSize)) {
+                            break; // Falha já reportada; o finally devolve a conexão
+                        }
                     } else if (downloadInfo.getFileSize() <= 0) {
                         Log.w(TAG, "Servidor não retornou Content-Length. Progresso não será exibido.");
                         downloadInfo.setFileSize(-1);
                     }
 
-                    // Abrir OutputStream (modo append se retomando, truncar se novo download)
-                    String openMode = (isResumeSupported && currentOffset > 0) ? "wa" : "wt";
+                    // Escrever a partir do offset atual (truncar se o servidor reiniciou o download)
+                    PositionalFileWriter writer;
                     try {
-                        outputStream = getContentResolver().openOutputStream(fileUri, openMode);
-                        if (outputStream == null) {
-                            throw new FileNotFoundException("Não foi possível abrir OutputStream para " + fileUri + " com modo " + openMode);
+                        writer = getFileWriter(fileUri);
+                        if (currentOffset == 0 || writer.size() > currentOffset) {
+                            writer.truncate(currentOffset);
+                            // Blocos a partir do truncamento serão regravados
+                            DownloadDatabase.getInstance(DownloadService.this).clearBlockHashes(downloadInfo.getFilePath(), currentOffset / StreamingHasher.BLOCK_SIZE);
                         }
                     } catch (IOException e) {
                         handleError("Erro IO ao abrir arquivo destino (SAF): " + e.getMessage(), false); // Erro fatal
                         return;
                     }
-
-                    inputStream = new BufferedInputStream(connection.getInputStream());
-                    byte[] buffer = new byte[BUFFER_SIZE];
+                    if (hasher.getWrittenEnd() > currentOffset) {
+                        stopHashCatchUp(true);
+                        hasher.reset(); // Arquivo recomeçou antes do que já foi hasheado
+                    }
+                    hasher.markWritten(currentOffset); // Só há o que reler ao retomar em uma nova tarefa
+                    startHashCatchUp(writer);
+                    prepareArchiveStream(currentOffset);
+
+                    // Leituras grandes já vão direto ao socket; o tamanho acompanha a vazão
+                    inputStream = response.body().byteStream();
+                    chunk = new BufferPool.AdaptiveBuffer(BufferPool.chunkSizeFor(downloadInfo.getSpeed()));
+                    byte[] buffer = chunk.array();
                     int bytesRead;
                     long lastUpdateTime = System.currentTimeMillis();
                     long bytesSinceLastUpdate = 0;
@@ -705,11 +869,10 @@ public class DownloadService extends Service {
                         mainHandler.post(() -> DownloadManager.getInstance(DownloadService.this).updateDownload(downloadInfo));
                     }
 
-                    while ((bytesRead = inputStream.read(buffer)) != -1) {
+                    while ((bytesRead = inputStream.read(buffer = chunk.array())) != -1) {
                         if (paused.get()) {
-                            handlePause();
-                            if (cancelled.get()) break;
-                            // Se retomou, continuar o loop interno
+                            handlePause(); // downloadedSize já cobre tudo o que foi gravado
+                            return; // O finally fecha a conexão e salva o índice de blocos
                         }
                         if (cancelled.get() || Thread.currentThread().isInterrupted()) {
                             Log.d(TAG, "Download cancelado (detectado no loop de leitura): " + downloadInfo.getFileName());
@@ -718,7 +881,14 @@ public class DownloadService extends Service {
                         }
 
                         try {
-                            outputStream.write(buffer, 0, bytesRead);
+                            bandwidthGovernor.acquire(downloadInfo.getFilePath(), bytesRead);
+                            writer.write(currentOffset, buffer, 0, bytesRead);
+                            hasher.update(currentOffset, buffer, 0, bytesRead);
+                            if (archiveStream != null) {
+                                archiveStream.feed(buffer, 0, bytesRead);
+                            }
+                            chunk.onRead(bytesRead);
+                            metrics.onBytesReceived();
                             currentOffset += bytesRead;
                             bytesSinceLastUpdate += bytesRead;
                             downloadInfo.setDownloadedSize(currentOffset);
@@ -735,12 +905,18 @@ public class DownloadService extends Service {
                                 downloadInfo.setSpeed(speed);
                                 downloadInfo.calculateEstimatedTimeRemaining(); // Calcular ETA
 
-                                // Notificar o Manager e atualizar a notificação
-                                mainHandler.post(() -> DownloadManager.getInstance(DownloadService.this).updateDownload(downloadInfo));
-                                updateNotification(downloadInfo);
+                                // Manager, UI e notificação recebem o tick agrupado pelo barramento
+                                DownloadProgressBus.getInstance().publish(downloadInfo);
 
                                 lastUpdateTime = now;
                                 bytesSinceLastUpdate = 0;
+                                saveBlockHashes();
+                                recordHostThroughput(speed);
+
+                                if (shouldSwitchMirror(speed)) {
+                                    switchedMirror = true; // Reconecta no novo espelho a partir de currentOffset
+                                    break;
+                                }
                             }
                         } catch (IOException e) {
                             handleError("Erro de IO ao escrever no arquivo: " + e.getMessage(), true); // Tentar próxima URL
@@ -753,12 +929,18 @@ public class DownloadService extends Service {
                         // Download concluído com sucesso para esta URL
                         downloadSuccessful = true;
                         Log.i(TAG, "Download concluído com sucesso para: " + downloadInfo.getFileName() + " URL: " + currentUrl);
+                        boolean hashed = finishHashes(currentOffset);
+                        DownloadDatabase.getInstance(DownloadService.this).clearBlockHashes(downloadInfo.getFilePath(), 0);
+                        finishArchiveStream();
                         downloadInfo.setStatus(DownloadInfo.STATUS_COMPLETED);
                         downloadInfo.setEndTime(System.currentTimeMillis());
                         downloadInfo.setProgress(100);
                         downloadInfo.setSpeed(0);
                         downloadInfo.setEstimatedTimeRemaining("");
                         mainHandler.post(() -> DownloadManager.getInstance(DownloadService.this).updateDownload(downloadInfo));
+                        if (!hashed) {
+                            deferHashes(currentOffset);
+                        }
                         updateNotification(downloadInfo);
                     }
 
@@ -767,82 +949,719 @@ public class DownloadService extends Service {
                     handleError("Erro de IO na conexão/leitura inicial: " + e.getMessage(), true); // Tentar próxima URL
                 } finally {
                     closeResources();
+                    if (chunk != null) {
+                        chunk.release();
+                    }
+                    if (!downloadSuccessful) {
+                        saveBlockHashes(); // Índice pronto para validar a próxima retomada
+                    }
                 }
 
                 // Se o download falhou para esta URL e não foi cancelado/pausado, tentar a próxima
-                if (!downloadSuccessful && !cancelled.get() && !paused.get()) {
-                    if (!tryNextSourceUrl()) {
-                        // Não há mais URLs para tentar ou atingiu limite de retries
-                        Log.e(TAG, "Download falhou para todas as URLs: " + downloadInfo.getFileName());
-                        // O último erro já foi reportado em handleError ou handleHttpError
-                        break; // Sair do while de retries
-                    }
+                // (o erro HTTP já trocou de URL em handleHttpError)
+                if (!downloadSuccessful && !cancelled.get() && !paused.get() && !switchedMirror && !gaveUp) {
+                    advanceOrScheduleRetry();
                 }
-            } // Fim do while (!cancelled && !downloadSuccessful && urlRetryCount < MAX_URL_RETRIES)
+            } // Fim do while (!cancelled && !downloadSuccessful && !gaveUp)
 
-            // Finalização da tarefa
-            finished.set(true);
-            active.set(false);
-            activeTasksByPath.remove(downloadInfo.getFilePath());
+            if (downloadSuccessful) {
+                retryScheduler.reset(downloadInfo.getFilePath());
+            }
+
+            // Finalização da tarefa (finishTask roda no fim de run())
             Log.i(TAG, "Tarefa finalizada para: " + downloadInfo.getFileName() + " Status final: " + downloadInfo.getStatusText());
-            stopSelfIfIdle(); // Verificar se o serviço pode parar
         }
 
-        private void handlePause() {
-            Log.d(TAG, "Download pausado (detectado): " + downloadInfo.getFileName());
-            closeResources(); // Fechar conexão e streams ao pausar
-            if (downloadInfo.getStatus() != DownloadInfo.STATUS_PAUSED) {
-                downloadInfo.setStatus(DownloadInfo.STATUS_PAUSED);
-                downloadInfo.setLastPauseTime(System.currentTimeMillis());
+        /**
+         * Libera a tarefa do mapa e, se o download foi retomado enquanto ela pausava, inicia a
+         * próxima; senão verifica se o serviço pode parar. Chamado só no fim de run(), depois
+         * de liberar a banda e fechar o arquivo.
+         */
+        private void finishTask() {
+            if (archiveStream != null) {
+                archiveStream.abort(); // Não concluiu: o job pós-download extrai a partir do arquivo
+                archiveStream = null;
+            }
+            DownloadInfo restart;
+            operationLock.lock();
+            try {
+                finished.set(true);
+                active.set(false);
+                activeTasksByPath.remove(downloadInfo.getFilePath(), this);
+                restart = pendingRestart.getAndSet(null);
+            } finally {
+                operationLock.unlock();
+            }
+            if (restart != null) {
+                mainHandler.post(() -> startDownloadInternal(restart));
+            } else {
+                stopSelfIfIdle(); // Verificar se o serviço pode parar
+            }
+        }
+
+        /**
+         * Liga a extração em stream quando a escrita começa do byte 0 (ou continua exatamente de
+         * onde a sessão atual parou, ex: troca de espelho); qualquer outro salto a descarta. Sem
+         * espaço para a estimativa descompactada, a extração fica para o job pós-download.
+         */
+        private void prepareArchiveStream(long offset) {
+            if (archiveStream != null && archiveStream.getFedBytes() != offset) {
+                archiveStream.abort();
+                archiveStream = null;
+            }
+            if (archiveStream == null && offset == 0 &&
+                ArchiveExtractor.isEnabled(DownloadService.this) && ArchiveExtractor.isSupported(downloadInfo)) {
+                Log.d(TAG, "Extraindo em paralelo ao download: " + downloadInfo.getFileName());
+                archiveStream = ArchiveExtractor.startStreaming(DownloadService.this, downloadInfo);
+            }
+        }
+
+        /**
+         * Todos os bytes entregues: aguarda a extração em stream e grava o resultado no download.
+         * Se ela falhou, o estado fica como está e o DownloadManager extrai a partir do arquivo.
+         */
+        private void finishArchiveStream() {
+            if (archiveStream == null) return;
+            ArchiveExtractor.Extraction extraction = archiveStream.finish();
+            archiveStream = null;
+            if (extraction != null) {
+                downloadInfo.setExtractionStatus(DownloadInfo.EXTRACTION_DONE);
+                downloadInfo.setExtractionMessage(extraction.describe());
+            }
+        }
+
+        /**
+         * Com mais de uma sourceUrl, sonda todas em paralelo e começa pela mais rápida
+         * em vez de confiar na ordem da lista.
+         */
+        private void selectInitialMirror() {
+            List<String> urls = downloadInfo.getSourceUrls();
+            mirrorSelector = new MirrorSelector(urls);
+            if (!mirrorSelector.hasAlternatives()) return;
+            // Hosts em espera (Retry-After, falhas seguidas) nem são sondados
+            for (int i = 0; i < urls.size(); i++) {
+                if (!hostHealth.isAvailable(urls.get(i))) {
+                    mirrorSelector.exclude(i);
+                }
+            }
+            mirrorSelector.probeAll(this::openRange, segmentExecutor);
+            int best = mirrorSelector.bestIndex();
+            if (best < 0) {
+                best = hostHealth.rank(urls).get(0); // Nenhuma sondagem respondeu: usar o histórico dos hosts
+            }
+            if (best != downloadInfo.getCurrentUrlIndex()) {
+                Log.i(TAG, "Espelho [" + best + "] é o mais rápido para " + downloadInfo.getFileName() + "; trocando de [" + downloadInfo.getCurrentUrlIndex() + "]");
+                downloadInfo.setCurrentUrlIndex(best);
+            }
+        }
+
+        /**
+         * Registra a vazão do espelho atual na saúde do host. Com limite de banda ativo a vazão
+         * não reflete o host, então só o sucesso conta.
+         */
+        private void recordHostThroughput(long bytesPerSecond) {
+            hostHealth.recordSuccess(downloadInfo.getUrl(), bandwidthGovernor.isLimitActive() ? 0 : bytesPerSecond);
+        }
+
+        /**
+         * Chamado uma vez por segundo com a vazão atual. Se o espelho atual ficou bem abaixo de outro
+         * por tempo suficiente, muda a URL ativa e retorna true. Com limite de banda ativo a vazão
+         * não reflete o espelho, então não há troca.
+         */
+        private boolean shouldSwitchMirror(long bytesPerSecond) {
+            if (mirrorSelector == null || bandwidthGovernor.isLimitActive()) return false;
+            int target = mirrorSelector.onThroughput(downloadInfo.getCurrentUrlIndex(), bytesPerSecond);
+            if (target < 0) return false;
+            downloadInfo.setCurrentUrlIndex(target);
+            mainHandler.post(() -> DownloadManager.getInstance(DownloadService.this).updateDownload(downloadInfo));
+            return true;
+        }
+
+        /**
+         * Completa os digests com o que ainda falta (trechos gravados fora de ordem) e os grava no
+         * download. Se a fonte informou um hash, o resultado da comparação vai para o log e, em caso
+         * de divergência, para a mensagem do download.
+         */
+        /**
+         * Fecha os digests se o cursor do hash já chegou ao fim do arquivo. Com faixas paralelas o
+         * cursor só anda com a faixa mais baixa, então pode faltar reler boa parte do arquivo; isso
+         * não segura a conclusão: retorna false e {@link #deferHashes} entrega o restante ao
+         * DownloadManager, que completa SHA-256/MD5 depois de o download aparecer como concluído.
+         */
+        private boolean finishHashes(long totalSize) {
+            stopHashCatchUp(true);
+            hasher.markWritten(totalSize);
+            if (hasher.needsCatchUp()) {
+                Log.i(TAG, "Hash de " + downloadInfo.getFileName() + " será concluído em segundo plano ("
+                        + (totalSize - hasher.getHashedBytes()) + " bytes a reler)");
+                return false;
+            }
+            DownloadManager.recordDigests(downloadInfo, hasher.sha256Hex(), hasher.md5Hex());
+            return true;
+        }
+
+        /**
+         * Depois do updateDownload de conclusão (mesma fila do main thread, então ele chega antes).
+         */
+        private void deferHashes(long totalSize) {
+            String filePath = downloadInfo.getFilePath();
+            mainHandler.post(() -> DownloadManager.getInstance(DownloadService.this)
+                    .finishHashInBackground(filePath, hasher, totalSize));
+        }
+
+        /**
+         * Relê em segundo plano o trecho já gravado que ainda não entrou nos digests (prefixo de uma
+         * tarefa anterior, faixas que chegaram fora de ordem). A conexão segue baixando enquanto isso;
+         * quando o cursor do hash alcança a escrita, update() volta a consumir direto.
+         */
+        private void startHashCatchUp(PositionalFileWriter writer) {
+            if (!hasher.needsCatchUp()) return;
+            Future<?> running = hashCatchUp;
+            if (running != null && !running.isDone()) {
+                if (!hashCatchUpStopped.get()) return; // Já está relendo e segue a fronteira sozinho
+                stopHashCatchUp(true); // Parada de uma rodada anterior ainda terminando o trecho atual
+            }
+            hashCatchUpStopped.set(false);
+            hashCatchUp = segmentExecutor.submit(() -> {
+                try {
+                    hasher.catchUpToFrontier(writer, hashCatchUpStopped);
+                } catch (IOException e) {
+                    Log.w(TAG, "Falha ao hashear trecho já gravado de " + downloadInfo.getFileName() + ": " + e.getMessage());
+                }
+            });
+        }
+
+        /**
+         * Pede a parada da releitura, conferida entre trechos de 256 KB.
+         * @param wait esperar o trecho atual (antes de fechar o arquivo ou reler na própria thread)
+         */
+        private void stopHashCatchUp(boolean wait) {
+            Future<?> running = hashCatchUp;
+            if (running == null) return;
+            hashCatchUpStopped.set(true);
+            if (!wait) return;
+            try {
+                running.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Erro inesperado ao reler trecho para o hash: " + e.getCause());
+            }
+            hashCatchUp = null;
+        }
+
+        private int resolveSegmentCount() {
+            if (downloadInfo.getParts() <= 0) {
+                downloadInfo.setParts(DownloadManager.getInstance(DownloadService.this).getDownloadSegmentCount());
+            }
+            return downloadInfo.getParts();
+        }
+
+        /**
+         * Chamada HTTP/1.1 para a URL com cookies/headers do download e o Range [from, to].
+         * to < 0 pede até o fim do arquivo; from == 0 e to < 0 não envia Range.
+         * Timeouts (15 s conexão, 30 s leitura) e redirecionamentos vêm do DownloadHttpClient.
+         */
+        private Call newRangeCall(String urlString, long from, long to) throws IOException {
+            Request.Builder request = DownloadHttpClient.newRequest(urlString);
+
+            // Adicionar Cookies e Headers
+            String cookies = downloadInfo.getCookies();
+            if (cookies != null && !cookies.isEmpty()) {
+                request.header("Cookie", cookies);
+            }
+            Map<String, String> headers = downloadInfo.getCustomHeaders();
+            if (headers != null && !headers.isEmpty()) {
+                for (Map.Entry<String, String> entry : headers.entrySet()) {
+                    request.header(entry.getKey(), entry.getValue());
+                }
+            }
+
+            if (from > 0 || to >= 0) {
+                String range = "bytes=" + from + "-" + (to >= 0 ? String.valueOf(to) : "");
+                request.header("Range", range);
+                Log.d(TAG, "Configurando Range header: " + range);
+            }
+            return DownloadHttpClient.getInstance().newTransferCall(request.build());
+        }
+
+        private Response openRange(String urlString, long from, long to) throws IOException {
+            return newRangeCall(urlString, from, to).execute();
+        }
+
+        /**
+         * Baixa o restante do arquivo em várias faixas de bytes paralelas, cada uma com sua conexão.
+         * Uma sondagem de 1 byte confirma o suporte a Range (206) e descobre o tamanho total;
+         * sem isso retorna SEGMENTED_UNSUPPORTED e o download segue com conexão única.
+         * Se houver checkpoint salvo em DownloadDatabase, só as faixas inacabadas são baixadas.
+         */
+        private int runSegmented(Uri fileUri) {
+            DownloadDatabase database = DownloadDatabase.getInstance(DownloadService.this);
+            List<DownloadSegment> checkpoint = database.getSegments(downloadInfo.getFilePath());
+            long totalSize;
+
+            while (true) {
+                Response probe = null;
+                try {
+                    probe = openRange(downloadInfo.getUrl(), 0, 0);
+                    int responseCode = probe.code();
+                    if (responseCode != HttpURLConnection.HTTP_PARTIAL) {
+                        Log.i(TAG, "Servidor respondeu " + responseCode + " ao Range. Usando conexão única para: " + downloadInfo.getFileName());
+                        abandonCheckpoint(fileUri, checkpoint);
+                        return SEGMENTED_UNSUPPORTED;
+                    }
+                    totalSize = parseContentRangeTotal(probe.header("Content-Range"));
+                    break;
+                } catch (IOException e) {
+                    if (checkpoint.isEmpty()) {
+                        Log.w(TAG, "Falha na sondagem de Range (" + e.getMessage() + "). Usando conexão única.");
+                        return SEGMENTED_UNSUPPORTED;
+                    }
+                    // Com checkpoint, não descartar o progresso das faixas por uma falha de rede
+                    Log.w(TAG, "Falha na sondagem de Range com checkpoint salvo: " + e.getMessage());
+                    if (cancelled.get()) return SEGMENTED_CANCELLED;
+                    if (paused.get()) return SEGMENTED_PAUSED;
+                    hostHealth.recordFailure(downloadInfo.getUrl(), -1, null);
+                    lastError = "Falha de conexão ao retomar download segmentado: " + e.getMessage();
+                    if (!advanceOrScheduleRetry()) {
+                        return SEGMENTED_ABORTED;
+                    }
+                } finally {
+                    DownloadHttpClient.release(probe);
+                }
+            }
+
+            if (totalSize <= 0) {
+                Log.d(TAG, "Tamanho total desconhecido. Usando conexão única para: " + downloadInfo.getFileName());
+                abandonCheckpoint(fileUri, checkpoint);
+                return SEGMENTED_UNSUPPORTED;
+            }
+
+            if (!reserveDiskSpace(totalSize)) {
+                return SEGMENTED_ABORTED;
+            }
+
+            PositionalFileWriter writer;
+            List<DownloadSegment> segments;
+            try {
+                writer = getFileWriter(fileUri);
+                segments = restoreCheckpoint(fileUri, checkpoint, totalSize, writer);
+                if (segments == null) {
+                    long startOffset = downloadInfo.getDownloadedSize();
+                    long remaining = totalSize - startOffset;
+                    int segmentCount = (int) Math.min(resolveSegmentCount(), remaining / MIN_SEGMENT_SIZE);
+                    if (segmentCount < 2) {
+                        Log.d(TAG, "Restante pequeno demais para segmentar. Usando conexão única para: " + downloadInfo.getFileName());
+                        return SEGMENTED_UNSUPPORTED;
+                    }
+                    segments = new ArrayList<>(segmentCount);
+                    long segmentSize = remaining / segmentCount;
+                    for (int i = 0; i < segmentCount; i++) {
+                        long start = startOffset + i * segmentSize;
+                        long end = (i == segmentCount - 1) ? totalSize - 1 : start + segmentSize - 1;
+                        segments.add(new DownloadSegment(i, start, end));
+                    }
+                    if (writer.size() > totalSize) {
+                        writer.truncate(totalSize); // Restos de um arquivo anterior maior
+                    }
+                    // Faixas gravam fora de ordem: alocar o arquivo inteiro de uma vez evita
+                    // ENOSPC no meio do download e a fragmentação de crescer por vários pontos
+                    try {
+                        if (writer.preallocate(totalSize)) {
+                            Log.d(TAG, "Arquivo pré-alocado com " + totalSize + " bytes: " + downloadInfo.getFileName());
+                        }
+                    } catch (IOException e) {
+                        reportFailure("Espaço insuficiente no destino: " + e.getMessage());
+                        return SEGMENTED_ABORTED;
+                    }
+                    database.saveSegments(downloadInfo.getFilePath(), segments);
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Erro IO ao abrir arquivo destino para escrita posicional: " + e.getMessage());
+                return SEGMENTED_FAILED;
+            }
+            downloadInfo.setFileSize(totalSize);
+
+            if (downloadInfo.getStatus() != DownloadInfo.STATUS_RUNNING) {
+                downloadInfo.setStatus(DownloadInfo.STATUS_RUNNING);
+                mainHandler.post(() -> DownloadManager.getInstance(DownloadService.this).updateDownload(downloadInfo));
+            }
+
+            String segmentUrl = downloadInfo.getUrl();
+            segmentsStopped.set(false);
+            AtomicReference<String> segmentError = new AtomicReference<>();
+            List<Future<?>> futures = new ArrayList<>(segments.size());
+            int pending = 0;
+            for (DownloadSegment segment : segments) {
+                if (segment.isComplete()) continue;
+                futures.add(segmentExecutor.submit(() -> downloadSegment(segmentUrl, writer, segment, segmentError)));
+                pending++;
+            }
+            Log.i(TAG, "Download segmentado com " + pending + " de " + segments.size() + " faixas pendentes: " + downloadInfo.getFileName());
+
+            int maxConnections = Math.max(resolveSegmentCount(), pending);
+            Map<DownloadSegment, Long> lastPositions = new HashMap<>();
+            Map<DownloadSegment, Long> segmentRates = new HashMap<>(); // bytes/s de cada faixa no último segundo
+            long lastUpdateTime = System.currentTimeMillis();
+            long lastCheckpointTime = lastUpdateTime;
+            long lastDownloaded = DownloadSegment.committedBytes(segments);
+            mirrorSelector.resetObservation();
+            while (!allSegmentsDone(futures)) {
+                if (paused.get() || cancelled.get() || segmentError.get() != null || mirrorSwitchRequested.get()) {
+                    stopSegments();
+                } else {
+                    rebalanceSegments(segmentUrl, writer, segments, futures, segmentError, segmentRates, maxConnections);
+                }
+                try {
+                    Thread.sleep(SEGMENT_MONITOR_INTERVAL);
+                } catch (InterruptedException e) {
+                    stopSegments();
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+
+                long now = System.currentTimeMillis();
+                if (now - lastUpdateTime >= 1000) { // Atualizar a cada segundo
+                    for (DownloadSegment segment : segments) {
+                        Long previous = lastPositions.put(segment, segment.getPosition());
+                        if (previous != null) {
+                            segmentRates.put(segment, ((segment.getPosition() - previous) * 1000) / (now - lastUpdateTime));
+                        }
+                    }
+                    long downloaded = DownloadSegment.committedBytes(segments);
+                    downloadInfo.setDownloadedSize(downloaded);
+                    int progress = (int) ((downloaded * 100) / totalSize);
+                    downloadInfo.setProgress(Math.min(100, Math.max(0, progress)));
+                    downloadInfo.setSpeed(((downloaded - lastDownloaded) * 1000) / (now - lastUpdateTime));
+                    downloadInfo.calculateEstimatedTimeRemaining();
+                    DownloadProgressBus.getInstance().publish(downloadInfo);
+                    lastUpdateTime = now;
+                    lastDownloaded = downloaded;
+                    recordHostThroughput(downloadInfo.getSpeed());
+                    if (!mirrorSwitchRequested.get() && shouldSwitchMirror(downloadInfo.getSpeed())) {
+                        mirrorSwitchRequested.set(true); // As faixas param e continuam do checkpoint no novo espelho
+                    }
+                }
+                hasher.markWritten(DownloadSegment.contiguousEnd(segments));
+                startHashCatchUp(writer);
+                if (now - lastCheckpointTime >= SEGMENT_CHECKPOINT_INTERVAL) {
+                    saveCheckpoint(writer, segments);
+                    lastCheckpointTime = now;
+                }
+            }
+            awaitSegments(futures);
+
+            if (cancelled.get()) {
+                return SEGMENTED_CANCELLED;
+            }
+
+            boolean allComplete = true;
+            for (DownloadSegment segment : segments) {
+                if (!segment.isComplete()) {
+                    allComplete = false;
+                    break;
+                }
+            }
+
+            if (allComplete) {
+                try {
+                    writer.force();
+                } catch (IOException e) {
+                    Log.w(TAG, "Falha ao sincronizar arquivo: " + e.getMessage());
+                }
+                database.clearSegments(downloadInfo.getFilePath());
+                Log.i(TAG, "Download segmentado concluído para: " + downloadInfo.getFileName());
+                boolean hashed = finishHashes(totalSize);
+                database.clearBlockHashes(downloadInfo.getFilePath(), 0); // Concluído: o digest completo substitui o índice
+                downloadInfo.setDownloadedSize(totalSize);
+                downloadInfo.setStatus(DownloadInfo.STATUS_COMPLETED);
+                downloadInfo.setEndTime(System.currentTimeMillis());
+                downloadInfo.setProgress(100);
                 downloadInfo.setSpeed(0);
                 downloadInfo.setEstimatedTimeRemaining("");
                 mainHandler.post(() -> DownloadManager.getInstance(DownloadService.this).updateDownload(downloadInfo));
+                if (!hashed) {
+                    deferHashes(totalSize);
+                }
                 updateNotification(downloadInfo);
+                return SEGMENTED_COMPLETED;
+            }
+
+            if (mirrorSwitchRequested.getAndSet(false) && segmentError.get() == null && !paused.get()) {
+                saveCheckpoint(writer, segments);
+                downloadInfo.setDownloadedSize(DownloadSegment.committedBytes(segments));
+                Log.i(TAG, "Continuando " + downloadInfo.getFileName() + " no espelho [" + downloadInfo.getCurrentUrlIndex() + "]");
+                return SEGMENTED_SWITCH_MIRROR;
+            }
+
+            if (paused.get()) {
+                // Pausa preserva as faixas: a retomada (ou um reboot) continua de onde cada uma parou
+                saveCheckpoint(writer, segments);
+                downloadInfo.setDownloadedSize(DownloadSegment.committedBytes(segments));
+                downloadInfo.setProgress((int) ((downloadInfo.getDownloadedSize() * 100) / totalSize));
+                return SEGMENTED_PAUSED;
+            }
+
+            Log.w(TAG, "Download segmentado interrompido (" + segmentError.get() + "). Continuando com conexão única.");
+            abandonCheckpoint(fileUri, segments);
+            return SEGMENTED_FAILED;
+        }
+
+        /**
+         * Roubo de trabalho: enquanto houver conexão ociosa (uma faixa terminou), divide ao meio a
+         * faixa com maior tempo restante estimado e entrega a segunda metade a uma nova conexão.
+         * Assim a conclusão acompanha a banda total em vez da conexão mais lenta.
+         */
+        private void rebalanceSegments(String url, PositionalFileWriter writer, List<DownloadSegment> segments,
+                                       List<Future<?>> futures, AtomicReference<String> segmentError,
+                                       Map<DownloadSegment, Long> segmentRates, int maxConnections) {
+            int running = 0;
+            for (Future<?> future : futures) {
+                if (!future.isDone()) running++;
+            }
+            while (running < maxConnections) {
+                DownloadSegment slowest = null;
+                double slowestEta = 0;
+                for (DownloadSegment segment : segments) {
+                    if (segment.getRemainingBytes() < 2 * MIN_STEAL_SIZE) continue;
+                    Long rate = segmentRates.get(segment);
+                    // Sem medição ainda (faixa recém-criada) conta como a mais lenta
+                    double eta = segment.getRemainingBytes() / (double) Math.max(1, rate != null ? rate : 0);
+                    if (eta > slowestEta) {
+                        slowestEta = eta;
+                        slowest = segment;
+                    }
+                }
+                if (slowest == null) return;
+
+                int nextIndex = 0;
+                for (DownloadSegment segment : segments) {
+                    nextIndex = Math.max(nextIndex, segment.getIndex() + 1);
+                }
+                DownloadSegment stolen = slowest.split(nextIndex, MIN_STEAL_SIZE);
+                if (stolen == null) return;
+                segments.add(stolen);
+                futures.add(segmentExecutor.submit(() -> downloadSegment(url, writer, stolen, segmentError)));
+                running++;
+                Log.i(TAG, String.format("Faixa %d dividida: faixa %d assume bytes %d-%d (%s)",
+                        slowest.getIndex(), stolen.getIndex(), stolen.getStart(), stolen.getEnd(), downloadInfo.getFileName()));
+            }
+        }
+
+        /**
+         * Reaproveita o checkpoint salvo se ele ainda descreve este arquivo; caso contrário o descarta.
+         * @return faixas a continuar, ou null se for preciso planejar a partir do trecho contíguo
+         */
+        private List<DownloadSegment> restoreCheckpoint(Uri fileUri, List<DownloadSegment> checkpoint,
+                                                        long totalSize, PositionalFileWriter writer) throws IOException {
+            if (checkpoint.isEmpty()) return null;
+            long planEnd = -1;
+            for (DownloadSegment segment : checkpoint) {
+                planEnd = Math.max(planEnd, segment.getEnd());
+            }
+            boolean valid = downloadInfo.getDownloadedSize() > 0 // 0 significa reinício solicitado
+                    && planEnd == totalSize - 1
+                    && writer.size() >= DownloadSegment.highestPosition(checkpoint);
+            if (valid) {
+                long committed = DownloadSegment.committedBytes(checkpoint);
+                int pending = 0;
+                for (DownloadSegment segment : checkpoint) {
+                    if (!segment.isComplete()) pending++;
+                }
+                Log.i(TAG, "Retomando de checkpoint com " + checkpoint.size() + " faixas, " + pending + " pendentes ("
+                        + committed + " bytes gravados): " + downloadInfo.getFileName());
+                downloadInfo.setDownloadedSize(committed);
+                return checkpoint;
+            }
+            Log.w(TAG, "Checkpoint de segmentos não corresponde ao arquivo. Descartando: " + downloadInfo.getFileName());
+            abandonCheckpoint(fileUri, checkpoint);
+            return null;
+        }
+
+        /**
+         * Descarta o checkpoint e reduz o arquivo ao trecho contíguo desde o início,
+         * que a conexão única (ou um novo plano de faixas) sabe continuar.
+         */
+        private void abandonCheckpoint(Uri fileUri, List<DownloadSegment> segments) {
+            if (segments == null || segments.isEmpty()) return;
+            long contiguousEnd = downloadInfo.getDownloadedSize() > 0 ? DownloadSegment.contiguousEnd(segments) : 0;
+            try {
+                PositionalFileWriter writer = getFileWriter(fileUri);
+                contiguousEnd = Math.min(contiguousEnd, writer.size());
+                writer.truncate(contiguousEnd);
+                writer.force();
+            } catch (IOException e) {
+                Log.e(TAG, "Erro ao truncar arquivo segmentado: " + e.getMessage());
+            }
+            DownloadDatabase.getInstance(DownloadService.this).clearSegments(downloadInfo.getFilePath());
+            downloadInfo.setDownloadedSize(contiguousEnd);
+            if (downloadInfo.getFileSize() > 0) {
+                downloadInfo.setProgress((int) ((contiguousEnd * 100) / downloadInfo.getFileSize()));
+            }
+        }
+
+        /**
+         * Grava as posições atuais das faixas. As posições são copiadas antes do fsync,
+         * então o checkpoint nunca aponta para bytes que ainda não chegaram ao armazenamento.
+         */
+        private void saveCheckpoint(PositionalFileWriter writer, List<DownloadSegment> segments) {
+            List<DownloadSegment> snapshot = new ArrayList<>(segments.size());
+            for (DownloadSegment segment : segments) {
+                snapshot.add(segment.snapshot());
+            }
+            try {
+                writer.force();
+            } catch (IOException e) {
+                Log.w(TAG, "Falha ao sincronizar arquivo para checkpoint: " + e.getMessage());
+                return;
+            }
+            DownloadDatabase.getInstance(DownloadService.this).saveSegments(downloadInfo.getFilePath(), snapshot);
+            saveBlockHashes();
+        }
+
+        /**
+         * Grava os CRCs dos blocos completados pelo hasher desde a última chamada. Usados na
+         * próxima retomada para conferir só os últimos blocos (DownloadResumeHelper).
+         */
+        private void saveBlockHashes() {
+            List<long[]> blocks = hasher.drainCompletedBlocks();
+            if (!blocks.isEmpty()) {
+                DownloadDatabase.getInstance(DownloadService.this).saveBlockHashes(downloadInfo.getFilePath(), blocks);
+            }
+        }
+
+        /**
+         * Executado em segmentExecutor: baixa a faixa do segmento escrevendo na posição exata do arquivo.
+         */
+        private void downloadSegment(String urlString, PositionalFileWriter writer, DownloadSegment segment, AtomicReference<String> segmentError) {
+            long cpuStart = metrics.threadStart();
+            BufferPool.AdaptiveBuffer chunk = new BufferPool.AdaptiveBuffer(BufferPool.MIN_CHUNK * 4);
+            try {
+                SegmentTransfer.download((from, to) -> newRangeCall(urlString, from, to), segmentCalls, writer, segment,
+                        hasher, chunk, segmentsStopped, MAX_SEGMENT_RETRIES,
+                        bytes -> {
+                            bandwidthGovernor.acquire(downloadInfo.getFilePath(), bytes);
+                            metrics.onBytesReceived();
+                        },
+                        (attempts, e) -> Log.w(TAG, "Erro no segmento " + segment.getIndex() + " (tentativa " + attempts + "): " + e.getMessage()));
+            } catch (IOException e) {
+                hostHealth.recordFailure(downloadInfo.getUrl(), -1, null);
+                segmentError.compareAndSet(null, "Segmento " + segment.getIndex() + ": " + e.getMessage());
+                stopSegments();
+            } finally {
+                chunk.release();
+                metrics.threadEnd(cpuStart);
+            }
+        }
+
+        private long parseContentRangeTotal(String contentRange) {
+            // Formato: "bytes 0-0/12345"
+            if (contentRange == null) return -1;
+            int slash = contentRange.lastIndexOf('/');
+            if (slash < 0 || slash == contentRange.length() - 1) return -1;
+            try {
+                return Long.parseLong(contentRange.substring(slash + 1).trim());
+            } catch (NumberFormatException e) {
+                return -1; // Tamanho "*" (desconhecido)
             }
-            // Esperar pela retomada
-            synchronized (this) {
-                while (paused.get() && !cancelled.get()) {
+        }
+
+        private boolean allSegmentsDone(List<Future<?>> futures) {
+            for (Future<?> future : futures) {
+                if (!future.isDone()) return false;
+            }
+            return true;
+        }
+
+        private void awaitSegments(List<Future<?>> futures) {
+            boolean interrupted = false;
+            for (Future<?> future : futures) {
+                while (true) {
                     try {
-                        wait(5000); // Esperar com timeout para re-verificar cancelamento
+                        future.get();
+                        break;
                     } catch (InterruptedException e) {
-                        Log.w(TAG, "Thread interrompida enquanto pausada: " + downloadInfo.getFileName());
-                        Thread.currentThread().interrupt();
-                        if (cancelled.get()) break;
+                        interrupted = true;
+                    } catch (ExecutionException e) {
+                        Log.e(TAG, "Erro inesperado em segmento: " + e.getCause());
+                        break;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void stopSegments() {
+            if (segmentsStopped.compareAndSet(false, true)) {
+                // Cancelar para liberar conexões e leituras bloqueadas
+                synchronized (segmentCalls) {
+                    for (Call segmentCall : segmentCalls) {
+                        segmentCall.cancel();
                     }
                 }
             }
-            if (!cancelled.get()) {
-                Log.d(TAG, "Download retomado (detectado após wait): " + downloadInfo.getFileName());
-                // O status será atualizado para RESUMING/RUNNING no início do próximo loop
-                downloadInfo.setLastResumeTime(System.currentTimeMillis());
-                // Não precisa notificar aqui, o loop principal fará
+        }
+
+        private PositionalFileWriter getFileWriter(Uri fileUri) throws IOException {
+            if (fileWriter == null || !fileWriter.isOpen()) {
+                fileWriter = PositionalFileWriter.open(DownloadService.this, fileUri);
+            }
+            return fileWriter;
+        }
+
+        private void closeFileWriter() {
+            if (fileWriter == null) return;
+            try {
+                fileWriter.force();
+                fileWriter.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Erro ao fechar arquivo destino", e);
+            }
+            fileWriter = null;
+        }
+
+        /**
+         * A pausa encerra a tarefa em vez de estacionar a thread: o estado já está salvo
+         * (downloadedSize, checkpoint das faixas, índice de blocos), o status PAUSED libera a vaga
+         * no DownloadManager e a retomada passa pela fila e cria uma nova tarefa a partir do checkpoint.
+         */
+        private void handlePause() {
+            Log.d(TAG, "Download pausado (detectado): " + downloadInfo.getFileName());
+            closeResources(); // Fechar conexão e streams ao pausar
+            stopHashCatchUp(true); // Blocos fechados pela releitura entram no índice abaixo
+            saveBlockHashes();
+            if (downloadInfo.getStatus() != DownloadInfo.STATUS_PAUSED) {
+                downloadInfo.setStatus(DownloadInfo.STATUS_PAUSED);
+                downloadInfo.setLastPauseTime(System.currentTimeMillis());
+                downloadInfo.setSpeed(0);
+                downloadInfo.setEstimatedTimeRemaining("");
+                mainHandler.post(() -> DownloadManager.getInstance(DownloadService.this).updateDownload(downloadInfo));
+                updateNotification(downloadInfo);
             }
         }
 
         private void handleCancellation() {
             Log.w(TAG, "Tratando cancelamento para: " + downloadInfo.getFileName());
             closeResources();
+            stopHashCatchUp(true);
+            closeFileWriter();
             deletePartialFileSafely(downloadInfo.getFilePath()); // Deletar arquivo ao cancelar
             if (downloadInfo.getStatus() != DownloadInfo.STATUS_CANCELLED) {
                 downloadInfo.setStatus(DownloadInfo.STATUS_CANCELLED);
                 mainHandler.post(() -> DownloadManager.getInstance(DownloadService.this).updateDownload(downloadInfo));
                 // Notificação já removida em cancelDownloadInternal
             }
-            finished.set(true);
-            active.set(false);
-            activeTasksByPath.remove(downloadInfo.getFilePath());
-            stopSelfIfIdle();
         }
 
         private void handleError(String message, boolean tryNextUrl) {
             Log.e(TAG, "Erro no download " + downloadInfo.getFileName() + ": " + message);
             closeResources();
             if (tryNextUrl && !cancelled.get() && !paused.get()) {
-                if (!tryNextSourceUrl()) {
-                    // Falhou em tentar a próxima URL (sem mais URLs ou limite atingido)
-                    reportFailure("Falha após múltiplas tentativas: " + message);
-                }
-                // Se tryNextSourceUrl() retornou true, o loop while continuará
+                // O laço principal troca de URL (ou agenda nova tentativa) ao fim da iteração
+                hostHealth.recordFailure(downloadInfo.getUrl(), -1, null);
+                lastError = message;
             } else {
                 // Erro fatal ou tarefa foi cancelada/pausada durante o erro
                 if (!cancelled.get() && !paused.get()) {
@@ -851,15 +1670,15 @@ public class DownloadService extends Service {
             }
         }
 
-        private void handleHttpError(int responseCode, String message, boolean tryNextUrl) {
+        private void handleHttpError(int responseCode, String message, String retryAfter, boolean tryNextUrl) {
              String errorMsg = "Erro HTTP " + responseCode + ": " + message;
              Log.e(TAG, "Erro HTTP no download " + downloadInfo.getFileName() + " URL " + downloadInfo.getUrl() + ": " + errorMsg);
              closeResources();
+             hostHealth.recordFailure(downloadInfo.getUrl(), responseCode, retryAfter);
              if (tryNextUrl && !cancelled.get() && !paused.get()) {
-                 if (!tryNextSourceUrl()) {
-                     reportFailure("Falha após múltiplas tentativas HTTP: " + errorMsg);
-                 }
-                 // Se tryNextSourceUrl() retornou true, o loop while continuará
+                 lastError = errorMsg;
+                 advanceOrScheduleRetry();
+                 // Se trocou de URL, o loop while continuará
              } else {
                  if (!cancelled.get() && !paused.get()) {
                       reportFailure(errorMsg);
@@ -867,8 +1686,22 @@ public class DownloadService extends Service {
              }
         }
 
+        /**
+         * Registra no livro-razão o espaço que ainda falta para totalSize; se o volume não
+         * comporta (contando o reservado para outros downloads), reporta falha.
+         * @return false se o download não cabe no destino
+         */
+        private boolean reserveDiskSpace(long totalSize) {
+            long shortfall = diskSpaceLedger.reserve(downloadInfo.getFilePath(), totalSize);
+            if (shortfall <= 0) return true;
+            reportFailure("Espaço insuficiente no destino: faltam " + FileUtils.formatFileSize(shortfall));
+            return false;
+        }
+
         private void reportFailure(String message) {
              Log.e(TAG, "Reportando falha final para: " + downloadInfo.getFileName());
+             gaveUp = true;
+             retryScheduler.reset(downloadInfo.getFilePath());
              downloadInfo.setStatus(DownloadInfo.STATUS_FAILED);
              downloadInfo.setErrorMessage(message);
              downloadInfo.setSpeed(0);
@@ -878,33 +1711,64 @@ public class DownloadService extends Service {
              // A tarefa será finalizada e removida no fim do run()
         }
 
+        /**
+         * Troca para a próxima URL viável; se a rodada acabou, agenda uma nova tentativa.
+         * @return true se há uma URL para continuar nesta tarefa
+         */
+        private boolean advanceOrScheduleRetry() {
+            if (tryNextSourceUrl()) return true;
+            Log.e(TAG, "Download falhou para todas as URLs: " + downloadInfo.getFileName());
+            scheduleRetryOrFail(lastError != null ? lastError : "Nenhuma URL disponível");
+            return false;
+        }
+
+        /**
+         * Encerra esta tarefa sem marcar FAILED: o download fica em RESUMING e uma nova tarefa é
+         * agendada após backoff exponencial com jitter (ou o Retry-After do host mais próximo de
+         * liberar, se for maior). O worker é liberado durante a espera.
+         */
+        private void scheduleRetryOrFail(String message) {
+            gaveUp = true;
+            String filePath = downloadInfo.getFilePath();
+            int attempt = retryScheduler.nextAttempt(filePath);
+            if (attempt > MAX_RETRY_ROUNDS) {
+                reportFailure("Falha após " + MAX_RETRY_ROUNDS + " rodadas de tentativas: " + message);
+                return;
+            }
+            List<String> urls = downloadInfo.getSourceUrls();
+            if (urls == null || urls.isEmpty()) {
+                urls = Collections.singletonList(downloadInfo.getUrl());
+            }
+            long delay = Math.max(retryScheduler.backoffDelay(attempt), hostHealth.getEarliestAvailableDelay(urls));
+            Log.w(TAG, String.format("Nova tentativa %d/%d para %s em %d ms", attempt, MAX_RETRY_ROUNDS, downloadInfo.getFileName(), delay));
+            downloadInfo.setStatus(DownloadInfo.STATUS_RESUMING);
+            downloadInfo.setErrorMessage(String.format("Nova tentativa em %d s: %s", Math.max(1, delay / 1000), message));
+            downloadInfo.setSpeed(0);
+            downloadInfo.setEstimatedTimeRemaining("");
+            mainHandler.post(() -> DownloadManager.getInstance(DownloadService.this).updateDownload(downloadInfo));
+            updateNotification(downloadInfo);
+            scheduleRetry(downloadInfo, delay);
+        }
+
+        /**
+         * Próxima URL desta rodada, da mais saudável para a menos (HostHealthTracker). Hosts em
+         * espera são pulados sem conexão; cada URL é tentada no máximo uma vez por rodada.
+         */
         private boolean tryNextSourceUrl() {
             List<String> urls = downloadInfo.getSourceUrls();
             if (urls == null || urls.size() <= 1) {
                 return false; // Nenhuma outra URL para tentar
             }
-            
-            int currentIdx = downloadInfo.getCurrentUrlIndex();
-            int startIdx = currentIdx;
-            int attempts = 0;
-            int maxAttempts = urls.size();
-
-            // Tentar cada URL disponível, mas de forma inteligente
-            do {
-                attempts++;
-                int nextIdx = (currentIdx + attempts) % urls.size();
-                
-                // Verificar se completou uma volta na lista
-                if (nextIdx <= startIdx && attempts > 1) {
-                    urlRetryCount++;
-                    Log.w(TAG, "Completou volta " + urlRetryCount + " na lista de URLs para: " + downloadInfo.getFileName());
-                    if (urlRetryCount >= MAX_URL_RETRIES) {
-                        Log.e(TAG, "Atingiu limite máximo de retries (" + MAX_URL_RETRIES + ") para: " + downloadInfo.getFileName());
-                        return false; // Atingiu limite de retries
-                    }
-                }
+            failedUrlIndices.add(downloadInfo.getCurrentUrlIndex());
 
+            for (int nextIdx : hostHealth.rank(urls)) {
+                if (failedUrlIndices.contains(nextIdx)) continue;
                 String candidateUrl = urls.get(nextIdx);
+                if (!hostHealth.isAvailable(candidateUrl)) {
+                    Log.i(TAG, "URL [" + nextIdx + "] em espera por mais " + hostHealth.getBlockedDelay(candidateUrl) / 1000 + " s; pulando");
+                    failedUrlIndices.add(nextIdx);
+                    continue;
+                }
                 Log.i(TAG, "Testando URL candidata [" + nextIdx + "]: " + candidateUrl);
 
                 // Testar se esta URL suporta retomada se há dados parciais
@@ -927,10 +1791,7 @@ public class DownloadService extends Service {
                             if (nextIdx == 0) {
                                 Log.i(TAG, "Primeira URL não suporta retomada, mas será usada para reiniciar download");
                                 urlViable = true;
-                                // Resetar arquivo parcial já que vamos reiniciar
-                                downloadInfo.setDownloadedSize(0);
-                                downloadInfo.setProgress(0);
-                                deletePartialFileSafely(downloadInfo.getFilePath());
+                                restartFromScratch(); // Resetar arquivo parcial já que vamos reiniciar
                             }
                         } else {
                             Log.i(TAG, "URL [" + nextIdx + "] suporta retomada: " + resumeTest.reason);
@@ -951,32 +1812,41 @@ public class DownloadService extends Service {
                     
                     // Atualizar o manager para que a UI possa refletir a URL ativa
                     mainHandler.post(() -> DownloadManager.getInstance(DownloadService.this).updateDownload(downloadInfo));
-                    
-                    // Pausa curta antes de tentar a próxima URL
-                    try {
-                        Thread.sleep(500);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        return false;
-                    }
                     return true;
                 }
-                
-            } while (attempts < maxAttempts);
+                failedUrlIndices.add(nextIdx);
+            }
 
-            Log.e(TAG, "Nenhuma URL viável encontrada após testar " + attempts + " URLs");
+            Log.e(TAG, "Nenhuma URL viável nesta rodada (" + failedUrlIndices.size() + " de " + urls.size() + " falharam ou estão em espera)");
             return false;
         }
 
-        private void closeResources() {
+        /**
+         * Recomeça do byte 0 no mesmo documento. O escritor em cache é fechado e o arquivo truncado
+         * (não apagado: a tarefa seguiria gravando no descritor do documento removido); hash,
+         * checkpoint das faixas e índice de blocos descreviam o conteúdo antigo e são descartados.
+         */
+        private void restartFromScratch() {
+            closeFileWriter();
             try {
-                if (outputStream != null) {
-                    outputStream.flush();
-                    outputStream.close();
-                }
+                PositionalFileWriter writer = getFileWriter(Uri.parse(downloadInfo.getFilePath()));
+                writer.truncate(0);
+                writer.force();
             } catch (IOException e) {
-                Log.e(TAG, "Erro ao fechar OutputStream", e);
+                Log.e(TAG, "Erro ao truncar arquivo para reiniciar: " + e.getMessage());
             }
+            stopHashCatchUp(true);
+            hasher.reset();
+            DownloadDatabase database = DownloadDatabase.getInstance(DownloadService.this);
+            database.clearSegments(downloadInfo.getFilePath());
+            database.clearBlockHashes(downloadInfo.getFilePath(), 0);
+            downloadInfo.setDownloadedSize(0);
+            downloadInfo.setProgress(0);
+        }
+
+        private void closeResources() {
+            stopSegments();
+            stopHashCatchUp(false);
             try {
                 if (inputStream != null) {
                     inputStream.close();
@@ -984,13 +1854,14 @@ public class DownloadService extends Service {
             } catch (IOException e) {
                 Log.e(TAG, "Erro ao fechar InputStream", e);
             }
-            if (connection != null) {
-                connection.disconnect();
+            Call current = call;
+            if (current != null) {
+                current.cancel();
             }
-            outputStream = null;
+            DownloadHttpClient.release(response);
             inputStream = null;
-            connection = null;
+            response = null;
+            call = null;
         }
     }
 }
-
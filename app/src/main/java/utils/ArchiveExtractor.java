@@ -0,0 +1,516 @@
+package com.LDGAMES.utils;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import androidx.documentfile.provider.DocumentFile;
+
+import com.LDGAMES.models.DownloadInfo;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Extração de arquivos .zip baixados para uma pasta nova (nome do arquivo sem a extensão) na
+ * árvore SAF de downloads. Dois caminhos:
+ * <ul>
+ *   <li>{@link StreamSession}: recebe os bytes do laço de download enquanto eles chegam em ordem
+ *   desde o byte 0 e extrai em paralelo, sem reler o arquivo do armazenamento;</li>
+ *   <li>{@link #extractFile}: job depois da conclusão (download segmentado, retomado ou extração
+ *   em stream interrompida), lendo o arquivo por janelas mapeadas do FileChannel.</li>
+ * </ul>
+ * Antes de extrair, o tamanho descompactado é reservado no {@link DiskSpaceLedger}: exato pelo
+ * diretório central no job, estimado pelo tamanho do .zip em stream (o diretório central só chega
+ * no fim). Em falha a pasta parcial é removida.
+ */
+public class ArchiveExtractor {
+    private static final String TAG = "ArchiveExtractor";
+    public static final String PREF_AUTO_EXTRACT = "auto_extract_archives"; // Chave em app_settings
+    private static final int STREAM_QUEUE_CHUNKS = 64; // Leituras em trânsito entre download e extração
+    private static final long MAP_WINDOW = 32L * 1024 * 1024; // Janela de mmap do job de fallback
+    private static final int COPY_BUFFER = 256 * 1024;
+    private static final int STREAM_SIZE_ESTIMATE = 2; // Descompactado ~ 2x o .zip enquanto o tamanho real é desconhecido
+    private static final long MAX_CENTRAL_DIRECTORY = 64L * 1024 * 1024; // Acima disso, estimar em vez de ler
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+    private static final int CENTRAL_ENTRY_SIGNATURE = 0x02014b50;
+
+    /**
+     * Pasta criada e arquivos gravados por uma extração concluída.
+     */
+    public static class Extraction {
+        public final DocumentFile directory;
+        public final int files;
+
+        Extraction(DocumentFile directory, int files) {
+            this.directory = directory;
+            this.files = files;
+        }
+
+        /**
+         * Texto para a UI, ex: "42 arquivos em MeuJogo".
+         */
+        public String describe() {
+            return files + (files == 1 ? " arquivo em " : " arquivos em ") + directory.getName();
+        }
+    }
+
+    public static boolean isEnabled(Context context) {
+        return context.getSharedPreferences("app_settings", Context.MODE_PRIVATE)
+                .getBoolean(PREF_AUTO_EXTRACT, false);
+    }
+
+    public static boolean isSupported(DownloadInfo downloadInfo) {
+        String name = downloadInfo.getFileName();
+        String mimeType = downloadInfo.getMimeType();
+        return (name != null && name.toLowerCase(Locale.US).endsWith(".zip")) ||
+               "application/zip".equals(mimeType) || "application/x-zip-compressed".equals(mimeType);
+    }
+
+    /**
+     * Inicia a extração em paralelo ao download. Chamar só quando os próximos bytes gravados
+     * serão o início do arquivo e chegarão em ordem. Faz E/S (reserva de espaço).
+     * @return null se o tamanho é desconhecido ou não há espaço para a estimativa; o job depois
+     * da conclusão extrai com o tamanho exato
+     */
+    public static StreamSession startStreaming(Context context, DownloadInfo downloadInfo) {
+        if (downloadInfo.getFileSize() <= 0) return null;
+        long estimate = downloadInfo.getFileSize() * STREAM_SIZE_ESTIMATE;
+        long shortfall = DiskSpaceLedger.getInstance(context).reserveExtraction(downloadInfo.getFilePath(), estimate);
+        if (shortfall > 0) {
+            Log.i(TAG, "Sem espaço para extrair em stream " + downloadInfo.getFileName() + " (faltam "
+                    + FileUtils.formatFileSize(shortfall) + "), extraindo depois do download");
+            return null;
+        }
+        return new StreamSession(context.getApplicationContext(), downloadInfo.getFileName(), downloadInfo.getFilePath());
+    }
+
+    /**
+     * Extrai um download já concluído lendo o arquivo por mmap (leitura comum se o provedor
+     * não permitir mapear o descritor).
+     */
+    public static Extraction extractFile(Context context, DownloadInfo downloadInfo) throws IOException {
+        ParcelFileDescriptor pfd = context.getContentResolver().openFileDescriptor(Uri.parse(downloadInfo.getFilePath()), "r");
+        if (pfd == null) {
+            throw new IOException("Não foi possível abrir " + downloadInfo.getFileName());
+        }
+        DiskSpaceLedger ledger = DiskSpaceLedger.getInstance(context);
+        try (FileInputStream stream = new FileInputStream(pfd.getFileDescriptor());
+             FileChannel channel = stream.getChannel()) {
+            long uncompressed = uncompressedSize(channel);
+            if (uncompressed < 0) {
+                uncompressed = channel.size() * STREAM_SIZE_ESTIMATE;
+            }
+            long shortfall = ledger.reserveExtraction(downloadInfo.getFilePath(), uncompressed);
+            if (shortfall > 0) {
+                throw new IOException("Espaço insuficiente para extrair (faltam " + FileUtils.formatFileSize(shortfall) + ")");
+            }
+            return extract(context, downloadInfo.getFileName(), new MappedInputStream(channel), null, downloadInfo.getFilePath());
+        } finally {
+            ledger.releaseExtraction(downloadInfo.getFilePath());
+            pfd.close();
+        }
+    }
+
+    /**
+     * Soma dos tamanhos descompactados pelo diretório central (inclusive ZIP64).
+     * @return -1 se o diretório central não puder ser lido
+     */
+    static long uncompressedSize(FileChannel channel) throws IOException {
+        long size = channel.size();
+        int tailLength = (int) Math.min(size, 22 + 0xFFFF); // EOCD + comentário máximo
+        ByteBuffer tail = readAt(channel, size - tailLength, tailLength);
+        if (tail == null) return -1;
+        int eocd = -1;
+        for (int i = tailLength - 22; i >= 0; i--) {
+            if (tail.getInt(i) == EOCD_SIGNATURE) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0) return -1;
+        long entries = tail.getShort(eocd + 10) & 0xFFFF;
+        long directorySize = tail.getInt(eocd + 12) & 0xFFFFFFFFL;
+        long directoryOffset = tail.getInt(eocd + 16) & 0xFFFFFFFFL;
+        if (entries == 0xFFFF || directoryOffset == 0xFFFFFFFFL || directorySize == 0xFFFFFFFFL) {
+            // ZIP64: o localizador logo antes do EOCD aponta para o registro com os valores de 64 bits
+            if (eocd < 20 || tail.getInt(eocd - 20) != ZIP64_LOCATOR_SIGNATURE) return -1;
+            ByteBuffer record = readAt(channel, tail.getLong(eocd - 20 + 8), 56);
+            if (record == null || record.getInt(0) != ZIP64_EOCD_SIGNATURE) return -1;
+            entries = record.getLong(32);
+            directorySize = record.getLong(40);
+            directoryOffset = record.getLong(48);
+        }
+        if (directorySize <= 0 || directorySize > MAX_CENTRAL_DIRECTORY) return -1;
+        ByteBuffer directory = readAt(channel, directoryOffset, (int) directorySize);
+        if (directory == null) return -1;
+
+        long total = 0;
+        int position = 0;
+        for (long i = 0; i < entries; i++) {
+            if (position + 46 > directorySize || directory.getInt(position) != CENTRAL_ENTRY_SIGNATURE) return -1;
+            long uncompressed = directory.getInt(position + 24) & 0xFFFFFFFFL;
+            int nameLength = directory.getShort(position + 28) & 0xFFFF;
+            int extraLength = directory.getShort(position + 30) & 0xFFFF;
+            int commentLength = directory.getShort(position + 32) & 0xFFFF;
+            if (uncompressed == 0xFFFFFFFFL) {
+                // Tamanho real no campo extra ZIP64 (id 0x0001), primeiro valor de 64 bits
+                uncompressed = -1;
+                int extra = position + 46 + nameLength;
+                int extraEnd = Math.min(extra + extraLength, (int) directorySize);
+                while (extra + 4 <= extraEnd) {
+                    int id = directory.getShort(extra) & 0xFFFF;
+                    int length = directory.getShort(extra + 2) & 0xFFFF;
+                    if (id == 0x0001 && length >= 8 && extra + 12 <= extraEnd) {
+                        uncompressed = directory.getLong(extra + 4);
+                        break;
+                    }
+                    extra += 4 + length;
+                }
+                if (uncompressed < 0) return -1;
+            }
+            total += uncompressed;
+            position += 46 + nameLength + extraLength + commentLength;
+        }
+        return total;
+    }
+
+    /**
+     * length bytes a partir de position, little-endian como os campos do zip; null se o arquivo acabar antes.
+     */
+    private static ByteBuffer readAt(FileChannel channel, long position, int length) throws IOException {
+        if (position < 0 || length < 0) return null;
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) <= 0) return null;
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @param archivePath arquivo baixado; os bytes gravados são descontados da reserva dele no DiskSpaceLedger
+     */
+    private static Extraction extract(Context context, String archiveName, InputStream input, AtomicBoolean cancelled,
+                                      String archivePath) throws IOException {
+        String treeUri = context.getSharedPreferences("app_settings", Context.MODE_PRIVATE).getString("download_uri", null);
+        DocumentFile tree = treeUri != null ? DocumentFile.fromTreeUri(context, Uri.parse(treeUri)) : null;
+        if (tree == null || !tree.canWrite()) {
+            throw new IOException("Pasta de download inacessível");
+        }
+        DocumentFile root = tree.createDirectory(baseName(archiveName)); // O provedor renomeia se já existir
+        if (root == null) {
+            throw new IOException("Não foi possível criar a pasta de destino");
+        }
+
+        Map<String, DocumentFile> directories = new HashMap<>(); // Caminho relativo -> pasta já criada
+        directories.put("", root);
+        DiskSpaceLedger ledger = DiskSpaceLedger.getInstance(context);
+        byte[] buffer = BufferPool.getInstance().acquire(COPY_BUFFER);
+        int files = 0;
+        long written = 0;
+        boolean success = false;
+        try (ZipInputStream zip = new ZipInputStream(input)) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (cancelled != null && cancelled.get()) {
+                    throw new IOException("Extração interrompida");
+                }
+                String path = sanitize(entry.getName());
+                if (path == null) {
+                    Log.w(TAG, "Entrada ignorada (caminho inválido): " + entry.getName());
+                    continue;
+                }
+                if (entry.isDirectory()) {
+                    directoryFor(directories, path);
+                    continue;
+                }
+                int slash = path.lastIndexOf('/');
+                DocumentFile parent = directoryFor(directories, slash > 0 ? path.substring(0, slash) : "");
+                DocumentFile target = parent.createFile("application/octet-stream", path.substring(slash + 1));
+                if (target == null) {
+                    throw new IOException("Não foi possível criar " + path);
+                }
+                try (OutputStream out = context.getContentResolver().openOutputStream(target.getUri())) {
+                    if (out == null) throw new IOException("Não foi possível abrir " + path);
+                    int read;
+                    while ((read = zip.read(buffer)) != -1) { // ZipInputStream confere o CRC de cada entrada
+                        out.write(buffer, 0, read);
+                        written += read;
+                    }
+                }
+                files++;
+                ledger.onExtracted(archivePath, written);
+            }
+            success = true;
+        } finally {
+            BufferPool.getInstance().release(buffer);
+            if (!success) {
+                root.delete();
+            }
+        }
+        Log.i(TAG, "Extraídos " + files + " arquivos de " + archiveName);
+        return new Extraction(root, files);
+    }
+
+    private static DocumentFile directoryFor(Map<String, DocumentFile> directories, String path) throws IOException {
+        DocumentFile directory = directories.get(path);
+        if (directory != null) return directory;
+        int slash = path.lastIndexOf('/');
+        DocumentFile parent = directoryFor(directories, slash > 0 ? path.substring(0, slash) : "");
+        directory = parent.createDirectory(path.substring(slash + 1));
+        if (directory == null) {
+            throw new IOException("Não foi possível criar a pasta " + path);
+        }
+        directories.put(path, directory);
+        return directory;
+    }
+
+    /**
+     * Normaliza o nome da entrada; null se sair da pasta de destino ("..", absoluto) ou for vazio.
+     */
+    private static String sanitize(String name) {
+        StringBuilder path = new StringBuilder();
+        for (String part : name.replace('\\', '/').split("/")) {
+            if (part.isEmpty() || part.equals(".")) continue;
+            if (part.equals("..")) return null;
+            if (path.length() > 0) path.append('/');
+            path.append(part);
+        }
+        return path.length() > 0 ? path.toString() : null;
+    }
+
+    private static String baseName(String archiveName) {
+        int dot = archiveName.lastIndexOf('.');
+        return dot > 0 ? archiveName.substring(0, dot) : archiveName + "_extraido";
+    }
+
+    /**
+     * Extração alimentada pelo laço de download. {@link #feed} copia cada leitura para um buffer
+     * do BufferPool numa fila limitada (se a extração ficar para trás, o download espera); a
+     * extração roda na sua própria thread e devolve cada buffer ao pool depois de consumi-lo.
+     * Se ela falhar, feed passa a ignorar os dados e o download segue normalmente.
+     */
+    public static class StreamSession {
+        private static final Chunk END = new Chunk(null, 0);
+
+        private final BlockingQueue<Chunk> queue = new ArrayBlockingQueue<>(STREAM_QUEUE_CHUNKS);
+        private final AtomicBoolean aborted = new AtomicBoolean(false);
+        private final Thread thread;
+        private volatile Extraction extraction;
+        private volatile IOException error;
+        private long fedBytes = 0;
+
+        /**
+         * Trecho em trânsito: buffer do pool e quantos bytes dele valem.
+         */
+        private static class Chunk {
+            final byte[] data;
+            final int length;
+
+            Chunk(byte[] data, int length) {
+                this.data = data;
+                this.length = length;
+            }
+        }
+
+        private StreamSession(Context context, String archiveName, String archivePath) {
+            thread = new Thread(() -> {
+                try {
+                    extraction = extract(context, archiveName, new QueueInputStream(), aborted, archivePath);
+                } catch (IOException e) {
+                    error = e;
+                    Log.w(TAG, "Extração em stream de " + archiveName + " falhou: " + e.getMessage());
+                } finally {
+                    DiskSpaceLedger.getInstance(context).releaseExtraction(archivePath);
+                    drain(); // Trechos que a extração não chegou a ler
+                }
+            }, "archive-stream");
+            thread.start();
+        }
+
+        /**
+         * Bytes entregues até agora (offset do próximo byte esperado).
+         */
+        public long getFedBytes() {
+            return fedBytes;
+        }
+
+        public void feed(byte[] data, int offset, int length) {
+            if (length <= 0 || aborted.get()) return;
+            fedBytes += length;
+            while (length > 0) {
+                if (!thread.isAlive()) return; // Falhou, ou o zip terminou antes do diretório central
+                int count = Math.min(length, BufferPool.MAX_CHUNK);
+                byte[] copy = BufferPool.getInstance().acquire(count);
+                System.arraycopy(data, offset, copy, 0, count);
+                Chunk chunk = new Chunk(copy, count);
+                try {
+                    while (!queue.offer(chunk, 200, TimeUnit.MILLISECONDS)) {
+                        if (!thread.isAlive() || aborted.get()) {
+                            BufferPool.getInstance().release(copy);
+                            return;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    BufferPool.getInstance().release(copy);
+                    Thread.currentThread().interrupt();
+                    abort();
+                    return;
+                }
+                offset += count;
+                length -= count;
+            }
+        }
+
+        /**
+         * Todos os bytes foram entregues: espera a extração terminar.
+         * @return resultado, ou null se a extração falhou (usar o job de fallback)
+         */
+        public Extraction finish() {
+            try {
+                while (thread.isAlive() && !queue.offer(END, 200, TimeUnit.MILLISECONDS)) {
+                    // Fila cheia: a extração ainda está consumindo
+                }
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                abort();
+                return null;
+            }
+            return error == null ? extraction : null;
+        }
+
+        /**
+         * Download não terminou nesta sessão: interrompe e descarta o que já foi extraído.
+         */
+        public void abort() {
+            if (!aborted.compareAndSet(false, true)) return;
+            drain();
+            queue.offer(END);
+            Extraction done = extraction;
+            if (done != null) {
+                done.directory.delete(); // Extraiu tudo, mas o job pós-download fará de novo
+            }
+        }
+
+        /**
+         * Esvazia a fila devolvendo os buffers ao pool.
+         */
+        private void drain() {
+            Chunk chunk;
+            while ((chunk = queue.poll()) != null) {
+                BufferPool.getInstance().release(chunk.data);
+            }
+        }
+
+        /**
+         * Lado de leitura da fila, consumido pelo ZipInputStream.
+         */
+        private class QueueInputStream extends InputStream {
+            private Chunk current = null;
+            private int position = 0;
+
+            @Override
+            public int read() throws IOException {
+                byte[] single = new byte[1];
+                int read = read(single, 0, 1);
+                return read == -1 ? -1 : single[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) return 0;
+                while (current == null || position >= current.length) {
+                    if (current == END) return -1;
+                    if (current != null) {
+                        BufferPool.getInstance().release(current.data); // Consumido: de volta ao pool
+                        current = null;
+                    }
+                    try {
+                        current = queue.poll(200, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Extração interrompida");
+                    }
+                    if (aborted.get()) throw new IOException("Extração interrompida");
+                    position = 0;
+                }
+                int count = Math.min(len, current.length - position);
+                System.arraycopy(current.data, position, b, off, count);
+                position += count;
+                return count;
+            }
+        }
+    }
+
+    /**
+     * Leitura sequencial de um FileChannel por janelas de mmap; se o descritor não puder ser
+     * mapeado, lê por um buffer comum.
+     */
+    private static class MappedInputStream extends InputStream {
+        private final FileChannel channel;
+        private final long size;
+        private ByteBuffer window;
+        private long windowStart = 0;
+        private ByteBuffer fallback;
+
+        MappedInputStream(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!ensureWindow()) return -1;
+            return window.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!ensureWindow()) return -1;
+            int count = Math.min(len, window.remaining());
+            window.get(b, off, count);
+            return count;
+        }
+
+        private boolean ensureWindow() throws IOException {
+            if (window != null && window.hasRemaining()) return true;
+            long position = window == null ? 0 : windowStart + window.limit();
+            if (position >= size) return false;
+            windowStart = position;
+            if (fallback == null) {
+                try {
+                    window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW, size - position));
+                    return window.hasRemaining();
+                } catch (IOException | UnsupportedOperationException e) {
+                    Log.d(TAG, "mmap indisponível (" + e.getMessage() + "), usando leitura comum");
+                    fallback = ByteBuffer.allocate(BufferPool.MAX_CHUNK);
+                }
+            }
+            fallback.clear();
+            if (channel.read(fallback, position) <= 0) return false;
+            fallback.flip();
+            window = fallback;
+            return true;
+        }
+    }
+}
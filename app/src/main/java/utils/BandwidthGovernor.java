@@ -0,0 +1,212 @@
+package com.LDGAMES.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.util.Calendar;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limitador global de banda compartilhado por todos os downloads (token bucket).
+ * O limite global é dividido entre os downloads ativos proporcionalmente ao peso de cada um;
+ * dentro da janela de horário configurada (ex: madrugada) não há limite.
+ * Todas as conexões de um mesmo download (segmentos) consomem do mesmo balde.
+ */
+public class BandwidthGovernor {
+    private static final String TAG = "BandwidthGovernor";
+    private static BandwidthGovernor instance;
+
+    public static final String PREF_BANDWIDTH_LIMIT_KBPS = "bandwidth_limit_kbps"; // 0 = sem limite
+    public static final String PREF_UNLIMITED_SCHEDULE_ENABLED = "bandwidth_unlimited_schedule_enabled";
+    public static final String PREF_UNLIMITED_START_HOUR = "bandwidth_unlimited_start_hour";
+    public static final String PREF_UNLIMITED_END_HOUR = "bandwidth_unlimited_end_hour";
+    private static final int DEFAULT_UNLIMITED_START_HOUR = 0;
+    private static final int DEFAULT_UNLIMITED_END_HOUR = 6;
+
+    private static final long BURST_MILLIS = 250; // Rajada máxima acumulada no balde
+    private static final long MIN_BURST_BYTES = 64 * 1024;
+    private static final long SCHEDULE_CHECK_INTERVAL = 30000; // ms entre verificações do horário
+
+    private final Context context;
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private volatile long limitBytesPerSecond;
+    private volatile boolean scheduleEnabled;
+    private volatile int unlimitedStartHour;
+    private volatile int unlimitedEndHour;
+    private volatile boolean inUnlimitedWindow;
+    private volatile long scheduleCheckedAt;
+
+    // Contadores globais
+    private final AtomicLong bytesGranted = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    /**
+     * Balde de um download. Todas as operações que mexem nos tokens sincronizam no próprio balde.
+     */
+    private static class Bucket {
+        volatile int weight;
+        double tokens;
+        long lastRefillNanos = System.nanoTime();
+        final AtomicLong granted = new AtomicLong();
+        final AtomicLong waitedNanos = new AtomicLong();
+
+        Bucket(int weight) {
+            this.weight = weight;
+        }
+    }
+
+    private BandwidthGovernor(Context context) {
+        this.context = context.getApplicationContext();
+        reloadSettings();
+    }
+
+    public static synchronized BandwidthGovernor getInstance(Context context) {
+        if (instance == null) {
+            instance = new BandwidthGovernor(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Relê as preferências; chamado pela tela de configurações após qualquer alteração.
+     */
+    public void reloadSettings() {
+        SharedPreferences prefs = context.getSharedPreferences("app_settings", Context.MODE_PRIVATE);
+        limitBytesPerSecond = Math.max(0, prefs.getInt(PREF_BANDWIDTH_LIMIT_KBPS, 0)) * 1024L;
+        scheduleEnabled = prefs.getBoolean(PREF_UNLIMITED_SCHEDULE_ENABLED, false);
+        unlimitedStartHour = prefs.getInt(PREF_UNLIMITED_START_HOUR, DEFAULT_UNLIMITED_START_HOUR);
+        unlimitedEndHour = prefs.getInt(PREF_UNLIMITED_END_HOUR, DEFAULT_UNLIMITED_END_HOUR);
+        scheduleCheckedAt = 0; // Forçar reavaliação do horário
+        Log.i(TAG, "Limite de banda: " + (limitBytesPerSecond > 0 ? (limitBytesPerSecond / 1024) + " KB/s" : "ilimitado")
+                + (scheduleEnabled ? " (sem limite das " + unlimitedStartHour + "h às " + unlimitedEndHour + "h)" : ""));
+    }
+
+    /**
+     * Registra um download ativo. O peso define a fatia do limite global (peso 2 recebe o dobro de peso 1).
+     */
+    public void register(String key, int weight) {
+        if (key == null) return;
+        buckets.put(key, new Bucket(Math.max(1, weight)));
+    }
+
+    public void setWeight(String key, int weight) {
+        Bucket bucket = key != null ? buckets.get(key) : null;
+        if (bucket != null) {
+            bucket.weight = Math.max(1, weight);
+        }
+    }
+
+    public void unregister(String key) {
+        Bucket bucket = key != null ? buckets.remove(key) : null;
+        if (bucket != null && bucket.waitedNanos.get() > 0) {
+            Log.d(TAG, String.format("Download liberado: %d bytes concedidos, %d ms aguardando limite",
+                    bucket.granted.get(), bucket.waitedNanos.get() / 1000000));
+        }
+    }
+
+    /**
+     * Bloqueia até que o download possa consumir mais {@code bytes}. Os tokens são reservados
+     * (o saldo pode ficar negativo) e a espera acontece fora do lock, então várias conexões do
+     * mesmo download dividem a fatia sem se bloquear mutuamente.
+     */
+    public void acquire(String key, int bytes) {
+        if (bytes <= 0) return;
+        bytesGranted.addAndGet(bytes);
+        Bucket bucket = key != null ? buckets.get(key) : null;
+        if (bucket != null) bucket.granted.addAndGet(bytes);
+
+        long rate = currentRateFor(bucket);
+        if (rate <= 0) return; // Sem limite
+
+        long waitNs;
+        synchronized (bucket) {
+            long now = System.nanoTime();
+            double burst = Math.max(MIN_BURST_BYTES, rate * BURST_MILLIS / 1000.0);
+            bucket.tokens = Math.min(burst, bucket.tokens + (now - bucket.lastRefillNanos) * rate / 1e9);
+            bucket.lastRefillNanos = now;
+            bucket.tokens -= bytes;
+            waitNs = bucket.tokens < 0 ? (long) (-bucket.tokens * 1e9 / rate) : 0;
+        }
+        if (waitNs <= 0) return;
+
+        long start = System.nanoTime();
+        try {
+            Thread.sleep(waitNs / 1000000, (int) (waitNs % 1000000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // Cancelamento/pausa interrompe a espera
+        }
+        long waited = System.nanoTime() - start;
+        waitNanos.addAndGet(waited);
+        bucket.waitedNanos.addAndGet(waited);
+    }
+
+    /**
+     * Fatia do limite global para este balde, ou 0 se não houver limite no momento.
+     */
+    private long currentRateFor(Bucket bucket) {
+        long limit = limitBytesPerSecond;
+        if (limit <= 0 || bucket == null || isUnlimitedNow()) return 0;
+        int totalWeight = 0;
+        for (Bucket b : buckets.values()) {
+            totalWeight += b.weight;
+        }
+        if (totalWeight <= 0) return limit;
+        return Math.max(1, limit * bucket.weight / totalWeight);
+    }
+
+    private boolean isUnlimitedNow() {
+        if (!scheduleEnabled) return false;
+        long now = System.currentTimeMillis();
+        if (now - scheduleCheckedAt >= SCHEDULE_CHECK_INTERVAL) {
+            int hour = Calendar.getInstance().get(Calendar.HOUR_OF_DAY);
+            int start = unlimitedStartHour;
+            int end = unlimitedEndHour;
+            // Janela pode atravessar a meia-noite (ex: 22h às 6h)
+            inUnlimitedWindow = start <= end ? (hour >= start && hour < end) : (hour >= start || hour < end);
+            scheduleCheckedAt = now;
+        }
+        return inUnlimitedWindow;
+    }
+
+    /**
+     * true se o limite está valendo agora (configurado e fora da janela sem limite).
+     */
+    public boolean isLimitActive() {
+        return limitBytesPerSecond > 0 && !isUnlimitedNow();
+    }
+
+    public long getLimitBytesPerSecond() {
+        return limitBytesPerSecond;
+    }
+
+    /**
+     * Hora (0-23) em que a janela sem limite começa.
+     */
+    public int getUnlimitedStartHour() {
+        return unlimitedStartHour;
+    }
+
+    /**
+     * Hora (0-23) em que a janela sem limite termina (exclusiva).
+     */
+    public int getUnlimitedEndHour() {
+        return unlimitedEndHour;
+    }
+
+    /**
+     * Total de bytes liberados pelo limitador desde que o app iniciou.
+     */
+    public long getBytesGranted() {
+        return bytesGranted.get();
+    }
+
+    /**
+     * Tempo total (ms) que as conexões passaram aguardando o limite.
+     */
+    public long getWaitTimeMillis() {
+        return waitNanos.get() / 1000000;
+    }
+}
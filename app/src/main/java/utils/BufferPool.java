@@ -0,0 +1,140 @@
+package com.LDGAMES.utils;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Buffers de cópia reutilizáveis, compartilhados pelos laços de download, hash e backup.
+ * Os tamanhos são potências de dois entre {@link #MIN_CHUNK} e {@link #MAX_CHUNK}; cada classe
+ * guarda poucos buffers devolvidos para não segurar memória à toa. {@link AdaptiveBuffer} escolhe
+ * o tamanho pela vazão medida: pequeno em links lentos, 256 KB–1 MB nos rápidos, para que a
+ * 50+ MB/s não sejam milhares de read() de 8 KB por segundo.
+ */
+public final class BufferPool {
+    public static final int MIN_CHUNK = 8 * 1024;
+    public static final int MAX_CHUNK = 1024 * 1024;
+    private static final int CLASSES = 8; // 8 KB .. 1 MB
+    private static final int MAX_POOLED_BYTES_PER_CLASS = 4 * 1024 * 1024;
+    private static final int CHUNKS_PER_SECOND = 16; // Alvo: ~16 leituras por segundo na vazão atual
+
+    private static final BufferPool instance = new BufferPool();
+
+    @SuppressWarnings("unchecked")
+    private final ConcurrentLinkedQueue<byte[]>[] free = new ConcurrentLinkedQueue[CLASSES];
+    private final AtomicInteger[] pooledCount = new AtomicInteger[CLASSES];
+    private final AtomicLong allocations = new AtomicLong();
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final AtomicLong reuses = new AtomicLong();
+
+    private BufferPool() {
+        for (int i = 0; i < CLASSES; i++) {
+            free[i] = new ConcurrentLinkedQueue<>();
+            pooledCount[i] = new AtomicInteger();
+        }
+    }
+
+    public static BufferPool getInstance() {
+        return instance;
+    }
+
+    /**
+     * Buffer de pelo menos size bytes (arredondado para a classe; limitado a MAX_CHUNK).
+     * Devolver com {@link #release} quando não for mais usado.
+     */
+    public byte[] acquire(int size) {
+        int cls = classOf(size);
+        byte[] buffer = free[cls].poll();
+        if (buffer != null) {
+            pooledCount[cls].decrementAndGet();
+            reuses.incrementAndGet();
+            return buffer;
+        }
+        allocations.incrementAndGet();
+        allocatedBytes.addAndGet(MIN_CHUNK << cls);
+        return new byte[MIN_CHUNK << cls];
+    }
+
+    public void release(byte[] buffer) {
+        if (buffer == null) return;
+        int cls = Integer.numberOfTrailingZeros(buffer.length) - Integer.numberOfTrailingZeros(MIN_CHUNK);
+        if (cls < 0 || cls >= CLASSES || buffer.length != (MIN_CHUNK << cls)) return; // Não veio do pool
+        if (pooledCount[cls].incrementAndGet() * (long) buffer.length > MAX_POOLED_BYTES_PER_CLASS) {
+            pooledCount[cls].decrementAndGet();
+            return; // Classe cheia: deixar para o GC
+        }
+        free[cls].offer(buffer);
+    }
+
+    /**
+     * Buffers criados desde o início do processo (os demais pedidos foram atendidos pelo pool).
+     */
+    public long getAllocations() {
+        return allocations.get();
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    public long getReuses() {
+        return reuses.get();
+    }
+
+    /**
+     * Tamanho de leitura para a vazão informada (bytes/s): ~1/16 s de dados, entre MIN e MAX.
+     */
+    public static int chunkSizeFor(long bytesPerSecond) {
+        long target = Math.max(MIN_CHUNK, Math.min(MAX_CHUNK, bytesPerSecond / CHUNKS_PER_SECOND));
+        return MIN_CHUNK << classOf((int) target);
+    }
+
+    private static int classOf(int size) {
+        if (size <= MIN_CHUNK) return 0;
+        int shift = 32 - Integer.numberOfLeadingZeros(size - 1); // log2 arredondado para cima
+        return Math.min(CLASSES - 1, shift - Integer.numberOfTrailingZeros(MIN_CHUNK));
+    }
+
+    /**
+     * Buffer de um laço de cópia que mede a própria vazão e troca de tamanho entre leituras
+     * (no máximo uma vez por segundo). Não é thread-safe: um por laço.
+     */
+    public static class AdaptiveBuffer {
+        private static final long MEASURE_INTERVAL = 1000; // ms
+
+        private byte[] buffer;
+        private long windowStart = System.currentTimeMillis();
+        private long windowBytes = 0;
+
+        public AdaptiveBuffer(int initialSize) {
+            buffer = getInstance().acquire(initialSize);
+        }
+
+        public byte[] array() {
+            return buffer;
+        }
+
+        /**
+         * Contabiliza uma leitura; ao fim de cada janela ajusta o tamanho para a vazão medida.
+         * Depois desta chamada use {@link #array()} de novo, o buffer pode ter mudado.
+         */
+        public void onRead(int bytes) {
+            if (bytes > 0) windowBytes += bytes;
+            long now = System.currentTimeMillis();
+            long elapsed = now - windowStart;
+            if (elapsed < MEASURE_INTERVAL) return;
+            int wanted = chunkSizeFor(windowBytes * 1000 / elapsed);
+            if (wanted != buffer.length) {
+                getInstance().release(buffer);
+                buffer = getInstance().acquire(wanted);
+            }
+            windowStart = now;
+            windowBytes = 0;
+        }
+
+        public void release() {
+            getInstance().release(buffer);
+            buffer = null;
+        }
+    }
+}
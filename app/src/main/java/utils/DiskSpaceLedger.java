@@ -0,0 +1,255 @@
+package com.LDGAMES.utils;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.provider.DocumentsContract;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.StructStat;
+import android.system.StructStatVfs;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Livro-razão do espaço em disco prometido aos downloads na fila ou em andamento.
+ * Cada download com tamanho conhecido registra o tamanho total; o quanto ainda falta gravar é
+ * calculado na hora pelos blocos já alocados do arquivo (st_blocks), então downloads em
+ * andamento ou pré-alocados não são contados duas vezes. Uma nova reserva só é aceita se o
+ * espaço livre do volume cobre ela mais o que falta para os demais, com uma margem.
+ * Cada consulta abre um descritor (no SAF, uma chamada ao provedor), então as medições são
+ * reaproveitadas por {@link #SAMPLE_TTL}: o espaço livre por volume e os blocos por arquivo.
+ * Extrações de .zip reservam o tamanho descompactado ({@link #reserveExtraction}) e informam
+ * o quanto já gravaram, já que os arquivos extraídos não têm um único arquivo para medir.
+ * Da thread principal use {@link #reserveAsync}; {@link #reserve} faz E/S.
+ */
+public class DiskSpaceLedger {
+    private static final String TAG = "DiskSpaceLedger";
+    private static final long SAFETY_MARGIN = 64L * 1024 * 1024; // Folga para o sistema e outros apps
+    private static final long SAMPLE_TTL = 5000; // ms que uma medição de espaço é reaproveitada
+    private static DiskSpaceLedger instance;
+
+    private final Context context;
+    private final Map<String, Long> reservations = new HashMap<>(); // filePath -> tamanho total
+    private final Map<String, long[]> extractions = new HashMap<>(); // filePath do .zip -> {a gravar, gravado}
+    private final Map<String, Sample> fileSamples = new HashMap<>(); // filePath -> última medição
+    private final Map<String, Sample> volumeSamples = new HashMap<>(); // volume -> medição mais recente
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "disk-space"));
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public interface ReserveCallback {
+        /**
+         * Na thread principal.
+         * @param shortfall bytes que faltam no volume (0 = reservado)
+         */
+        void onReserved(long shortfall);
+    }
+
+    private static class Sample {
+        final long free; // f_bavail * f_frsize
+        final long allocated; // st_blocks * 512
+        final long takenAt;
+
+        Sample(long free, long allocated, long takenAt) {
+            this.free = free;
+            this.allocated = allocated;
+            this.takenAt = takenAt;
+        }
+    }
+
+    private DiskSpaceLedger(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public static synchronized DiskSpaceLedger getInstance(Context context) {
+        if (instance == null) {
+            instance = new DiskSpaceLedger(context);
+        }
+        return instance;
+    }
+
+    /**
+     * {@link #reserve} na thread do livro-razão; o resultado volta na thread principal.
+     */
+    public void reserveAsync(String filePath, long totalSize, ReserveCallback callback) {
+        executor.execute(() -> {
+            long shortfall = reserve(filePath, totalSize);
+            mainHandler.post(() -> callback.onReserved(shortfall));
+        });
+    }
+
+    /**
+     * Reserva espaço para o download gravado em filePath (content:// ou caminho comum).
+     * Chamadas repetidas para o mesmo arquivo apenas atualizam a reserva. Faz E/S: não chamar
+     * da thread principal.
+     * @param totalSize tamanho final do arquivo
+     * @return bytes que faltam no volume (0 = reservado; também 0 se o espaço não pôde ser consultado)
+     */
+    public synchronized long reserve(String filePath, long totalSize) {
+        if (filePath == null || totalSize <= 0) return 0;
+        long[] space = querySpace(filePath);
+        if (space == null) {
+            // Provedor sem descritor de arquivo real: não dá para medir, seguir sem reserva
+            reservations.put(filePath, totalSize);
+            return 0;
+        }
+        long shortfall = shortfall(filePath, false, Math.max(0, totalSize - space[1]), space[0]);
+        if (shortfall > 0) return shortfall;
+        reservations.put(filePath, totalSize);
+        return 0;
+    }
+
+    /**
+     * Reserva o espaço para extrair o .zip gravado em archivePath (a pasta de destino fica no
+     * mesmo volume). Faz E/S: não chamar da thread principal.
+     * @param uncompressedSize soma dos tamanhos descompactados (ou estimativa)
+     * @return bytes que faltam no volume (0 = reservado; também 0 se o espaço não pôde ser consultado)
+     */
+    public synchronized long reserveExtraction(String archivePath, long uncompressedSize) {
+        if (archivePath == null || uncompressedSize <= 0) return 0;
+        long[] space = querySpace(archivePath);
+        if (space != null) {
+            long shortfall = shortfall(archivePath, true, uncompressedSize, space[0]);
+            if (shortfall > 0) return shortfall;
+        }
+        extractions.put(archivePath, new long[]{uncompressedSize, 0});
+        return 0;
+    }
+
+    /**
+     * Bytes já gravados pela extração, descontados da reserva.
+     */
+    public synchronized void onExtracted(String archivePath, long written) {
+        long[] extraction = extractions.get(archivePath);
+        if (extraction != null) {
+            extraction[1] = written;
+        }
+    }
+
+    public synchronized void releaseExtraction(String archivePath) {
+        if (archivePath != null) {
+            extractions.remove(archivePath);
+        }
+    }
+
+    /**
+     * Libera a reserva (download concluído, falho, cancelado ou pausado).
+     */
+    public synchronized void release(String filePath) {
+        if (filePath != null) {
+            reservations.remove(filePath);
+            fileSamples.remove(filePath);
+        }
+    }
+
+    /**
+     * Quanto falta no volume para gravar needed além do prometido às demais reservas do mesmo
+     * volume (exceto a do próprio download, ou da própria extração quando extraction).
+     */
+    private long shortfall(String filePath, boolean extraction, long needed, long available) {
+        String volume = volumeOf(filePath);
+        long committed = 0;
+        for (Map.Entry<String, Long> entry : reservations.entrySet()) {
+            if ((extraction || !entry.getKey().equals(filePath)) && volume.equals(volumeOf(entry.getKey()))) {
+                committed += remainingFor(entry.getKey(), entry.getValue());
+            }
+        }
+        for (Map.Entry<String, long[]> entry : extractions.entrySet()) {
+            if ((!extraction || !entry.getKey().equals(filePath)) && volume.equals(volumeOf(entry.getKey()))) {
+                committed += Math.max(0, entry.getValue()[0] - entry.getValue()[1]);
+            }
+        }
+        long shortfall = needed + committed + SAFETY_MARGIN - available;
+        if (shortfall > 0) {
+            Log.w(TAG, String.format("Espaço insuficiente para %s: precisa %s, livre %s, reservado para outros %s",
+                    extraction ? "extrair " + filePath : filePath, FileUtils.formatFileSize(needed), FileUtils.formatFileSize(available),
+                    FileUtils.formatFileSize(committed)));
+        }
+        return shortfall;
+    }
+
+    private long remainingFor(String filePath, long totalSize) {
+        long[] space = querySpace(filePath);
+        return space != null ? Math.max(0, totalSize - space[1]) : totalSize;
+    }
+
+    /**
+     * Espaço livre do volume e bytes já alocados ao arquivo, da medição em cache se ainda vale.
+     * O espaço livre vem da medição mais recente do volume, que pode ter sido feita por outro arquivo.
+     */
+    private long[] querySpace(String filePath) {
+        long now = System.currentTimeMillis();
+        String volume = volumeOf(filePath);
+        Sample sample = fileSamples.get(filePath);
+        if (sample == null || now - sample.takenAt > SAMPLE_TTL) {
+            long[] measured = measure(filePath);
+            if (measured == null) {
+                fileSamples.remove(filePath);
+                return null;
+            }
+            sample = new Sample(measured[0], measured[1], now);
+            fileSamples.put(filePath, sample);
+            volumeSamples.put(volume, sample);
+        }
+        Sample latest = volumeSamples.get(volume);
+        long free = latest != null && latest.takenAt > sample.takenAt ? latest.free : sample.free;
+        return new long[]{free, sample.allocated};
+    }
+
+    /**
+     * Volume do arquivo: no SAF, autoridade + raiz do documentId ("primary", "1234-5678");
+     * em caminhos comuns, a pasta do arquivo.
+     */
+    private static String volumeOf(String filePath) {
+        if (filePath.startsWith("content://")) {
+            Uri uri = Uri.parse(filePath);
+            try {
+                String documentId = DocumentsContract.getDocumentId(uri);
+                int colon = documentId.indexOf(':');
+                return uri.getAuthority() + "/" + (colon >= 0 ? documentId.substring(0, colon) : documentId);
+            } catch (IllegalArgumentException e) {
+                return String.valueOf(uri.getAuthority());
+            }
+        }
+        String parent = new File(filePath).getParent();
+        return parent != null ? parent : filePath;
+    }
+
+    /**
+     * Espaço livre do volume (f_bavail * f_frsize) e bytes já alocados ao arquivo (st_blocks * 512),
+     * ambos pelo mesmo descritor. null se o arquivo não puder ser aberto ou consultado.
+     */
+    private long[] measure(String filePath) {
+        ParcelFileDescriptor pfd = null;
+        try {
+            if (filePath.startsWith("content://")) {
+                pfd = context.getContentResolver().openFileDescriptor(Uri.parse(filePath), "r");
+            } else {
+                pfd = ParcelFileDescriptor.open(new File(filePath), ParcelFileDescriptor.MODE_READ_ONLY);
+            }
+            if (pfd == null) return null;
+            StructStatVfs vfs = Os.fstatvfs(pfd.getFileDescriptor());
+            StructStat stat = Os.fstat(pfd.getFileDescriptor());
+            return new long[]{vfs.f_bavail * vfs.f_frsize, stat.st_blocks * 512};
+        } catch (IOException | ErrnoException | SecurityException | IllegalArgumentException e) {
+            Log.w(TAG, "Não foi possível consultar espaço de " + filePath + ": " + e.getMessage());
+            return null;
+        } finally {
+            if (pfd != null) {
+                try {
+                    pfd.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.LDGAMES.utils;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.Dns;
+import okhttp3.EventListener;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * Cliente HTTP único do subsistema de downloads (DownloadService, DownloadResumeHelper,
+ * DownloadMetadataResolver, MirrorSelector): pool de conexões com keep-alive, cache de DNS e
+ * limite de conexões simultâneas por host, compartilhados por todas as chamadas.
+ * Sondagens e metadados ({@link #newCall}) aceitam HTTP/2. Transferências de faixas
+ * ({@link #newTransferCall}) ficam em HTTP/1.1: em HTTP/2 os segmentos seriam multiplexados em
+ * uma única conexão TCP e disputariam a mesma janela, justamente o que baixar em faixas paralelas
+ * quer evitar.
+ * Para a conexão voltar ao pool o corpo precisa ser fechado; use {@link #release}.
+ */
+public class DownloadHttpClient {
+    private static final String TAG = "DownloadHttpClient";
+    private static final int MAX_IDLE_CONNECTIONS = 16;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    private static final int MAX_CONNECTIONS_PER_HOST = 24; // Segmentos (até 16) + sondagens
+    private static final long HOST_SLOT_WAIT = 10; // s esperando vaga no host antes de seguir mesmo assim
+    private static final long DNS_TTL = 5 * 60 * 1000; // ms
+
+    private static DownloadHttpClient instance;
+
+    private final OkHttpClient client;
+    private final OkHttpClient transferClient; // Mesmo pool, DNS e limites; só HTTP/1.1
+    private final Map<String, CachedLookup> dnsCache = new ConcurrentHashMap<>();
+    private final Map<String, Semaphore> hostSlots = new ConcurrentHashMap<>();
+
+    // Estatísticas do pool
+    private final AtomicLong connectionsAcquired = new AtomicLong();
+    private final AtomicLong connectionsOpened = new AtomicLong();
+    private final AtomicLong tlsHandshakes = new AtomicLong();
+    private final AtomicLong http2Connections = new AtomicLong();
+    private final AtomicLong dnsCacheHits = new AtomicLong();
+
+    private static class CachedLookup {
+        final List<InetAddress> addresses;
+        final long expiresAt;
+
+        CachedLookup(List<InetAddress> addresses, long expiresAt) {
+            this.addresses = addresses;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private DownloadHttpClient() {
+        client = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .dns(this::lookup)
+                .addInterceptor(this::limitPerHost)
+                .eventListener(new StatsListener())
+                .connectTimeout(15, TimeUnit.SECONDS)
+                .readTimeout(30, TimeUnit.SECONDS)
+                .followRedirects(true)
+                .followSslRedirects(true)
+                .retryOnConnectionFailure(true)
+                .build();
+        transferClient = client.newBuilder()
+                .protocols(Collections.singletonList(Protocol.HTTP_1_1))
+                .build();
+    }
+
+    public static synchronized DownloadHttpClient getInstance() {
+        if (instance == null) {
+            instance = new DownloadHttpClient();
+        }
+        return instance;
+    }
+
+    /**
+     * Requisição para a URL; URL inválida vira IOException, como acontecia com new URL().
+     */
+    public static Request.Builder newRequest(String url) throws IOException {
+        try {
+            return new Request.Builder().url(url);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("URL inválida: " + url, e);
+        }
+    }
+
+    /**
+     * Sondagens e metadados (HEAD, Range de poucos bytes): HTTP/2 quando o servidor suporta.
+     */
+    public Call newCall(Request request) {
+        return client.newCall(request);
+    }
+
+    /**
+     * Transferência de uma faixa do arquivo (conexão única ou segmento): sempre HTTP/1.1,
+     * uma conexão TCP por faixa.
+     */
+    public Call newTransferCall(Request request) {
+        return transferClient.newCall(request);
+    }
+
+    /**
+     * Fecha o corpo da resposta, devolvendo a conexão ao pool quando ele foi lido até o fim
+     * (ou o restante é pequeno o bastante para ser descartado).
+     */
+    public static void release(Response response) {
+        if (response != null) {
+            response.close();
+        }
+    }
+
+    public OkHttpClient getClient() {
+        return client;
+    }
+
+    private List<InetAddress> lookup(String hostname) throws UnknownHostException {
+        long now = System.currentTimeMillis();
+        CachedLookup cached = dnsCache.get(hostname);
+        if (cached != null && cached.expiresAt > now) {
+            dnsCacheHits.incrementAndGet();
+            return cached.addresses;
+        }
+        try {
+            List<InetAddress> addresses = Dns.SYSTEM.lookup(hostname);
+            dnsCache.put(hostname, new CachedLookup(addresses, now + DNS_TTL));
+            return addresses;
+        } catch (UnknownHostException e) {
+            if (cached != null) {
+                Log.w(TAG, "DNS falhou para " + hostname + ", usando endereço em cache");
+                return cached.addresses;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Segura uma vaga do host até o corpo da resposta ser fechado ou lido até o fim.
+     * A espera é limitada: se uma resposta nunca for fechada, a vaga não trava o host para sempre.
+     */
+    private Response limitPerHost(Interceptor.Chain chain) throws IOException {
+        Semaphore slots = hostSlots.computeIfAbsent(chain.request().url().host(),
+                host -> new Semaphore(MAX_CONNECTIONS_PER_HOST));
+        boolean acquired;
+        try {
+            acquired = slots.tryAcquire(HOST_SLOT_WAIT, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrompido aguardando conexão com " + chain.request().url().host());
+        }
+        if (!acquired) {
+            Log.w(TAG, "Limite de conexões para " + chain.request().url().host() + " esgotado; seguindo sem vaga");
+            return chain.proceed(chain.request());
+        }
+
+        Response response;
+        try {
+            response = chain.proceed(chain.request());
+        } catch (IOException | RuntimeException e) {
+            slots.release();
+            throw e;
+        }
+        ResponseBody body = response.body();
+        if (body == null) {
+            slots.release();
+            return response;
+        }
+        return response.newBuilder().body(new SlotReleasingBody(body, slots)).build();
+    }
+
+    private static class SlotReleasingBody extends ResponseBody {
+        private final ResponseBody delegate;
+        private final Semaphore slots;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+        private BufferedSource source;
+
+        SlotReleasingBody(ResponseBody delegate, Semaphore slots) {
+            this.delegate = delegate;
+            this.slots = slots;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return delegate.contentLength();
+        }
+
+        @Override
+        public synchronized BufferedSource source() {
+            if (source == null) {
+                source = Okio.buffer(new ForwardingSource(delegate.source()) {
+                    @Override
+                    public long read(Buffer sink, long byteCount) throws IOException {
+                        long read = super.read(sink, byteCount);
+                        if (read == -1) releaseSlot();
+                        return read;
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            releaseSlot();
+                        }
+                    }
+                });
+            }
+            return source;
+        }
+
+        private void releaseSlot() {
+            if (released.compareAndSet(false, true)) {
+                slots.release();
+            }
+        }
+    }
+
+    private class StatsListener extends EventListener {
+        @Override
+        public void connectStart(Call call, InetSocketAddress address, Proxy proxy) {
+            connectionsOpened.incrementAndGet();
+        }
+
+        @Override
+        public void secureConnectStart(Call call) {
+            tlsHandshakes.incrementAndGet();
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            connectionsAcquired.incrementAndGet();
+            if (connection.protocol() == Protocol.HTTP_2) {
+                http2Connections.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Fração das requisições que reaproveitaram uma conexão aberta (0..1).
+     */
+    public double getReuseRatio() {
+        long acquired = connectionsAcquired.get();
+        if (acquired == 0) return 0;
+        return Math.max(0, acquired - connectionsOpened.get()) / (double) acquired;
+    }
+
+    /**
+     * Handshakes TCP/TLS evitados pelo reaproveitamento de conexões.
+     */
+    public long getHandshakesAvoided() {
+        return Math.max(0, connectionsAcquired.get() - connectionsOpened.get());
+    }
+
+    public String getStats() {
+        return String.format("requisições=%d, conexões abertas=%d (TLS=%d), reuso=%.0f%%, handshakes evitados=%d, "
+                        + "HTTP/2=%d, DNS em cache=%d, ociosas=%d/%d",
+                connectionsAcquired.get(), connectionsOpened.get(), tlsHandshakes.get(), getReuseRatio() * 100,
+                getHandshakesAvoided(), http2Connections.get(), dnsCacheHits.get(),
+                client.connectionPool().idleConnectionCount(), client.connectionPool().connectionCount());
+    }
+}
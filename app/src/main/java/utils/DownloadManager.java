@@ -4,6 +4,8 @@ import android.content.Context;
 import android.content.Intent; // Correção Erro 5: Importar Intent
 import android.content.SharedPreferences;
 import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.webkit.MimeTypeMap;
 import android.webkit.URLUtil;
@@ -12,18 +14,24 @@ import androidx.annotation.NonNull;
 import androidx.documentfile.provider.DocumentFile;
 
 import com.LDGAMES.database.DownloadDatabase;
+import com.LDGAMES.database.DownloadPersister;
 import com.LDGAMES.models.DownloadInfo;
 import com.LDGAMES.services.DownloadService;
 import com.LDGAMES.utils.DownloadResumeHelper;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -35,21 +43,39 @@ public class DownloadManager {
     private static DownloadManager instance;
     private final Context context;
     private final DownloadDatabase database;
+    private final DownloadPersister persister; // Gravações fora do main thread
+    private final DiskSpaceLedger diskSpaceLedger; // Espaço prometido aos downloads na fila/em andamento
+    private final ExecutorService extractionExecutor = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "archive-extract")); // Uma extração por vez: leitura sequencial do flash
+    private final ExecutorService validationExecutor = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "download-validate")); // Validações de arquivos parciais, uma por vez
+    private final ExecutorService hashExecutor = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "download-hash")); // Digests concluídos depois do download, um por vez
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
     // Usar filePath como chave para identificar unicamente o download no destino
     private final Map<String, DownloadInfo> activeDownloadsByPath = new ConcurrentHashMap<>();
     private final Map<String, DownloadInfo> completedDownloadsByPath = new ConcurrentHashMap<>();
-    private final List<DownloadInfo> downloadQueue = Collections.synchronizedList(new ArrayList<>());
+    private final DownloadScheduler downloadScheduler = new DownloadScheduler(); // Fila por prioridade
+    private final Set<String> admittingPaths = ConcurrentHashMap.newKeySet(); // Retirados da fila, aguardando admitDownload
+    private final Set<String> resumingPaths = ConcurrentHashMap.newKeySet(); // Pausados com a validação da retomada em curso
     private final Map<String, String> originalUrls = new HashMap<>(); // Mapeia URL ativa para URL original (se aplicável)
     private static final int DEFAULT_CONCURRENT_DOWNLOADS = 3; // Valor padrão aumentado
     public static final String PREF_CONCURRENT_DOWNLOADS = "concurrent_downloads_limit"; // Chave para SharedPreferences
+    private static final int DEFAULT_DOWNLOAD_SEGMENTS = 4; // Conexões paralelas por download
+    private static final int MAX_DOWNLOAD_SEGMENTS = 16;
+    public static final String PREF_DOWNLOAD_SEGMENTS = "download_segments"; // Chave para SharedPreferences
+    public static final String PREF_QUEUE_POLICY = "queue_policy"; // DownloadScheduler.POLICY_*
+    public static final String PREF_MAX_DOWNLOADS_PER_HOST = "max_downloads_per_host"; // 0 = sem limite
     private final AtomicInteger runningDownloadsCount = new AtomicInteger(0);
     private boolean serviceRunning = false;
+    private volatile DownloadWorkerPool workerPool; // Pool do DownloadService enquanto ele estiver ativo
     private final List<DownloadListener> listeners = Collections.synchronizedList(new ArrayList<>());
     private long lastPersistTime = 0;
     private static final long PERSIST_INTERVAL = 2000; // Persistir a cada 2 segundos (mais frequente)
     private static final long BACKUP_INTERVAL = 30000; // Backup a cada 30 segundos
     private long lastBackupTime = 0;
     private static final long CRASH_RECOVERY_TIMEOUT = 10000; // 10 segundos para detectar crash
+    private static final long SHUTDOWN_FLUSH_TIMEOUT = 2000; // Espera máxima pela gravação ao desligar
 
     public interface DownloadListener {
         void onDownloadAdded(DownloadInfo downloadInfo);
@@ -57,12 +83,25 @@ public class DownloadManager {
         void onDownloadCompleted(DownloadInfo downloadInfo);
         void onDownloadFailed(DownloadInfo downloadInfo, String reason);
         // void onDownloadCancelled(DownloadInfo downloadInfo); // Opcional
+
+        /**
+         * Lote de progresso do DownloadProgressBus (só downloads que mudaram). Quem exibe listas
+         * deve sobrescrever para atualizar tudo de uma vez.
+         */
+        default void onDownloadsUpdated(List<DownloadInfo> downloads) {
+            for (DownloadInfo downloadInfo : downloads) {
+                onDownloadUpdated(downloadInfo);
+            }
+        }
     }
 
     private DownloadManager(Context context) {
         this.context = context.getApplicationContext();
         this.database = DownloadDatabase.getInstance(context);
+        this.persister = DownloadPersister.getInstance(context);
+        this.diskSpaceLedger = DiskSpaceLedger.getInstance(context);
         loadData();
+        DownloadProgressBus.getInstance().addSink(this::updateProgressBatch);
     }
 
     public static synchronized DownloadManager getInstance(Context context) {
@@ -78,12 +117,36 @@ public class DownloadManager {
         return Math.max(1, prefs.getInt(PREF_CONCURRENT_DOWNLOADS, DEFAULT_CONCURRENT_DOWNLOADS));
     }
 
+    /**
+     * Número de conexões paralelas (segmentos) usadas por download.
+     * 1 desativa o modo segmentado.
+     */
+    public int getDownloadSegmentCount() {
+        SharedPreferences prefs = context.getSharedPreferences("app_settings", Context.MODE_PRIVATE);
+        int segments = prefs.getInt(PREF_DOWNLOAD_SEGMENTS, DEFAULT_DOWNLOAD_SEGMENTS);
+        return Math.max(1, Math.min(MAX_DOWNLOAD_SEGMENTS, segments));
+    }
+
+    /**
+     * Limite de downloads simultâneos para um mesmo host (0 = sem limite).
+     */
+    public int getMaxDownloadsPerHost() {
+        SharedPreferences prefs = context.getSharedPreferences("app_settings", Context.MODE_PRIVATE);
+        return Math.max(0, prefs.getInt(PREF_MAX_DOWNLOADS_PER_HOST, 0));
+    }
+
+    public void setQueuePolicy(int policy) {
+        SharedPreferences prefs = context.getSharedPreferences("app_settings", Context.MODE_PRIVATE);
+        prefs.edit().putInt(PREF_QUEUE_POLICY, policy).apply();
+        downloadScheduler.setPolicy(policy);
+    }
+
     private void loadData() {
         activeDownloadsByPath.clear();
         completedDownloadsByPath.clear();
-        synchronized (downloadQueue) {
-            downloadQueue.clear();
-        }
+        downloadScheduler.clear();
+        SharedPreferences prefs = context.getSharedPreferences("app_settings", Context.MODE_PRIVATE);
+        downloadScheduler.setPolicy(prefs.getInt(PREF_QUEUE_POLICY, DownloadScheduler.POLICY_OLDEST_FIRST));
         originalUrls.clear();
 
         List<DownloadInfo> activeList = database.getActiveDownloads();
@@ -91,17 +154,13 @@ public class DownloadManager {
             if (download.getFilePath() == null) continue; // Ignorar downloads inválidos
             activeDownloadsByPath.put(download.getFilePath(), download);
             if (download.getStatus() == DownloadInfo.STATUS_QUEUED) {
-                synchronized (downloadQueue) {
-                    // Evitar duplicatas na fila ao carregar
-                    if (!downloadQueue.contains(download)) {
-                        downloadQueue.add(download);
-                    }
-                }
+                // A posição persistida no banco restaura a ordem da fila
+                downloadScheduler.enqueue(download);
             } else if (download.getStatus() == DownloadInfo.STATUS_RUNNING || download.getStatus() == DownloadInfo.STATUS_RESUMING) {
                 // Se o app foi fechado enquanto rodava, marcar como pausado
                 download.setStatus(DownloadInfo.STATUS_PAUSED);
                 download.setLastPauseTime(System.currentTimeMillis());
-                database.addOrUpdateDownload(download); // Atualizar no BD
+                persister.save(download); // Atualizar no BD
             }
         }
 
@@ -109,6 +168,9 @@ public class DownloadManager {
         for (DownloadInfo download : completedList) {
              if (download.getFilePath() == null) continue;
             completedDownloadsByPath.put(download.getFilePath(), download);
+            if (download.getExtractionStatus() == DownloadInfo.EXTRACTION_RUNNING) {
+                extractArchive(download); // App fechado no meio da extração: recomeçar
+            }
         }
 
         // originalUrls precisa ser carregado do DB se for persistido
@@ -117,16 +179,22 @@ public class DownloadManager {
         runningDownloadsCount.set(0);
 
         Log.d(TAG, "Dados carregados: " + activeDownloadsByPath.size() + " downloads ativos, " +
-              completedDownloadsByPath.size() + " concluídos, " + downloadQueue.size() + " na fila.");
+              completedDownloadsByPath.size() + " concluídos, " + downloadScheduler.size() + " na fila.");
 
         // Realizar recuperação de crash após carregar dados
         performCrashRecovery();
         
-        // Verificar integridade dos downloads
-        performIntegrityCheck();
-        
-        validatePausedDownloads();
-        processQueue();
+        // Verificar integridade dos downloads pausados/falhos. A validação lê os arquivos
+        // parciais: roda em validationExecutor e o resultado é aplicado no main thread
+        List<DownloadInfo> candidates = integrityCandidates();
+        validationExecutor.execute(() -> {
+            Map<DownloadInfo, DownloadResumeHelper.ValidationResult> results = validateForIntegrity(candidates);
+            mainHandler.post(() -> {
+                applyIntegrityResults(results);
+                validatePausedDownloads();
+            });
+        });
+        processQueue(); // A fila não depende dessas validações; cada item é validado ao ser admitido
     }
 
     public void addDownloadListener(DownloadListener listener) {
@@ -232,15 +300,10 @@ public class DownloadManager {
             existingDownload.setStatus(DownloadInfo.STATUS_QUEUED); // Colocar na fila para reiniciar
             existingDownload.resetResumeAttempts();
 
-            database.addOrUpdateDownload(existingDownload);
-
-            synchronized (downloadQueue) {
-                // Remover da fila se já estiver lá (para garantir que vá para o fim ou posição correta se houver prioridade)
-                downloadQueue.remove(existingDownload);
-                // Adicionar de volta à fila
-                downloadQueue.add(existingDownload);
-            }
-            database.addToQueue(existingDownload); // Informar DB sobre a fila
+            // Reiniciado vai para o fim da sua prioridade
+            existingDownload.setQueuePosition(DownloadInfo.QUEUE_POSITION_NONE);
+            downloadScheduler.enqueue(existingDownload);
+            persister.save(existingDownload); // Estado e posição na fila
 
             Log.d(TAG, "Download atualizado e re-enfileirado: " + existingDownload.getFileName());
             notifyListeners(listener -> listener.onDownloadUpdated(existingDownload));
@@ -331,6 +394,7 @@ public class DownloadManager {
         downloadInfo.setMimeType(mimeType);
         downloadInfo.setCookies(cookies);
         downloadInfo.setCustomHeaders(customHeaders);
+        downloadInfo.setParts(getDownloadSegmentCount());
         
         // Se estamos retomando um arquivo existente, definir o tamanho já baixado
         if (initialDownloadedSize > 0) {
@@ -358,18 +422,30 @@ public class DownloadManager {
             return false;
         }
 
+        // Tamanho já conhecido (ex: validação do link ao abrir o diálogo): reservar o espaço
+        // agora, para a fila não aceitar mais do que o volume comporta. O hash anunciado pelo
+        // servidor vira o esperado quando o usuário não informou um
+        if (downloadInfo.getUrl() != null) {
+            DownloadMetadataResolver.Metadata metadata = DownloadMetadataResolver.getCached(downloadInfo.getUrl());
+            if (metadata != null) {
+                if (downloadInfo.getFileSize() <= 0 && metadata.contentLength > 0) {
+                    downloadInfo.setFileSize(metadata.contentLength);
+                }
+                if (downloadInfo.getExpectedHash() == null && metadata.expectedHash != null) {
+                    downloadInfo.setExpectedHash(metadata.expectedHash);
+                }
+            }
+        }
         activeDownloadsByPath.put(downloadInfo.getFilePath(), downloadInfo);
-        database.addOrUpdateDownload(downloadInfo);
+        checkQueuedDiskSpace(downloadInfo);
 
         if (downloadInfo.getStatus() == DownloadInfo.STATUS_QUEUED) {
-            synchronized (downloadQueue) {
-                if (!downloadQueue.contains(downloadInfo)) {
-                    downloadQueue.add(downloadInfo);
-                }
+            if (!downloadScheduler.contains(downloadInfo)) {
+                downloadScheduler.enqueue(downloadInfo);
             }
-            database.addToQueue(downloadInfo);
             Log.d(TAG, "Download adicionado à fila: " + downloadInfo.getFileName());
         }
+        persister.save(downloadInfo); // Gravado depois de receber a posição na fila
 
         notifyListeners(listener -> listener.onDownloadAdded(downloadInfo));
         processQueue();
@@ -406,15 +482,11 @@ public class DownloadManager {
              activeDownload.getStatus() == DownloadInfo.STATUS_QUEUED)) {
 
             if (activeDownload.getStatus() == DownloadInfo.STATUS_QUEUED) {
-                boolean removed;
-                synchronized (downloadQueue) {
-                    removed = downloadQueue.remove(activeDownload);
-                }
-                if (removed) {
+                // Retirado da fila mas ainda em validação: admitDownload devolve a vaga
+                if (downloadScheduler.remove(activeDownload) || admittingPaths.contains(activeDownload.getFilePath())) {
                     activeDownload.setStatus(DownloadInfo.STATUS_PAUSED);
                     activeDownload.setLastPauseTime(System.currentTimeMillis());
-                    database.addOrUpdateDownload(activeDownload);
-                    database.removeFromQueue(activeDownload);
+                    persister.saveNow(activeDownload);
                     Log.d(TAG, "Download removido da fila e pausado: " + activeDownload.getFileName());
                     notifyListeners(listener -> listener.onDownloadUpdated(activeDownload));
                 }
@@ -435,57 +507,69 @@ public class DownloadManager {
         DownloadInfo activeDownload = activeDownloadsByPath.get(downloadInfo.getFilePath());
 
         if (activeDownload != null && activeDownload.getStatus() == DownloadInfo.STATUS_PAUSED) {
+            if (!resumingPaths.add(activeDownload.getFilePath())) {
+                Log.d(TAG, "Retomada já em validação: " + activeDownload.getFileName());
+                return;
+            }
             Log.d(TAG, "Tentando retomar download: " + activeDownload.getFileName());
 
-            // --- CORREÇÃO: Adicionar validação ANTES de colocar na fila ---
-            DownloadResumeHelper.ValidationResult validation = DownloadResumeHelper.validatePartialFile(context, activeDownload);
-            Log.d(TAG, String.format("Validação para retomada %s: válido=%s, razão=%s",
-                activeDownload.getFileName(), validation.isValid, validation.reason));
-
-            if (!validation.isValid) {
-                if (validation.shouldRestart) {
-                    Log.w(TAG, "Validação falhou, reiniciando download: " + validation.reason);
-                    activeDownload.setDownloadedSize(0);
-                    activeDownload.setProgress(0);
-                    // Tentar deletar arquivo corrompido (melhor deixar para a DownloadTask tratar)
-                    // deletePartialFileSafely(activeDownload.getFilePath());
-                    // Continuar para colocar na fila e reiniciar
-                } else {
-                    Log.e(TAG, "Validação falhou, marcando como falha: " + validation.reason);
-                    activeDownload.setStatus(DownloadInfo.STATUS_FAILED);
-                    activeDownload.setErrorMessage("Falha na validação do arquivo: " + validation.reason);
-                    database.addOrUpdateDownload(activeDownload);
-                    notifyListeners(listener -> listener.onDownloadFailed(activeDownload, activeDownload.getErrorMessage()));
-                    return; // Não colocar na fila se a validação falhou e não é para reiniciar
-                }
-            }
-            // Aplicar correções se necessário (ex: tamanho baixado maior que o real)
-            if (validation.needsAdjustment) {
-                DownloadResumeHelper.applyValidationCorrections(activeDownload, validation);
-                // A atualização do DB ocorrerá abaixo ao definir como QUEUED
-            }
-            // --- FIM CORREÇÃO ---
-
-            Log.d(TAG, "Colocando download na fila para retomar: " + activeDownload.getFileName());
-            activeDownload.setStatus(DownloadInfo.STATUS_QUEUED);
-            activeDownload.setLastResumeTime(System.currentTimeMillis());
-            activeDownload.setErrorMessage(null); // Limpar erro anterior
-            activeDownload.resetResumeAttempts(); // Resetar tentativas de URL
-            database.addOrUpdateDownload(activeDownload);
-
-            synchronized (downloadQueue) {
-                if (!downloadQueue.contains(activeDownload)) {
-                    downloadQueue.add(activeDownload);
-                }
-            }
-            database.addToQueue(activeDownload);
-            notifyListeners(listener -> listener.onDownloadUpdated(activeDownload)); // Notifica que está na fila
-            processQueue();
+            // Validar ANTES de colocar na fila. A validação relê blocos do arquivo parcial:
+            // roda em validationExecutor e a retomada continua em continueResume no main thread
+            validationExecutor.execute(() -> {
+                DownloadResumeHelper.ValidationResult validation = DownloadResumeHelper.validatePartialFile(context, activeDownload);
+                mainHandler.post(() -> continueResume(activeDownload, validation));
+            });
         } else {
             Log.w(TAG, "Tentativa de retomar download que não está pausado: " + downloadInfo.getFileName());
         }
     }
 
+    private void continueResume(DownloadInfo activeDownload, DownloadResumeHelper.ValidationResult validation) {
+        resumingPaths.remove(activeDownload.getFilePath());
+        if (activeDownload.getStatus() != DownloadInfo.STATUS_PAUSED
+                || activeDownloadsByPath.get(activeDownload.getFilePath()) != activeDownload) {
+            Log.d(TAG, "Download mudou de estado durante a validação, retomada ignorada: " + activeDownload.getFileName());
+            return;
+        }
+        Log.d(TAG, String.format("Validação para retomada %s: válido=%s, razão=%s",
+            activeDownload.getFileName(), validation.isValid, validation.reason));
+
+        if (!validation.isValid) {
+            if (validation.shouldRestart) {
+                Log.w(TAG, "Validação falhou, reiniciando download: " + validation.reason);
+                activeDownload.setDownloadedSize(0);
+                activeDownload.setProgress(0);
+                // Tentar deletar arquivo corrompido (melhor deixar para a DownloadTask tratar)
+                // deletePartialFileSafely(activeDownload.getFilePath());
+                // Continuar para colocar na fila e reiniciar
+            } else {
+                Log.e(TAG, "Validação falhou, marcando como falha: " + validation.reason);
+                activeDownload.setStatus(DownloadInfo.STATUS_FAILED);
+                activeDownload.setErrorMessage("Falha na validação do arquivo: " + validation.reason);
+                persister.save(activeDownload);
+                notifyListeners(listener -> listener.onDownloadFailed(activeDownload, activeDownload.getErrorMessage()));
+                return; // Não colocar na fila se a validação falhou e não é para reiniciar
+            }
+        }
+        // Aplicar correções se necessário (ex: tamanho baixado maior que o real)
+        if (validation.needsAdjustment) {
+            DownloadResumeHelper.applyValidationCorrections(activeDownload, validation);
+            // A atualização do DB ocorrerá abaixo ao definir como QUEUED
+        }
+
+        Log.d(TAG, "Colocando download na fila para retomar: " + activeDownload.getFileName());
+        activeDownload.setStatus(DownloadInfo.STATUS_QUEUED);
+        activeDownload.setLastResumeTime(System.currentTimeMillis());
+        activeDownload.setErrorMessage(null); // Limpar erro anterior
+        activeDownload.resetResumeAttempts(); // Resetar tentativas de URL
+        if (!downloadScheduler.contains(activeDownload)) {
+            downloadScheduler.enqueue(activeDownload); // Pausado ainda na fila mantém a posição; os demais vão para o fim
+        }
+        persister.save(activeDownload);
+        notifyListeners(listener -> listener.onDownloadUpdated(activeDownload)); // Notifica que está na fila
+        processQueue();
+    }
+
     public void pauseResumeDownload(DownloadInfo downloadInfo) {
         if (downloadInfo == null || downloadInfo.getFilePath() == null) return;
         DownloadInfo activeDownload = activeDownloadsByPath.get(downloadInfo.getFilePath());
@@ -512,13 +596,7 @@ public class DownloadManager {
 
         if (activeDownload != null) {
             Log.d(TAG, "Cancelando download: " + activeDownload.getFileName());
-            boolean removedFromQueue = false;
-            synchronized (downloadQueue) {
-                removedFromQueue = downloadQueue.remove(activeDownload);
-            }
-            if (removedFromQueue) {
-                database.removeFromQueue(activeDownload);
-            }
+            downloadScheduler.remove(activeDownload);
 
             if (activeDownload.getStatus() == DownloadInfo.STATUS_RUNNING || activeDownload.getStatus() == DownloadInfo.STATUS_RESUMING) {
                 // Se estiver rodando, solicitar cancelamento ao serviço
@@ -527,7 +605,9 @@ public class DownloadManager {
                 // Se estava pausado ou na fila, apenas atualizar o status e deletar o arquivo
                 activeDownload.setStatus(DownloadInfo.STATUS_CANCELLED);
                 activeDownload.setEndTime(System.currentTimeMillis());
-                database.addOrUpdateDownload(activeDownload);
+                persister.save(activeDownload);
+                persister.execute(() -> database.clearSegments(activeDownload.getFilePath()));
+                diskSpaceLedger.release(activeDownload.getFilePath());
                 deletePartialFileSafely(activeDownload.getFilePath());
                 notifyListeners(listener -> listener.onDownloadUpdated(activeDownload)); // Notificar UI
             }
@@ -538,7 +618,7 @@ public class DownloadManager {
         } else {
             Log.w(TAG, "Tentativa de cancelar download não encontrado no mapa ativo: " + downloadInfo.getFilePath());
             // Tentar remover do DB e deletar arquivo caso exista
-            database.deleteDownload(downloadInfo.getFilePath());
+            persister.delete(downloadInfo.getFilePath());
             deletePartialFileSafely(downloadInfo.getFilePath());
         }
         processQueue(); // Verificar se pode iniciar próximo
@@ -551,7 +631,7 @@ public class DownloadManager {
         if (completedDownload != null) {
             Log.d(TAG, "Deletando download concluído: " + completedDownload.getFileName());
             // Correção Erro 3: Usar método correto do DB
-            database.deleteDownload(completedDownload.getFilePath());
+            persister.delete(completedDownload.getFilePath());
             deletePartialFileSafely(completedDownload.getFilePath());
             // Notificar listeners sobre a remoção (pode ser um novo método no listener)
             // notifyListeners(listener -> listener.onDownloadRemoved(completedDownload));
@@ -579,23 +659,19 @@ public class DownloadManager {
         Log.d(TAG, "Updating download status: " + downloadInfo.getFileName() + " -> " + downloadInfo.getStatusText()); // Log status change
         activeDownloadsByPath.put(downloadInfo.getFilePath(), downloadInfo);
 
-        // Persistir no banco de dados periodicamente para não sobrecarregar
-        long now = System.currentTimeMillis();
-        boolean shouldPersist = now - lastPersistTime > PERSIST_INTERVAL || isFinalStatus(downloadInfo.getStatus());
-        
-        if (shouldPersist) {
+        // Progresso chega pelo DownloadProgressBus; aqui só passam mudanças de status,
+        // gravadas pelo persister fora do main thread
+        if (downloadInfo.getStatus() == DownloadInfo.STATUS_RUNNING ||
+            downloadInfo.getStatus() == DownloadInfo.STATUS_RESUMING) {
             // Marcar como sendo processado para crash recovery se estiver rodando
-            if (downloadInfo.getStatus() == DownloadInfo.STATUS_RUNNING || 
-                downloadInfo.getStatus() == DownloadInfo.STATUS_RESUMING) {
-                markDownloadAsProcessing(downloadInfo);
-            }
-            
-            database.addOrUpdateDownload(downloadInfo);
-            lastPersistTime = now;
-            
-            // Criar backup periodicamente
-            createBackupIfNeeded();
+            markDownloadAsProcessing(downloadInfo);
         }
+        if (isFinalStatus(downloadInfo.getStatus()) || downloadInfo.getStatus() == DownloadInfo.STATUS_PAUSED) {
+            persister.saveNow(downloadInfo); // Estados que precisam sobreviver a um kill
+        } else {
+            persister.save(downloadInfo);
+        }
+        createBackupIfNeeded();
 
         // Notificar listeners da UI
         notifyListeners(listener -> listener.onDownloadUpdated(downloadInfo));
@@ -613,9 +689,10 @@ public class DownloadManager {
                 handleCancellation(downloadInfo);
                 break;
             case DownloadInfo.STATUS_PAUSED:
+                diskSpaceLedger.release(downloadInfo.getFilePath()); // Reservado de novo ao retomar
                 // Se estava rodando e pausou, decrementar contador
                 if (runningDownloadsCount.get() > 0) { // Checagem extra
-                    decrementRunningCount();
+                    decrementRunningCount(downloadInfo);
                 }
                 break;
             case DownloadInfo.STATUS_RUNNING:
@@ -625,26 +702,89 @@ public class DownloadManager {
         }
     }
 
+    /**
+     * Recebe do DownloadProgressBus o lote de progresso dos downloads em execução:
+     * uma persistência (em uma transação) e uma notificação aos listeners por lote.
+     */
+    private void updateProgressBatch(List<DownloadInfo> batch) {
+        List<DownloadInfo> running = new ArrayList<>(batch.size());
+        for (DownloadInfo downloadInfo : batch) {
+            // Mudanças de status já passaram por updateDownload; ignorar ticks atrasados
+            if (downloadInfo.getStatus() != DownloadInfo.STATUS_RUNNING &&
+                downloadInfo.getStatus() != DownloadInfo.STATUS_RESUMING) continue;
+            if (!activeDownloadsByPath.containsKey(downloadInfo.getFilePath())) continue;
+            activeDownloadsByPath.put(downloadInfo.getFilePath(), downloadInfo);
+            running.add(downloadInfo);
+        }
+        if (running.isEmpty()) return;
+
+        long now = System.currentTimeMillis();
+        if (now - lastPersistTime > PERSIST_INTERVAL) {
+            for (DownloadInfo downloadInfo : running) {
+                markDownloadAsProcessing(downloadInfo);
+            }
+            for (DownloadInfo downloadInfo : running) {
+                persister.save(downloadInfo);
+            }
+            lastPersistTime = now;
+            createBackupIfNeeded();
+        }
+
+        notifyListeners(listener -> listener.onDownloadsUpdated(running));
+    }
+
     private void handleCompletion(DownloadInfo completedDownload) {
         Log.i(TAG, "Download concluído: " + completedDownload.getFileName());
         activeDownloadsByPath.remove(completedDownload.getFilePath());
+        DownloadProgressBus.getInstance().forget(completedDownload.getFilePath());
         completedDownloadsByPath.put(completedDownload.getFilePath(), completedDownload);
         
         // Limpar dados de crash recovery
-        database.clearCrashRecoveryData(completedDownload.getFilePath());
         completedDownload.setCrashRecoveryData(null);
+        diskSpaceLedger.release(completedDownload.getFilePath());
         
-        database.addOrUpdateDownload(completedDownload); // Garantir que o estado final está no DB
-        decrementRunningCount();
+        persister.saveNow(completedDownload); // Garantir que o estado final está no DB
+        decrementRunningCount(completedDownload);
         notifyListeners(listener -> listener.onDownloadCompleted(completedDownload));
+        if (completedDownload.getExtractionStatus() != DownloadInfo.EXTRACTION_DONE && // Já extraído em stream
+            ArchiveExtractor.isEnabled(context) && ArchiveExtractor.isSupported(completedDownload)) {
+            extractArchive(completedDownload);
+        }
         processQueue();
     }
 
+    /**
+     * Extrai um .zip concluído para uma pasta na árvore de downloads, fora do main thread.
+     * Usado quando a extração em stream não foi possível (download segmentado ou retomado) e
+     * para nova tentativa pela lista de concluídos.
+     */
+    public void extractArchive(DownloadInfo downloadInfo) {
+        if (downloadInfo == null || downloadInfo.getStatus() != DownloadInfo.STATUS_COMPLETED) return;
+        downloadInfo.setExtractionStatus(DownloadInfo.EXTRACTION_RUNNING);
+        downloadInfo.setExtractionMessage(null);
+        persister.save(downloadInfo);
+        notifyListeners(listener -> listener.onDownloadUpdated(downloadInfo));
+        extractionExecutor.execute(() -> {
+            try {
+                ArchiveExtractor.Extraction extraction = ArchiveExtractor.extractFile(context, downloadInfo);
+                downloadInfo.setExtractionStatus(DownloadInfo.EXTRACTION_DONE);
+                downloadInfo.setExtractionMessage(extraction.describe());
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Falha ao extrair " + downloadInfo.getFileName() + ": " + e.getMessage(), e);
+                downloadInfo.setExtractionStatus(DownloadInfo.EXTRACTION_FAILED);
+                downloadInfo.setExtractionMessage(e.getMessage());
+            }
+            persister.save(downloadInfo);
+            notifyListeners(listener -> listener.onDownloadUpdated(downloadInfo));
+        });
+    }
+
     private void handleFailure(DownloadInfo failedDownload) {
         Log.e(TAG, "Download falhou: " + failedDownload.getFileName() + " Razão: " + failedDownload.getErrorMessage());
         // Manter no mapa ativo para a UI mostrar o erro
-        database.addOrUpdateDownload(failedDownload);
-        decrementRunningCount();
+        diskSpaceLedger.release(failedDownload.getFilePath());
+        persister.saveNow(failedDownload);
+        decrementRunningCount(failedDownload);
         notifyListeners(listener -> listener.onDownloadFailed(failedDownload, failedDownload.getErrorMessage()));
         processQueue();
     }
@@ -654,20 +794,45 @@ public class DownloadManager {
         // Já deve ter sido removido do mapa ativo em cancelDownload()
         // Garantir que está removido
         activeDownloadsByPath.remove(cancelledDownload.getFilePath());
-        database.deleteDownload(cancelledDownload.getFilePath()); // Remover do DB
-        decrementRunningCount();
+        diskSpaceLedger.release(cancelledDownload.getFilePath());
+        DownloadProgressBus.getInstance().forget(cancelledDownload.getFilePath());
+        persister.delete(cancelledDownload.getFilePath()); // Remover do DB
+        decrementRunningCount(cancelledDownload);
         // Notificar listeners? (Pode ser redundante se cancelDownload já notificou)
         // notifyListeners(listener -> listener.onDownloadCancelled(cancelledDownload));
         processQueue();
     }
 
+    /**
+     * Reserva no DiskSpaceLedger (fora do main thread) o que falta gravar do download que acabou
+     * de entrar na fila, para a fila não aceitar mais do que o volume comporta. Se não couber e
+     * ele ainda estiver esperando, sai da fila como falha; se já foi retirado, admitDownload
+     * confere de novo. Downloads de tamanho desconhecido são conferidos pela tarefa quando o
+     * servidor informar.
+     */
+    private void checkQueuedDiskSpace(DownloadInfo downloadInfo) {
+        if (downloadInfo.getFileSize() <= 0) return;
+        diskSpaceLedger.reserveAsync(downloadInfo.getFilePath(), downloadInfo.getFileSize(), shortfall -> {
+            if (shortfall <= 0 || !downloadScheduler.remove(downloadInfo)) return;
+            downloadInfo.setStatus(DownloadInfo.STATUS_FAILED);
+            downloadInfo.setErrorMessage(spaceErrorFor(shortfall));
+            persister.saveNow(downloadInfo);
+            notifyListeners(listener -> listener.onDownloadFailed(downloadInfo, downloadInfo.getErrorMessage()));
+        });
+    }
+
+    private static String spaceErrorFor(long shortfall) {
+        return "Espaço insuficiente no destino: faltam " + FileUtils.formatFileSize(shortfall);
+    }
+
     private boolean isFinalStatus(int status) {
         return status == DownloadInfo.STATUS_COMPLETED ||
                status == DownloadInfo.STATUS_FAILED ||
                status == DownloadInfo.STATUS_CANCELLED;
     }
 
-    private void decrementRunningCount() {
+    private void decrementRunningCount(DownloadInfo downloadInfo) {
+        downloadScheduler.markFinished(downloadInfo.getFilePath());
         int currentCount = runningDownloadsCount.decrementAndGet();
         if (currentCount < 0) {
             Log.e(TAG, "Contador de downloads rodando ficou negativo!");
@@ -677,103 +842,282 @@ public class DownloadManager {
     }
 
     public void processQueue() {
-        synchronized (downloadQueue) {
-            if (downloadQueue.isEmpty()) {
-                Log.d(TAG, "Fila de downloads vazia.");
-                checkStopService();
-                return;
+        if (downloadScheduler.isEmpty()) {
+            Log.d(TAG, "Fila de downloads vazia.");
+            checkStopService();
+            return;
+        }
+
+        int maxConcurrent = getConcurrentDownloadLimit();
+        int maxPerHost = getMaxDownloadsPerHost();
+        DownloadWorkerPool pool = workerPool;
+        if (pool != null) {
+            pool.resize(maxConcurrent); // Garante que o pool já comporta o que será iniciado agora
+        }
+        while (true) {
+            DownloadInfo nextDownload;
+            // Só a escolha e a reserva da vaga ficam sob o lock; banco e validação SAF ficam fora
+            synchronized (downloadScheduler) {
+                if (runningDownloadsCount.get() >= maxConcurrent) break;
+                nextDownload = downloadScheduler.pollNext(maxPerHost);
+                if (nextDownload == null) break; // Fila vazia ou hosts no limite
+                runningDownloadsCount.incrementAndGet();
             }
 
-            int maxConcurrent = getConcurrentDownloadLimit();
-            while (runningDownloadsCount.get() < maxConcurrent && !downloadQueue.isEmpty()) {
-                DownloadInfo nextDownload = downloadQueue.remove(0);
-                database.removeFromQueue(nextDownload);
+            if (nextDownload.getStatus() != DownloadInfo.STATUS_QUEUED) {
+                Log.w(TAG, "Item removido da fila não estava no estado QUEUED: " + nextDownload.getFileName());
+                decrementRunningCount(nextDownload);
+                continue; // Pular para o próximo
+            }
 
-                if (nextDownload.getStatus() != DownloadInfo.STATUS_QUEUED) {
-                    Log.w(TAG, "Item removido da fila não estava no estado QUEUED: " + nextDownload.getFileName());
-                    continue; // Pular para o próximo
+            // A vaga já está contada. Validar o arquivo e reservar espaço fazem E/S: rodam fora
+            // do main thread e o início segue em admitDownload
+            final DownloadInfo admitted = nextDownload;
+            final long fileSize = admitted.getFileSize();
+            admittingPaths.add(admitted.getFilePath());
+            validationExecutor.execute(() -> {
+                DownloadResumeHelper.ValidationResult validation = checkPartialFile(admitted);
+                if (!validation.isValid) {
+                    Log.e(TAG, "Arquivo parcial inválido para iniciar download: " + admitted.getFilePath());
+                    mainHandler.post(() -> admitDownload(admitted, validation, "Erro ao validar arquivo para iniciar."));
+                } else if (fileSize <= 0) {
+                    mainHandler.post(() -> admitDownload(admitted, validation, null));
+                } else {
+                    diskSpaceLedger.reserveAsync(admitted.getFilePath(), fileSize,
+                            shortfall -> admitDownload(admitted, validation, shortfall > 0 ? spaceErrorFor(shortfall) : null));
                 }
+            });
+        }
 
-                // Validar arquivo antes de iniciar
-                if (!validatePartialFile(nextDownload)) {
-                    Log.e(TAG, "Arquivo parcial inválido para iniciar download: " + nextDownload.getFilePath());
-                    nextDownload.setStatus(DownloadInfo.STATUS_FAILED);
-                    nextDownload.setErrorMessage("Erro ao validar arquivo para iniciar.");
-                    database.addOrUpdateDownload(nextDownload);
-                    // Correção Erro 4: Usar variável final ou efetivamente final no lambda
-                    final DownloadInfo failedDownload = nextDownload;
-                    notifyListeners(listener -> listener.onDownloadFailed(failedDownload, failedDownload.getErrorMessage()));
-                    continue; // Tentar o próximo da fila
-                }
+        if (runningDownloadsCount.get() == 0 && downloadScheduler.isEmpty()) {
+             checkStopService();
+        }
+    }
 
-                Log.i(TAG, "Iniciando download da fila: " + nextDownload.getFileName());
-                nextDownload.setStatus(DownloadInfo.STATUS_RESUMING); // Ou RUNNING se downloadedSize == 0
-                nextDownload.setLastResumeTime(System.currentTimeMillis());
-                database.addOrUpdateDownload(nextDownload);
-                runningDownloadsCount.incrementAndGet();
-                Log.d(TAG, "Downloads rodando: " + runningDownloadsCount.get());
-                DownloadService.startDownload(context, nextDownload);
-                notifyListeners(listener -> listener.onDownloadUpdated(nextDownload));
-            }
+    /**
+     * Na thread principal, depois da validação e da reserva de espaço: inicia o download retirado
+     * da fila, ou devolve a vaga se ele falhou nelas ou foi pausado/cancelado enquanto isso.
+     * As correções da validação só são aplicadas aqui, depois de conferir o estado.
+     * @param validation resultado de checkPartialFile
+     * @param error motivo da falha (arquivo inválido, espaço insuficiente), ou null
+     */
+    private void admitDownload(DownloadInfo nextDownload, DownloadResumeHelper.ValidationResult validation, String error) {
+        admittingPaths.remove(nextDownload.getFilePath());
+        if (nextDownload.getStatus() != DownloadInfo.STATUS_QUEUED
+                || activeDownloadsByPath.get(nextDownload.getFilePath()) != nextDownload) {
+            Log.d(TAG, "Download saiu da fila durante a validação: " + nextDownload.getFileName());
+            diskSpaceLedger.release(nextDownload.getFilePath());
+            decrementRunningCount(nextDownload);
+            processQueue();
+            return;
+        }
+        if (validation.needsAdjustment) {
+            DownloadResumeHelper.applyValidationCorrections(nextDownload, validation); // Salvo abaixo
+        }
+        if (error != null) {
+            nextDownload.setStatus(DownloadInfo.STATUS_FAILED);
+            nextDownload.setErrorMessage(error);
+            persister.save(nextDownload);
+            decrementRunningCount(nextDownload);
+            notifyListeners(listener -> listener.onDownloadFailed(nextDownload, nextDownload.getErrorMessage()));
+            processQueue();
+            return;
+        }
+
+        Log.i(TAG, "Iniciando download da fila: " + nextDownload.getFileName());
+        nextDownload.setStatus(DownloadInfo.STATUS_RESUMING); // Ou RUNNING se downloadedSize == 0
+        nextDownload.setLastResumeTime(System.currentTimeMillis());
+        nextDownload.setQueuePosition(DownloadInfo.QUEUE_POSITION_NONE); // Ao voltar para a fila recebe nova posição
+        persister.save(nextDownload);
+        DownloadWorkerPool pool = workerPool;
+        Log.d(TAG, "Downloads rodando: " + runningDownloadsCount.get() + (pool != null ? " (pool: " + pool.getStats() + ")" : ""));
+        DownloadService.startDownload(context, nextDownload);
+        notifyListeners(listener -> listener.onDownloadUpdated(nextDownload));
+    }
+
+    /**
+     * Passa o download para o início da fila.
+     */
+    public void moveToFront(DownloadInfo downloadInfo) {
+        if (downloadInfo == null || downloadInfo.getFilePath() == null) return;
+        DownloadInfo activeDownload = activeDownloadsByPath.get(downloadInfo.getFilePath());
+        if (activeDownload == null || !downloadScheduler.contains(activeDownload)) return;
+        downloadScheduler.moveToFront(activeDownload);
+        persister.save(activeDownload); // Persistir nova posição
+        notifyListeners(listener -> listener.onDownloadUpdated(activeDownload));
+        processQueue();
+    }
+
+    /**
+     * Altera a prioridade (DownloadInfo.PRIORITY_*). Vale para a ordem da fila e para a fatia de banda.
+     */
+    public void setDownloadPriority(DownloadInfo downloadInfo, int priority) {
+        if (downloadInfo == null || downloadInfo.getFilePath() == null) return;
+        DownloadInfo activeDownload = activeDownloadsByPath.get(downloadInfo.getFilePath());
+        if (activeDownload == null) return;
+        downloadScheduler.setPriority(activeDownload, priority);
+        BandwidthGovernor.getInstance(context).setWeight(activeDownload.getFilePath(), activeDownload.getPriority() + 1);
+        persister.save(activeDownload);
+        notifyListeners(listener -> listener.onDownloadUpdated(activeDownload));
+        processQueue();
+    }
 
-            if (runningDownloadsCount.get() == 0 && downloadQueue.isEmpty()) {
-                 checkStopService();
+    /**
+     * Compara o hash informado (SHA-256 ou MD5, em hex) com os digests calculados durante o
+     * download e guarda o hash para exibição. Não relê o arquivo.
+     * @return true/false, ou null se o download não tem digest do tipo informado
+     */
+    public Boolean verifyHash(DownloadInfo downloadInfo, String expectedHash) {
+        if (downloadInfo == null || downloadInfo.getFilePath() == null) return null;
+        Boolean result = StreamingHasher.matches(expectedHash, downloadInfo.getSha256(), downloadInfo.getMd5());
+        if (result != null) {
+            downloadInfo.setExpectedHash(expectedHash.trim());
+            persister.save(downloadInfo);
+        }
+        return result;
+    }
+
+    /**
+     * Conclui em segundo plano o SHA-256/MD5 de um download já concluído cujo hash não acompanhou a
+     * gravação (faixas fora de ordem, prefixo de uma tarefa anterior): relê só o que falta, sem segurar
+     * o download em 100%. Chamar depois de o download chegar ao main thread como concluído.
+     */
+    public void finishHashInBackground(String filePath, StreamingHasher hasher, long totalSize) {
+        hashExecutor.execute(() -> {
+            long pending = totalSize - hasher.getHashedBytes();
+            try (PositionalFileWriter file = PositionalFileWriter.open(context, Uri.parse(filePath))) {
+                hasher.catchUp(file, totalSize);
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "Não foi possível concluir o hash de " + filePath + ": " + e.getMessage());
+                return;
             }
+            String sha256 = hasher.sha256Hex();
+            String md5 = hasher.md5Hex();
+            Log.i(TAG, "Hash concluído em segundo plano (" + pending + " bytes relidos): " + filePath);
+            mainHandler.post(() -> {
+                DownloadInfo completed = completedDownloadsByPath.get(filePath);
+                if (completed == null) return; // Removido da lista nesse meio tempo
+                recordDigests(completed, sha256, md5);
+                persister.save(completed);
+                notifyListeners(listener -> listener.onDownloadUpdated(completed));
+            });
+        });
+    }
+
+    /**
+     * Guarda os digests no download e confere com o hash esperado, se houver.
+     */
+    public static void recordDigests(DownloadInfo downloadInfo, String sha256, String md5) {
+        downloadInfo.setSha256(sha256);
+        downloadInfo.setMd5(md5);
+        Log.i(TAG, "SHA-256 de " + downloadInfo.getFileName() + ": " + sha256);
+        Boolean verified = StreamingHasher.matches(downloadInfo.getExpectedHash(), sha256, md5);
+        if (Boolean.FALSE.equals(verified)) {
+            Log.e(TAG, "Hash não confere para " + downloadInfo.getFileName() + " (esperado " + downloadInfo.getExpectedHash() + ")");
+            downloadInfo.setErrorMessage("Hash não confere com o informado pela fonte");
+        } else if (Boolean.TRUE.equals(verified)) {
+            Log.i(TAG, "Hash verificado para " + downloadInfo.getFileName());
         }
     }
 
-    private boolean validatePartialFile(DownloadInfo downloadInfo) {
+    /**
+     * Downloads na fila, na ordem em que serão iniciados.
+     */
+    public List<DownloadInfo> getQueuedDownloads() {
+        return downloadScheduler.snapshot();
+    }
+
+    /**
+     * Confere o arquivo parcial antes de iniciar. Lê o armazenamento (SAF, banco, blocos finais):
+     * roda em validationExecutor e não altera o download; as correções do resultado são
+     * aplicadas no main thread (admitDownload, validatePausedDownloads).
+     */
+    private DownloadResumeHelper.ValidationResult checkPartialFile(DownloadInfo downloadInfo) {
+        DownloadResumeHelper.ValidationResult result = new DownloadResumeHelper.ValidationResult();
         try {
             Uri fileUri = Uri.parse(downloadInfo.getFilePath());
             DocumentFile partialFile = DocumentFile.fromSingleUri(context, fileUri);
+            long recordedSize = downloadInfo.getDownloadedSize();
 
             if (partialFile == null || !partialFile.exists() || !partialFile.isFile()) {
                 Log.w(TAG, "Arquivo parcial SAF não encontrado ou inválido ao validar: " + downloadInfo.getFilePath());
-                // Se o arquivo não existe, mas o download tem tamanho > 0, algo está errado.
-                if (downloadInfo.getDownloadedSize() > 0) {
+                // Considerar válido para iniciar (ou reiniciar) se o arquivo não existe
+                result.isValid = true;
+                if (recordedSize > 0) {
                     Log.e(TAG, "Inconsistência: DownloadedSize > 0 mas arquivo não existe!");
-                    downloadInfo.setDownloadedSize(0); // Resetar
-                    downloadInfo.setProgress(0);
-                    database.addOrUpdateDownload(downloadInfo); // Salvar correção
+                    result.needsAdjustment = true;
+                    result.adjustedSize = 0; // Resetar
+                    result.reason = "Arquivo não encontrado";
                 }
-                // Considerar válido para iniciar (ou reiniciar) se o arquivo não existe
-                return true;
+                return result;
+            }
+
+            // Downloads segmentados: o checkpoint de faixas decide o progresso, não o tamanho do arquivo
+            if (recordedSize > 0 && !database.getSegments(downloadInfo.getFilePath()).isEmpty()) {
+                return DownloadResumeHelper.validatePartialFile(context, downloadInfo);
             }
 
             long currentFileSize = partialFile.length();
-            if (currentFileSize != downloadInfo.getDownloadedSize()) {
+            result.isValid = true; // Arquivo existe; o tamanho é ajustado se preciso
+            if (currentFileSize != recordedSize) {
                 Log.w(TAG, "Tamanho do arquivo parcial SAF (" + currentFileSize +
-                      ") não corresponde ao tamanho registrado (" +
-                      downloadInfo.getDownloadedSize() + "), ajustando.");
-                downloadInfo.setDownloadedSize(currentFileSize);
-                if (downloadInfo.getFileSize() > 0) {
-                    int progress = (int) ((currentFileSize * 100) / downloadInfo.getFileSize());
-                    downloadInfo.setProgress(Math.min(100, Math.max(0, progress)));
-                } else {
-                    downloadInfo.setProgress(0);
-                }
-                database.addOrUpdateDownload(downloadInfo); // Salvar correção
+                      ") não corresponde ao tamanho registrado (" + recordedSize + "), ajustando.");
+                result.needsAdjustment = true;
+                result.adjustedSize = currentFileSize;
+                result.reason = "Tamanho do arquivo difere do registrado";
             }
-            return true; // Arquivo existe e tamanho foi ajustado
+            return result;
         } catch (Exception e) {
             Log.e(TAG, "Erro ao validar arquivo parcial SAF: " + downloadInfo.getFilePath(), e);
-            return false; // Considerar inválido em caso de erro
+            result.reason = e.getMessage();
+            return result; // Considerar inválido em caso de erro
         }
     }
 
+    /**
+     * Valida os arquivos dos downloads pausados em validationExecutor; os inválidos que
+     * continuarem pausados são marcados como falha no main thread.
+     */
     private void validatePausedDownloads() {
-        List<DownloadInfo> downloadsToValidate = new ArrayList<>(activeDownloadsByPath.values());
-        for (DownloadInfo download : downloadsToValidate) {
+        List<DownloadInfo> downloadsToValidate = new ArrayList<>();
+        for (DownloadInfo download : activeDownloadsByPath.values()) {
             if (download.getStatus() == DownloadInfo.STATUS_PAUSED) {
-                if (!validatePartialFile(download)) {
+                downloadsToValidate.add(download);
+            }
+        }
+        if (downloadsToValidate.isEmpty()) return;
+        validationExecutor.execute(() -> {
+            Map<DownloadInfo, DownloadResumeHelper.ValidationResult> results = new LinkedHashMap<>();
+            for (DownloadInfo download : downloadsToValidate) {
+                DownloadResumeHelper.ValidationResult validation = checkPartialFile(download);
+                if (!validation.isValid || validation.needsAdjustment) {
+                    results.put(download, validation);
+                }
+            }
+            if (results.isEmpty()) return;
+            mainHandler.post(() -> {
+                for (Map.Entry<DownloadInfo, DownloadResumeHelper.ValidationResult> entry : results.entrySet()) {
+                    DownloadInfo download = entry.getKey();
+                    DownloadResumeHelper.ValidationResult validation = entry.getValue();
+                    if (download.getStatus() != DownloadInfo.STATUS_PAUSED
+                            || resumingPaths.contains(download.getFilePath())
+                            || activeDownloadsByPath.get(download.getFilePath()) != download) {
+                        continue; // Retomado ou cancelado nesse meio tempo
+                    }
+                    if (validation.isValid) {
+                        DownloadResumeHelper.applyValidationCorrections(download, validation);
+                        persister.save(download); // Salvar correção
+                        notifyListeners(listener -> listener.onDownloadUpdated(download));
+                        continue;
+                    }
                     Log.e(TAG, "Arquivo parcial inválido para download pausado: " + download.getFilePath() + ". Marcando como falha.");
                     download.setStatus(DownloadInfo.STATUS_FAILED);
                     download.setErrorMessage("Erro ao validar arquivo pausado.");
-                    database.addOrUpdateDownload(download);
+                    persister.save(download);
                     notifyListeners(listener -> listener.onDownloadFailed(download, download.getErrorMessage()));
                 }
-            }
-        }
+            });
+        });
     }
 
     public List<DownloadInfo> getActiveDownloads() {
@@ -824,7 +1168,22 @@ public class DownloadManager {
     }
 
     public boolean hasActiveOrQueuedDownloads() {
-        return !activeDownloadsByPath.isEmpty() || !downloadQueue.isEmpty();
+        return !activeDownloadsByPath.isEmpty() || !downloadScheduler.isEmpty();
+    }
+
+    /**
+     * Chamado pelo DownloadService ao criar/destruir seu pool, para que fila e pool usem o mesmo limite.
+     */
+    public void attachWorkerPool(DownloadWorkerPool pool) {
+        this.workerPool = pool;
+    }
+
+    /**
+     * Estado do pool de workers (ocupados/limite e tarefas aguardando), ou null sem serviço ativo.
+     */
+    public String getWorkerPoolStats() {
+        DownloadWorkerPool pool = workerPool;
+        return pool != null ? pool.getStats() : null;
     }
 
     public void setServiceRunning(boolean running) {
@@ -836,11 +1195,13 @@ public class DownloadManager {
                     Log.w(TAG, "Serviço parou, marcando download como pausado: " + download.getFileName());
                     download.setStatus(DownloadInfo.STATUS_PAUSED);
                     download.setLastPauseTime(System.currentTimeMillis());
-                    database.addOrUpdateDownload(download);
+                    persister.save(download);
                     notifyListeners(listener -> listener.onDownloadUpdated(download));
                 }
             }
             runningDownloadsCount.set(0);
+            downloadScheduler.clearRunning();
+            persister.flushAndWait(SHUTDOWN_FLUSH_TIMEOUT); // Serviço parando: garantir estado durável
         }
     }
 
@@ -891,14 +1252,13 @@ public class DownloadManager {
     private void createBackupIfNeeded() {
         long now = System.currentTimeMillis();
         if (now - lastBackupTime > BACKUP_INTERVAL) {
-            try {
+            lastBackupTime = now;
+            // A cópia do arquivo do banco roda na thread do persister, após as gravações pendentes
+            persister.execute(() -> {
                 if (database.createBackup()) {
-                    lastBackupTime = now;
                     Log.d(TAG, "Backup do banco criado com sucesso");
                 }
-            } catch (Exception e) {
-                Log.e(TAG, "Erro ao criar backup: " + e.getMessage(), e);
-            }
+            });
         }
     }
     
@@ -909,10 +1269,13 @@ public class DownloadManager {
         try {
             List<DownloadInfo> allActiveDownloads = new ArrayList<>();
             allActiveDownloads.addAll(activeDownloadsByPath.values());
-            allActiveDownloads.addAll(downloadQueue);
+            allActiveDownloads.addAll(downloadScheduler.snapshot());
             
-            database.forceFullPersist(allActiveDownloads);
+            for (DownloadInfo download : allActiveDownloads) {
+                persister.save(download);
+            }
             createBackupIfNeeded();
+            persister.flushAndWait(SHUTDOWN_FLUSH_TIMEOUT);
             
             Log.d(TAG, "Persistência forçada concluída para " + allActiveDownloads.size() + " downloads");
         } catch (Exception e) {
@@ -937,18 +1300,18 @@ public class DownloadManager {
                     
                     // Adicionar de volta aos downloads ativos
                     activeDownloadsByPath.put(download.getFilePath(), download);
-                    database.addOrUpdateDownload(download);
+                    persister.save(download);
                     
                     // Limpar dados de crash recovery
-                    database.clearCrashRecoveryData(download.getFilePath());
+                    persister.execute(() -> database.clearCrashRecoveryData(download.getFilePath()));
                     
                     notifyListeners(listener -> listener.onDownloadAdded(download));
                 } else {
                     // Se auto-resume não está habilitado, marcar como falhou
                     download.setStatus(DownloadInfo.STATUS_FAILED);
                     download.setErrorMessage("Download interrompido inesperadamente");
-                    database.addOrUpdateDownload(download);
-                    database.clearCrashRecoveryData(download.getFilePath());
+                    persister.save(download);
+                    persister.execute(() -> database.clearCrashRecoveryData(download.getFilePath()));
                 }
             }
             
@@ -980,31 +1343,60 @@ public class DownloadManager {
     }
     
     /**
-     * Verifica e corrige downloads com problemas de integridade
+     * Verifica e corrige downloads com problemas de integridade. Lê os arquivos parciais na thread
+     * atual: só forceIntegrityCheck, que a UI já chama fora do main thread, usa a versão síncrona.
      */
     private void performIntegrityCheck() {
+        applyIntegrityResults(validateForIntegrity(integrityCandidates()));
+    }
+
+    private List<DownloadInfo> integrityCandidates() {
+        List<DownloadInfo> candidates = new ArrayList<>();
+        for (DownloadInfo download : activeDownloadsByPath.values()) {
+            if (download.getStatus() == DownloadInfo.STATUS_PAUSED ||
+                download.getStatus() == DownloadInfo.STATUS_FAILED) {
+                candidates.add(download);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Parte de E/S da verificação de integridade: só valida, sem alterar os downloads.
+     */
+    private Map<DownloadInfo, DownloadResumeHelper.ValidationResult> validateForIntegrity(List<DownloadInfo> candidates) {
+        Log.d(TAG, "Iniciando verificação de integridade dos downloads");
+        Map<DownloadInfo, DownloadResumeHelper.ValidationResult> results = new LinkedHashMap<>();
+        for (DownloadInfo download : candidates) {
+            results.put(download, DownloadResumeHelper.validatePartialFile(context, download));
+        }
+        return results;
+    }
+
+    /**
+     * Aplica o resultado de validateForIntegrity aos downloads que continuam pausados ou com falha.
+     */
+    private void applyIntegrityResults(Map<DownloadInfo, DownloadResumeHelper.ValidationResult> results) {
         try {
-            Log.d(TAG, "Iniciando verificação de integridade dos downloads");
-            
             List<DownloadInfo> problematicDownloads = new ArrayList<>();
             
-            // Verificar downloads ativos
-            for (DownloadInfo download : activeDownloadsByPath.values()) {
-                if (download.getStatus() == DownloadInfo.STATUS_PAUSED || 
-                    download.getStatus() == DownloadInfo.STATUS_FAILED) {
-                    
-                    DownloadResumeHelper.ValidationResult validation = 
-                        DownloadResumeHelper.validatePartialFile(context, download);
+            for (Map.Entry<DownloadInfo, DownloadResumeHelper.ValidationResult> entry : results.entrySet()) {
+                DownloadInfo download = entry.getKey();
+                DownloadResumeHelper.ValidationResult validation = entry.getValue();
+                if (activeDownloadsByPath.get(download.getFilePath()) != download ||
+                    (download.getStatus() != DownloadInfo.STATUS_PAUSED &&
+                     download.getStatus() != DownloadInfo.STATUS_FAILED)) {
+                    continue; // Mudou de estado durante a validação
+                }
                     
-                    if (!validation.isValid && validation.shouldRestart) {
-                        Log.w(TAG, "Download com problema detectado: " + download.getFileName() + 
-                             " - " + validation.reason);
-                        problematicDownloads.add(download);
-                    } else if (validation.needsAdjustment) {
-                        Log.i(TAG, "Corrigindo download: " + download.getFileName());
-                        DownloadResumeHelper.applyValidationCorrections(download, validation);
-                        database.addOrUpdateDownload(download);
-                    }
+                if (!validation.isValid && validation.shouldRestart) {
+                    Log.w(TAG, "Download com problema detectado: " + download.getFileName() + 
+                         " - " + validation.reason);
+                    problematicDownloads.add(download);
+                } else if (validation.needsAdjustment) {
+                    Log.i(TAG, "Corrigindo download: " + download.getFileName());
+                    DownloadResumeHelper.applyValidationCorrections(download, validation);
+                    persister.save(download);
                 }
             }
             
@@ -1018,13 +1410,11 @@ public class DownloadManager {
                 download.resetResumeAttempts();
                 
                 // Adicionar à fila para tentar novamente
-                synchronized (downloadQueue) {
-                    if (!downloadQueue.contains(download)) {
-                        downloadQueue.add(download);
-                    }
+                if (!downloadScheduler.contains(download)) {
+                    downloadScheduler.enqueue(download);
                 }
                 
-                database.addOrUpdateDownload(download);
+                persister.save(download);
                 notifyListeners(listener -> listener.onDownloadUpdated(download));
             }
             
@@ -1045,9 +1435,8 @@ public class DownloadManager {
      */
     private void markDownloadAsProcessing(DownloadInfo downloadInfo) {
         try {
-            String recoveryData = createRecoveryData(downloadInfo);
-            downloadInfo.setCrashRecoveryData(recoveryData);
-            database.markDownloadAsProcessing(downloadInfo.getFilePath(), recoveryData);
+            // Gravado junto com o download na próxima descarga do persister
+            downloadInfo.setCrashRecoveryData(createRecoveryData(downloadInfo));
         } catch (Exception e) {
             Log.e(TAG, "Erro ao marcar download para crash recovery: " + e.getMessage(), e);
         }
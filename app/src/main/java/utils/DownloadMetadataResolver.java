@@ -4,36 +4,122 @@ import android.content.Context;
 import android.net.Uri;
 import android.os.Handler;
 import android.os.Looper;
+import android.util.Base64;
 import android.util.Log;
 
 import com.LDGAMES.models.DownloadInfo;
 
 import java.io.IOException;
 import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import okhttp3.Call;
+import okhttp3.Response;
+
+/**
+ * Metadados de URLs de download (HEAD): URL final, tipo MIME, tamanho, Accept-Ranges e ETag.
+ * As requisições rodam em um pool limitado, com no máximo {@link #MAX_PER_HOST} por host (as
+ * demais esperam na fila do host sem ocupar thread). Resultados bem-sucedidos ficam em cache por
+ * {@link #CACHE_TTL}, e pedidos simultâneos para a mesma URL compartilham uma única requisição.
+ */
 public class DownloadMetadataResolver {
     private static final String TAG = "DownloadMetadataResolver";
-    private static final ExecutorService executor = Executors.newCachedThreadPool();
+    private static final int MAX_THREADS = 4;
+    private static final int MAX_PER_HOST = 2;
+    private static final long CACHE_TTL = 5 * 60 * 1000; // ms
+    private static final int CACHE_SIZE = 256;
+
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+    private static final ThreadPoolExecutor executor = createExecutor();
     private static final Handler mainThreadHandler = new Handler(Looper.getMainLooper()); // Handler for main thread
 
+    // Cache LRU por URL; acesso sincronizado no próprio mapa
+    private static final Map<String, Metadata> cache = new LinkedHashMap<String, Metadata>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Metadata> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+    // Pedidos em andamento por URL: quem chega depois só entra na lista de espera
+    private static final Map<String, List<ResultListener>> inFlight = new HashMap<>();
+    private static final Map<String, HostQueue> hostQueues = new HashMap<>();
+
     public interface MetadataCallback {
         void onMetadataResolved(String resolvedUrl, String mimeType, long contentLength);
         void onMetadataError(String errorMessage);
     }
-    
+
     public interface DownloadInfoCallback {
         void onMetadataResolved(DownloadInfo downloadInfo);
         void onMetadataError(String errorMessage);
     }
-    
+
     public interface LinkValidationCallback {
         void onLinkValid(DownloadInfo downloadInfo);
         void onLinkExpired(DownloadInfo downloadInfo, String errorMessage);
     }
 
+    /**
+     * Resposta do HEAD para uma URL.
+     */
+    public static class Metadata {
+        public final int responseCode;
+        public final String finalUrl; // Após redirecionamentos
+        public final String mimeType;
+        public final long contentLength; // -1 se desconhecido
+        public final boolean acceptRanges;
+        public final String etag;
+        public final String contentDisposition;
+        public final String expectedHash; // "sha256:hex"/"md5:hex" anunciado pelo servidor, ou null
+        final long fetchedAt;
+
+        Metadata(int responseCode, String finalUrl, String mimeType, long contentLength,
+                 boolean acceptRanges, String etag, String contentDisposition, String expectedHash) {
+            this.responseCode = responseCode;
+            this.finalUrl = finalUrl;
+            this.mimeType = mimeType;
+            this.contentLength = contentLength;
+            this.acceptRanges = acceptRanges;
+            this.etag = etag;
+            this.contentDisposition = contentDisposition;
+            this.expectedHash = expectedHash;
+            this.fetchedAt = System.currentTimeMillis();
+        }
+
+        public boolean isSuccessful() {
+            return responseCode >= HttpURLConnection.HTTP_OK && responseCode < HttpURLConnection.HTTP_MULT_CHOICE;
+        }
+    }
+
+    /**
+     * Resultado de resolve(); chamado em uma thread do pool.
+     */
+    private interface ResultListener {
+        void onResult(Metadata metadata, Exception error);
+    }
+
+    private static class HostQueue {
+        int running;
+        final ArrayDeque<Runnable> pending = new ArrayDeque<>();
+    }
+
+    private static ThreadPoolExecutor createExecutor() {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> new Thread(runnable, "metadata-resolver-" + threadCounter.incrementAndGet()));
+        pool.allowCoreThreadTimeOut(true); // Sem pedidos, nenhuma thread fica parada
+        return pool;
+    }
+
     /**
      * Resolve metadados de URL para download
      * @param context Contexto da aplicação (pode ser removido se não for usado)
@@ -41,68 +127,32 @@ public class DownloadMetadataResolver {
      * @param callback Callback para retornar os metadados
      */
     public static void resolveMetadata(Context context, String url, MetadataCallback callback) {
-        executor.execute(() -> {
-            HttpURLConnection connection = null;
-            try {
-                // Tentar obter informações do servidor
-                URL urlObj = new URL(url);
-                connection = (HttpURLConnection) urlObj.openConnection();
-                connection.setRequestMethod("HEAD");
-                connection.setRequestProperty("User-Agent", "Mozilla/5.0");
-                connection.setInstanceFollowRedirects(true);
-                connection.setConnectTimeout(15000); // 15 seconds timeout
-                connection.setReadTimeout(15000); // 15 seconds timeout
-                connection.connect();
-                
-                int responseCode = connection.getResponseCode();
-                if (responseCode >= HttpURLConnection.HTTP_OK && responseCode < HttpURLConnection.HTTP_MULT_CHOICE) {
-                    // Obter tamanho do arquivo
-                    long contentLength = connection.getContentLengthLong(); // Use Long version
-                    
-                    // Obter tipo MIME
-                    String mimeType = connection.getContentType();
-                    if (mimeType == null || mimeType.isEmpty()) {
-                        mimeType = "application/octet-stream";
-                    }
-                    
-                    // Obter URL final (após redirecionamentos)
-                    String resolvedUrl = connection.getURL().toString();
-                    
-                    // Fazer cópias finais para usar no lambda
-                    final String finalResolvedUrl = resolvedUrl;
-                    final String finalMimeType = mimeType;
-                    final long finalContentLength = contentLength;
-                    
-                    // Chamar callback na thread principal
-                    mainThreadHandler.post(() -> callback.onMetadataResolved(finalResolvedUrl, finalMimeType, finalContentLength));
-                } else {
-                    final String errorMessage = "Erro ao obter metadados: código " + responseCode;
-                    // Chamar callback de erro na thread principal
-                    mainThreadHandler.post(() -> callback.onMetadataError(errorMessage));
-                }
-                
-            } catch (Exception e) {
-                Log.e(TAG, "Erro ao resolver metadados para " + url, e);
-                final String errorMessage = e.getMessage() != null ? e.getMessage() : "Erro desconhecido ao conectar";
+        resolve(url, (metadata, error) -> {
+            if (error != null) {
+                Log.e(TAG, "Erro ao resolver metadados para " + url, error);
+                final String errorMessage = error.getMessage() != null ? error.getMessage() : "Erro desconhecido ao conectar";
                 // Chamar callback de erro na thread principal
                 mainThreadHandler.post(() -> callback.onMetadataError(errorMessage));
-            } finally {
-                 if (connection != null) {
-                    connection.disconnect();
-                }
+            } else if (metadata.isSuccessful()) {
+                final String mimeType = metadata.mimeType != null && !metadata.mimeType.isEmpty()
+                        ? metadata.mimeType : "application/octet-stream";
+                // Chamar callback na thread principal
+                mainThreadHandler.post(() -> callback.onMetadataResolved(metadata.finalUrl, mimeType, metadata.contentLength));
+            } else {
+                final String errorMessage = "Erro ao obter metadados: código " + metadata.responseCode;
+                mainThreadHandler.post(() -> callback.onMetadataError(errorMessage));
             }
         });
     }
 
     // Sobrecarga do método resolveMetadata para DownloadInfoCallback
     public static void resolveMetadata(Context context, String url, String initialFileName, long initialContentLength, DownloadInfoCallback callback) {
-        executor.execute(() -> {
-            HttpURLConnection connection = null;
+        resolve(url, (metadata, error) -> {
             try {
                 // Criar objeto de download com informações iniciais
                 DownloadInfo downloadInfo = new DownloadInfo();
                 downloadInfo.setUrl(url);
-                
+
                 // Definir nome do arquivo
                 String fileName = initialFileName;
                 if (fileName == null || fileName.isEmpty()) {
@@ -112,89 +162,59 @@ public class DownloadMetadataResolver {
                     }
                 }
                 downloadInfo.setFileName(fileName);
-                
+
                 // Definir tamanho do arquivo inicial
                 if (initialContentLength > 0) {
                     downloadInfo.setFileSize(initialContentLength);
                 }
-                
+
                 // Definir caminho do arquivo inicial
                 String filePath = FileUtils.getDownloadFilePath(context, fileName);
                 downloadInfo.setFilePath(filePath);
-                
-                // Tentar obter mais informações do servidor
-                try {
-                    URL urlObj = new URL(url);
-                    connection = (HttpURLConnection) urlObj.openConnection();
-                    connection.setRequestMethod("HEAD");
-                    connection.setRequestProperty("User-Agent", "Mozilla/5.0");
-                    connection.setInstanceFollowRedirects(true);
-                    connection.setConnectTimeout(15000);
-                    connection.setReadTimeout(15000);
-                    connection.connect();
-                    
-                    int responseCode = connection.getResponseCode();
-                    if (responseCode >= HttpURLConnection.HTTP_OK && responseCode < HttpURLConnection.HTTP_MULT_CHOICE) {
-                        // Obter tamanho do arquivo
-                        long fileSize = connection.getContentLengthLong();
-                        if (fileSize > 0) {
-                            downloadInfo.setFileSize(fileSize);
-                        }
-                        
-                        // Obter tipo MIME
-                        String mimeType = connection.getContentType();
-                        if (mimeType != null && !mimeType.isEmpty()) {
-                            downloadInfo.setMimeType(mimeType);
-                        } else {
-                            downloadInfo.setMimeType("application/octet-stream");
-                        }
-                        
-                        // Obter nome do arquivo do Content-Disposition
-                        String contentDisposition = connection.getHeaderField("Content-Disposition");
-                        String extractedFileName = null;
-                        if (contentDisposition != null) {
-                            extractedFileName = FileUtils.extractFilenameFromContentDisposition(contentDisposition);
-                        }
-                        
-                        // Se o nome do arquivo foi extraído e é diferente, atualiza
-                        if (extractedFileName != null && !extractedFileName.isEmpty() && !extractedFileName.equals(downloadInfo.getFileName())) {
-                            downloadInfo.setFileName(extractedFileName);
-                            // Atualizar caminho do arquivo
-                            filePath = FileUtils.getDownloadFilePath(context, extractedFileName);
-                            downloadInfo.setFilePath(filePath);
-                        }
-                        // Se não extraiu do header, mas o nome inicial era genérico, tenta pegar da URL final
-                        else if ((initialFileName == null || initialFileName.isEmpty()) && (fileName == null || fileName.startsWith("download_"))) {
-                             String nameFromUrl = FileUtils.getFileNameFromUrl(connection.getURL().toString());
-                             if (nameFromUrl != null && !nameFromUrl.isEmpty()) {
-                                 downloadInfo.setFileName(nameFromUrl);
-                                 filePath = FileUtils.getDownloadFilePath(context, nameFromUrl);
-                                 downloadInfo.setFilePath(filePath);
-                             }
-                        }
-                        
-                        // Atualizar URL final (após redirecionamentos)
-                        downloadInfo.setUrl(connection.getURL().toString());
-                        
-                    } else {
-                         Log.w(TAG, "Server returned error code " + responseCode + " for HEAD request to " + url);
-                         // Manter informações iniciais se HEAD falhar, mas logar aviso
-                    }
-                    
-                } catch (Exception e) {
-                    Log.e(TAG, "Erro ao obter metadados HEAD do servidor para " + url, e);
+
+                if (error != null) {
+                    Log.e(TAG, "Erro ao obter metadados HEAD do servidor para " + url, error);
                     // Continuar com as informações básicas se a conexão HEAD falhar
-                } finally {
-                    if (connection != null) {
-                        connection.disconnect();
+                } else if (metadata.isSuccessful()) {
+                    if (metadata.contentLength > 0) {
+                        downloadInfo.setFileSize(metadata.contentLength);
+                    }
+                    downloadInfo.setMimeType(metadata.mimeType != null && !metadata.mimeType.isEmpty()
+                            ? metadata.mimeType : "application/octet-stream");
+
+                    // Obter nome do arquivo do Content-Disposition
+                    String extractedFileName = null;
+                    if (metadata.contentDisposition != null) {
+                        extractedFileName = FileUtils.extractFilenameFromContentDisposition(metadata.contentDisposition);
+                    }
+
+                    // Se o nome do arquivo foi extraído e é diferente, atualiza
+                    if (extractedFileName != null && !extractedFileName.isEmpty() && !extractedFileName.equals(downloadInfo.getFileName())) {
+                        downloadInfo.setFileName(extractedFileName);
+                        // Atualizar caminho do arquivo
+                        filePath = FileUtils.getDownloadFilePath(context, extractedFileName);
+                        downloadInfo.setFilePath(filePath);
                     }
+                    // Se não extraiu do header, mas o nome inicial era genérico, tenta pegar da URL final
+                    else if ((initialFileName == null || initialFileName.isEmpty()) && fileName.startsWith("download_")) {
+                         String nameFromUrl = FileUtils.getFileNameFromUrl(metadata.finalUrl);
+                         if (nameFromUrl != null && !nameFromUrl.isEmpty()) {
+                             downloadInfo.setFileName(nameFromUrl);
+                             filePath = FileUtils.getDownloadFilePath(context, nameFromUrl);
+                             downloadInfo.setFilePath(filePath);
+                         }
+                    }
+
+                    // Atualizar URL final (após redirecionamentos)
+                    downloadInfo.setUrl(metadata.finalUrl);
+                } else {
+                     Log.w(TAG, "Server returned error code " + metadata.responseCode + " for HEAD request to " + url);
+                     // Manter informações iniciais se HEAD falhar, mas logar aviso
                 }
-                
-                // Fazer cópia final para usar no lambda
-                final DownloadInfo finalDownloadInfo = downloadInfo;
+
                 // Chamar callback com as informações obtidas na thread principal
-                mainThreadHandler.post(() -> callback.onMetadataResolved(finalDownloadInfo));
-                
+                mainThreadHandler.post(() -> callback.onMetadataResolved(downloadInfo));
+
             } catch (Exception e) {
                 Log.e(TAG, "Erro geral ao resolver metadados para " + url, e);
                 final String errorMessage = e.getMessage() != null ? e.getMessage() : "Erro desconhecido ao processar metadados";
@@ -203,67 +223,249 @@ public class DownloadMetadataResolver {
             }
         });
     }
-    
+
     /**
-     * Verifica se um link de download ainda é válido
+     * Verifica se um link de download ainda é válido (usa o cache: um HEAD recente da mesma URL
+     * já responde). 200 vale também para retomadas; a capacidade de Range fica em Metadata.acceptRanges.
      * @param downloadInfo Informações do download
      * @param callback Callback para retornar o resultado
      */
     public static void validateDownloadLink(DownloadInfo downloadInfo, LinkValidationCallback callback) {
-        executor.execute(() -> {
-            HttpURLConnection connection = null;
+        resolve(downloadInfo.getUrl(), (metadata, error) -> {
+            if (error != null) {
+                Log.e(TAG, "Erro de IO ao validar link de download para " + downloadInfo.getUrl(), error);
+                final String errorMessage = "Erro ao verificar link: " + error.getMessage();
+                mainThreadHandler.post(() -> callback.onLinkExpired(downloadInfo, errorMessage));
+                return;
+            }
+            int responseCode = metadata.responseCode;
+            // Verificar se o link ainda é válido
+            if (responseCode == HttpURLConnection.HTTP_OK ||
+                responseCode == HttpURLConnection.HTTP_PARTIAL) {
+                // Link válido
+                mainThreadHandler.post(() -> callback.onLinkValid(downloadInfo));
+            } else if (responseCode == HttpURLConnection.HTTP_NOT_FOUND ||
+                       responseCode == HttpURLConnection.HTTP_GONE) {
+                // Link expirado ou não encontrado
+                final String errorMessage = "Link de download expirado ou não encontrado (Erro " + responseCode + ")";
+                mainThreadHandler.post(() -> callback.onLinkExpired(downloadInfo, errorMessage));
+            } else {
+                // Outros erros
+                final String errorMessage = "Erro ao verificar link de download (Código " + responseCode + ")";
+                mainThreadHandler.post(() -> callback.onLinkExpired(downloadInfo, errorMessage));
+            }
+        });
+    }
+
+    /**
+     * Metadados em cache ainda válidos para a URL, ou null.
+     */
+    public static Metadata getCached(String url) {
+        synchronized (cache) {
+            Metadata metadata = cache.get(url);
+            if (metadata == null) return null;
+            if (System.currentTimeMillis() - metadata.fetchedAt > CACHE_TTL) {
+                cache.remove(url);
+                return null;
+            }
+            return metadata;
+        }
+    }
+
+    /**
+     * Descarta o cache da URL (ex: link renovado pela fonte).
+     */
+    public static void invalidate(String url) {
+        synchronized (cache) {
+            cache.remove(url);
+        }
+    }
+
+    /**
+     * Entrega os metadados da URL ao listener: do cache, juntando-se a um pedido em andamento
+     * ou com um novo HEAD na fila do host.
+     */
+    private static void resolve(String url, ResultListener listener) {
+        Metadata cached = getCached(url);
+        if (cached != null) {
+            executor.execute(() -> listener.onResult(cached, null)); // Callbacks sempre fora da thread chamadora
+            return;
+        }
+        synchronized (inFlight) {
+            List<ResultListener> waiting = inFlight.get(url);
+            if (waiting != null) {
+                waiting.add(listener);
+                Log.d(TAG, "Pedido agrupado com HEAD em andamento: " + url);
+                return;
+            }
+            waiting = new ArrayList<>();
+            waiting.add(listener);
+            inFlight.put(url, waiting);
+        }
+        submitForHost(hostOf(url), () -> {
+            Metadata metadata = null;
+            Exception error = null;
             try {
-                URL url = new URL(downloadInfo.getUrl());
-                connection = (HttpURLConnection) url.openConnection();
-                connection.setRequestMethod("HEAD");
-                connection.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36");
-                connection.setInstanceFollowRedirects(true);
-                connection.setConnectTimeout(10000); // 10 seconds
-                connection.setReadTimeout(10000); // 10 seconds
-                
-                // Se for retomada de download, definir range
-                if (downloadInfo.getDownloadedSize() > 0) {
-                    connection.setRequestProperty("Range", "bytes=" + downloadInfo.getDownloadedSize() + "-");
-                }
-                
-                connection.connect();
-                
-                int responseCode = connection.getResponseCode();
-                
-                // Fazer cópia final para usar no lambda
-                final DownloadInfo finalDownloadInfo = downloadInfo;
-                
-                // Verificar se o link ainda é válido
-                if (responseCode == HttpURLConnection.HTTP_OK || 
-                    responseCode == HttpURLConnection.HTTP_PARTIAL) {
-                    // Link válido
-                    mainThreadHandler.post(() -> callback.onLinkValid(finalDownloadInfo));
-                } else if (responseCode == HttpURLConnection.HTTP_NOT_FOUND || 
-                           responseCode == HttpURLConnection.HTTP_GONE) {
-                    // Link expirado ou não encontrado
-                    final String errorMessage = "Link de download expirado ou não encontrado (Erro " + responseCode + ")";
-                    mainThreadHandler.post(() -> callback.onLinkExpired(finalDownloadInfo, errorMessage));
-                } else {
-                    // Outros erros
-                    final String errorMessage = "Erro ao verificar link de download (Código " + responseCode + ")";
-                    mainThreadHandler.post(() -> callback.onLinkExpired(finalDownloadInfo, errorMessage));
+                metadata = fetch(url);
+                if (metadata.isSuccessful()) {
+                    synchronized (cache) {
+                        cache.put(url, metadata);
+                    }
                 }
-            } catch (IOException e) {
-                Log.e(TAG, "Erro de IO ao validar link de download para " + downloadInfo.getUrl(), e);
-                final String errorMessage = "Erro ao verificar link: " + e.getMessage();
-                final DownloadInfo finalDownloadInfo = downloadInfo;
-                mainThreadHandler.post(() -> callback.onLinkExpired(finalDownloadInfo, errorMessage));
             } catch (Exception e) {
-                 Log.e(TAG, "Erro geral ao validar link de download para " + downloadInfo.getUrl(), e);
-                 final String errorMessage = "Erro inesperado ao verificar link: " + e.getMessage();
-                 final DownloadInfo finalDownloadInfo = downloadInfo;
-                 mainThreadHandler.post(() -> callback.onLinkExpired(finalDownloadInfo, errorMessage));
+                error = e;
+            }
+            List<ResultListener> listeners;
+            synchronized (inFlight) {
+                listeners = inFlight.remove(url);
+            }
+            for (ResultListener waiter : listeners) {
+                try {
+                    waiter.onResult(metadata, error);
+                } catch (Exception e) {
+                    Log.e(TAG, "Erro no callback de metadados para " + url, e);
+                }
+            }
+        });
+    }
+
+    private static Metadata fetch(String url) throws IOException {
+        Response response = null;
+        try {
+            Call call = DownloadHttpClient.getInstance().newCall(DownloadHttpClient.newRequest(url)
+                    .head()
+                    .header("User-Agent", "Mozilla/5.0")
+                    .build());
+            call.timeout().timeout(30, TimeUnit.SECONDS); // Conexão + resposta (15 s cada)
+            response = call.execute();
+
+            return new Metadata(response.code(),
+                    response.request().url().toString(), // URL final, depois dos redirecionamentos
+                    response.header("Content-Type"),
+                    parseContentLength(response.header("Content-Length")),
+                    "bytes".equalsIgnoreCase(response.header("Accept-Ranges")),
+                    response.header("ETag"),
+                    response.header("Content-Disposition"),
+                    expectedHashFrom(response));
+        } finally {
+            DownloadHttpClient.release(response);
+        }
+    }
+
+    /**
+     * Hash do arquivo inteiro anunciado pelo servidor (Repr-Digest, Digest, Content-MD5 ou
+     * x-goog-hash), no formato aceito por StreamingHasher.matches. SHA-256 tem preferência sobre MD5.
+     * Só vale para respostas 200 sem Content-Encoding: com 206 ou compressão o hash não é do arquivo.
+     * @return "sha256:hex", "md5:hex" ou null se a resposta não traz um hash utilizável
+     */
+    public static String expectedHashFrom(Response response) {
+        if (response == null || response.code() != HttpURLConnection.HTTP_OK) return null;
+        // O OkHttp remove Content-Encoding ao descompactar gzip sozinho; a resposta de rede ainda o tem
+        Response network = response.networkResponse();
+        String encoding = (network != null ? network : response).header("Content-Encoding");
+        if (encoding != null && !encoding.trim().isEmpty() && !"identity".equalsIgnoreCase(encoding.trim())) {
+            return null;
+        }
+
+        String sha256 = null;
+        String md5 = null;
+        // Repr-Digest (RFC 9530): sha-256=:base64:, md5 não é aceito pela norma
+        for (String value : response.headers("Repr-Digest")) {
+            for (String item : value.split(",")) {
+                int eq = item.indexOf('=');
+                if (eq < 0) continue;
+                String algorithm = item.substring(0, eq).trim();
+                String encoded = item.substring(eq + 1).trim().replace(":", "");
+                if (sha256 == null && "sha-256".equalsIgnoreCase(algorithm)) sha256 = decodeDigest(encoded, 32);
+            }
+        }
+        // Digest (RFC 3230) e x-goog-hash: ALGORITMO=base64 separados por vírgula
+        List<String> pairs = new ArrayList<>(response.headers("Digest"));
+        pairs.addAll(response.headers("x-goog-hash"));
+        for (String value : pairs) {
+            for (String item : value.split(",")) {
+                int eq = item.indexOf('=');
+                if (eq < 0) continue;
+                String algorithm = item.substring(0, eq).trim();
+                String encoded = item.substring(eq + 1).trim();
+                if (sha256 == null && "sha-256".equalsIgnoreCase(algorithm)) sha256 = decodeDigest(encoded, 32);
+                else if (md5 == null && "md5".equalsIgnoreCase(algorithm)) md5 = decodeDigest(encoded, 16);
+            }
+        }
+        if (md5 == null && response.header("Content-MD5") != null) {
+            md5 = decodeDigest(response.header("Content-MD5").trim(), 16);
+        }
+
+        if (sha256 != null) return "sha256:" + sha256;
+        if (md5 != null) return "md5:" + md5;
+        return null;
+    }
+
+    /**
+     * Decodifica um digest em base64 para hex, conferindo o tamanho esperado em bytes.
+     */
+    private static String decodeDigest(String encoded, int expectedLength) {
+        byte[] bytes;
+        try {
+            bytes = Base64.decode(encoded, Base64.DEFAULT);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (bytes.length != expectedLength) return null;
+        return StreamingHasher.hex(bytes);
+    }
+
+    private static long parseContentLength(String value) {
+        if (value == null) return -1;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Executa no pool respeitando MAX_PER_HOST; o excedente espera na fila do host e é
+     * despachado quando um pedido do mesmo host termina.
+     */
+    private static void submitForHost(String host, Runnable job) {
+        synchronized (hostQueues) {
+            HostQueue queue = hostQueues.get(host);
+            if (queue == null) {
+                queue = new HostQueue();
+                hostQueues.put(host, queue);
+            }
+            if (queue.running >= MAX_PER_HOST) {
+                queue.pending.add(job);
+                return;
+            }
+            queue.running++;
+        }
+        runForHost(host, job);
+    }
+
+    private static void runForHost(String host, Runnable job) {
+        executor.execute(() -> {
+            try {
+                job.run();
             } finally {
-                if (connection != null) {
-                    connection.disconnect();
+                Runnable next;
+                synchronized (hostQueues) {
+                    HostQueue queue = hostQueues.get(host);
+                    next = queue.pending.poll();
+                    if (next == null && --queue.running == 0) {
+                        hostQueues.remove(host);
+                    }
+                }
+                if (next != null) {
+                    runForHost(host, next); // A vaga do host passa direto para o próximo
                 }
             }
         });
     }
-}
 
+    private static String hostOf(String url) {
+        String host = url != null ? Uri.parse(url).getHost() : null;
+        return host != null ? host : "";
+    }
+}
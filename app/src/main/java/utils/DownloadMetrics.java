@@ -0,0 +1,70 @@
+package com.LDGAMES.utils;
+
+import android.os.SystemClock;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Medições de uma execução de DownloadTask: vazão, tempo de CPU das threads envolvidas (tarefa
+ * e segmentos), tempo até o primeiro byte (tempo de retomada, quando havia dados parciais) e
+ * buffers alocados. O resumo vai para o log ao fim da tarefa, permitindo comparar mudanças no
+ * motor de download com downloads reais.
+ */
+public class DownloadMetrics {
+    private final long startedAt = SystemClock.elapsedRealtime();
+    private final long startOffset;
+    private final long allocationsAtStart;
+    private final long allocatedBytesAtStart;
+    private final long reusesAtStart;
+    private final AtomicLong cpuMillis = new AtomicLong();
+    private volatile long firstByteAt = 0;
+
+    public DownloadMetrics(long startOffset) {
+        this.startOffset = startOffset;
+        BufferPool pool = BufferPool.getInstance();
+        allocationsAtStart = pool.getAllocations();
+        allocatedBytesAtStart = pool.getAllocatedBytes();
+        reusesAtStart = pool.getReuses();
+    }
+
+    /**
+     * Marca o início do trabalho da thread atual; passar o valor para {@link #threadEnd}.
+     */
+    public long threadStart() {
+        return SystemClock.currentThreadTimeMillis();
+    }
+
+    public void threadEnd(long threadStart) {
+        cpuMillis.addAndGet(SystemClock.currentThreadTimeMillis() - threadStart);
+    }
+
+    /**
+     * Chamado a cada leitura da rede; só a primeira conta.
+     */
+    public void onBytesReceived() {
+        if (firstByteAt == 0) {
+            firstByteAt = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /**
+     * Resumo legível, ex: "512,0 MB em 10,2 s (50,1 MB/s), CPU 1,8 s (18%), primeiro byte em 230 ms (retomada)".
+     * @param endOffset bytes gravados ao fim da execução
+     */
+    public String summary(long endOffset) {
+        long elapsed = Math.max(1, SystemClock.elapsedRealtime() - startedAt);
+        long bytes = endOffset >= startOffset ? endOffset - startOffset : endOffset; // Reiniciado do zero
+        double seconds = elapsed / 1000.0;
+        BufferPool pool = BufferPool.getInstance();
+        return String.format(Locale.getDefault(),
+                "%s em %.1f s (%.1f MB/s), CPU %.1f s (%.0f%%), primeiro byte %s%s, buffers novos %d (%s) / reutilizados %d",
+                FileUtils.formatFileSize(bytes), seconds, bytes / seconds / (1024 * 1024),
+                cpuMillis.get() / 1000.0, cpuMillis.get() * 100.0 / elapsed,
+                firstByteAt > 0 ? "em " + (firstByteAt - startedAt) + " ms" : "não recebido",
+                startOffset > 0 ? " (retomada de " + FileUtils.formatFileSize(startOffset) + ")" : "",
+                pool.getAllocations() - allocationsAtStart,
+                FileUtils.formatFileSize(pool.getAllocatedBytes() - allocatedBytesAtStart),
+                pool.getReuses() - reusesAtStart);
+    }
+}
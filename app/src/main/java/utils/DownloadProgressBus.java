@@ -0,0 +1,105 @@
+package com.LDGAMES.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.LDGAMES.models.DownloadInfo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Agrupa os ticks de progresso de todos os downloads ativos e os entrega no main thread
+ * uma vez por intervalo, em um único lote. Só vão no lote os downloads cujo progresso
+ * mudou desde a última entrega. Mudanças de status continuam passando direto por
+ * DownloadManager.updateDownload; o barramento é só para progresso/velocidade/ETA.
+ */
+public class DownloadProgressBus {
+    private static final long TICK_INTERVAL = 250; // ms entre entregas
+    private static DownloadProgressBus instance;
+
+    /**
+     * Consumidor de lotes de progresso; sempre chamado no main thread.
+     */
+    public interface ProgressSink {
+        void onProgressBatch(List<DownloadInfo> changed);
+    }
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<ProgressSink> sinks = new CopyOnWriteArrayList<>();
+    private final Map<String, DownloadInfo> pending = new LinkedHashMap<>(); // Último estado de cada download
+    private final Map<String, long[]> lastDelivered = new HashMap<>(); // Só acessado no main thread
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final Runnable flushRunnable = this::flush;
+
+    private DownloadProgressBus() {
+    }
+
+    public static synchronized DownloadProgressBus getInstance() {
+        if (instance == null) {
+            instance = new DownloadProgressBus();
+        }
+        return instance;
+    }
+
+    public void addSink(ProgressSink sink) {
+        if (sink != null && !sinks.contains(sink)) {
+            sinks.add(sink);
+        }
+    }
+
+    public void removeSink(ProgressSink sink) {
+        sinks.remove(sink);
+    }
+
+    /**
+     * Publica o estado atual de um download. Pode ser chamado de qualquer thread;
+     * publicações repetidas antes da próxima entrega são substituídas pela mais recente.
+     */
+    public void publish(DownloadInfo downloadInfo) {
+        if (downloadInfo == null || downloadInfo.getFilePath() == null) return;
+        synchronized (pending) {
+            pending.put(downloadInfo.getFilePath(), downloadInfo);
+        }
+        if (flushScheduled.compareAndSet(false, true)) {
+            mainHandler.postDelayed(flushRunnable, TICK_INTERVAL);
+        }
+    }
+
+    /**
+     * Esquece o último estado entregue de um download (ao concluir, cancelar ou remover).
+     */
+    public void forget(String filePath) {
+        mainHandler.post(() -> lastDelivered.remove(filePath));
+    }
+
+    private void flush() {
+        flushScheduled.set(false);
+        List<DownloadInfo> batch;
+        synchronized (pending) {
+            if (pending.isEmpty()) return;
+            batch = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+
+        List<DownloadInfo> changed = new ArrayList<>(batch.size());
+        for (DownloadInfo downloadInfo : batch) {
+            long[] current = {downloadInfo.getDownloadedSize(), downloadInfo.getSpeed(), downloadInfo.getProgress(), downloadInfo.getStatus()};
+            long[] previous = lastDelivered.put(downloadInfo.getFilePath(), current);
+            if (previous == null || !Arrays.equals(previous, current)) {
+                changed.add(downloadInfo);
+            }
+        }
+        if (changed.isEmpty()) return;
+
+        for (ProgressSink sink : sinks) {
+            sink.onProgressBatch(changed);
+        }
+    }
+}
@@ -2,31 +2,48 @@ package com.LDGAMES.utils;
 
 import android.content.Context;
 import android.net.Uri;
+import android.os.ParcelFileDescriptor;
 import android.util.Log;
 
 import androidx.documentfile.provider.DocumentFile;
 
+import com.LDGAMES.database.DownloadDatabase;
 import com.LDGAMES.models.DownloadInfo;
+import com.LDGAMES.models.DownloadSegment;
 
 import java.io.BufferedInputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
-import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import okhttp3.Call;
+import okhttp3.Request;
+import okhttp3.Response;
 
 /**
  * Classe utilitária para gerenciar a retomada robusta de downloads
  */
 public class DownloadResumeHelper {
     private static final String TAG = "DownloadResumeHelper";
-    private static final int BUFFER_SIZE = 8192;
     private static final long MAX_SIZE_DIFFERENCE = 1024 * 1024; // 1MB de diferença tolerável
     private static final int MAX_VALIDATION_ATTEMPTS = 3;
+    private static final int VERIFY_TRAILING_BLOCKS = 2; // Blocos íntegros conferidos antes da retomada
+    private static final int MAX_SCANNED_BLOCKS = 16; // Limite de leitura ao procurar blocos corrompidos
+    private static final int BLOCK_READ_BUFFER = 256 * 1024;
 
     /**
-     * Valida e corrige informações de arquivo parcial para retomada
+     * Valida e corrige informações de arquivo parcial para retomada.
+     * Relê os últimos blocos indexados do arquivo: não chamar do main thread.
      */
     public static ValidationResult validatePartialFile(Context context, DownloadInfo downloadInfo) {
         ValidationResult result = new ValidationResult();
@@ -50,43 +67,49 @@ public class DownloadResumeHelper {
             Log.d(TAG, String.format("Validando arquivo: tamanho atual=%d, registrado=%d", 
                 currentFileSize, recordedSize));
 
+            // Downloads segmentados têm lacunas: o tamanho em disco não indica o progresso
+            DownloadDatabase database = DownloadDatabase.getInstance(context);
+            List<DownloadSegment> segments = database.getSegments(downloadInfo.getFilePath());
+            if (!segments.isEmpty()) {
+                if (recordedSize > 0) {
+                    return validateSegmentCheckpoint(context, fileUri, database, downloadInfo, segments, currentFileSize);
+                }
+                // Reinício solicitado: o checkpoint não vale mais
+                database.clearSegments(downloadInfo.getFilePath());
+            }
+
             // Se tamanhos são exatamente iguais, validação OK
+            long sizeDifference = Math.abs(currentFileSize - recordedSize);
             if (currentFileSize == recordedSize) {
                 result.isValid = true;
                 result.reason = "Tamanhos correspondem exatamente";
-                return result;
-            }
-
-            // Verificar se diferença é aceitável
-            long sizeDifference = Math.abs(currentFileSize - recordedSize);
-            if (sizeDifference <= MAX_SIZE_DIFFERENCE) {
+            } else if (sizeDifference <= MAX_SIZE_DIFFERENCE) {
+                // Diferença aceitável
                 Log.i(TAG, String.format("Diferença de tamanho aceitável (%d bytes), ajustando", sizeDifference));
                 result.isValid = true;
                 result.needsAdjustment = true;
                 result.adjustedSize = currentFileSize;
                 result.reason = "Tamanho ajustado automaticamente";
-                return result;
-            }
-
-            // Diferença muito grande - verificar integridade
-            if (currentFileSize > recordedSize) {
+            } else if (currentFileSize > recordedSize) {
+                // Diferença muito grande - sem índice de blocos não há como confiar no conteúdo
                 Log.w(TAG, "Arquivo maior que esperado, pode estar corrompido");
                 result.isValid = false;
                 result.shouldRestart = true;
                 result.reason = "Arquivo maior que esperado";
-                return result;
-            }
-
-            // Arquivo menor que esperado - pode ter sido truncado
-            if (currentFileSize < recordedSize) {
+            } else {
+                // Arquivo menor que esperado - pode ter sido truncado
                 Log.w(TAG, "Arquivo menor que esperado, ajustando para tamanho real");
                 result.isValid = true;
                 result.needsAdjustment = true;
                 result.adjustedSize = currentFileSize;
                 result.reason = "Arquivo truncado, ajustado";
-                return result;
             }
 
+            Map<Long, Long> blocks = database.getBlockHashes(downloadInfo.getFilePath());
+            if (!blocks.isEmpty()) {
+                verifyTrailingBlocks(context, fileUri, blocks, result, recordedSize);
+            }
+            return result;
         } catch (Exception e) {
             Log.e(TAG, "Erro na validação do arquivo parcial: " + e.getMessage(), e);
             result.isValid = false;
@@ -98,30 +121,141 @@ public class DownloadResumeHelper {
     }
 
     /**
-     * Verifica se o servidor suporta range requests
+     * Valida o checkpoint de faixas de um download segmentado. Ele vale se o arquivo cobre a
+     * maior posição gravada; nesse caso o progresso é a soma das faixas gravadas. Se o arquivo
+     * foi truncado por fora, o checkpoint é descartado e resta o trecho contíguo do início.
      */
-    public static boolean checkServerRangeSupport(String url, String cookies, Map<String, String> headers) {
-        HttpURLConnection connection = null;
-        try {
-            URL serverUrl = new URL(url);
-            connection = (HttpURLConnection) serverUrl.openConnection();
-            connection.setRequestMethod("HEAD");
-            connection.setConnectTimeout(10000);
-            connection.setReadTimeout(10000);
+    private static ValidationResult validateSegmentCheckpoint(Context context, Uri fileUri, DownloadDatabase database, DownloadInfo downloadInfo,
+                                                              List<DownloadSegment> segments, long currentFileSize) {
+        ValidationResult result = new ValidationResult();
+        result.isValid = true;
 
-            // Adicionar cookies e headers
-            if (cookies != null && !cookies.isEmpty()) {
-                connection.setRequestProperty("Cookie", cookies);
+        if (currentFileSize >= DownloadSegment.highestPosition(segments)) {
+            // Blocos corrompidos viram faixas pendentes: só eles são baixados de novo
+            Map<Long, Long> blocks = database.getBlockHashes(downloadInfo.getFilePath());
+            BlockScan scan = scanTrailingBlocks(context, fileUri, blocks, DownloadSegment.highestPosition(segments));
+            for (long block : scan.corrupt) {
+                long from = block * StreamingHasher.BLOCK_SIZE;
+                segments = DownloadSegment.reopenRange(segments, from, from + StreamingHasher.BLOCK_SIZE - 1);
             }
-            if (headers != null) {
-                for (Map.Entry<String, String> entry : headers.entrySet()) {
-                    connection.setRequestProperty(entry.getKey(), entry.getValue());
+            if (!scan.corrupt.isEmpty()) {
+                Log.w(TAG, scan.corrupt.size() + " bloco(s) corrompido(s) em " + downloadInfo.getFileName() + "; baixando só esses trechos de novo");
+                database.saveSegments(downloadInfo.getFilePath(), segments);
+            }
+            long committed = DownloadSegment.committedBytes(segments);
+            result.needsAdjustment = committed != downloadInfo.getDownloadedSize();
+            result.adjustedSize = committed;
+            result.reason = "Checkpoint de " + segments.size() + " segmentos válido";
+        } else {
+            Log.w(TAG, "Arquivo menor que o checkpoint de segmentos, descartando checkpoint");
+            database.clearSegments(downloadInfo.getFilePath());
+            result.needsAdjustment = true;
+            result.adjustedSize = Math.min(currentFileSize, DownloadSegment.contiguousEnd(segments));
+            result.reason = "Checkpoint de segmentos descartado, usando trecho contíguo";
+        }
+        return result;
+    }
+
+    /**
+     * Confere os últimos blocos indexados antes do ponto de retomada (download de conexão única).
+     * Um bloco divergente recua a retomada para o início dele, em vez de reiniciar do zero; com os
+     * blocos conferidos, até um arquivo maior que o esperado pode ser aproveitado (é truncado).
+     */
+    private static void verifyTrailingBlocks(Context context, Uri fileUri, Map<Long, Long> blocks,
+                                             ValidationResult result, long recordedSize) {
+        long resumeOffset = result.shouldRestart ? recordedSize
+                : (result.needsAdjustment ? result.adjustedSize : recordedSize);
+        BlockScan scan = scanTrailingBlocks(context, fileUri, blocks, resumeOffset);
+        if (scan.verified == 0 && scan.corrupt.isEmpty()) return; // Nada indexado antes da retomada
+
+        long safeOffset = resumeOffset;
+        for (long block : scan.corrupt) {
+            safeOffset = Math.min(safeOffset, block * StreamingHasher.BLOCK_SIZE);
+        }
+        if (result.shouldRestart) {
+            result.isValid = true;
+            result.shouldRestart = false;
+            result.reason = "Arquivo maior que esperado; blocos conferidos, truncando";
+        }
+        if (safeOffset != recordedSize) {
+            result.needsAdjustment = true;
+            result.adjustedSize = safeOffset;
+        }
+        if (!scan.corrupt.isEmpty()) {
+            Log.w(TAG, String.format("%d bloco(s) corrompido(s); retomando de %d em vez de %d",
+                    scan.corrupt.size(), safeOffset, resumeOffset));
+            result.reason = "Blocos corrompidos, retomando do primeiro bloco inválido";
+        }
+    }
+
+    /**
+     * Lê e confere, do fim para o início, os blocos indexados que terminam até upTo. Para após
+     * VERIFY_TRAILING_BLOCKS blocos íntegros ou MAX_SCANNED_BLOCKS lidos.
+     */
+    private static BlockScan scanTrailingBlocks(Context context, Uri fileUri, Map<Long, Long> blocks, long upTo) {
+        BlockScan scan = new BlockScan();
+        if (blocks.isEmpty()) return scan;
+        List<Long> candidates = new ArrayList<>();
+        for (Long index : blocks.keySet()) {
+            if ((index + 1) * StreamingHasher.BLOCK_SIZE <= upTo) candidates.add(index);
+        }
+        Collections.sort(candidates, Collections.reverseOrder());
+
+        try (ParcelFileDescriptor pfd = context.getContentResolver().openFileDescriptor(fileUri, "r");
+             FileInputStream stream = new FileInputStream(pfd.getFileDescriptor())) {
+            FileChannel channel = stream.getChannel();
+            ByteBuffer buffer = ByteBuffer.wrap(BufferPool.getInstance().acquire(BLOCK_READ_BUFFER));
+            try {
+                int scanned = 0;
+                for (Long index : candidates) {
+                    if (scan.verified >= VERIFY_TRAILING_BLOCKS || scanned >= MAX_SCANNED_BLOCKS) break;
+                    scanned++;
+                    if (blockMatches(channel, index, blocks.get(index), buffer)) {
+                        scan.verified++;
+                    } else {
+                        scan.corrupt.add(index);
+                    }
                 }
+            } finally {
+                BufferPool.getInstance().release(buffer.array());
             }
+        } catch (Exception e) {
+            Log.w(TAG, "Não foi possível conferir blocos: " + e.getMessage());
+        }
+        return scan;
+    }
 
-            connection.connect();
+    private static boolean blockMatches(FileChannel channel, long index, long expectedCrc, ByteBuffer buffer) throws IOException {
+        CRC32 crc = new CRC32();
+        long position = index * StreamingHasher.BLOCK_SIZE;
+        long end = position + StreamingHasher.BLOCK_SIZE;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int read = channel.read(buffer, position);
+            if (read <= 0) return false;
+            crc.update(buffer.array(), 0, read);
+            position += read;
+        }
+        return crc.getValue() == expectedCrc;
+    }
+
+    private static class BlockScan {
+        int verified = 0;
+        final List<Long> corrupt = new ArrayList<>();
+    }
+
+    /**
+     * Verifica se o servidor suporta range requests
+     */
+    public static boolean checkServerRangeSupport(String url, String cookies, Map<String, String> headers) {
+        Response response = null;
+        try {
+            Request.Builder request = DownloadHttpClient.newRequest(url).head();
+            addCookiesAndHeaders(request, cookies, headers);
+            response = executeProbe(request.build());
             
-            String acceptRanges = connection.getHeaderField("Accept-Ranges");
+            String acceptRanges = response.header("Accept-Ranges");
             boolean supportsRanges = "bytes".equals(acceptRanges);
             
             Log.d(TAG, String.format("URL %s - Suporte a Range: %s (Accept-Ranges: %s)", 
@@ -133,9 +267,7 @@ public class DownloadResumeHelper {
             Log.e(TAG, "Erro ao verificar suporte a range: " + e.getMessage(), e);
             return false;
         } finally {
-            if (connection != null) {
-                connection.disconnect();
-            }
+            DownloadHttpClient.release(response);
         }
     }
 
@@ -144,31 +276,17 @@ public class DownloadResumeHelper {
      */
     public static ResumeTestResult testResumeCapability(String url, long fromByte, String cookies, Map<String, String> headers) {
         ResumeTestResult result = new ResumeTestResult();
-        HttpURLConnection connection = null;
+        Response response = null;
         
         try {
-            URL serverUrl = new URL(url);
-            connection = (HttpURLConnection) serverUrl.openConnection();
-            connection.setConnectTimeout(10000);
-            connection.setReadTimeout(10000);
-
             // Solicitar apenas alguns bytes para testar
             long toByte = fromByte + 1023; // 1KB de teste
-            connection.setRequestProperty("Range", String.format("bytes=%d-%d", fromByte, toByte));
-
-            // Adicionar cookies e headers
-            if (cookies != null && !cookies.isEmpty()) {
-                connection.setRequestProperty("Cookie", cookies);
-            }
-            if (headers != null) {
-                for (Map.Entry<String, String> entry : headers.entrySet()) {
-                    connection.setRequestProperty(entry.getKey(), entry.getValue());
-                }
-            }
-
-            connection.connect();
+            Request.Builder request = DownloadHttpClient.newRequest(url)
+                    .header("Range", String.format("bytes=%d-%d", fromByte, toByte));
+            addCookiesAndHeaders(request, cookies, headers);
+            response = executeProbe(request.build());
             
-            int responseCode = connection.getResponseCode();
+            int responseCode = response.code();
             result.responseCode = responseCode;
             
             if (responseCode == HttpURLConnection.HTTP_PARTIAL) {
@@ -176,7 +294,7 @@ public class DownloadResumeHelper {
                 result.reason = "Servidor suporta HTTP 206 Partial Content";
                 
                 // Verificar content-range header
-                String contentRange = connection.getHeaderField("Content-Range");
+                String contentRange = response.header("Content-Range");
                 if (contentRange != null) {
                     Log.d(TAG, "Content-Range recebido: " + contentRange);
                     result.contentRange = contentRange;
@@ -196,14 +314,29 @@ public class DownloadResumeHelper {
             result.resumeSupported = false;
             result.reason = "Erro: " + e.getMessage();
         } finally {
-            if (connection != null) {
-                connection.disconnect();
-            }
+            DownloadHttpClient.release(response);
         }
         
         return result;
     }
 
+    private static void addCookiesAndHeaders(Request.Builder request, String cookies, Map<String, String> headers) {
+        if (cookies != null && !cookies.isEmpty()) {
+            request.header("Cookie", cookies);
+        }
+        if (headers != null) {
+            for (Map.Entry<String, String> entry : headers.entrySet()) {
+                request.header(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private static Response executeProbe(Request request) throws IOException {
+        Call call = DownloadHttpClient.getInstance().newCall(request);
+        call.timeout().timeout(20, TimeUnit.SECONDS); // Conexão + resposta (10 s cada)
+        return call.execute();
+    }
+
     /**
      * Calcula checksum MD5 de uma parte do arquivo para verificação de integridade
      */
@@ -223,17 +356,21 @@ public class DownloadResumeHelper {
                 bufferedStream.skip(startByte);
                 
                 MessageDigest md5 = MessageDigest.getInstance("MD5");
-                byte[] buffer = new byte[BUFFER_SIZE];
+                byte[] buffer = BufferPool.getInstance().acquire(BLOCK_READ_BUFFER); // Leitura local: buffer grande
                 long remaining = endByte - startByte;
                 
-                while (remaining > 0) {
-                    int toRead = (int) Math.min(buffer.length, remaining);
-                    int bytesRead = bufferedStream.read(buffer, 0, toRead);
-                    
-                    if (bytesRead <= 0) break;
-                    
-                    md5.update(buffer, 0, bytesRead);
-                    remaining -= bytesRead;
+                try {
+                    while (remaining > 0) {
+                        int toRead = (int) Math.min(buffer.length, remaining);
+                        int bytesRead = bufferedStream.read(buffer, 0, toRead);
+                        
+                        if (bytesRead <= 0) break;
+                        
+                        md5.update(buffer, 0, bytesRead);
+                        remaining -= bytesRead;
+                    }
+                } finally {
+                    BufferPool.getInstance().release(buffer);
                 }
                 
                 byte[] digest = md5.digest();
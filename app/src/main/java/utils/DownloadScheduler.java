@@ -0,0 +1,227 @@
+package com.LDGAMES.utils;
+
+import com.LDGAMES.models.DownloadInfo;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Fila de downloads ordenada por prioridade e política (mais antigo ou menor primeiro),
+ * com limite opcional de downloads simultâneos por host.
+ * As chaves de ordenação são copiadas na entrada, então mudanças no DownloadInfo
+ * (progresso, tamanho) não corrompem a árvore; alterar prioridade reinsere o item.
+ * Todas as operações são O(log n) e não fazem I/O: o chamador persiste a ordem no banco.
+ */
+public class DownloadScheduler {
+
+    public static final int POLICY_OLDEST_FIRST = 0;
+    public static final int POLICY_SMALLEST_FIRST = 1;
+
+    private static class Entry {
+        final DownloadInfo download;
+        final int priority;
+        final long position;
+        final long remainingBytes; // Long.MAX_VALUE quando o tamanho é desconhecido
+
+        Entry(DownloadInfo download) {
+            this.download = download;
+            this.priority = download.getPriority();
+            this.position = download.getQueuePosition();
+            long size = download.getFileSize();
+            this.remainingBytes = size > 0 ? Math.max(0, size - download.getDownloadedSize()) : Long.MAX_VALUE;
+        }
+    }
+
+    private final Map<String, Entry> entriesByPath = new HashMap<>();
+    private final Map<String, String> runningHostByPath = new HashMap<>();
+    private final Map<String, Integer> runningByHost = new HashMap<>();
+    private TreeSet<Entry> queue;
+    private int policy = POLICY_OLDEST_FIRST;
+    private long lastPosition = 0;
+
+    public DownloadScheduler() {
+        queue = new TreeSet<>(comparatorFor(policy));
+    }
+
+    private static Comparator<Entry> comparatorFor(int policy) {
+        return (a, b) -> {
+            int cmp = Integer.compare(b.priority, a.priority); // Maior prioridade primeiro
+            if (cmp != 0) return cmp;
+            if (policy == POLICY_SMALLEST_FIRST) {
+                cmp = Long.compare(a.remainingBytes, b.remainingBytes);
+                if (cmp != 0) return cmp;
+            }
+            cmp = Long.compare(a.position, b.position);
+            if (cmp != 0) return cmp;
+            return a.download.getFilePath().compareTo(b.download.getFilePath());
+        };
+    }
+
+    public synchronized void setPolicy(int newPolicy) {
+        if (newPolicy == policy) return;
+        policy = newPolicy;
+        TreeSet<Entry> reordered = new TreeSet<>(comparatorFor(policy));
+        reordered.addAll(queue);
+        queue = reordered;
+    }
+
+    public synchronized int getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Adiciona ou reposiciona um download. Itens sem posição ({@link DownloadInfo#QUEUE_POSITION_NONE})
+     * vão para o fim da sua prioridade; qualquer outra posição, inclusive negativa (ver
+     * {@link #moveToFront}), é mantida.
+     * @return true se o item não estava na fila
+     */
+    public synchronized boolean enqueue(DownloadInfo download) {
+        if (download == null || download.getFilePath() == null) return false;
+        Entry previous = entriesByPath.remove(download.getFilePath());
+        if (previous != null) queue.remove(previous);
+        if (download.getQueuePosition() == DownloadInfo.QUEUE_POSITION_NONE) {
+            download.setQueuePosition(++lastPosition);
+        } else {
+            lastPosition = Math.max(lastPosition, download.getQueuePosition());
+        }
+        Entry entry = new Entry(download);
+        entriesByPath.put(download.getFilePath(), entry);
+        queue.add(entry);
+        return previous == null;
+    }
+
+    /**
+     * Coloca o download antes de todos os outros da mesma prioridade, subindo-o para a maior
+     * prioridade presente na fila.
+     */
+    public synchronized void moveToFront(DownloadInfo download) {
+        if (download == null || download.getFilePath() == null) return;
+        long firstPosition = Long.MAX_VALUE;
+        int topPriority = download.getPriority();
+        for (Entry entry : entriesByPath.values()) {
+            if (entry.download.getFilePath().equals(download.getFilePath())) continue; // A própria entrada não conta
+            firstPosition = Math.min(firstPosition, entry.position);
+            topPriority = Math.max(topPriority, entry.priority);
+        }
+        if (firstPosition == Long.MAX_VALUE) {
+            firstPosition = download.getQueuePosition() != DownloadInfo.QUEUE_POSITION_NONE
+                    ? download.getQueuePosition() : lastPosition + 1; // Sozinho na fila: fica onde está
+        } else {
+            firstPosition--;
+        }
+        if (firstPosition == DownloadInfo.QUEUE_POSITION_NONE) {
+            firstPosition--; // Abaixo de 1 as posições ficam negativas, pulando o valor de "sem posição"
+        }
+        download.setPriority(topPriority);
+        download.setQueuePosition(firstPosition);
+        enqueue(download);
+    }
+
+    public synchronized void setPriority(DownloadInfo download, int priority) {
+        if (download == null) return;
+        download.setPriority(priority);
+        if (download.getFilePath() != null && entriesByPath.containsKey(download.getFilePath())) {
+            enqueue(download);
+        }
+    }
+
+    public synchronized boolean remove(DownloadInfo download) {
+        if (download == null || download.getFilePath() == null) return false;
+        Entry entry = entriesByPath.remove(download.getFilePath());
+        if (entry == null) return false;
+        queue.remove(entry);
+        return true;
+    }
+
+    public synchronized boolean contains(DownloadInfo download) {
+        return download != null && download.getFilePath() != null && entriesByPath.containsKey(download.getFilePath());
+    }
+
+    /**
+     * Retira o próximo download elegível, pulando os de hosts que já atingiram maxPerHost
+     * (0 = sem limite), e o marca como em execução no seu host.
+     */
+    public synchronized DownloadInfo pollNext(int maxPerHost) {
+        Iterator<Entry> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            String host = hostOf(entry.download);
+            if (maxPerHost > 0 && getOrZero(runningByHost, host) >= maxPerHost) continue;
+            iterator.remove();
+            entriesByPath.remove(entry.download.getFilePath());
+            markStarted(entry.download.getFilePath(), host);
+            return entry.download;
+        }
+        return null;
+    }
+
+    /**
+     * Libera a vaga do host quando o download termina, pausa ou falha.
+     */
+    public synchronized void markFinished(String filePath) {
+        String host = filePath != null ? runningHostByPath.remove(filePath) : null;
+        if (host == null) return;
+        int count = getOrZero(runningByHost, host) - 1;
+        if (count > 0) {
+            runningByHost.put(host, count);
+        } else {
+            runningByHost.remove(host);
+        }
+    }
+
+    public synchronized void clearRunning() {
+        runningHostByPath.clear();
+        runningByHost.clear();
+    }
+
+    public synchronized void clear() {
+        queue.clear();
+        entriesByPath.clear();
+    }
+
+    public synchronized int size() {
+        return queue.size();
+    }
+
+    public synchronized boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    /**
+     * Cópia da fila na ordem em que os downloads serão iniciados.
+     */
+    public synchronized List<DownloadInfo> snapshot() {
+        List<DownloadInfo> downloads = new ArrayList<>(queue.size());
+        for (Entry entry : queue) {
+            downloads.add(entry.download);
+        }
+        return downloads;
+    }
+
+    private void markStarted(String filePath, String host) {
+        if (runningHostByPath.put(filePath, host) == null) {
+            runningByHost.put(host, getOrZero(runningByHost, host) + 1);
+        }
+    }
+
+    private static int getOrZero(Map<String, Integer> map, String key) {
+        Integer value = map.get(key);
+        return value != null ? value : 0;
+    }
+
+    private static String hostOf(DownloadInfo download) {
+        try {
+            String host = new URI(download.getUrl()).getHost();
+            return host != null ? host.toLowerCase(Locale.ROOT) : "";
+        } catch (Exception e) {
+            return "";
+        }
+    }
+}
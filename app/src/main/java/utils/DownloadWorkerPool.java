@@ -0,0 +1,76 @@
+package com.LDGAMES.utils;
+
+import android.util.Log;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool de threads das tarefas de download que acompanha o limite de downloads simultâneos.
+ * Aumentar o limite cria threads na hora; diminuir deixa as tarefas em andamento terminarem
+ * e só então as threads excedentes são encerradas.
+ */
+public class DownloadWorkerPool {
+    private static final String TAG = "DownloadWorkerPool";
+    private static final long IDLE_KEEP_ALIVE_SECONDS = 30;
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicInteger threadCounter = new AtomicInteger();
+
+    public DownloadWorkerPool(int workers) {
+        int size = Math.max(1, workers);
+        executor = new ThreadPoolExecutor(size, size, IDLE_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> new Thread(runnable, "download-worker-" + threadCounter.incrementAndGet()));
+        executor.allowCoreThreadTimeOut(true); // Sem downloads, nenhuma thread fica parada
+    }
+
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * Ajusta o número de workers. A ordem das chamadas evita core > max, que lança exceção.
+     */
+    public synchronized void resize(int workers) {
+        int size = Math.max(1, workers);
+        int current = executor.getMaximumPoolSize();
+        if (size == current || executor.isShutdown()) return;
+        if (size > current) {
+            executor.setMaximumPoolSize(size);
+            executor.setCorePoolSize(size); // Inicia threads para tarefas já enfileiradas
+        } else {
+            executor.setCorePoolSize(size);
+            executor.setMaximumPoolSize(size); // Threads excedentes saem ao terminar a tarefa atual
+        }
+        Log.i(TAG, "Pool redimensionado de " + current + " para " + size + " workers (" + getStats() + ")");
+    }
+
+    public int getMaxWorkers() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * Workers executando uma tarefa agora (aproximado, como em ThreadPoolExecutor).
+     */
+    public int getBusyWorkers() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Tarefas aguardando um worker livre.
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public String getStats() {
+        return "ocupados=" + getBusyWorkers() + "/" + getMaxWorkers() + ", aguardando=" + getQueueDepth();
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -15,10 +15,12 @@ import androidx.core.content.FileProvider;
 import androidx.documentfile.provider.DocumentFile;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.text.DecimalFormat;
 import java.util.Locale;
 import java.util.regex.Matcher;
@@ -224,6 +226,36 @@ public class FileUtils {
      * @return OutputStream para escrever no arquivo ou null em caso de erro
      */
     public static OutputStream createDownloadFile(Context context, String filename, boolean append) {
+        PositionalFileWriter writer = openDownloadWriter(context, filename);
+        if (writer == null) {
+            return null;
+        }
+        try {
+            long position = 0;
+            if (append) {
+                position = writer.size();
+            } else {
+                writer.truncate(0);
+            }
+            return writer.asOutputStream(position);
+        } catch (IOException e) {
+            Log.e(TAG, "Erro ao preparar arquivo de download: " + e.getMessage(), e);
+            try {
+                writer.close();
+            } catch (IOException ignored) {
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Cria ou abre um arquivo no diretório de download para escrita posicional (offsets explícitos).
+     * O conteúdo existente não é truncado.
+     * @param context Contexto da aplicação
+     * @param filename Nome do arquivo a ser criado
+     * @return PositionalFileWriter aberto ou null em caso de erro
+     */
+    public static PositionalFileWriter openDownloadWriter(Context context, String filename) {
         try {
             Uri directoryUri = getDownloadDirectoryUri(context);
             
@@ -242,12 +274,7 @@ public class FileUtils {
                         if (existingFile != null) {
                             // Arquivo existe, abrir para escrita
                             try {
-                                OutputStream outputStream = context.getContentResolver().openOutputStream(existingFile.getUri(), append ? "wa" : "w");
-                                if (outputStream != null) {
-                                    return outputStream;
-                                } else {
-                                    Log.e(TAG, "Falha ao abrir OutputStream para arquivo existente: " + filename);
-                                }
+                                return PositionalFileWriter.open(context, existingFile.getUri());
                             } catch (Exception e) {
                                 Log.e(TAG, "Erro ao abrir arquivo existente via SAF: " + e.getMessage(), e);
                             }
@@ -266,12 +293,7 @@ public class FileUtils {
                                 
                                 DocumentFile file = directory.createFile(mimeType, filename);
                                 if (file != null) {
-                                    OutputStream outputStream = context.getContentResolver().openOutputStream(file.getUri());
-                                    if (outputStream != null) {
-                                        return outputStream;
-                                    } else {
-                                        Log.e(TAG, "Falha ao abrir OutputStream para novo arquivo: " + filename);
-                                    }
+                                    return PositionalFileWriter.open(context, file.getUri());
                                 } else {
                                     Log.e(TAG, "Falha ao criar novo arquivo via SAF: " + filename);
                                 }
@@ -311,7 +333,7 @@ public class FileUtils {
                 }
             }
             
-            return new FileOutputStream(file, append);
+            return PositionalFileWriter.open(file);
         } catch (IOException e) {
             Log.e(TAG, "Erro ao criar arquivo de download: " + e.getMessage(), e);
             return null;
@@ -435,6 +457,28 @@ public class FileUtils {
         }
     }
     
+    /**
+     * Copia um arquivo local para outro com FileChannel.transferTo (sendfile no kernel, sem
+     * passar os bytes por buffers da aplicação). Sobrescreve o destino.
+     * @return bytes copiados
+     */
+    public static long copyFile(File source, File target) throws IOException {
+        try (FileInputStream in = new FileInputStream(source);
+             FileOutputStream out = new FileOutputStream(target)) {
+            FileChannel from = in.getChannel();
+            FileChannel to = out.getChannel();
+            long size = from.size();
+            long position = 0;
+            while (position < size) {
+                long copied = from.transferTo(position, size - position, to);
+                if (copied <= 0) break; // Origem encolheu durante a cópia
+                position += copied;
+            }
+            to.force(false);
+            return position;
+        }
+    }
+
     /**
      * Formata o tamanho do arquivo para exibição legível
      * @param size Tamanho em bytes
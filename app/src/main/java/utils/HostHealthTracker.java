@@ -0,0 +1,266 @@
+package com.LDGAMES.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.util.Log;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Saúde dos hosts de download, persistida entre downloads e reinícios do app.
+ * Para cada host guarda a taxa de erro (média móvel), a vazão recente e até quando ele deve
+ * ser evitado (Retry-After de 429/503 ou backoff após falhas seguidas). DownloadTask usa o
+ * ranking para escolher espelhos e pula hosts bloqueados sem gastar um timeout neles.
+ */
+public class HostHealthTracker {
+    private static final String TAG = "HostHealthTracker";
+    private static final String PREFS_NAME = "host_health";
+    private static HostHealthTracker instance;
+
+    private static final double ERROR_DECAY = 0.8; // Peso do histórico na taxa de erro
+    private static final double THROUGHPUT_DECAY = 0.7; // Peso do histórico na vazão
+    private static final int FAILURES_BEFORE_BLOCK = 3; // Falhas seguidas (sem Retry-After) até evitar o host
+    private static final long BLOCK_BASE = 5000; // ms
+    private static final long MAX_BLOCK = 10 * 60 * 1000; // ms
+    private static final long MAX_RETRY_AFTER = 60 * 60 * 1000; // ms; ignora pedidos absurdos do servidor
+    private static final long THROUGHPUT_SAVE_INTERVAL = 30000; // ms entre gravações só de vazão
+    private static final long STALE_AFTER = 30L * 24 * 60 * 60 * 1000; // Hosts sem uso há 30 dias são esquecidos
+    private static final long DEFAULT_THROUGHPUT = 1024 * 1024; // Vazão assumida para host desconhecido
+
+    private static class Health {
+        double errorRate;
+        long throughput; // bytes/s, 0 = desconhecida
+        int consecutiveFailures;
+        long blockedUntil;
+        long updatedAt;
+
+        String serialize() {
+            return errorRate + "|" + throughput + "|" + consecutiveFailures + "|" + blockedUntil + "|" + updatedAt;
+        }
+
+        static Health parse(String value) {
+            String[] parts = value.split("\\|");
+            if (parts.length < 5) return null;
+            try {
+                Health health = new Health();
+                health.errorRate = Double.parseDouble(parts[0]);
+                health.throughput = Long.parseLong(parts[1]);
+                health.consecutiveFailures = Integer.parseInt(parts[2]);
+                health.blockedUntil = Long.parseLong(parts[3]);
+                health.updatedAt = Long.parseLong(parts[4]);
+                return health;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    private final SharedPreferences prefs;
+    private final Map<String, Health> hosts = new ConcurrentHashMap<>();
+    private volatile long lastThroughputSave = 0;
+
+    private HostHealthTracker(Context context) {
+        prefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        long now = System.currentTimeMillis();
+        SharedPreferences.Editor cleanup = prefs.edit();
+        for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+            Health health = entry.getValue() instanceof String ? Health.parse((String) entry.getValue()) : null;
+            if (health == null || now - health.updatedAt > STALE_AFTER) {
+                cleanup.remove(entry.getKey());
+            } else {
+                hosts.put(entry.getKey(), health);
+            }
+        }
+        cleanup.apply();
+    }
+
+    public static synchronized HostHealthTracker getInstance(Context context) {
+        if (instance == null) {
+            instance = new HostHealthTracker(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Tentativa bem-sucedida (ou parcial com dados) no host, com a vazão média observada.
+     */
+    public void recordSuccess(String url, long bytesPerSecond) {
+        String host = hostOf(url);
+        if (host == null) return;
+        Health health = hosts.computeIfAbsent(host, h -> new Health());
+        boolean changed;
+        synchronized (health) {
+            changed = health.consecutiveFailures > 0 || health.blockedUntil > 0;
+            health.errorRate *= ERROR_DECAY;
+            if (bytesPerSecond > 0) {
+                health.throughput = health.throughput <= 0 ? bytesPerSecond
+                        : (long) (health.throughput * THROUGHPUT_DECAY + bytesPerSecond * (1 - THROUGHPUT_DECAY));
+            }
+            health.consecutiveFailures = 0;
+            health.blockedUntil = 0;
+            health.updatedAt = System.currentTimeMillis();
+        }
+        long now = System.currentTimeMillis();
+        if (changed || now - lastThroughputSave >= THROUGHPUT_SAVE_INTERVAL) {
+            lastThroughputSave = now;
+            save(host, health);
+        }
+    }
+
+    /**
+     * Falha de conexão/HTTP no host.
+     * @param httpCode código HTTP, ou -1 para erro de rede
+     * @param retryAfter valor do header Retry-After (segundos ou data HTTP), pode ser null
+     */
+    public void recordFailure(String url, int httpCode, String retryAfter) {
+        String host = hostOf(url);
+        if (host == null) return;
+        Health health = hosts.computeIfAbsent(host, h -> new Health());
+        long now = System.currentTimeMillis();
+        synchronized (health) {
+            health.errorRate = health.errorRate * ERROR_DECAY + (1 - ERROR_DECAY);
+            health.consecutiveFailures++;
+            health.updatedAt = now;
+            long retryAfterMillis = parseRetryAfter(retryAfter, now);
+            if (httpCode == 429 || httpCode == 503) {
+                // Servidor pediu para esperar: respeitar, ou aplicar backoff se não disse quanto
+                long wait = retryAfterMillis > 0 ? retryAfterMillis : blockDuration(health.consecutiveFailures);
+                health.blockedUntil = Math.max(health.blockedUntil, now + wait);
+            } else if (health.consecutiveFailures >= FAILURES_BEFORE_BLOCK) {
+                health.blockedUntil = Math.max(health.blockedUntil,
+                        now + blockDuration(health.consecutiveFailures - FAILURES_BEFORE_BLOCK + 1));
+            }
+            if (health.blockedUntil > now) {
+                Log.w(TAG, String.format("Host %s evitado por %d s (HTTP %d, %d falhas seguidas)",
+                        host, (health.blockedUntil - now) / 1000, httpCode, health.consecutiveFailures));
+            }
+        }
+        save(host, health);
+    }
+
+    /**
+     * false enquanto o host está em espera (Retry-After ou backoff).
+     */
+    public boolean isAvailable(String url) {
+        return getBlockedDelay(url) <= 0;
+    }
+
+    /**
+     * ms até o host poder ser usado de novo (0 se disponível).
+     */
+    public long getBlockedDelay(String url) {
+        return blockedDelay(hostOf(url), System.currentTimeMillis());
+    }
+
+    /**
+     * Pontuação do host: vazão esperada descontada pela taxa de erro. Hosts desconhecidos
+     * recebem uma vazão neutra para ainda serem experimentados.
+     */
+    public double score(String url) {
+        return scoreOf(hostOf(url));
+    }
+
+    /**
+     * Índices das URLs do melhor para o pior host: disponíveis antes de bloqueados, depois pela
+     * pontuação; empate mantém a ordem original da lista. Disponibilidade e pontuação são
+     * calculadas uma vez por URL com o mesmo instante, antes de ordenar: o comparador não pode
+     * depender do relógio nem de registros concorrentes, senão deixa de ser consistente.
+     */
+    public List<Integer> rank(List<String> urls) {
+        List<Integer> order = new ArrayList<>();
+        if (urls == null) return order;
+        int size = urls.size();
+        boolean[] available = new boolean[size];
+        double[] scores = new double[size];
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < size; i++) {
+            String host = hostOf(urls.get(i));
+            available[i] = blockedDelay(host, now) <= 0;
+            scores[i] = scoreOf(host);
+            order.add(i);
+        }
+        Collections.sort(order, (a, b) -> {
+            if (available[a] != available[b]) return available[a] ? -1 : 1;
+            int byScore = Double.compare(scores[b], scores[a]);
+            return byScore != 0 ? byScore : Integer.compare(a, b);
+        });
+        return order;
+    }
+
+    /**
+     * Menor espera até algum dos hosts da lista ficar disponível (0 se algum já está).
+     */
+    public long getEarliestAvailableDelay(List<String> urls) {
+        if (urls == null || urls.isEmpty()) return 0;
+        long earliest = Long.MAX_VALUE;
+        long now = System.currentTimeMillis();
+        for (String url : urls) {
+            earliest = Math.min(earliest, blockedDelay(hostOf(url), now));
+        }
+        return earliest;
+    }
+
+    private long blockedDelay(String host, long now) {
+        Health health = host != null ? hosts.get(host) : null;
+        if (health == null) return 0;
+        synchronized (health) {
+            return Math.max(0, health.blockedUntil - now);
+        }
+    }
+
+    private double scoreOf(String host) {
+        Health health = host != null ? hosts.get(host) : null;
+        if (health == null) return DEFAULT_THROUGHPUT;
+        synchronized (health) {
+            long throughput = health.throughput > 0 ? health.throughput : DEFAULT_THROUGHPUT;
+            return throughput * (1 - health.errorRate);
+        }
+    }
+
+    private void save(String host, Health health) {
+        String value;
+        synchronized (health) {
+            value = health.serialize();
+        }
+        prefs.edit().putString(host, value).apply();
+    }
+
+    private static long blockDuration(int level) {
+        long duration = BLOCK_BASE << Math.min(level - 1, 16);
+        return Math.min(MAX_BLOCK, duration);
+    }
+
+    /**
+     * Retry-After em segundos ("120") ou data HTTP ("Wed, 21 Oct 2015 07:28:00 GMT").
+     */
+    private static long parseRetryAfter(String value, long now) {
+        if (value == null || value.trim().isEmpty()) return 0;
+        String trimmed = value.trim();
+        try {
+            return Math.min(MAX_RETRY_AFTER, Math.max(0, Long.parseLong(trimmed) * 1000));
+        } catch (NumberFormatException ignored) {
+            // Não é número: tentar data HTTP
+        }
+        try {
+            SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+            Date date = format.parse(trimmed);
+            return date != null ? Math.min(MAX_RETRY_AFTER, Math.max(0, date.getTime() - now)) : 0;
+        } catch (java.text.ParseException e) {
+            return 0;
+        }
+    }
+
+    private static String hostOf(String url) {
+        if (url == null || url.isEmpty()) return null;
+        String host = Uri.parse(url).getHost();
+        return host != null ? host.toLowerCase(Locale.US) : null;
+    }
+}
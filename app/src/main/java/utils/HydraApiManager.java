@@ -4,40 +4,45 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.os.Handler;
 import android.os.Looper;
+import android.util.JsonReader;
+import android.util.JsonToken;
 import android.util.Log;
 import android.widget.Toast;
 
 import com.LDGAMES.models.DownloadLink;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.text.Normalizer;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean; // Import AtomicBoolean
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.regex.Pattern;
 
 import okhttp3.Call;
 import okhttp3.Callback;
@@ -56,7 +61,24 @@ public class HydraApiManager {
     private static final String PREF_API_URLS = "api_urls";
     private static final String CACHE_DIR_NAME = "hydra_api_cache";
     private static final String API_ENABLED_PREFS = "api_enabled_prefs";
+    private static final int MAX_RESULTS_PER_SOURCE = 30;
+    private static final int MAX_SEARCH_RESULTS = 30; // Entradas no diálogo, somando todas as fontes
+    private static final int UPDATE_THREADS = 2;
+    private static final int MAX_SEARCH_THREADS = 4;
+    // Validadores por fonte (chave = prefixo + URL), usados nas requisições condicionais
+    private static final String PREF_ETAG_PREFIX = "etag_";
+    private static final String PREF_LAST_MODIFIED_PREFIX = "last_modified_";
+    private static final String PREF_CONTENT_HASH_PREFIX = "content_hash_";
     private Handler mainHandler;
+    // Executores compartilhados: downloads das fontes limitados pela rede, buscas pelos núcleos
+    private final ExecutorService updateExecutor = Executors.newFixedThreadPool(UPDATE_THREADS,
+            runnable -> new Thread(runnable, "hydra-update"));
+    private final ExecutorService searchExecutor = Executors.newFixedThreadPool(
+            Math.max(2, Math.min(MAX_SEARCH_THREADS, Runtime.getRuntime().availableProcessors())),
+            runnable -> new Thread(runnable, "hydra-search"));
+    private final Map<String, Object> indexLocks = new ConcurrentHashMap<>(); // apiUrl -> trava do índice
+    private final List<ApiDownloadProgressCallback<Integer>> updateCallbacks = new ArrayList<>();
+    private boolean updateRunning = false; // Guardado por updateCallbacks
 
     public interface ApiDownloadProgressCallback<T> {
         void onProgressUpdate(int currentApi, int totalApis, long bytesDownloaded, long totalBytes, boolean indeterminate, String sourceName);
@@ -120,39 +142,32 @@ public class HydraApiManager {
         return new File(context.getFilesDir() + File.separator + CACHE_DIR_NAME, getCacheFileName(apiUrl));
     }
 
-    private void saveApiDataToFile(String apiUrl, String jsonData) throws IOException {
-        File file = getCacheFile(apiUrl);
-        try (FileOutputStream fos = new FileOutputStream(file);
-             OutputStreamWriter writer = new OutputStreamWriter(fos, StandardCharsets.UTF_8)) {
-            writer.write(jsonData);
-            Log.i(TAG, "API data " + apiUrl + " saved to " + file.getName());
-        } catch (IOException e) {
-            Log.e(TAG, "Error saving API data " + apiUrl + " to file " + file.getName(), e);
-            throw e;
-        }
+    // Índice invertido dos títulos, ao lado do JSON da fonte
+    private File getIndexFile(String apiUrl) {
+        String jsonName = getCacheFileName(apiUrl);
+        return new File(context.getFilesDir() + File.separator + CACHE_DIR_NAME,
+                jsonName.substring(0, jsonName.length() - ".json".length()) + ".idx");
     }
 
-    private String readApiDataFromFile(String apiUrl) throws IOException {
+    private void saveApiDataToFile(String apiUrl, File downloadedFile) throws IOException {
         File file = getCacheFile(apiUrl);
-        if (!file.exists()) {
-            throw new IOException("Cache file not found for " + apiUrl);
-        }
-        StringBuilder stringBuilder = new StringBuilder();
-        try (FileInputStream fis = new FileInputStream(file);
-             InputStreamReader reader = new InputStreamReader(fis, StandardCharsets.UTF_8)) {
-            char[] buffer = new char[1024];
-            int n;
-            while ((n = reader.read(buffer)) != -1) {
-                stringBuilder.append(buffer, 0, n);
-            }
-            return stringBuilder.toString();
-        } catch (IOException e) {
-            Log.e(TAG, "Error reading API data " + apiUrl + " from file " + file.getName(), e);
+        // Os bytes baixados já são o JSON, no mesmo diretório: rename atômico, sem cópia. Quem está
+        // lendo o cache antigo continua com o arquivo anterior até fechá-lo.
+        if (!downloadedFile.renameTo(file)) {
+            IOException e = new IOException("Could not move " + downloadedFile.getName() + " to " + file.getName());
+            Log.e(TAG, "Error saving API data " + apiUrl + " to file " + file.getName(), e);
             throw e;
         }
+        Log.i(TAG, "API data " + apiUrl + " saved to " + file.getName());
     }
 
     public boolean deleteApiCacheFile(String apiUrl) {
+        forgetValidators(apiUrl);
+        File index = getIndexFile(apiUrl);
+        HydraSearchIndex.forget(index);
+        if (index.exists() && !index.delete()) {
+            Log.w(TAG, "Failed to delete index file: " + index.getName());
+        }
         File file = getCacheFile(apiUrl);
         if (file.exists()) {
             return file.delete();
@@ -160,18 +175,32 @@ public class HydraApiManager {
         return false;
     }
 
+    // Sem o cache, um 304 deixaria a fonte vazia: o próximo download precisa ser completo
+    private void forgetValidators(String apiUrl) {
+        context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE)
+                .edit()
+                .remove(PREF_ETAG_PREFIX + apiUrl)
+                .remove(PREF_LAST_MODIFIED_PREFIX + apiUrl)
+                .remove(PREF_CONTENT_HASH_PREFIX + apiUrl)
+                .apply();
+    }
+
     public void clearApiCache() {
         File cacheDir = new File(context.getFilesDir(), CACHE_DIR_NAME);
         if (cacheDir.exists() && cacheDir.isDirectory()) {
             File[] files = cacheDir.listFiles();
             if (files != null) {
                 for (File file : files) {
-                    if (file.getName().startsWith("hydra_api_") && file.getName().endsWith(".json")) {
+                    if (file.getName().startsWith("hydra_api_") && (file.getName().endsWith(".json") || file.getName().endsWith(".idx"))) {
+                        HydraSearchIndex.forget(file);
                         if (!file.delete()) {
                             Log.w(TAG, "Failed to delete cache file: " + file.getName());
                         }
                     }
                 }
+                for (String apiUrl : getApiUrls()) {
+                    forgetValidators(apiUrl);
+                }
                 Log.i(TAG, "API cache cleared.");
             }
         }
@@ -230,39 +259,71 @@ public class HydraApiManager {
     }
     // --- End URL Management Methods ---
 
-    public void forceUpdateAllData(final ApiDownloadProgressCallback<Void> callback) {
+    /**
+     * Atualiza todas as fontes com requisições condicionais (If-None-Match / If-Modified-Since):
+     * fontes inalteradas respondem 304 e mantêm o cache e o índice atuais, e um conteúdo igual
+     * ao anterior (mesmo hash) também não substitui nada. Se já houver uma atualização em
+     * andamento, o callback é anexado a ela em vez de baixar tudo de novo.
+     * onSuccess recebe o número de fontes cujo conteúdo mudou.
+     */
+    public void forceUpdateAllData(final ApiDownloadProgressCallback<Integer> callback) {
+        synchronized (updateCallbacks) {
+            updateCallbacks.add(callback);
+            if (updateRunning) {
+                Log.d(TAG, "Update already running, attaching callback");
+                return;
+            }
+            updateRunning = true;
+        }
+
         loadApiUrls();
         final List<String> currentApiUrls = new ArrayList<>(apiUrls);
 
         if (currentApiUrls.isEmpty()) {
-            mainHandler.post(() -> {
-                callback.onError(new Exception("No APIs configured for update."));
-                callback.onComplete();
-            });
+            finishUpdate(new Exception("No APIs configured for update."), 0);
             return;
         }
 
-        ExecutorService executor = Executors.newFixedThreadPool(2);
         final AtomicInteger apisProcessed = new AtomicInteger(0);
+        final AtomicInteger apisChanged = new AtomicInteger(0);
         final int totalApis = currentApiUrls.size();
         final List<Exception> errors = new ArrayList<>();
+        final SharedPreferences prefs = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
 
-        mainHandler.post(() -> callback.onProgressUpdate(0, totalApis, 0, 0, true, "Iniciando atualização..."));
+        postUpdateProgress(0, totalApis, 0, 0, true, "Iniciando atualização...");
 
         for (int i = 0; i < totalApis; i++) {
             final String apiUrl = currentApiUrls.get(i);
             final int currentApiIndex = i + 1;
 
-            executor.execute(() -> {
-                long totalBytes = -1;
-                AtomicLong bytesRead = new AtomicLong(0);
+            updateExecutor.execute(() -> {
                 File tempFile = null;
+                HydraSearchIndex.Writer indexWriter = null;
 
                 try {
-                    Request request = new Request.Builder().url(apiUrl).build();
-                    Response response = client.newCall(request).execute();
+                    File cacheFile = getCacheFile(apiUrl);
+                    Request.Builder requestBuilder = new Request.Builder().url(apiUrl);
+                    // Validadores só valem se o cache que eles descrevem ainda existe
+                    if (cacheFile.exists()) {
+                        String etag = prefs.getString(PREF_ETAG_PREFIX + apiUrl, null);
+                        String lastModified = prefs.getString(PREF_LAST_MODIFIED_PREFIX + apiUrl, null);
+                        if (etag != null) {
+                            requestBuilder.header("If-None-Match", etag);
+                        }
+                        if (lastModified != null) {
+                            requestBuilder.header("If-Modified-Since", lastModified);
+                        }
+                    }
+                    Response response = client.newCall(requestBuilder.build()).execute();
 
+                    if (response.code() == 304) {
+                        response.close();
+                        Log.i(TAG, "API " + apiUrl + " not modified (304), keeping cache");
+                        postUpdateProgress(currentApiIndex, totalApis, 1, 1, false, apiUrl);
+                        return;
+                    }
                     if (!response.isSuccessful()) {
+                        response.close();
                         throw new IOException("Error downloading " + apiUrl + ": " + response.code());
                     }
 
@@ -271,65 +332,68 @@ public class HydraApiManager {
                         throw new IOException("Empty response for " + apiUrl);
                     }
 
-                    totalBytes = body.contentLength();
-                    InputStream inputStream = body.byteStream();
-                    tempFile = File.createTempFile("api_download_", ".tmp", context.getCacheDir());
-
-                    final long finalTotalBytes = totalBytes;
-                    mainHandler.post(() -> callback.onProgressUpdate(currentApiIndex, totalApis, 0, finalTotalBytes, finalTotalBytes <= 0, apiUrl));
-
-                    try (FileOutputStream fos = new FileOutputStream(tempFile)) {
-                        byte[] buffer = new byte[8192];
-                        int n;
-                        final long reportThreshold = finalTotalBytes > 0 ? Math.max(finalTotalBytes / 100, 8192L) : 256 * 1024L;
-                        long lastReportedBytes = 0;
-
-                        while ((n = inputStream.read(buffer)) != -1) {
-                            fos.write(buffer, 0, n);
-                            long currentBytes = bytesRead.addAndGet(n);
-
-                            if (finalTotalBytes > 0) {
-                                if (currentBytes == finalTotalBytes || currentBytes - lastReportedBytes >= reportThreshold) {
-                                    final long finalCurrentBytes = currentBytes;
-                                    mainHandler.post(() -> callback.onProgressUpdate(currentApiIndex, totalApis, finalCurrentBytes, finalTotalBytes, false, apiUrl));
-                                    lastReportedBytes = currentBytes;
+                    final long finalTotalBytes = body.contentLength();
+                    ensureCacheDirExists();
+                    // No diretório do cache, para o rename final não atravessar sistemas de arquivos
+                    tempFile = File.createTempFile("api_download_", ".tmp", new File(context.getFilesDir(), CACHE_DIR_NAME));
+                    postUpdateProgress(currentApiIndex, totalApis, 0, finalTotalBytes, finalTotalBytes <= 0, apiUrl);
+
+                    // O JSON é lido em streaming conforme chega: cada entrada vai direto para o índice
+                    // e os bytes brutos para o arquivo temporário, que depois vira o cache da fonte
+                    final long reportThreshold = finalTotalBytes > 0 ? Math.max(finalTotalBytes / 100, 8192L) : 256 * 1024L;
+                    final AtomicLong lastReportedBytes = new AtomicLong(0);
+                    MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                    String sourceName;
+                    indexWriter = new HydraSearchIndex.Writer(getIndexFile(apiUrl));
+                    try (TeeInputStream tee = new TeeInputStream(body.byteStream(),
+                            new DigestOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 64 * 1024), digest), currentBytes -> {
+                                if (finalTotalBytes > 0 && (currentBytes == finalTotalBytes || currentBytes - lastReportedBytes.get() >= reportThreshold)) {
+                                    postUpdateProgress(currentApiIndex, totalApis, currentBytes, finalTotalBytes, false, apiUrl);
+                                    lastReportedBytes.set(currentBytes);
                                 }
-                            }
-                        }
-                        fos.flush();
+                            })) {
+                        sourceName = readSource(tee, indexWriter);
+                        tee.drain(); // Espaços/bytes depois do objeto raiz também vão para o cache
                     } finally {
-                         if (inputStream != null) inputStream.close();
-                         if (body != null) body.close();
-                    String jsonData = FileUtils.readFileToString(tempFile);
-
-                    // --- Extract Source Name from JSON ---
-                    String sourceName = apiUrl; // Default to URL if name not found
-                    try {
-                        JSONObject jsonObject = new JSONObject(jsonData);
-                        if (jsonObject.has("name") && !jsonObject.isNull("name")) {
-                            String nameFromJson = jsonObject.getString("name");
-                            if (nameFromJson != null && !nameFromJson.trim().isEmpty()) {
-                                sourceName = nameFromJson.trim();
-                            }
-                        }
-                    } catch (JSONException jsonEx) {
-                        Log.w(TAG, "Could not parse JSON to get source name from " + apiUrl, jsonEx);
+                        body.close();
                     }
-                    final String finalSourceName = sourceName;
-                    // --- End Extract Source Name ---
 
+                    final String finalSourceName = sourceName != null && !sourceName.trim().isEmpty() ? sourceName.trim() : apiUrl;
+                    final long finalBytes = tempFile.length();
                     // Update progress with source name *before* saving
-                    mainHandler.post(() -> callback.onProgressUpdate(currentApiIndex, totalApis, bytesRead.get(), finalTotalBytes, false, finalSourceName));
-
-                    saveApiDataToFile(apiUrl, jsonData);
-
-                } // Closes lambda
-            } // Closes try
-            catch (Exception e) {
+                    postUpdateProgress(currentApiIndex, totalApis, finalBytes, finalTotalBytes, false, finalSourceName);
+
+                    String contentHash = toHex(digest.digest());
+                    HydraSearchIndex currentIndex = HydraSearchIndex.open(getIndexFile(apiUrl));
+                    if (contentHash.equals(prefs.getString(PREF_CONTENT_HASH_PREFIX + apiUrl, null))
+                            && currentIndex != null && currentIndex.isCurrent(cacheFile)) {
+                        // Servidor sem validadores (ou que os trocou) mas conteúdo idêntico: nada a substituir
+                        Log.i(TAG, "API " + apiUrl + " content unchanged (same hash), keeping cache");
+                        indexWriter.abort();
+                        indexWriter = null;
+                    } else {
+                        // Mesma trava de getSearchIndex: uma busca não reconstrói o índice no meio da troca
+                        Object lock = indexLocks.computeIfAbsent(apiUrl, url -> new Object());
+                        synchronized (lock) {
+                            saveApiDataToFile(apiUrl, tempFile);
+                            indexWriter.finish(sourceName != null ? sourceName : cacheFile.getName(), HydraSearchIndex.stampOf(cacheFile));
+                            indexWriter = null;
+                        }
+                        apisChanged.incrementAndGet();
+                    }
+                    prefs.edit()
+                            .putString(PREF_ETAG_PREFIX + apiUrl, response.header("ETag"))
+                            .putString(PREF_LAST_MODIFIED_PREFIX + apiUrl, response.header("Last-Modified"))
+                            .putString(PREF_CONTENT_HASH_PREFIX + apiUrl, contentHash)
+                            .apply();
+                } catch (Exception e) {
                     Log.e(TAG, "Error downloading/saving API " + apiUrl, e);
                     synchronized (errors) {
                         errors.add(e);
                     }
+                    if (indexWriter != null) {
+                        indexWriter.abort(); // O índice anterior da fonte continua valendo
+                    }
                 } finally {
                     if (tempFile != null && tempFile.exists()) {
                         if (!tempFile.delete()) {
@@ -339,175 +403,453 @@ public class HydraApiManager {
 
                     int processed = apisProcessed.incrementAndGet();
                     if (processed == totalApis) {
-                        mainHandler.post(() -> {
-                            if (errors.isEmpty()) {
-                                callback.onSuccess(null);
-                            } else {
-                                callback.onError(new Exception("Failed to update " + errors.size() + " API(s). First error: " + errors.get(0).getMessage(), errors.get(0)));
-                            }
-                            callback.onComplete();
-                        });
+                        finishUpdate(errors.isEmpty() ? null
+                                : new Exception("Failed to update " + errors.size() + " API(s). First error: " + errors.get(0).getMessage(), errors.get(0)),
+                                apisChanged.get());
                     }
                 }
             });
         }
-        executor.shutdown();
     }
 
-    private static String normalizeString(String input) {
-        if (input == null) {
-            return "";
+    /**
+     * Há cache local para ao menos uma fonte habilitada (a busca pode rodar sem esperar a rede).
+     */
+    public boolean hasCachedData() {
+        SharedPreferences apiEnabledPrefs = context.getSharedPreferences(API_ENABLED_PREFS, Context.MODE_PRIVATE);
+        for (String apiUrl : getApiUrls()) {
+            if (apiEnabledPrefs.getBoolean(apiUrl, true) && getCacheFile(apiUrl).exists()) {
+                return true;
+            }
         }
-        String normalized = input.toLowerCase(Locale.ROOT);
-        String nfdNormalizedString = Normalizer.normalize(normalized, Normalizer.Form.NFD);
-        Pattern pattern = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
-        normalized = pattern.matcher(nfdNormalizedString).replaceAll("");
-        normalized = normalized.replaceAll("[^a-z0-9\\s]", "");
-        normalized = normalized.replaceAll("\\s+", " ").trim();
-        return normalized;
+        return false;
     }
 
-    public void searchDownloadLinksLocally(String gameName, final ApiLocalSearchCallback<List<DownloadLink>> callback) {
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        executor.execute(() -> {
-            final List<DownloadLink> allLinks = new ArrayList<>(); // Make final
-            final List<Exception> errors = new ArrayList<>(); // Make final
-            File cacheDir = new File(context.getFilesDir(), CACHE_DIR_NAME);
+    private List<ApiDownloadProgressCallback<Integer>> updateCallbacksSnapshot() {
+        synchronized (updateCallbacks) {
+            return new ArrayList<>(updateCallbacks);
+        }
+    }
 
-            List<String> configuredApiUrls = getApiUrls();
-            SharedPreferences apiEnabledPrefs = context.getSharedPreferences(API_ENABLED_PREFS, Context.MODE_PRIVATE);
+    private void postUpdateProgress(int currentApi, int totalApis, long bytesDownloaded, long totalBytes, boolean indeterminate, String sourceName) {
+        final List<ApiDownloadProgressCallback<Integer>> callbacks = updateCallbacksSnapshot();
+        mainHandler.post(() -> {
+            for (ApiDownloadProgressCallback<Integer> callback : callbacks) {
+                callback.onProgressUpdate(currentApi, totalApis, bytesDownloaded, totalBytes, indeterminate, sourceName);
+            }
+        });
+    }
 
-            if (configuredApiUrls.isEmpty()) {
-                 mainHandler.post(() -> callback.onError(new Exception("No APIs configured.")));
-                 return;
+    private void finishUpdate(Exception error, int changedSources) {
+        final List<ApiDownloadProgressCallback<Integer>> callbacks;
+        synchronized (updateCallbacks) {
+            callbacks = new ArrayList<>(updateCallbacks);
+            updateCallbacks.clear();
+            updateRunning = false;
+        }
+        Log.i(TAG, "Update finished: " + changedSources + " source(s) changed" + (error != null ? ", with errors" : ""));
+        mainHandler.post(() -> {
+            for (ApiDownloadProgressCallback<Integer> callback : callbacks) {
+                if (error == null) {
+                    callback.onSuccess(changedSources);
+                } else {
+                    callback.onError(error);
+                }
+                callback.onComplete();
             }
+        });
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Lê o JSON de uma fonte ({"name": ..., "downloads": [...]}) em streaming, gravando cada
+     * entrada no índice assim que ela é lida; o documento nunca fica inteiro em memória.
+     * @return campo "name" da fonte, ou null
+     */
+    private static String readSource(InputStream in, HydraSearchIndex.Writer writer) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        reader.setLenient(true);
+        String name = null;
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String field = reader.nextName();
+                if (field.equals("name")) {
+                    name = nextString(reader);
+                } else if (field.equals("downloads") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        HydraSearchIndex.Entry entry = readEntry(reader);
+                        if (entry != null) {
+                            writer.add(entry);
+                        }
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Invalid source JSON: " + e.getMessage(), e);
+        }
+        return name;
+    }
+
+    private static HydraSearchIndex.Entry readEntry(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+        String title = null;
+        String fileSize = null;
+        String uploadDate = null;
+        List<String> uris = new ArrayList<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "title":
+                    title = nextString(reader);
+                    break;
+                case "fileSize":
+                    fileSize = nextString(reader);
+                    break;
+                case "uploadDate":
+                    uploadDate = nextString(reader);
+                    break;
+                case "uris":
+                    if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+                        reader.skipValue();
+                        break;
+                    }
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        String uri = nextString(reader);
+                        if (uri != null) {
+                            uris.add(uri);
+                        }
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        if (title == null) return null;
+        return new HydraSearchIndex.Entry(title, fileSize != null ? fileSize : "N/A", uploadDate != null ? uploadDate : "", uris);
+    }
+
+    // Valor escalar como texto; null para null JSON, objetos e arrays (que são pulados)
+    private static String nextString(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case STRING:
+            case NUMBER:
+                return reader.nextString();
+            case BOOLEAN:
+                return String.valueOf(reader.nextBoolean());
+            case NULL:
+                reader.nextNull();
+                return null;
+            default:
+                reader.skipValue();
+                return null;
+        }
+    }
 
-            final AtomicBoolean anyApiEnabled = new AtomicBoolean(false); // Use AtomicBoolean
+    /**
+     * Índice da fonte; recriado em streaming a partir do cache JSON se faltar ou for de uma
+     * versão anterior do arquivo (ex: cache baixado antes de existir o índice).
+     */
+    private HydraSearchIndex getSearchIndex(String apiUrl) throws IOException {
+        // Trava por fonte: shards de fontes diferentes podem reconstruir índices ao mesmo tempo
+        Object lock = indexLocks.computeIfAbsent(apiUrl, url -> new Object());
+        synchronized (lock) {
+            return getSearchIndexLocked(apiUrl);
+        }
+    }
 
-            for (String apiUrl : configuredApiUrls) {
-                boolean isEnabled = apiEnabledPrefs.getBoolean(apiUrl, true);
+    private HydraSearchIndex getSearchIndexLocked(String apiUrl) throws IOException {
+        File cacheFile = getCacheFile(apiUrl);
+        File indexFile = getIndexFile(apiUrl);
+        HydraSearchIndex index = HydraSearchIndex.open(indexFile);
+        if (index != null && index.isCurrent(cacheFile)) {
+            return index;
+        }
+        Log.i(TAG, "Building search index for " + cacheFile.getName());
+        HydraSearchIndex.Writer writer = new HydraSearchIndex.Writer(indexFile);
+        try (InputStream in = new BufferedInputStream(new FileInputStream(cacheFile), 64 * 1024)) {
+            String name = readSource(in, writer);
+            writer.finish(name != null ? name : cacheFile.getName(), HydraSearchIndex.stampOf(cacheFile));
+        } catch (IOException | RuntimeException e) {
+            writer.abort();
+            throw e;
+        }
+        index = HydraSearchIndex.open(indexFile);
+        if (index == null) {
+            throw new IOException("Search index unreadable after writing: " + indexFile.getName());
+        }
+        return index;
+    }
 
-                if (!isEnabled) {
-                    Log.d(TAG, "Skipping disabled API: " + apiUrl);
-                    continue;
+    /**
+     * Busca local em andamento. cancel() interrompe as fontes ainda sendo pesquisadas e
+     * descarta o resultado (o callback não é chamado).
+     */
+    public static class SearchHandle {
+        private final AtomicBoolean cancelled = new AtomicBoolean(false);
+        private final List<Future<?>> shards = new ArrayList<>();
+
+        public void cancel() {
+            if (!cancelled.compareAndSet(false, true)) return;
+            synchronized (shards) {
+                for (Future<?> shard : shards) {
+                    shard.cancel(true); // A busca no índice confere a interrupção entre etapas
                 }
+                shards.clear();
+            }
+        }
 
-                anyApiEnabled.set(true); // Set AtomicBoolean to true
-                File cacheFile = getCacheFile(apiUrl);
+        public boolean isCancelled() {
+            return cancelled.get();
+        }
 
-                if (!cacheFile.exists()) {
-                    Log.w(TAG, "Cache file not found for enabled API: " + cacheFile.getName() + ". Skipping.");
-                    continue;
+        private void add(Future<?> shard) {
+            synchronized (shards) {
+                if (cancelled.get()) {
+                    shard.cancel(true);
+                } else {
+                    shards.add(shard);
                 }
+            }
+        }
+    }
+
+    /**
+     * Pesquisa o jogo no índice de cada fonte habilitada em paralelo (um shard por fonte, no
+     * executor compartilhado) e mescla os resultados pela pontuação; o tempo total acompanha a
+     * maior fonte, não a soma delas. O callback roda no main thread.
+     * @return handle para cancelar a busca (ex: o usuário saiu da tela)
+     */
+    public SearchHandle searchDownloadLinksLocally(String gameName, final ApiLocalSearchCallback<List<DownloadLink>> callback) {
+        final SearchHandle handle = new SearchHandle();
+        List<String> configuredApiUrls = getApiUrls();
+        SharedPreferences apiEnabledPrefs = context.getSharedPreferences(API_ENABLED_PREFS, Context.MODE_PRIVATE);
+
+        if (configuredApiUrls.isEmpty()) {
+            mainHandler.post(() -> callback.onError(new Exception("No APIs configured.")));
+            return handle;
+        }
 
+        boolean anyApiEnabled = false;
+        final List<String> shardUrls = new ArrayList<>();
+        String normalizedGameName = HydraSearchIndex.normalize(gameName);
+
+        for (String apiUrl : configuredApiUrls) {
+            if (!apiEnabledPrefs.getBoolean(apiUrl, true)) {
+                Log.d(TAG, "Skipping disabled API: " + apiUrl);
+                continue;
+            }
+            anyApiEnabled = true;
+            File cacheFile = getCacheFile(apiUrl);
+            if (!cacheFile.exists()) {
+                Log.w(TAG, "Cache file not found for enabled API: " + cacheFile.getName() + ". Skipping.");
+                continue;
+            }
+            if (normalizedGameName.isEmpty()) {
+                Log.w(TAG, "Normalized game name is empty, skipping search in " + cacheFile.getName());
+                continue;
+            }
+            shardUrls.add(apiUrl);
+        }
+
+        if (shardUrls.isEmpty()) {
+            final Exception error = anyApiEnabled
+                    ? new Exception("No local links found for \'" + gameName + "\' in enabled APIs.")
+                    : new Exception("No APIs enabled for search. Check settings.");
+            mainHandler.post(() -> callback.onError(error));
+            return handle;
+        }
+
+        final List<HydraSearchIndex.Hit> allHits = new ArrayList<>();
+        final List<Exception> errors = new ArrayList<>();
+        final AtomicInteger remaining = new AtomicInteger(shardUrls.size());
+        for (final String apiUrl : shardUrls) {
+            handle.add(searchExecutor.submit(() -> {
                 try {
-                    String jsonData = FileUtils.readFileToString(cacheFile);
-                    List<DownloadLink> linksFromFile = parseJsonAndFindLinks(jsonData, gameName, cacheFile.getName());
-                    if (linksFromFile != null && !linksFromFile.isEmpty()) {
-                        synchronized (allLinks) {
-                            allLinks.addAll(linksFromFile);
-                        }
+                    if (handle.isCancelled()) return;
+                    HydraSearchIndex index = getSearchIndex(apiUrl);
+                    List<HydraSearchIndex.Hit> hits = index.search(gameName, MAX_RESULTS_PER_SOURCE);
+                    Log.d(TAG, "Found " + hits.size() + " entries for \'" + gameName + "\' in " + index.getSourceName());
+                    synchronized (allHits) {
+                        allHits.addAll(hits);
                     }
-                } catch (IOException | JSONException e) {
+                } catch (InterruptedIOException e) {
+                    Log.d(TAG, "Search cancelled in " + apiUrl);
+                } catch (IOException e) {
+                    File cacheFile = getCacheFile(apiUrl);
                     Log.e(TAG, "Error reading or parsing cache file: " + cacheFile.getName(), e);
                     synchronized (errors) {
                         errors.add(new Exception("Error in cache " + cacheFile.getName() + ": " + e.getMessage(), e));
                     }
+                } finally {
+                    // O último shard a terminar mescla e entrega; nenhuma thread fica esperando as outras
+                    if (remaining.decrementAndGet() == 0) {
+                        deliverSearchResults(gameName, handle, allHits, errors, callback);
+                    }
                 }
-            }
+            }));
+        }
+        return handle;
+    }
 
-            mainHandler.post(() -> {
-                if (!allLinks.isEmpty()) {
-                    callback.onSuccess(allLinks);
-                } else if (!errors.isEmpty()) {
-                    callback.onError(errors.get(0));
-                } else if (!anyApiEnabled.get()) { // Get value from AtomicBoolean
-                     callback.onError(new Exception("No APIs enabled for search. Check settings."));
-                }
-                 else {
-                    callback.onError(new Exception("No local links found for \'" + gameName + "\' in enabled APIs."));
-                }
-            });
+    private void deliverSearchResults(String gameName, SearchHandle handle, List<HydraSearchIndex.Hit> allHits,
+                                      List<Exception> errors, ApiLocalSearchCallback<List<DownloadLink>> callback) {
+        if (handle.isCancelled()) {
+            Log.d(TAG, "Search for \'" + gameName + "\' cancelled, discarding results");
+            return;
+        }
+        // Fontes mescladas pela pontuação; o diálogo recebe só os mais relevantes
+        final List<DownloadLink> allLinks;
+        synchronized (allHits) {
+            Collections.sort(allHits, (a, b) -> Double.compare(b.score, a.score));
+            allLinks = toDownloadLinks(allHits.subList(0, Math.min(allHits.size(), MAX_SEARCH_RESULTS)));
+        }
+
+        mainHandler.post(() -> {
+            if (handle.isCancelled()) return;
+            if (!allLinks.isEmpty()) {
+                callback.onSuccess(allLinks);
+            } else if (!errors.isEmpty()) {
+                callback.onError(errors.get(0));
+            } else {
+                callback.onError(new Exception("No local links found for \'" + gameName + "\' in enabled APIs."));
+            }
         });
-        executor.shutdown();
     }
 
-    private List<DownloadLink> parseJsonAndFindLinks(String jsonData, String gameName, String sourceName) throws JSONException {
+    private List<DownloadLink> toDownloadLinks(List<HydraSearchIndex.Hit> hits) {
         List<DownloadLink> links = new ArrayList<>();
-        JSONObject json = new JSONObject(jsonData);
-        String apiName = json.optString("name", sourceName);
-        JSONArray downloadsJson = json.getJSONArray("downloads");
-
-        String normalizedGameName = normalizeString(gameName);
-        if (normalizedGameName.isEmpty()) {
-            Log.w(TAG, "Normalized game name is empty, skipping search in " + sourceName);
-            return links;
-        }
-        Log.d(TAG, "Searching for normalized name: \'" + normalizedGameName + "\' in source: " + apiName);
-
-        for (int i = 0; i < downloadsJson.length(); i++) {
-            JSONObject downloadJson = downloadsJson.getJSONObject(i);
-            String title = downloadJson.getString("title");
-            String normalizedTitle = normalizeString(title);
-
-            if (normalizedTitle.contains(normalizedGameName)) {
-                 Log.d(TAG, "Match found: API Title=\'" + title + "\', Normalized=\'" + normalizedTitle + "\'");
-                 String uploadDateStr = downloadJson.optString("uploadDate");
-                 Date uploadDate = null;
-                 if (!uploadDateStr.isEmpty()) {
-                     SimpleDateFormat sdf1 = new SimpleDateFormat("yyyy-MM-dd\'T\'HH:mm:ss.SSS\'Z\'", Locale.US);
-                     SimpleDateFormat sdf2 = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
-                     SimpleDateFormat sdf3 = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
-                     try { uploadDate = sdf1.parse(uploadDateStr); }
-                     catch (ParseException e1) {
-                         try { uploadDate = sdf2.parse(uploadDateStr); }
-                         catch (ParseException e2) {
-                             try { uploadDate = sdf3.parse(uploadDateStr); }
-                             catch (ParseException e3) { Log.w(TAG, "Unrecognized date format: " + uploadDateStr); }
-                         }
+        SimpleDateFormat sdf1 = new SimpleDateFormat("yyyy-MM-dd\'T\'HH:mm:ss.SSS\'Z\'", Locale.US);
+        SimpleDateFormat sdf2 = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
+        SimpleDateFormat sdf3 = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+        SimpleDateFormat displayFormat = new SimpleDateFormat("dd/MM/yyyy", Locale.getDefault());
+
+        for (HydraSearchIndex.Hit hit : hits) {
+             HydraSearchIndex.Entry entry = hit.entry;
+             String uploadDateStr = entry.uploadDate;
+             Date uploadDate = null;
+             if (!uploadDateStr.isEmpty()) {
+                 try { uploadDate = sdf1.parse(uploadDateStr); }
+                 catch (ParseException e1) {
+                     try { uploadDate = sdf2.parse(uploadDateStr); }
+                     catch (ParseException e2) {
+                         try { uploadDate = sdf3.parse(uploadDateStr); }
+                         catch (ParseException e3) { Log.w(TAG, "Unrecognized date format: " + uploadDateStr); }
                      }
                  }
-
-                 String fileSize = downloadJson.optString("fileSize", "N/A");
-                 JSONArray urisJson = downloadJson.getJSONArray("uris");
-
-                 for (int j = 0; j < urisJson.length(); j++) {
-                     String uri = urisJson.getString(j);
-                     DownloadLink link = new DownloadLink();
-                     link.setName(title);
-                     link.setUrl(uri);
-                     link.setSize(fileSize);
-
-                     StringBuilder description = new StringBuilder();
-                     description.append("Fonte: ").append(apiName).append(" (Local)");
-                     if (uploadDate != null) {
-                         SimpleDateFormat displayFormat = new SimpleDateFormat("dd/MM/yyyy", Locale.getDefault());
-                         description.append("\\nData: ").append(displayFormat.format(uploadDate));
-                     }
-                     if (!fileSize.equals("N/A")) {
-                         description.append("\\nTamanho: ").append(fileSize);
-                     }
-                     link.setDescription(description.toString());
-                     links.add(link);
+             }
+
+             String fileSize = entry.fileSize;
+             for (String uri : entry.uris) {
+                 DownloadLink link = new DownloadLink();
+                 link.setName(entry.title);
+                 link.setUrl(uri);
+                 link.setSize(fileSize);
+
+                 StringBuilder description = new StringBuilder();
+                 description.append("Fonte: ").append(hit.sourceName).append(" (Local)");
+                 if (uploadDate != null) {
+                     description.append("\\nData: ").append(displayFormat.format(uploadDate));
                  }
-            }
+                 if (!fileSize.equals("N/A")) {
+                     description.append("\\nTamanho: ").append(fileSize);
+                 }
+                 if (!entry.version.isEmpty()) {
+                     description.append("\\nVersão: ").append(entry.version);
+                 }
+                 link.setDescription(description.toString());
+                 links.add(link);
+             }
         }
-        Log.d(TAG, "Found " + links.size() + " links for \'" + gameName + "\' in " + apiName);
         return links;
     }
 
-    private static class FileUtils {
-        static String readFileToString(File file) throws IOException {
-            StringBuilder stringBuilder = new StringBuilder();
-            try (FileInputStream fis = new FileInputStream(file);
-                 InputStreamReader reader = new InputStreamReader(fis, StandardCharsets.UTF_8)) {
-                char[] buffer = new char[1024];
-                int n;
-                while ((n = reader.read(buffer)) != -1) {
-                    stringBuilder.append(buffer, 0, n);
-                }
+    /**
+     * Repassa ao arquivo de cache cada byte lido pelo parser e informa o total lido.
+     */
+    private static class TeeInputStream extends FilterInputStream {
+        interface ProgressListener {
+            void onBytesRead(long totalBytes);
+        }
+
+        private final OutputStream copy;
+        private final ProgressListener listener;
+        private long total = 0;
+
+        TeeInputStream(InputStream in, OutputStream copy, ProgressListener listener) {
+            super(in);
+            this.copy = copy;
+            this.listener = listener;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                copy.write(b);
+                listener.onBytesRead(++total);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                copy.write(b, off, n);
+                total += n;
+                listener.onBytesRead(total);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] skipped = new byte[(int) Math.min(n, 8192)];
+            return Math.max(0, read(skipped, 0, skipped.length)); // Bytes pulados também vão para a cópia
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        /**
+         * Copia o restante do stream sem passar pelo parser.
+         */
+        void drain() throws IOException {
+            byte[] rest = new byte[8192];
+            while (read(rest, 0, rest.length) != -1) {
+                // Só copiar
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                copy.close();
+            } finally {
+                super.close();
             }
-            return stringBuilder.toString();
         }
     }
 }
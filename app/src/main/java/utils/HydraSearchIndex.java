@@ -0,0 +1,784 @@
+package com.LDGAMES.utils;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.io.UTFDataFormatException;
+import java.nio.channels.Channels;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Índice de busca dos títulos de uma fonte Hydra, gravado ao lado do JSON em hydra_api_cache.
+ * <p>
+ * Cada título é separado em campos: termos do nome, termos de edição (goty, deluxe...), versão
+ * (v1.2.3, build 123) e tamanho (15.3 GB). Só nome e edição são indexados; versão e tamanho vão
+ * para o registro e não poluem a busca.
+ * <p>
+ * Formato do arquivo (DataOutputStream):
+ * <pre>
+ * cabeçalho: MAGIC, VERSION
+ * registros: [int tamanho][título, fileSize, uploadDate, nº de uris, uris..., edição, versão]
+ * rodapé:    nome da fonte, carimbo do JSON de origem, nº de entradas, offset de cada registro,
+ *            nº de termos do nome de cada entrada,
+ *            dicionário do nome: nº de termos, [termo, nº de entradas, ids em ordem]...
+ *            dicionário da edição: idem
+ * fim:       long com o offset do rodapé
+ * </pre>
+ * A busca carrega só o rodapé, pontua as entradas com BM25 (termos com erro de digitação são
+ * achados pelos trigramas do dicionário) e lê do disco apenas os registros do top-k.
+ */
+public class HydraSearchIndex {
+    private static final String TAG = "HydraSearchIndex";
+    private static final int MAGIC = 0x48494458; // "HIDX"
+    private static final int VERSION = 2;
+
+    // BM25
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final double EDITION_WEIGHT = 0.5; // Campo de edição vale menos que o nome
+    private static final double SUBTITLE_WEIGHT = 0.5; // O que vem depois de ":" (ex: "Wild Hunt") é opcional
+    private static final double MIN_COVERAGE = 0.5; // Fração do peso (idf) da consulta que a entrada precisa cobrir
+    // Expansão de termos
+    private static final double PREFIX_WEIGHT = 0.8;
+    private static final double TYPO_WEIGHT = 0.7; // Multiplicado a cada erro de edição
+    private static final int MIN_FUZZY_LENGTH = 4; // Termos menores (e números) só batem exatamente
+
+    private static final Set<String> EDITION_WORDS = new HashSet<>(Arrays.asList(
+            "goty", "edition", "deluxe", "ultimate", "definitive", "complete", "gold", "premium",
+            "collectors", "collector", "remastered", "remaster", "enhanced", "anniversary", "digital",
+            "standard", "special", "legendary", "repack", "dlc", "dlcs", "bundle", "directors", "cut"));
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "the", "a", "an", "of", "and", "in", "on", "to", "o", "os", "as", "de", "da", "do", "e"));
+    private static final Pattern SIZE_PATTERN = Pattern.compile(
+            "(?<![a-z0-9.])(\\d+(?:[.,]\\d+)?)\\s*(tb|gb|gib|mb|mib)(?![a-z0-9])");
+    private static final Pattern VERSION_PATTERN = Pattern.compile(
+            "(?<![a-z0-9])(?:v|ver\\.?\\s?|version\\s|build\\s?|update\\s?|patch\\s?)#?\\d+(?:[._]\\d+)*[a-z]?(?![a-z0-9])"
+                    + "|(?<![a-z0-9.])\\d+\\.\\d+\\.\\d+(?:\\.\\d+)*(?![a-z0-9])");
+    private static final Pattern GOTY_PATTERN = Pattern.compile("game\\s+of\\s+the\\s+year");
+    private static final Pattern SUBTITLE_SEPARATOR = Pattern.compile("\\s*(?::|\\s[-–—]\\s)\\s*");
+
+    private static final Map<String, HydraSearchIndex> loaded = new ConcurrentHashMap<>(); // Caminho -> índice em memória
+
+    /**
+     * Uma entrada ("download") da fonte, como gravada no índice.
+     */
+    public static class Entry {
+        public final String title;
+        public final String fileSize;
+        public final String uploadDate;
+        public final List<String> uris;
+        public final String edition; // Termos de edição do título, ex: "goty", ou ""
+        public final String version; // Versão extraída do título, ex: "v1.32", ou ""
+
+        public Entry(String title, String fileSize, String uploadDate, List<String> uris) {
+            this(title, fileSize, uploadDate, uris, "", "");
+        }
+
+        public Entry(String title, String fileSize, String uploadDate, List<String> uris, String edition, String version) {
+            this.title = title;
+            this.fileSize = fileSize;
+            this.uploadDate = uploadDate;
+            this.uris = uris;
+            this.edition = edition;
+            this.version = version;
+        }
+    }
+
+    /**
+     * Resultado da busca: entrada, pontuação BM25 e nome da fonte. As pontuações de fontes
+     * diferentes são comparáveis o bastante para mesclar os resultados.
+     */
+    public static class Hit {
+        public final Entry entry;
+        public final double score;
+        public final String sourceName;
+
+        Hit(Entry entry, double score, String sourceName) {
+            this.entry = entry;
+            this.score = score;
+            this.sourceName = sourceName;
+        }
+    }
+
+    /**
+     * Título separado em campos.
+     */
+    static class Fields {
+        final List<String> terms = new ArrayList<>(); // Nome, sem repetição
+        final List<String> edition = new ArrayList<>();
+        String version = "";
+        String size = "";
+    }
+
+    private final File file;
+    // Aberto desde open(): um Writer.finish renomeia o novo índice por cima do caminho, mas os
+    // registros continuam sendo lidos deste arquivo, coerente com os offsets deste rodapé
+    private final RandomAccessFile data;
+    private int readers; // Buscas em andamento
+    private boolean retired; // Fora de loaded: fecha data quando a última busca terminar
+    private boolean closed;
+    private final String sourceName;
+    private final String sourceStamp;
+    private final long[] offsets; // Id da entrada -> offset do registro
+    private final int[] lengths; // Id da entrada -> nº de termos do nome
+    private final double averageLength;
+    private final String[] terms; // Ordenados
+    private final int[][] postings; // Paralelo a terms
+    private final String[] editionTerms;
+    private final int[][] editionPostings;
+    private Map<String, int[]> trigrams; // Trigrama -> índices em terms; montado na primeira busca aproximada
+
+    private HydraSearchIndex(File file, RandomAccessFile data, String sourceName, String sourceStamp, long[] offsets, int[] lengths,
+                             String[] terms, int[][] postings, String[] editionTerms, int[][] editionPostings) {
+        this.file = file;
+        this.data = data;
+        this.sourceName = sourceName;
+        this.sourceStamp = sourceStamp;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.terms = terms;
+        this.postings = postings;
+        this.editionTerms = editionTerms;
+        this.editionPostings = editionPostings;
+        long total = 0;
+        for (int length : lengths) {
+            total += length;
+        }
+        this.averageLength = lengths.length > 0 ? Math.max(1.0, (double) total / lengths.length) : 1.0;
+    }
+
+    public String getSourceName() {
+        return sourceName;
+    }
+
+    public int size() {
+        return offsets.length;
+    }
+
+    /**
+     * Identifica a versão do JSON de origem (tamanho e data de modificação); um índice com
+     * carimbo diferente está desatualizado.
+     */
+    public static String stampOf(File source) {
+        return source.length() + ":" + source.lastModified();
+    }
+
+    /**
+     * Minúsculas sem acentos, só [a-z0-9] e espaços simples entre palavras, em uma passada.
+     */
+    public static String normalize(String input) {
+        if (input == null) return "";
+        String decomposed = Normalizer.normalize(input.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+        StringBuilder out = new StringBuilder(decomposed.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+                if (pendingSpace) {
+                    out.append(' ');
+                    pendingSpace = false;
+                }
+                out.append(c);
+            } else if (c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r') {
+                pendingSpace = out.length() > 0;
+            }
+            // Demais caracteres (acentos decompostos, pontuação) são descartados sem separar palavras
+        }
+        return out.toString();
+    }
+
+    /**
+     * Separa um título em nome, edição, versão e tamanho. Tamanho e versão são reconhecidos no
+     * texto original, antes de a normalização remover os pontos; o restante é normalizado e
+     * cada palavra vai para a edição ou para o nome.
+     */
+    static Fields analyze(String title) {
+        Fields fields = new Fields();
+        if (title == null) return fields;
+        String text = title.toLowerCase(Locale.ROOT).replace('_', ' ');
+
+        Matcher size = SIZE_PATTERN.matcher(text);
+        if (size.find()) {
+            fields.size = size.group(1) + " " + size.group(2).toUpperCase(Locale.ROOT);
+            text = size.replaceAll(" ");
+        }
+        Matcher version = VERSION_PATTERN.matcher(text);
+        StringBuilder versions = new StringBuilder();
+        while (version.find()) {
+            if (versions.length() > 0) versions.append(' ');
+            versions.append(version.group().trim());
+        }
+        if (versions.length() > 0) {
+            fields.version = versions.toString();
+            text = version.replaceAll(" ");
+        }
+        text = GOTY_PATTERN.matcher(text).replaceAll(" goty ");
+
+        String normalized = normalize(text);
+        if (normalized.isEmpty()) return fields;
+        Set<String> terms = new LinkedHashSet<>();
+        Set<String> edition = new LinkedHashSet<>();
+        for (String word : normalized.split(" ")) {
+            (EDITION_WORDS.contains(word) ? edition : terms).add(word);
+        }
+        if (terms.isEmpty()) {
+            terms.addAll(edition); // Título feito só de palavras de edição: elas são o nome
+        }
+        fields.terms.addAll(terms);
+        fields.edition.addAll(edition);
+        return fields;
+    }
+
+    /**
+     * Grava um índice entrada por entrada; {@link #finish} fecha o arquivo e o torna visível.
+     */
+    public static class Writer {
+        private final File target;
+        private final File temp;
+        private final DataOutputStream out;
+        private final List<Long> offsets = new ArrayList<>();
+        private final List<Integer> lengths = new ArrayList<>();
+        private final Map<String, List<Integer>> postings = new HashMap<>();
+        private final Map<String, List<Integer>> editionPostings = new HashMap<>();
+        private final ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+        private final DataOutputStream recordOut = new DataOutputStream(record);
+        private long position;
+
+        public Writer(File target) throws IOException {
+            this.target = target;
+            this.temp = File.createTempFile(target.getName(), ".tmp", target.getParentFile()); // Único: atualização e busca podem gravar ao mesmo tempo
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            position = 8;
+        }
+
+        public void add(Entry entry) throws IOException {
+            Fields fields = analyze(entry.title);
+            String fileSize = entry.fileSize != null ? entry.fileSize : "";
+            if ((fileSize.isEmpty() || fileSize.equals("N/A")) && !fields.size.isEmpty()) {
+                fileSize = fields.size; // Fonte sem fileSize, mas com o tamanho no título
+            }
+            record.reset();
+            try {
+                recordOut.writeUTF(entry.title);
+                recordOut.writeUTF(fileSize);
+                recordOut.writeUTF(entry.uploadDate != null ? entry.uploadDate : "");
+                recordOut.writeInt(entry.uris.size());
+                for (String uri : entry.uris) {
+                    recordOut.writeUTF(uri);
+                }
+                recordOut.writeUTF(join(fields.edition));
+                recordOut.writeUTF(fields.version);
+            } catch (UTFDataFormatException e) {
+                Log.w(TAG, "Entrada ignorada (campo maior que 64 KB): " + entry.title);
+                return;
+            }
+            int id = offsets.size();
+            offsets.add(position);
+            lengths.add(fields.terms.size());
+            out.writeInt(record.size());
+            record.writeTo(out);
+            position += 4 + record.size();
+
+            // analyze() já devolve os termos sem repetição: cada id entra uma vez por termo
+            for (String term : fields.terms) {
+                postings.computeIfAbsent(term, t -> new ArrayList<>()).add(id);
+            }
+            for (String term : fields.edition) {
+                editionPostings.computeIfAbsent(term, t -> new ArrayList<>()).add(id);
+            }
+        }
+
+        /**
+         * @param sourceName nome da fonte (campo "name" do JSON)
+         * @param sourceStamp {@link #stampOf} do JSON de origem
+         */
+        public void finish(String sourceName, String sourceStamp) throws IOException {
+            long footer = position;
+            try {
+                out.writeUTF(sourceName != null ? sourceName : "");
+                out.writeUTF(sourceStamp != null ? sourceStamp : "");
+                out.writeInt(offsets.size());
+                for (long offset : offsets) {
+                    out.writeLong(offset);
+                }
+                for (int length : lengths) {
+                    out.writeShort(Math.min(length, Short.MAX_VALUE));
+                }
+                writeDictionary(out, postings);
+                writeDictionary(out, editionPostings);
+                out.writeLong(footer);
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(target)) {
+                temp.delete();
+                throw new IOException("Não foi possível gravar " + target.getName());
+            }
+            evict(target.getPath());
+            Log.i(TAG, "Índice de " + sourceName + " gravado: " + offsets.size() + " entradas, " + postings.size() + " termos");
+        }
+
+        /**
+         * Descarta o índice incompleto (o anterior, se existir, continua valendo).
+         */
+        public void abort() {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+            }
+            temp.delete();
+        }
+
+        private static void writeDictionary(DataOutputStream out, Map<String, List<Integer>> dictionary) throws IOException {
+            List<String> sorted = new ArrayList<>(dictionary.keySet());
+            Collections.sort(sorted);
+            out.writeInt(sorted.size());
+            for (String term : sorted) {
+                List<Integer> ids = dictionary.get(term);
+                out.writeUTF(term);
+                out.writeInt(ids.size());
+                for (int id : ids) {
+                    out.writeInt(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Índice do arquivo, carregado uma vez e mantido em memória até ser regravado.
+     * @return null se o arquivo não existe, é de outra versão ou está corrompido
+     */
+    public static HydraSearchIndex open(File file) {
+        HydraSearchIndex index = loaded.get(file.getPath());
+        if (index != null) return index;
+        if (!file.exists()) return null;
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            if (raf.length() < 16 || raf.readInt() != MAGIC || raf.readInt() != VERSION) {
+                closeQuietly(raf);
+                return null;
+            }
+            raf.seek(raf.length() - 8);
+            raf.seek(raf.readLong());
+            // Sem fechar: o stream fecharia o canal e, com ele, raf, que fica com o índice
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(raf.getChannel()), 64 * 1024));
+            String sourceName = in.readUTF();
+            String sourceStamp = in.readUTF();
+            long[] offsets = new long[in.readInt()];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = in.readLong();
+            }
+            int[] lengths = new int[offsets.length];
+            for (int i = 0; i < lengths.length; i++) {
+                lengths[i] = in.readShort();
+            }
+            String[] terms = new String[in.readInt()];
+            int[][] postings = readDictionary(in, terms);
+            String[] editionTerms = new String[in.readInt()];
+            int[][] editionPostings = readDictionary(in, editionTerms);
+            index = new HydraSearchIndex(file, raf, sourceName, sourceStamp, offsets, lengths,
+                    terms, postings, editionTerms, editionPostings);
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(raf);
+            Log.w(TAG, "Índice ilegível, será recriado: " + file.getName() + " (" + e.getMessage() + ")");
+            return null;
+        }
+        HydraSearchIndex existing = loaded.putIfAbsent(file.getPath(), index);
+        if (existing != null) {
+            index.retire(); // Outra busca abriu o mesmo arquivo ao mesmo tempo
+            return existing;
+        }
+        return index;
+    }
+
+    private static void closeQuietly(RandomAccessFile raf) {
+        if (raf == null) return;
+        try {
+            raf.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    // Tira o índice do cache; o arquivo aberto só fecha quando as buscas que o usam terminarem
+    private static void evict(String path) {
+        HydraSearchIndex old = loaded.remove(path);
+        if (old != null) {
+            old.retire();
+        }
+    }
+
+    private synchronized boolean acquire() {
+        if (closed) return false;
+        readers++;
+        return true;
+    }
+
+    private synchronized void release() {
+        if (--readers == 0 && retired) {
+            close();
+        }
+    }
+
+    private synchronized void retire() {
+        retired = true;
+        if (readers == 0) {
+            close();
+        }
+    }
+
+    private void close() {
+        closed = true;
+        closeQuietly(data);
+    }
+
+    // Preenche terms e devolve as listas de ids paralelas
+    private static int[][] readDictionary(DataInputStream in, String[] terms) throws IOException {
+        int[][] postings = new int[terms.length][];
+        for (int i = 0; i < terms.length; i++) {
+            terms[i] = in.readUTF();
+            postings[i] = new int[in.readInt()];
+            for (int j = 0; j < postings[i].length; j++) {
+                postings[i][j] = in.readInt();
+            }
+        }
+        return postings;
+    }
+
+    /**
+     * true se o índice foi gerado a partir desta versão do JSON.
+     */
+    public boolean isCurrent(File source) {
+        return stampOf(source).equals(sourceStamp);
+    }
+
+    public static void forget(File file) {
+        evict(file.getPath());
+    }
+
+    /**
+     * As limit entradas mais relevantes para a consulta (texto livre, ex: nome do jogo no IGDB),
+     * da maior para a menor pontuação.
+     * <p>
+     * Cada termo da consulta soma o BM25 do melhor termo do dicionário que o representa: ele
+     * mesmo, um termo que começa com ele ou um termo com 1–2 erros de digitação (candidatos
+     * pelos trigramas, confirmados pela distância de edição), com peso menor para os aproximados.
+     * A ordem das palavras não importa. Subtítulo (depois de ":") e edição pesam menos, e uma
+     * entrada só entra no resultado se cobrir {@link #MIN_COVERAGE} do peso da consulta, o que
+     * descarta as que só compartilham palavras comuns ou números. A seleção usa um heap de
+     * tamanho limit e só os registros escolhidos são lidos do disco.
+     * @throws InterruptedIOException se a thread for interrompida (busca cancelada)
+     */
+    public List<Hit> search(String query, int limit) throws IOException {
+        if (!acquire()) {
+            // Regravado e fechado entre open() e a busca: usa a versão atual
+            HydraSearchIndex current = open(file);
+            return current != null && current != this ? current.search(query, limit) : new ArrayList<>();
+        }
+        try {
+            return rank(query, limit);
+        } finally {
+            release();
+        }
+    }
+
+    private List<Hit> rank(String query, int limit) throws IOException {
+        List<Hit> results = new ArrayList<>();
+        if (query == null || limit <= 0 || offsets.length == 0) return results;
+
+        // Nome principal e subtítulo ("The Witcher 3: Wild Hunt")
+        String main = query;
+        String subtitle = "";
+        Matcher separator = SUBTITLE_SEPARATOR.matcher(query);
+        if (separator.find() && separator.start() > 0) {
+            main = query.substring(0, separator.start());
+            subtitle = query.substring(separator.end());
+        }
+        Fields mainFields = analyze(main);
+        Fields subtitleFields = analyze(subtitle);
+
+        List<String> queryTerms = new ArrayList<>();
+        List<Double> queryWeights = new ArrayList<>();
+        addQueryTerms(mainFields.terms, 1.0, queryTerms, queryWeights);
+        addQueryTerms(subtitleFields.terms, SUBTITLE_WEIGHT, queryTerms, queryWeights);
+        Set<String> queryEdition = new LinkedHashSet<>(mainFields.edition);
+        queryEdition.addAll(subtitleFields.edition);
+
+        double[] scores = new double[offsets.length];
+        double[] covered = new double[offsets.length];
+        double[] best = new double[offsets.length]; // Melhor contribuição do termo atual em cada entrada
+        int[] touched = new int[offsets.length];
+        boolean[] anchored = new boolean[offsets.length]; // Bateu algum termo que não é número
+        boolean anyWordMatched = false;
+        double queryMass = 0;
+
+        for (int q = 0; q < queryTerms.size(); q++) {
+            checkCancelled();
+            Map<Integer, Double> expansions = expand(queryTerms.get(q));
+            if (expansions.isEmpty()) continue; // Termo ausente da fonte não entra na cobertura
+            double weight = queryWeights.get(q);
+            boolean word = !hasDigit(queryTerms.get(q));
+            anyWordMatched |= word;
+            double termIdf = 0;
+            int touchedCount = 0;
+            for (Map.Entry<Integer, Double> expansion : expansions.entrySet()) {
+                int[] ids = postings[expansion.getKey()];
+                double idf = idf(ids.length);
+                termIdf = Math.max(termIdf, idf * expansion.getValue());
+                for (int id : ids) {
+                    double contribution = expansion.getValue() * idf * bm25(lengths[id]);
+                    if (best[id] == 0) touched[touchedCount++] = id;
+                    if (contribution > best[id]) best[id] = contribution;
+                }
+            }
+            queryMass += weight * termIdf;
+            // Cada termo da consulta conta uma vez por entrada, pela sua melhor expansão
+            for (int i = 0; i < touchedCount; i++) {
+                int id = touched[i];
+                scores[id] += weight * best[id];
+                covered[id] += weight * termIdf;
+                anchored[id] |= word;
+                best[id] = 0;
+            }
+        }
+        for (String term : queryEdition) {
+            int i = Arrays.binarySearch(editionTerms, term);
+            if (i < 0) continue;
+            double idf = idf(editionPostings[i].length);
+            queryMass += EDITION_WEIGHT * idf;
+            for (int id : editionPostings[i]) {
+                scores[id] += EDITION_WEIGHT * idf * bm25(1);
+                covered[id] += EDITION_WEIGHT * idf;
+            }
+        }
+        if (queryMass <= 0) return results;
+
+        // Top-k: heap mínimo com os melhores até agora; no empate ganha o título mais curto
+        PriorityQueue<Integer> heap = new PriorityQueue<>(limit + 1, (a, b) -> {
+            int byScore = Double.compare(scores[a], scores[b]);
+            return byScore != 0 ? byScore : Integer.compare(lengths[b], lengths[a]);
+        });
+        double minCovered = queryMass * MIN_COVERAGE;
+        for (int id = 0; id < scores.length; id++) {
+            if ((id & 0x3FFF) == 0) checkCancelled();
+            // "3" sozinho não basta: com palavras na consulta, alguma delas precisa bater
+            if (scores[id] <= 0 || covered[id] < minCovered || (anyWordMatched && !anchored[id])) continue;
+            heap.offer(id);
+            if (heap.size() > limit) heap.poll();
+        }
+
+        int[] ranked = new int[heap.size()];
+        for (int i = ranked.length - 1; i >= 0; i--) {
+            ranked[i] = heap.poll();
+        }
+        for (int id : ranked) {
+            results.add(new Hit(readEntry(id), scores[id], sourceName));
+        }
+        return results;
+    }
+
+    /**
+     * A busca roda em um shard do executor de buscas; interromper a thread (busca cancelada)
+     * encerra o trabalho na próxima etapa.
+     */
+    private static void checkCancelled() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Busca cancelada");
+        }
+    }
+
+    private static void addQueryTerms(List<String> terms, double weight, List<String> queryTerms, List<Double> queryWeights) {
+        boolean onlyStopWords = true;
+        for (String term : terms) {
+            if (!STOP_WORDS.contains(term)) {
+                onlyStopWords = false;
+                break;
+            }
+        }
+        for (String term : terms) {
+            // Artigos e preposições só contam se a consulta não tiver outra coisa (ex: jogo "The")
+            if ((onlyStopWords || !STOP_WORDS.contains(term)) && !queryTerms.contains(term)) {
+                queryTerms.add(term);
+                queryWeights.add(weight);
+            }
+        }
+    }
+
+    private double idf(int documentFrequency) {
+        return Math.log(1 + (offsets.length - documentFrequency + 0.5) / (documentFrequency + 0.5));
+    }
+
+    // Fator de frequência/tamanho do BM25 com tf = 1 (cada termo conta uma vez por título)
+    private double bm25(int length) {
+        return (K1 + 1) / (1 + K1 * (1 - B + B * length / averageLength));
+    }
+
+    /**
+     * Termos do dicionário que representam o termo da consulta, com o peso de cada um:
+     * exato 1.0, prefixo e erros de digitação menos. Números e termos curtos só batem
+     * exatamente ("3" não deve achar "4").
+     */
+    private Map<Integer, Double> expand(String term) {
+        Map<Integer, Double> expansions = new HashMap<>();
+        int exact = Arrays.binarySearch(terms, term);
+        if (exact >= 0) expansions.put(exact, 1.0);
+        if (term.length() < MIN_FUZZY_LENGTH || hasDigit(term)) return expansions;
+
+        // Prefixo: faixa contígua no dicionário ordenado ("spider" -> "spiderman")
+        int i = exact >= 0 ? exact + 1 : -exact - 1;
+        for (; i < terms.length && terms[i].startsWith(term); i++) {
+            expansions.put(i, PREFIX_WEIGHT);
+        }
+
+        // Erros de digitação: cada erro destrói no máximo 3 trigramas, então um termo a distância
+        // d compartilha pelo menos (trigramas - 3d); só esses candidatos são comparados
+        int maxDistance = term.length() >= 8 ? 2 : 1;
+        List<String> grams = trigramsOf(term);
+        int minShared = Math.max(1, grams.size() - 3 * maxDistance);
+        Map<String, int[]> trigramIndex = getTrigrams();
+        Map<Integer, Integer> shared = new HashMap<>();
+        for (String gram : new HashSet<>(grams)) {
+            int[] termIds = trigramIndex.get(gram);
+            if (termIds == null) continue;
+            for (int termId : termIds) {
+                Integer count = shared.get(termId);
+                shared.put(termId, count == null ? 1 : count + 1);
+            }
+        }
+        for (Map.Entry<Integer, Integer> candidate : shared.entrySet()) {
+            int termId = candidate.getKey();
+            String other = terms[termId];
+            if (candidate.getValue() < minShared || expansions.containsKey(termId)
+                    || Math.abs(other.length() - term.length()) > maxDistance) continue;
+            int distance = editDistance(term, other, maxDistance);
+            if (distance <= maxDistance) {
+                expansions.put(termId, Math.pow(TYPO_WEIGHT, distance));
+            }
+        }
+        return expansions;
+    }
+
+    /**
+     * Trigramas do dicionário do nome, montados em memória na primeira busca aproximada.
+     */
+    private synchronized Map<String, int[]> getTrigrams() {
+        if (trigrams != null) return trigrams;
+        Map<String, List<Integer>> building = new HashMap<>();
+        for (int i = 0; i < terms.length; i++) {
+            if (terms[i].length() < MIN_FUZZY_LENGTH - 1) continue; // Não alcançam nenhum termo aproximável
+            for (String gram : new HashSet<>(trigramsOf(terms[i]))) {
+                building.computeIfAbsent(gram, g -> new ArrayList<>()).add(i);
+            }
+        }
+        Map<String, int[]> index = new HashMap<>(building.size() * 2);
+        for (Map.Entry<String, List<Integer>> gram : building.entrySet()) {
+            List<Integer> ids = gram.getValue();
+            int[] array = new int[ids.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = ids.get(i);
+            }
+            index.put(gram.getKey(), array);
+        }
+        trigrams = index;
+        return trigrams;
+    }
+
+    // Trigramas com as bordas marcadas: "witcher" -> "$wi", "wit", ..., "er$"
+    private static List<String> trigramsOf(String term) {
+        String padded = "$" + term + "$";
+        List<String> grams = new ArrayList<>(padded.length() - 2);
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + 3));
+        }
+        return grams;
+    }
+
+    /**
+     * Distância de Levenshtein, abandonando o cálculo quando passa de max (devolve max + 1).
+     */
+    static int editDistance(String a, String b, int max) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > max) return max + 1;
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(previous[b.length()], max + 1);
+    }
+
+    private static boolean hasDigit(String term) {
+        for (int i = 0; i < term.length(); i++) {
+            char c = term.charAt(i);
+            if (c >= '0' && c <= '9') return true;
+        }
+        return false;
+    }
+
+    private static String join(List<String> words) {
+        StringBuilder sb = new StringBuilder();
+        for (String word : words) {
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(word);
+        }
+        return sb.toString();
+    }
+
+    private Entry readEntry(int id) throws IOException {
+        byte[] bytes;
+        synchronized (data) { // Buscas simultâneas na mesma fonte dividem o cursor de data
+            data.seek(offsets[id]);
+            bytes = new byte[data.readInt()];
+            data.readFully(bytes);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        String title = in.readUTF();
+        String fileSize = in.readUTF();
+        String uploadDate = in.readUTF();
+        int uriCount = in.readInt();
+        List<String> uris = new ArrayList<>(uriCount);
+        for (int u = 0; u < uriCount; u++) {
+            uris.add(in.readUTF());
+        }
+        String edition = in.readUTF();
+        String version = in.readUTF();
+        return new Entry(title, fileSize, uploadDate, uris, edition, version);
+    }
+}
@@ -0,0 +1,178 @@
+package com.LDGAMES.utils;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Response;
+
+/**
+ * Escolha de espelho entre as sourceUrls de um download.
+ * Sonda todas em paralelo com uma requisição Range pequena (tempo até o primeiro byte e
+ * vazão), ordena pela vazão e acompanha a vazão real durante o download para sugerir a troca
+ * quando o espelho atual fica, de forma sustentada, bem abaixo do que os outros ofereceram.
+ */
+public class MirrorSelector {
+    private static final String TAG = "MirrorSelector";
+    private static final int PROBE_BYTES = 256 * 1024;
+    private static final long PROBE_TIMEOUT = 8000; // ms para todas as sondagens
+    private static final double SWITCH_RATIO = 0.5; // Trocar se abaixo de 50% da vazão do melhor outro espelho
+    private static final long SWITCH_SUSTAIN = 15000; // ms abaixo do limiar antes de trocar
+
+    /**
+     * Executa uma requisição com Range (DownloadTask.openRange, com cookies e headers).
+     */
+    public interface ConnectionOpener {
+        Response open(String url, long from, long to) throws IOException;
+    }
+
+    private static class Mirror {
+        final int index;
+        final String url;
+        volatile long ttfbMillis = -1;
+        volatile long bytesPerSecond = 0; // Sondado e depois substituído pela vazão observada
+        volatile boolean viable = false;
+        volatile boolean excluded = false; // Host em espera (HostHealthTracker): não sondar nem sugerir
+
+        Mirror(int index, String url) {
+            this.index = index;
+            this.url = url;
+        }
+    }
+
+    private final List<Mirror> mirrors = new ArrayList<>();
+    private long slowSince = 0;
+
+    public MirrorSelector(List<String> urls) {
+        if (urls != null) {
+            for (int i = 0; i < urls.size(); i++) {
+                mirrors.add(new Mirror(i, urls.get(i)));
+            }
+        }
+    }
+
+    public boolean hasAlternatives() {
+        return mirrors.size() > 1;
+    }
+
+    /**
+     * Tira o espelho da sondagem e das sugestões de troca (ex: host aguardando Retry-After).
+     */
+    public void exclude(int index) {
+        if (index >= 0 && index < mirrors.size()) {
+            mirrors.get(index).excluded = true;
+        }
+    }
+
+    /**
+     * Sonda todos os espelhos em paralelo. Espelhos que falham ou não respondem 206 ficam inviáveis.
+     */
+    public void probeAll(ConnectionOpener opener, ExecutorService executor) {
+        List<Future<?>> futures = new ArrayList<>(mirrors.size());
+        for (Mirror mirror : mirrors) {
+            if (mirror.excluded) continue;
+            futures.add(executor.submit(() -> probe(mirror, opener)));
+        }
+        long deadline = System.currentTimeMillis() + PROBE_TIMEOUT;
+        for (Future<?> future : futures) {
+            try {
+                future.get(Math.max(1, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                future.cancel(true); // Espelho lento demais para a sondagem
+            }
+        }
+        for (Mirror mirror : mirrors) {
+            Log.i(TAG, String.format("Espelho [%d] %s: ttfb=%d ms, %d KB/s%s", mirror.index, mirror.url,
+                    mirror.ttfbMillis, mirror.bytesPerSecond / 1024, mirror.viable ? "" : " (inviável)"));
+        }
+    }
+
+    private void probe(Mirror mirror, ConnectionOpener opener) {
+        Response response = null;
+        try {
+            long start = System.nanoTime();
+            response = opener.open(mirror.url, 0, PROBE_BYTES - 1);
+            if (response.code() != HttpURLConnection.HTTP_PARTIAL) return;
+            InputStream in = response.body().byteStream();
+            byte[] buffer = new byte[16 * 1024];
+            int read = in.read(buffer);
+            long firstByte = System.nanoTime();
+            mirror.ttfbMillis = (firstByte - start) / 1000000;
+            long total = Math.max(0, read);
+            while (read != -1 && total < PROBE_BYTES && !Thread.currentThread().isInterrupted()) {
+                read = in.read(buffer);
+                if (read > 0) total += read;
+            }
+            in.close();
+            long elapsed = Math.max(1, System.nanoTime() - firstByte);
+            mirror.bytesPerSecond = (long) (total * 1e9 / elapsed);
+            mirror.viable = true;
+        } catch (IOException e) {
+            Log.w(TAG, "Sondagem falhou para " + mirror.url + ": " + e.getMessage());
+        } finally {
+            DownloadHttpClient.release(response);
+        }
+    }
+
+    /**
+     * Índice do espelho viável com maior vazão (desempate pelo menor ttfb), ou -1 se nenhum respondeu.
+     */
+    public int bestIndex() {
+        return bestIndexExcluding(-1);
+    }
+
+    private int bestIndexExcluding(int excluded) {
+        Mirror best = null;
+        for (Mirror mirror : mirrors) {
+            if (!mirror.viable || mirror.excluded || mirror.index == excluded) continue;
+            if (best == null || mirror.bytesPerSecond > best.bytesPerSecond
+                    || (mirror.bytesPerSecond == best.bytesPerSecond && mirror.ttfbMillis < best.ttfbMillis)) {
+                best = mirror;
+            }
+        }
+        return best != null ? best.index : -1;
+    }
+
+    /**
+     * Informa a vazão observada no espelho atual (uma vez por segundo).
+     * @return índice do espelho para o qual trocar, ou -1 para continuar no atual
+     */
+    public int onThroughput(int currentIndex, long observedBytesPerSecond) {
+        if (currentIndex < 0 || currentIndex >= mirrors.size()) return -1;
+        int alternative = bestIndexExcluding(currentIndex);
+        if (alternative < 0) return -1;
+
+        long now = System.currentTimeMillis();
+        long expected = mirrors.get(alternative).bytesPerSecond;
+        if (observedBytesPerSecond >= expected * SWITCH_RATIO) {
+            slowSince = 0;
+            return -1;
+        }
+        if (slowSince == 0) {
+            slowSince = now;
+            return -1;
+        }
+        if (now - slowSince < SWITCH_SUSTAIN) return -1;
+
+        // Guardar a vazão real para não voltar a este espelho por causa da sondagem otimista
+        mirrors.get(currentIndex).bytesPerSecond = observedBytesPerSecond;
+        slowSince = 0;
+        Log.i(TAG, String.format("Espelho [%d] sustentou %d KB/s; espelho [%d] ofereceu %d KB/s. Trocando.",
+                currentIndex, observedBytesPerSecond / 1024, alternative, expected / 1024));
+        return alternative;
+    }
+
+    /**
+     * Reinicia a contagem de lentidão (após troca de espelho, pausa ou reconexão).
+     */
+    public void resetObservation() {
+        slowSince = 0;
+    }
+}
@@ -0,0 +1,195 @@
+package com.LDGAMES.utils;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileDescriptor;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Escritor de arquivo com escrita em posições explícitas (pwrite) via FileChannel.
+ * O documento é aberto uma única vez ("rw") e pode receber escritas de várias threads
+ * em offsets diferentes: segmentos paralelos, blocos fora de ordem e retomadas.
+ */
+public class PositionalFileWriter implements Closeable {
+    private static final String TAG = "PositionalFileWriter";
+
+    private final ParcelFileDescriptor descriptor; // null quando aberto a partir de File
+    private final Closeable owner; // Stream/RandomAccessFile dono do canal
+    private final FileChannel channel;
+    private final FileDescriptor fd;
+    private FileInputStream readStream; // Canal de leitura do documento SAF, aberto sob demanda
+    private FileChannel readChannel;
+
+    private PositionalFileWriter(ParcelFileDescriptor descriptor, Closeable owner, FileChannel channel, FileDescriptor fd) {
+        this.descriptor = descriptor;
+        this.owner = owner;
+        this.channel = channel;
+        this.fd = fd;
+    }
+
+    /**
+     * Abre um documento SAF (content://) para escrita posicional sem truncar o conteúdo existente.
+     */
+    public static PositionalFileWriter open(Context context, Uri uri) throws IOException {
+        ParcelFileDescriptor pfd = context.getContentResolver().openFileDescriptor(uri, "rw");
+        if (pfd == null) {
+            throw new FileNotFoundException("Não foi possível abrir descritor para " + uri);
+        }
+        FileOutputStream stream = new FileOutputStream(pfd.getFileDescriptor());
+        return new PositionalFileWriter(pfd, stream, stream.getChannel(), pfd.getFileDescriptor());
+    }
+
+    /**
+     * Abre um arquivo comum (fallback sem SAF) para escrita posicional.
+     */
+    public static PositionalFileWriter open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        return new PositionalFileWriter(null, raf, raf.getChannel(), raf.getFD());
+    }
+
+    /**
+     * Escreve todo o trecho do buffer a partir de position. Seguro para chamadas concorrentes
+     * em posições diferentes.
+     */
+    public void write(long position, byte[] buffer, int offset, int length) throws IOException {
+        write(position, ByteBuffer.wrap(buffer, offset, length));
+    }
+
+    public void write(long position, ByteBuffer source) throws IOException {
+        long current = position;
+        while (source.hasRemaining()) {
+            current += channel.write(source, current);
+        }
+    }
+
+    /**
+     * Lê a partir de position (ex: hash do que já foi gravado). O canal de um FileOutputStream
+     * não lê, então para documentos SAF um canal de leitura é aberto sobre o mesmo descritor "rw".
+     * @return bytes lidos, ou -1 no fim do arquivo
+     */
+    public int read(long position, ByteBuffer destination) throws IOException {
+        return getReadChannel().read(destination, position);
+    }
+
+    private synchronized FileChannel getReadChannel() {
+        if (readChannel == null) {
+            if (descriptor != null) {
+                readStream = new FileInputStream(descriptor.getFileDescriptor());
+                readChannel = readStream.getChannel();
+            } else {
+                readChannel = channel; // RandomAccessFile "rw" já lê
+            }
+        }
+        return readChannel;
+    }
+
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+    public void truncate(long size) throws IOException {
+        channel.truncate(size);
+    }
+
+    /**
+     * Reserva no volume os blocos do arquivo até size (posix_fallocate), deixando o tamanho
+     * lógico em size. Falta de espaço vira IOException na hora, em vez de ENOSPC no meio do
+     * download. Sistemas de arquivos sem fallocate recebem só o tamanho (arquivo esparso).
+     * @return true se os blocos foram realmente alocados
+     */
+    public boolean preallocate(long size) throws IOException {
+        if (size <= 0) return false;
+        try {
+            Os.posix_fallocate(fd, 0, size);
+            return true;
+        } catch (ErrnoException e) {
+            if (e.errno == OsConstants.ENOSPC) {
+                throw new IOException("Espaço insuficiente para pré-alocar " + size + " bytes", e);
+            }
+            Log.d(TAG, "fallocate indisponível (" + e.getMessage() + "), definindo apenas o tamanho");
+        }
+        try {
+            if (channel.size() < size) {
+                Os.ftruncate(fd, size);
+            }
+        } catch (ErrnoException e) {
+            throw new IOException("Falha ao definir tamanho do arquivo: " + e.getMessage(), e);
+        }
+        return false;
+    }
+
+    /**
+     * Garante que os dados escritos chegaram ao armazenamento.
+     */
+    public void force() throws IOException {
+        channel.force(false);
+    }
+
+    public FileChannel getChannel() {
+        return channel;
+    }
+
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    /**
+     * Adaptador sequencial para quem espera um OutputStream (ex: FileUtils.createDownloadFile).
+     * Fechar o stream fecha também este escritor.
+     */
+    public OutputStream asOutputStream(long startPosition) {
+        return new OutputStream() {
+            private long position = startPosition;
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                PositionalFileWriter.this.write(position, b, off, len);
+                position += len;
+            }
+
+            @Override
+            public void close() throws IOException {
+                PositionalFileWriter.this.close();
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (readStream != null) {
+                readStream.close();
+            }
+            channel.close();
+            owner.close();
+        } finally {
+            if (descriptor != null) {
+                try {
+                    descriptor.close();
+                } catch (IOException e) {
+                    Log.w(TAG, "Erro ao fechar ParcelFileDescriptor: " + e.getMessage());
+                }
+            }
+        }
+    }
+}
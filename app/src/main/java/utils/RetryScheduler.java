@@ -0,0 +1,87 @@
+package com.LDGAMES.utils;
+
+import android.util.Log;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Agenda novas tentativas de downloads que esgotaram os espelhos, com backoff exponencial e
+ * jitter. A tarefa que falhou termina e libera o worker; quando o prazo vence, a ação agendada
+ * (iniciar uma nova tarefa) roda na única thread deste agendador.
+ */
+public class RetryScheduler {
+    private static final String TAG = "RetryScheduler";
+    private static final long BASE_DELAY = 2000; // ms na primeira tentativa
+    private static final long MAX_DELAY = 5 * 60 * 1000; // ms
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            runnable -> new Thread(runnable, "download-retry"));
+    private final Map<String, ScheduledFuture<?>> pending = new ConcurrentHashMap<>();
+    private final Map<String, Integer> attempts = new ConcurrentHashMap<>();
+    private final Random random = new Random();
+
+    /**
+     * Conta mais uma rodada de falhas para a chave.
+     * @return número da rodada (1 na primeira falha)
+     */
+    public int nextAttempt(String key) {
+        return attempts.merge(key, 1, Integer::sum);
+    }
+
+    /**
+     * Esquece as rodadas da chave (download concluído, cancelado ou pausado pelo usuário).
+     */
+    public void reset(String key) {
+        attempts.remove(key);
+        cancel(key);
+    }
+
+    /**
+     * Backoff "equal jitter": metade fixa e metade aleatória de min(MAX, BASE * 2^(tentativa-1)),
+     * para downloads que falharam juntos não voltarem todos no mesmo instante.
+     */
+    public long backoffDelay(int attempt) {
+        long exponential = Math.min(MAX_DELAY, BASE_DELAY << Math.min(Math.max(0, attempt - 1), 16));
+        long half = exponential / 2;
+        return half + (long) (random.nextDouble() * half);
+    }
+
+    public void schedule(String key, long delayMillis, Runnable action) {
+        cancel(key);
+        ScheduledFuture<?> future = scheduler.schedule(() -> {
+            pending.remove(key);
+            try {
+                action.run();
+            } catch (Exception e) {
+                Log.e(TAG, "Erro ao executar nova tentativa de " + key + ": " + e.getMessage(), e);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+        pending.put(key, future);
+    }
+
+    public void cancel(String key) {
+        ScheduledFuture<?> future = pending.remove(key);
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    public boolean isPending(String key) {
+        return pending.containsKey(key);
+    }
+
+    public boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+        pending.clear();
+    }
+}
@@ -0,0 +1,119 @@
+package com.LDGAMES.utils;
+
+import com.LDGAMES.models.DownloadSegment;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.Call;
+import okhttp3.Response;
+
+/**
+ * Transferência de um segmento: requisições Range com novas tentativas e o laço de cópia que
+ * grava cada trecho na posição exata do arquivo, alimentando o hash incremental. Separado de
+ * DownloadService para poder ser exercitado fora do Android (testes contra um servidor HTTP local).
+ */
+public final class SegmentTransfer {
+
+    /**
+     * Notificado a cada leitura da rede, antes da gravação (ex: limite de banda, métricas).
+     */
+    public interface ReadListener {
+        void onRead(int bytes) throws IOException;
+    }
+
+    /**
+     * Cria a chamada da faixa [from, to] com os cookies e headers do download.
+     */
+    public interface RangeCallFactory {
+        Call newCall(long from, long to) throws IOException;
+    }
+
+    /**
+     * Notificado a cada tentativa que falhou, antes de decidir se tenta de novo.
+     */
+    public interface FailureListener {
+        void onFailure(int attempts, IOException e);
+    }
+
+    private SegmentTransfer() {
+    }
+
+    /**
+     * Baixa o segmento até completá-lo ou stopped ser marcado: Range da posição atual até o fim
+     * da faixa, nova conexão depois de uma queda ou de uma resposta diferente de 206. Uma tentativa
+     * que avançou o segmento zera o contador de falhas. Enquanto executa, a chamada fica em
+     * activeCalls, para quem marcar stopped poder cancelá-la.
+     * @throws IOException a última falha, depois de maxAttempts tentativas seguidas sem progresso
+     */
+    public static void download(RangeCallFactory calls, Collection<Call> activeCalls, PositionalFileWriter writer,
+                                DownloadSegment segment, StreamingHasher hasher, BufferPool.AdaptiveBuffer chunk,
+                                AtomicBoolean stopped, int maxAttempts, ReadListener readListener,
+                                FailureListener failureListener) throws IOException {
+        int attempts = 0;
+        while (!segment.isComplete() && !stopped.get()) {
+            Call call = null;
+            Response response = null;
+            long positionBefore = segment.getPosition();
+            try {
+                call = calls.newCall(segment.getPosition(), segment.getEnd());
+                activeCalls.add(call);
+                if (stopped.get()) break; // Quem parou já percorreu activeCalls
+                response = call.execute();
+                if (response.code() != HttpURLConnection.HTTP_PARTIAL) {
+                    throw new IOException("Servidor respondeu " + response.code() + " ao segmento " + segment.getIndex());
+                }
+                InputStream in = response.body().byteStream();
+                copy(in, writer, segment, hasher, chunk, stopped, readListener);
+                in.close();
+                if (!segment.isComplete() && !stopped.get()) {
+                    throw new IOException("Conexão encerrada antes do fim do segmento " + segment.getIndex());
+                }
+            } catch (IOException e) {
+                if (stopped.get()) break;
+                if (segment.getPosition() > positionBefore) attempts = 0; // Progresso reinicia o contador de falhas
+                attempts++;
+                if (failureListener != null) {
+                    failureListener.onFailure(attempts, e);
+                }
+                if (attempts >= maxAttempts) throw e;
+            } finally {
+                if (call != null) {
+                    activeCalls.remove(call);
+                }
+                DownloadHttpClient.release(response);
+            }
+        }
+    }
+
+    /**
+     * Copia in para a faixa do segmento até completá-la, o stream acabar ou stopped ser marcado.
+     * A gravação é sincronizada com DownloadSegment.split: o fim pode ser reduzido no meio da cópia.
+     * @return bytes gravados nesta chamada
+     */
+    public static long copy(InputStream in, PositionalFileWriter writer, DownloadSegment segment,
+                            StreamingHasher hasher, BufferPool.AdaptiveBuffer chunk,
+                            AtomicBoolean stopped, ReadListener listener) throws IOException {
+        long copied = 0;
+        int bytesRead;
+        byte[] buffer;
+        while (!segment.isComplete() && !stopped.get() && (bytesRead = in.read(buffer = chunk.array())) != -1) {
+            if (listener != null) {
+                listener.onRead(bytesRead);
+            }
+            synchronized (segment) {
+                int toWrite = (int) Math.min(bytesRead, segment.getRemainingBytes());
+                if (toWrite <= 0) break;
+                writer.write(segment.getPosition(), buffer, 0, toWrite);
+                hasher.update(segment.getPosition(), buffer, 0, toWrite); // Só o segmento no cursor do hash
+                segment.advance(toWrite);
+                copied += toWrite;
+            }
+            chunk.onRead(bytesRead);
+        }
+        return copied;
+    }
+}
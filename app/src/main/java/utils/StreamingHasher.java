@@ -0,0 +1,215 @@
+package com.LDGAMES.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * SHA-256 e MD5 calculados enquanto o download grava o arquivo, sem reler tudo no final.
+ * Os digests só aceitam bytes em ordem: uma escrita na posição exata do cursor é consumida na
+ * hora. O que já está no arquivo à frente do cursor (segmentos fora de ordem, trecho baixado
+ * por uma tarefa anterior) marca a fronteira ({@link #markWritten}) e é lido de volta por
+ * {@link #catchUpToFrontier}, normalmente em segundo plano enquanto o download continua; escritas
+ * contíguas à fronteira a estendem, e quando o cursor a alcança update() volta a consumir direto.
+ * O estado dos digests não é exportável (MessageDigest), por isso uma nova tarefa relê o prefixo.
+ * No mesmo passo é mantido um CRC32 por bloco de {@link #BLOCK_SIZE}, usado para validar
+ * retomadas sem reler o arquivo inteiro (ver DownloadResumeHelper.verifyBlocks).
+ */
+public class StreamingHasher {
+    public static final long BLOCK_SIZE = 4 * 1024 * 1024;
+    private static final int CATCH_UP_BUFFER = 256 * 1024;
+
+    private final MessageDigest sha256;
+    private final MessageDigest md5;
+    private long hashedBytes = 0; // Cursor: bytes [0, hashedBytes) já entraram nos digests
+    private long frontier = 0; // [hashedBytes, frontier) já está no arquivo, esperando releitura
+    private final CRC32 blockCrc = new CRC32(); // Bloco em andamento no cursor
+    private final List<long[]> completedBlocks = new ArrayList<>(); // {índice, crc} ainda não persistidos
+
+    public StreamingHasher() {
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+            md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Algoritmo de hash indisponível", e); // Garantidos pela plataforma
+        }
+    }
+
+    /**
+     * Consome o trecho se ele começa exatamente no cursor. Gravado logo depois da fronteira, só a
+     * estende: será relido por catchUpToFrontier.
+     * @return true se os bytes entraram nos digests
+     */
+    public synchronized boolean update(long position, byte[] buffer, int offset, int length) {
+        if (length <= 0) return false;
+        if (position != hashedBytes) {
+            if (position == frontier) frontier += length;
+            return false;
+        }
+        consume(buffer, offset, length);
+        return true;
+    }
+
+    /**
+     * Informa que [0, end) já está gravado no arquivo.
+     */
+    public synchronized void markWritten(long end) {
+        frontier = Math.max(frontier, end);
+    }
+
+    /**
+     * true se há trecho gravado que ainda precisa ser relido para os digests.
+     */
+    public synchronized boolean needsCatchUp() {
+        return hashedBytes < frontier;
+    }
+
+    private void consume(byte[] buffer, int offset, int length) {
+        sha256.update(buffer, offset, length);
+        md5.update(buffer, offset, length);
+        while (length > 0) {
+            int inBlock = (int) Math.min(length, BLOCK_SIZE - hashedBytes % BLOCK_SIZE);
+            blockCrc.update(buffer, offset, inBlock);
+            hashedBytes += inBlock;
+            offset += inBlock;
+            length -= inBlock;
+            if (hashedBytes % BLOCK_SIZE == 0) {
+                completedBlocks.add(new long[]{hashedBytes / BLOCK_SIZE - 1, blockCrc.getValue()});
+                blockCrc.reset();
+            }
+        }
+        frontier = Math.max(frontier, hashedBytes);
+    }
+
+    /**
+     * Lê do arquivo e consome [cursor, fronteira) em trechos de {@link #CATCH_UP_BUFFER}. A leitura
+     * é feita fora do lock, então update() das conexões não espera a releitura; stop é conferido
+     * entre os trechos (sem interromper a thread, que fecharia o FileChannel compartilhado).
+     * @return true se o cursor alcançou a fronteira, false se parou antes
+     */
+    public boolean catchUpToFrontier(PositionalFileWriter file, AtomicBoolean stop) throws IOException {
+        byte[] buffer = BufferPool.getInstance().acquire(CATCH_UP_BUFFER);
+        try {
+            while (stop == null || !stop.get()) {
+                long from;
+                long end;
+                synchronized (this) {
+                    if (hashedBytes >= frontier) return true;
+                    from = hashedBytes;
+                    end = frontier;
+                }
+                int length = (int) Math.min(buffer.length, end - from);
+                int read = file.read(from, ByteBuffer.wrap(buffer, 0, length));
+                if (read <= 0) {
+                    throw new IOException("Arquivo terminou em " + from + " ao calcular hash (esperado " + end + ")");
+                }
+                synchronized (this) {
+                    // O cursor pode ter andado (update no segmento do cursor) ou voltado (reset) nesse meio tempo
+                    long skip = hashedBytes - from;
+                    if (skip >= 0 && skip < read) {
+                        consume(buffer, (int) skip, (int) (read - skip));
+                    }
+                }
+            }
+            return false;
+        } finally {
+            BufferPool.getInstance().release(buffer);
+        }
+    }
+
+    /**
+     * Relê e consome tudo até upTo na thread atual (ex: fim do download).
+     */
+    public void catchUp(PositionalFileWriter file, long upTo) throws IOException {
+        markWritten(upTo);
+        catchUpToFrontier(file, null);
+    }
+
+    /**
+     * Descarta o estado (o arquivo foi truncado antes do cursor, ex: servidor reiniciou o download).
+     */
+    public synchronized void reset() {
+        sha256.reset();
+        md5.reset();
+        blockCrc.reset();
+        completedBlocks.clear();
+        hashedBytes = 0;
+        frontier = 0;
+    }
+
+    /**
+     * Blocos completados desde a última chamada, como pares {índice, CRC32}, para persistir.
+     */
+    public synchronized List<long[]> drainCompletedBlocks() {
+        if (completedBlocks.isEmpty()) return Collections.emptyList();
+        List<long[]> drained = new ArrayList<>(completedBlocks);
+        completedBlocks.clear();
+        return drained;
+    }
+
+    public synchronized long getHashedBytes() {
+        return hashedBytes;
+    }
+
+    /**
+     * Fim do trecho conhecido como gravado (>= getHashedBytes()).
+     */
+    public synchronized long getWrittenEnd() {
+        return frontier;
+    }
+
+    /**
+     * Digest SHA-256 em hex do que foi consumido. Usa uma cópia: o hasher continua utilizável.
+     */
+    public synchronized String sha256Hex() {
+        return hex(cloneOf(sha256).digest());
+    }
+
+    public synchronized String md5Hex() {
+        return hex(cloneOf(md5).digest());
+    }
+
+    /**
+     * Compara um hash informado pela fonte com os digests armazenados.
+     * O algoritmo é deduzido pelo tamanho (64 hex = SHA-256, 32 hex = MD5); prefixos como
+     * "sha256:" e espaços são ignorados.
+     * @return true/false, ou null se não há digest armazenado do tipo informado
+     */
+    public static Boolean matches(String expected, String sha256Hex, String md5Hex) {
+        if (expected == null) return null;
+        String normalized = expected.trim().toLowerCase(Locale.US);
+        int colon = normalized.indexOf(':');
+        if (colon >= 0) normalized = normalized.substring(colon + 1).trim();
+        normalized = normalized.replace(" ", "");
+        if (normalized.length() == 64) {
+            return sha256Hex != null ? normalized.equals(sha256Hex) : null;
+        }
+        if (normalized.length() == 32) {
+            return md5Hex != null ? normalized.equals(md5Hex) : null;
+        }
+        return null;
+    }
+
+    private static MessageDigest cloneOf(MessageDigest digest) {
+        try {
+            return (MessageDigest) digest.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("MessageDigest não clonável", e); // Implementações da plataforma são
+        }
+    }
+
+    static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format(Locale.US, "%02x", b));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,205 @@
+package com.LDGAMES.utils;
+
+import com.LDGAMES.models.DownloadInfo;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DownloadSchedulerTest {
+
+    private DownloadScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = new DownloadScheduler();
+    }
+
+    private static DownloadInfo download(String name, String url, long size) {
+        DownloadInfo download = new DownloadInfo();
+        download.setFileName(name);
+        download.setFilePath("content://downloads/" + name);
+        download.setUrl(url);
+        download.setFileSize(size);
+        return download;
+    }
+
+    private List<String> order() {
+        List<String> names = new ArrayList<>();
+        for (DownloadInfo download : scheduler.snapshot()) {
+            names.add(download.getFileName());
+        }
+        return names;
+    }
+
+    private static List<String> names(String... names) {
+        List<String> list = new ArrayList<>();
+        for (String name : names) {
+            list.add(name);
+        }
+        return list;
+    }
+
+    @Test
+    public void oldestFirstKeepsInsertionOrder() {
+        scheduler.enqueue(download("a", "https://one.example/a", 10));
+        scheduler.enqueue(download("b", "https://one.example/b", 10));
+        scheduler.enqueue(download("c", "https://one.example/c", 10));
+
+        assertEquals(names("a", "b", "c"), order());
+    }
+
+    @Test
+    public void higherPriorityGoesFirst() {
+        scheduler.enqueue(download("a", "https://one.example/a", 10));
+        DownloadInfo urgent = download("b", "https://one.example/b", 10);
+        urgent.setPriority(DownloadInfo.PRIORITY_HIGH);
+        scheduler.enqueue(urgent);
+
+        assertEquals(names("b", "a"), order());
+    }
+
+    @Test
+    public void policySwitchReordersQueue() {
+        scheduler.enqueue(download("big", "https://one.example/big", 1000));
+        scheduler.enqueue(download("unknown", "https://one.example/unknown", 0));
+        scheduler.enqueue(download("small", "https://one.example/small", 10));
+
+        scheduler.setPolicy(DownloadScheduler.POLICY_SMALLEST_FIRST);
+        assertEquals(names("small", "big", "unknown"), order()); // Tamanho desconhecido por último
+
+        scheduler.setPolicy(DownloadScheduler.POLICY_OLDEST_FIRST);
+        assertEquals(names("big", "unknown", "small"), order());
+    }
+
+    @Test
+    public void moveToFrontWhenFirstPositionIsOne() {
+        DownloadInfo a = download("a", "https://one.example/a", 10);
+        DownloadInfo c = download("c", "https://one.example/c", 10);
+        scheduler.enqueue(a);
+        scheduler.enqueue(download("b", "https://one.example/b", 10));
+        scheduler.enqueue(c);
+        assertEquals(1, a.getQueuePosition());
+
+        scheduler.moveToFront(c);
+
+        assertEquals(names("c", "a", "b"), order());
+        assertNotEquals(DownloadInfo.QUEUE_POSITION_NONE, c.getQueuePosition());
+        assertTrue(c.getQueuePosition() < a.getQueuePosition());
+    }
+
+    @Test
+    public void moveToFrontRepeatedlyKeepsLatestFirst() {
+        DownloadInfo b = download("b", "https://one.example/b", 10);
+        DownloadInfo c = download("c", "https://one.example/c", 10);
+        scheduler.enqueue(download("a", "https://one.example/a", 10));
+        scheduler.enqueue(b);
+        scheduler.enqueue(c);
+
+        scheduler.moveToFront(c);
+        scheduler.moveToFront(b);
+        scheduler.moveToFront(c);
+
+        assertEquals(names("c", "b", "a"), order());
+    }
+
+    @Test
+    public void moveToFrontOfItemAlreadyFirstDoesNotMoveItBack() {
+        DownloadInfo a = download("a", "https://one.example/a", 10);
+        scheduler.enqueue(a);
+        scheduler.enqueue(download("b", "https://one.example/b", 10));
+
+        scheduler.moveToFront(a);
+        scheduler.moveToFront(a);
+
+        assertEquals(names("a", "b"), order());
+    }
+
+    @Test
+    public void moveToFrontRaisesPriorityToTopOfQueue() {
+        DownloadInfo high = download("high", "https://one.example/high", 10);
+        high.setPriority(DownloadInfo.PRIORITY_HIGH);
+        DownloadInfo low = download("low", "https://one.example/low", 10);
+        low.setPriority(DownloadInfo.PRIORITY_LOW);
+        scheduler.enqueue(high);
+        scheduler.enqueue(low);
+
+        scheduler.moveToFront(low);
+
+        assertEquals(DownloadInfo.PRIORITY_HIGH, low.getPriority());
+        assertEquals(names("low", "high"), order());
+    }
+
+    @Test
+    public void persistedPositionsRestoreOrderAfterReload() {
+        DownloadInfo a = download("a", "https://one.example/a", 10);
+        DownloadInfo b = download("b", "https://one.example/b", 10);
+        DownloadInfo c = download("c", "https://one.example/c", 10);
+        scheduler.enqueue(a);
+        scheduler.enqueue(b);
+        scheduler.enqueue(c);
+        scheduler.moveToFront(c);
+
+        // Recarga do banco: posições já gravadas, em qualquer ordem, são mantidas
+        DownloadScheduler reloaded = new DownloadScheduler();
+        reloaded.enqueue(b);
+        reloaded.enqueue(c);
+        reloaded.enqueue(a);
+        DownloadInfo added = download("d", "https://one.example/d", 10);
+        reloaded.enqueue(added);
+
+        List<String> reloadedOrder = new ArrayList<>();
+        for (DownloadInfo download : reloaded.snapshot()) {
+            reloadedOrder.add(download.getFileName());
+        }
+        assertEquals(names("c", "a", "b", "d"), reloadedOrder);
+    }
+
+    @Test
+    public void setPriorityRequeuesItem() {
+        scheduler.enqueue(download("a", "https://one.example/a", 10));
+        DownloadInfo b = download("b", "https://one.example/b", 10);
+        scheduler.enqueue(b);
+
+        scheduler.setPriority(b, DownloadInfo.PRIORITY_HIGH);
+
+        assertEquals(names("b", "a"), order());
+    }
+
+    @Test
+    public void pollNextRespectsMaxPerHost() {
+        DownloadInfo first = download("a1", "https://a.example/1", 10);
+        DownloadInfo second = download("a2", "https://A.example/2", 10);
+        DownloadInfo other = download("b1", "https://b.example/1", 10);
+        scheduler.enqueue(first);
+        scheduler.enqueue(second);
+        scheduler.enqueue(other);
+
+        assertSame(first, scheduler.pollNext(1));
+        assertSame(other, scheduler.pollNext(1)); // a.example já tem um rodando
+        assertNull(scheduler.pollNext(1));
+
+        scheduler.markFinished(first.getFilePath());
+        assertSame(second, scheduler.pollNext(1));
+        assertTrue(scheduler.isEmpty());
+    }
+
+    @Test
+    public void pollNextWithoutLimitFollowsQueueOrder() {
+        DownloadInfo first = download("a1", "https://a.example/1", 10);
+        DownloadInfo second = download("a2", "https://a.example/2", 10);
+        scheduler.enqueue(first);
+        scheduler.enqueue(second);
+
+        assertSame(first, scheduler.pollNext(0));
+        assertSame(second, scheduler.pollNext(0));
+    }
+}
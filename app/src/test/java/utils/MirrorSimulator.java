@@ -0,0 +1,211 @@
+package com.LDGAMES.utils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Espelho HTTP local para testes do motor de download: serve um arquivo sintético de tamanho
+ * configurável com banda limitada por conexão, latência antes dos headers, suporte opcional a
+ * Range, conexões derrubadas no meio do corpo e respostas 503.
+ * O conteúdo é determinístico ({@link #byteAt}), então o resultado pode ser conferido byte a byte.
+ */
+class MirrorSimulator implements Closeable {
+    private static final int WRITE_CHUNK = 16 * 1024;
+
+    private final long fileSize;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Random random = new Random(42); // Semente fixa: falhas reproduzíveis
+
+    private volatile long bytesPerSecond = 0; // Por conexão; 0 = sem limite
+    private volatile long latencyMillis = 0;
+    private volatile boolean rangeSupported = true;
+    private volatile double resetProbability = 0;
+    private final AtomicInteger unavailableLeft = new AtomicInteger();
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger rangeRequests = new AtomicInteger();
+    private final AtomicInteger resets = new AtomicInteger();
+    private final AtomicInteger unavailable = new AtomicInteger();
+    private final AtomicLong bytesSent = new AtomicLong();
+
+    MirrorSimulator(long fileSize) throws IOException {
+        this.fileSize = fileSize;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    MirrorSimulator bandwidth(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        return this;
+    }
+
+    MirrorSimulator latency(long millis) {
+        this.latencyMillis = millis;
+        return this;
+    }
+
+    MirrorSimulator rangeSupport(boolean supported) {
+        this.rangeSupported = supported;
+        return this;
+    }
+
+    /**
+     * Chance (0..1) de cada resposta ser interrompida em um ponto aleatório do corpo.
+     */
+    MirrorSimulator resets(double probability) {
+        this.resetProbability = probability;
+        return this;
+    }
+
+    /**
+     * As próximas count requisições recebem 503 com Retry-After.
+     */
+    MirrorSimulator unavailable(int count) {
+        unavailableLeft.set(count);
+        return this;
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/file.bin";
+    }
+
+    long fileSize() {
+        return fileSize;
+    }
+
+    int requests() {
+        return requests.get();
+    }
+
+    int rangeRequests() {
+        return rangeRequests.get();
+    }
+
+    int resetCount() {
+        return resets.get();
+    }
+
+    int unavailableCount() {
+        return unavailable.get();
+    }
+
+    long bytesSent() {
+        return bytesSent.get();
+    }
+
+    /**
+     * Byte do arquivo sintético na posição.
+     */
+    static byte byteAt(long position) {
+        return (byte) (position * 31 + (position >>> 11));
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            requests.incrementAndGet();
+            sleep(latencyMillis);
+
+            if (unavailableLeft.getAndUpdate(left -> Math.max(0, left - 1)) > 0) {
+                unavailable.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", "0");
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+
+            long from = 0;
+            long to = fileSize - 1;
+            int status = 200;
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            if (range != null && rangeSupported && range.startsWith("bytes=")) {
+                rangeRequests.incrementAndGet();
+                String[] bounds = range.substring("bytes=".length()).split("-", -1);
+                from = Long.parseLong(bounds[0].trim());
+                if (!bounds[1].trim().isEmpty()) {
+                    to = Math.min(to, Long.parseLong(bounds[1].trim()));
+                }
+                if (from > to) {
+                    exchange.getResponseHeaders().set("Content-Range", "bytes */" + fileSize);
+                    exchange.sendResponseHeaders(416, -1);
+                    return;
+                }
+                status = 206;
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + to + "/" + fileSize);
+            }
+            if (rangeSupported) {
+                exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+            }
+
+            long length = to - from + 1;
+            long resetAt = -1;
+            synchronized (random) {
+                if (length > 1 && random.nextDouble() < resetProbability) {
+                    resetAt = from + 1 + (long) (random.nextDouble() * (length - 1));
+                }
+            }
+            exchange.sendResponseHeaders(status, length);
+            sendBody(exchange.getResponseBody(), from, to, resetAt);
+        } catch (IOException e) {
+            // Cliente desistiu da conexão (cancelamento) ou a queda foi simulada
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void sendBody(OutputStream out, long from, long to, long resetAt) throws IOException {
+        byte[] buffer = new byte[WRITE_CHUNK];
+        long started = System.nanoTime();
+        long sent = 0;
+        long position = from;
+        while (position <= to) {
+            int length = (int) Math.min(buffer.length, to - position + 1);
+            if (resetAt >= 0 && position + length > resetAt) {
+                length = (int) (resetAt - position);
+                for (int i = 0; i < length; i++) buffer[i] = byteAt(position + i);
+                out.write(buffer, 0, length);
+                out.flush();
+                bytesSent.addAndGet(length);
+                resets.incrementAndGet();
+                throw new IOException("Conexão derrubada em " + resetAt); // exchange.close() corta o corpo
+            }
+            for (int i = 0; i < length; i++) buffer[i] = byteAt(position + i);
+            out.write(buffer, 0, length);
+            position += length;
+            sent += length;
+            bytesSent.addAndGet(length);
+            if (bytesPerSecond > 0) {
+                long due = sent * 1000_000_000L / bytesPerSecond;
+                long elapsed = System.nanoTime() - started;
+                if (due > elapsed) sleep((due - elapsed) / 1000_000);
+            }
+        }
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,284 @@
+package com.LDGAMES.utils;
+
+import com.LDGAMES.models.DownloadSegment;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.Response;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Motor de download (DownloadHttpClient, SegmentTransfer, PositionalFileWriter, StreamingHasher)
+ * contra um espelho local com banda limitada, latência, quedas e 503. As asserções trazem na
+ * mensagem vazão, CPU, buffers alocados e tempo até o primeiro byte da execução.
+ */
+public class SegmentTransferTest {
+    private static final int MAX_ATTEMPTS = 10; // Por segmento, sem progresso entre as falhas
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private ExecutorService executor;
+    private File file;
+
+    /**
+     * Medições de uma execução, no formato do resumo de DownloadMetrics.
+     */
+    private static class Run {
+        final long startedAt = System.nanoTime();
+        final AtomicLong cpuNanos = new AtomicLong();
+        final AtomicLong firstByteAt = new AtomicLong();
+        final long allocationsAtStart = BufferPool.getInstance().getAllocations();
+        final long reusesAtStart = BufferPool.getInstance().getReuses();
+        long elapsedNanos;
+
+        void onRead() {
+            firstByteAt.compareAndSet(0, System.nanoTime());
+        }
+
+        long firstByteMillis() {
+            return (firstByteAt.get() - startedAt) / 1000_000;
+        }
+
+        String summary(String name, long bytes) {
+            double seconds = elapsedNanos / 1e9;
+            return String.format(Locale.US, "%s: %.1f MB em %.2f s (%.1f MB/s), CPU %d ms, primeiro byte em %d ms, buffers novos %d / reutilizados %d",
+                    name, bytes / 1048576.0, seconds, bytes / 1048576.0 / seconds, cpuNanos.get() / 1000_000,
+                    firstByteMillis(), BufferPool.getInstance().getAllocations() - allocationsAtStart,
+                    BufferPool.getInstance().getReuses() - reusesAtStart);
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        executor = Executors.newCachedThreadPool();
+        file = File.createTempFile("segment-transfer", ".bin");
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        file.delete();
+    }
+
+    @Test
+    public void segmentsRebuildFileAndHash() throws Exception {
+        try (MirrorSimulator mirror = new MirrorSimulator(8 * 1024 * 1024 + 123)) {
+            StreamingHasher hasher = new StreamingHasher();
+            Run run = download(mirror, 0, 4, hasher);
+            String summary = run.summary("4 segmentos", mirror.fileSize());
+
+            assertFileMatches(mirror.fileSize());
+            assertEquals(summary, expectedSha256(mirror.fileSize()), hasher.sha256Hex());
+            assertEquals(summary, 4, mirror.rangeRequests());
+        }
+    }
+
+    @Test
+    public void segmentsSurviveResetsAndUnavailable() throws Exception {
+        try (MirrorSimulator mirror = new MirrorSimulator(4 * 1024 * 1024).resets(0.4).unavailable(3)) {
+            StreamingHasher hasher = new StreamingHasher();
+            Run run = download(mirror, 0, 4, hasher);
+            String summary = run.summary("4 segmentos com quedas e 503", mirror.fileSize())
+                    + ", quedas " + mirror.resetCount() + ", 503 " + mirror.unavailableCount();
+
+            assertFileMatches(mirror.fileSize());
+            assertEquals(summary, expectedSha256(mirror.fileSize()), hasher.sha256Hex());
+            assertEquals(summary, 3, mirror.unavailableCount());
+            assertTrue(summary, mirror.resetCount() > 0);
+        }
+    }
+
+    @Test
+    public void resumeFetchesOnlyTheRemainder() throws Exception {
+        long size = 4 * 1024 * 1024;
+        long resumeAt = size / 2 + 7;
+        try (MirrorSimulator mirror = new MirrorSimulator(size).latency(150)) {
+            prefill(resumeAt); // Dados parciais de uma tarefa anterior
+
+            StreamingHasher hasher = new StreamingHasher();
+            hasher.markWritten(resumeAt);
+            Future<Boolean> catchUp = executor.submit(() -> {
+                try (PositionalFileWriter reader = openWriter()) {
+                    return hasher.catchUpToFrontier(reader, null); // Como startHashCatchUp, em paralelo à conexão
+                }
+            });
+            Run run = download(mirror, resumeAt, 1, hasher);
+            catchUp.get();
+            String summary = run.summary("retomada", size - resumeAt);
+
+            assertFileMatches(size);
+            assertEquals(summary, expectedSha256(size), hasher.sha256Hex());
+            assertEquals(summary, size - resumeAt, mirror.bytesSent());
+            assertTrue(summary, run.firstByteMillis() >= 150);
+        }
+    }
+
+    @Test
+    public void parallelSegmentsBeatPerConnectionCap() throws Exception {
+        long size = 2 * 1024 * 1024;
+        long perConnection = 1024 * 1024; // 1 MB/s por conexão
+        Run single;
+        Run parallel;
+        try (MirrorSimulator mirror = new MirrorSimulator(size).bandwidth(perConnection)) {
+            single = download(mirror, 0, 1, new StreamingHasher());
+        }
+        file.delete();
+        try (MirrorSimulator mirror = new MirrorSimulator(size).bandwidth(perConnection)) {
+            parallel = download(mirror, 0, 4, new StreamingHasher());
+        }
+        assertFileMatches(size);
+        assertTrue("4 conexões deveriam levar bem menos da metade do tempo de 1: "
+                        + single.summary("1 conexão a 1 MB/s", size) + "; " + parallel.summary("4 conexões a 1 MB/s", size),
+                parallel.elapsedNanos * 2 < single.elapsedNanos);
+    }
+
+    @Test
+    public void withoutRangeSupportSegmentFailsAndSingleStreamCompletes() throws Exception {
+        long size = 1024 * 1024;
+        try (MirrorSimulator mirror = new MirrorSimulator(size).rangeSupport(false)) {
+            DownloadSegment segment = new DownloadSegment(1, size / 2, size - 1);
+            try (PositionalFileWriter writer = openWriter()) {
+                downloadSegment(mirror.url(), writer, segment, new StreamingHasher(), new Run());
+                fail("Segmento não deveria completar sem resposta 206");
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("200"));
+            }
+            assertEquals(size / 2, segment.getPosition()); // Nada gravado do corpo 200
+            assertEquals(MAX_ATTEMPTS, mirror.requests());
+
+            // Conexão única, como DownloadTask depois de SEGMENTED_UNSUPPORTED
+            StreamingHasher hasher = new StreamingHasher();
+            DownloadSegment whole = new DownloadSegment(0, 0, size - 1);
+            BufferPool.AdaptiveBuffer chunk = new BufferPool.AdaptiveBuffer(BufferPool.MIN_CHUNK * 4);
+            try (PositionalFileWriter writer = openWriter();
+                 Response response = DownloadHttpClient.getInstance()
+                         .newTransferCall(DownloadHttpClient.newRequest(mirror.url()).build()).execute()) {
+                assertEquals(200, response.code());
+                SegmentTransfer.copy(response.body().byteStream(), writer, whole, hasher, chunk,
+                        new AtomicBoolean(false), null);
+            } finally {
+                chunk.release();
+            }
+            assertTrue(whole.isComplete());
+            assertFileMatches(size);
+            assertEquals(expectedSha256(size), hasher.sha256Hex());
+            assertEquals(0, mirror.rangeRequests());
+        }
+    }
+
+    /**
+     * Baixa [from, fim) dividido em count segmentos paralelos e completa o hash como
+     * DownloadTask.finishHashes.
+     */
+    private Run download(MirrorSimulator mirror, long from, int count, StreamingHasher hasher) throws Exception {
+        Run run = new Run();
+        try (PositionalFileWriter writer = openWriter()) {
+            long length = mirror.fileSize() - from;
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                long start = from + length * i / count;
+                long end = from + length * (i + 1) / count - 1;
+                DownloadSegment segment = new DownloadSegment(i, start, end);
+                futures.add(executor.submit(() -> {
+                    downloadSegment(mirror.url(), writer, segment, hasher, run);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Error) throw (Error) e.getCause(); // Asserções dos segmentos
+                    throw (Exception) e.getCause();
+                }
+            }
+            run.elapsedNanos = System.nanoTime() - run.startedAt;
+            hasher.catchUp(writer, mirror.fileSize());
+        }
+        return run;
+    }
+
+    /**
+     * Como DownloadTask.downloadSegment: SegmentTransfer.download com a chamada Range do espelho.
+     */
+    private void downloadSegment(String url, PositionalFileWriter writer, DownloadSegment segment,
+                                 StreamingHasher hasher, Run run) throws IOException {
+        long cpuStart = threads.getCurrentThreadCpuTime();
+        BufferPool.AdaptiveBuffer chunk = new BufferPool.AdaptiveBuffer(BufferPool.MIN_CHUNK * 4);
+        List<Call> calls = Collections.synchronizedList(new ArrayList<>());
+        try {
+            SegmentTransfer.download((from, to) -> DownloadHttpClient.getInstance().newTransferCall(
+                            DownloadHttpClient.newRequest(url).header("Range", "bytes=" + from + "-" + to).build()),
+                    calls, writer, segment, hasher, chunk, new AtomicBoolean(false), MAX_ATTEMPTS,
+                    bytes -> run.onRead(), null);
+        } finally {
+            chunk.release();
+            run.cpuNanos.addAndGet(threads.getCurrentThreadCpuTime() - cpuStart);
+        }
+        assertTrue(calls.isEmpty());
+    }
+
+    private PositionalFileWriter openWriter() throws IOException {
+        return PositionalFileWriter.open(file);
+    }
+
+    private void prefill(long length) throws IOException {
+        try (PositionalFileWriter writer = openWriter()) {
+            byte[] buffer = new byte[64 * 1024];
+            for (long position = 0; position < length; position += buffer.length) {
+                int count = (int) Math.min(buffer.length, length - position);
+                for (int i = 0; i < count; i++) buffer[i] = MirrorSimulator.byteAt(position + i);
+                writer.write(position, buffer, 0, count);
+            }
+        }
+    }
+
+    private void assertFileMatches(long size) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            assertEquals(size, in.length());
+            byte[] buffer = new byte[64 * 1024];
+            for (long position = 0; position < size; position += buffer.length) {
+                int count = (int) Math.min(buffer.length, size - position);
+                in.readFully(buffer, 0, count);
+                for (int i = 0; i < count; i++) {
+                    if (buffer[i] != MirrorSimulator.byteAt(position + i)) {
+                        throw new AssertionError("Byte divergente na posição " + (position + i));
+                    }
+                }
+            }
+        }
+    }
+
+    private static String expectedSha256(long size) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] buffer = new byte[64 * 1024];
+        for (long position = 0; position < size; position += buffer.length) {
+            int count = (int) Math.min(buffer.length, size - position);
+            for (int i = 0; i < count; i++) buffer[i] = MirrorSimulator.byteAt(position + i);
+            digest.update(buffer, 0, count);
+        }
+        return StreamingHasher.hex(digest.digest());
+    }
+}